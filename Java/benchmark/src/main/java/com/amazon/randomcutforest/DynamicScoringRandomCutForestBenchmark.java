@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazon.randomcutforest.config.Precision;
+import com.amazon.randomcutforest.returntypes.DiVector;
+import com.amazon.randomcutforest.testutils.NormalMixtureTestData;
+import com.amazon.randomcutforest.util.ShingleBuilder;
+
+/**
+ * Benchmarks for the scoring and attribution methods of
+ * {@link DynamicScoringRandomCutForest}, using the default scoring functions in
+ * {@link CommonUtils}. The forest is trained once per trial and is not updated
+ * by the queries. The points are shingled before they are passed to the forest.
+ * Run with {@code -prof gc} to report the allocation rate of each query.
+ */
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class DynamicScoringRandomCutForestBenchmark {
+
+    public final static int TRAINING_DATA_SIZE = 10_000;
+    public final static int QUERY_DATA_SIZE = 1_000;
+
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        @Param({ "4", "16" })
+        int dimensions;
+
+        @Param({ "1", "8" })
+        int shingleSize;
+
+        @Param({ "64", "256" })
+        int sampleSize;
+
+        @Param({ "FLOAT_32", "FLOAT_64" })
+        Precision precision;
+
+        @Param({ "0.0", "1.0" })
+        double boundingBoxCacheFraction;
+
+        @Param({ "false", "true" })
+        boolean parallelExecutionEnabled;
+
+        double[][] queryData;
+        DynamicScoringRandomCutForest forest;
+
+        @Setup(Level.Trial)
+        public void setUpForest() {
+            NormalMixtureTestData testData = new NormalMixtureTestData();
+            double[][] trainingData = shingle(testData.generateTestData(TRAINING_DATA_SIZE, dimensions));
+            queryData = shingle(testData.generateTestData(QUERY_DATA_SIZE + shingleSize - 1, dimensions));
+
+            forest = DynamicScoringRandomCutForest.builder().numberOfTrees(50).dimensions(dimensions * shingleSize)
+                    .shingleSize(shingleSize).sampleSize(sampleSize).precision(precision)
+                    .boundingBoxCacheFraction(boundingBoxCacheFraction)
+                    .parallelExecutionEnabled(parallelExecutionEnabled).randomSeed(99).build();
+            for (double[] point : trainingData) {
+                forest.update(point);
+            }
+        }
+
+        private double[][] shingle(double[][] data) {
+            ShingleBuilder shingleBuilder = new ShingleBuilder(dimensions, shingleSize);
+            double[][] result = new double[data.length - shingleSize + 1][];
+            for (int i = 0; i < data.length; i++) {
+                shingleBuilder.addPoint(data[i]);
+                if (shingleBuilder.isFull()) {
+                    result[i - shingleSize + 1] = shingleBuilder.getShingle();
+                }
+            }
+            return result;
+        }
+    }
+
+    private DynamicScoringRandomCutForest forest;
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public DynamicScoringRandomCutForest dynamicScoreOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        double score = 0.0;
+
+        for (int i = 0; i < data.length; i++) {
+            score += forest.getDynamicScore(data[i], 0, CommonUtils::defaultScoreSeenFunction,
+                    CommonUtils::defaultScoreUnseenFunction, CommonUtils::defaultDampFunction);
+        }
+
+        blackhole.consume(score);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public DynamicScoringRandomCutForest dynamicSimulatedScoreOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        double score = 0.0;
+
+        for (int i = 0; i < data.length; i++) {
+            score += forest.getDynamicSimulatedScore(data[i], CommonUtils::defaultScoreSeenFunction,
+                    CommonUtils::defaultScoreUnseenFunction, CommonUtils::defaultDampFunction,
+                    CommonUtils::defaultRCFgVecFunction);
+        }
+
+        blackhole.consume(score);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public DynamicScoringRandomCutForest approximateDynamicScoreOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        double score = 0.0;
+
+        for (int i = 0; i < data.length; i++) {
+            score += forest.getApproximateDynamicScore(data[i], 0.1, true, 0, CommonUtils::defaultScoreSeenFunction,
+                    CommonUtils::defaultScoreUnseenFunction, CommonUtils::defaultDampFunction);
+        }
+
+        blackhole.consume(score);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public DynamicScoringRandomCutForest dynamicAttributionOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        DiVector vector = null;
+
+        for (int i = 0; i < data.length; i++) {
+            vector = forest.getDynamicAttribution(data[i], 0, CommonUtils::defaultScoreSeenFunction,
+                    CommonUtils::defaultScoreUnseenFunction, CommonUtils::defaultDampFunction);
+        }
+
+        blackhole.consume(vector);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public DynamicScoringRandomCutForest approximateDynamicAttributionOnly(BenchmarkState state,
+            Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        DiVector vector = null;
+
+        for (int i = 0; i < data.length; i++) {
+            vector = forest.getApproximateDynamicAttribution(data[i], 0.1, true, 0,
+                    CommonUtils::defaultScoreSeenFunction, CommonUtils::defaultScoreUnseenFunction,
+                    CommonUtils::defaultDampFunction);
+        }
+
+        blackhole.consume(vector);
+        return forest;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.amazon.randomcutforest.config.Precision;
+import com.amazon.randomcutforest.returntypes.Neighbor;
+import com.amazon.randomcutforest.testutils.NormalMixtureTestData;
+
+/**
+ * Benchmarks for the query methods of {@link RandomCutForest} that are not
+ * covered by {@link RandomCutForestBenchmark}. The forest is trained once per
+ * trial and is not updated by the queries, except in
+ * {@link #extrapolateAndUpdate}, which models a forecasting loop.
+ *
+ * The dimensions parameter is the number of dimensions of the input points; the
+ * points are shingled internally, so that the forest has dimensions *
+ * shingleSize dimensions. Run with {@code -prof gc} to report the allocation
+ * rate of each query.
+ */
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class RandomCutForestQueryBenchmark {
+
+    public final static int TRAINING_DATA_SIZE = 10_000;
+    public final static int QUERY_DATA_SIZE = 1_000;
+    // an extrapolation imputes horizon blocks, so fewer queries are used
+    public final static int EXTRAPOLATION_DATA_SIZE = 20;
+
+    @State(Scope.Benchmark)
+    public static class BenchmarkState {
+        @Param({ "4", "16" })
+        int dimensions;
+
+        @Param({ "2", "8" })
+        int shingleSize;
+
+        @Param({ "64", "256" })
+        int sampleSize;
+
+        @Param({ "FLOAT_32", "FLOAT_64" })
+        Precision precision;
+
+        @Param({ "0.0", "1.0" })
+        double boundingBoxCacheFraction;
+
+        @Param({ "false", "true" })
+        boolean parallelExecutionEnabled;
+
+        @Param({ "10" })
+        int horizon;
+
+        double[][] queryData;
+        RandomCutForest forest;
+
+        @Setup(Level.Trial)
+        public void setUpForest() {
+            NormalMixtureTestData testData = new NormalMixtureTestData();
+            double[][] trainingData = testData.generateTestData(TRAINING_DATA_SIZE, dimensions);
+            queryData = testData.generateTestData(QUERY_DATA_SIZE, dimensions);
+
+            forest = RandomCutForest.builder().numberOfTrees(50).dimensions(dimensions * shingleSize)
+                    .shingleSize(shingleSize).internalShinglingEnabled(true).sampleSize(sampleSize)
+                    .precision(precision).boundingBoxCacheFraction(boundingBoxCacheFraction)
+                    .parallelExecutionEnabled(parallelExecutionEnabled).randomSeed(99).build();
+            for (double[] point : trainingData) {
+                forest.update(point);
+            }
+        }
+    }
+
+    private RandomCutForest forest;
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public RandomCutForest approximateScoreOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        double score = 0.0;
+
+        for (int i = 0; i < data.length; i++) {
+            score += forest.getApproximateAnomalyScore(data[i]);
+        }
+
+        blackhole.consume(score);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public RandomCutForest imputeOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        int[] missingIndexes = new int[] { 0 };
+        double[] result = null;
+
+        for (int i = 0; i < data.length; i++) {
+            result = forest.imputeMissingValues(data[i], 1, missingIndexes);
+        }
+
+        blackhole.consume(result);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public RandomCutForest conditionalFieldOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        int[] missingIndexes = new int[] { 0 };
+        List<double[]> result = null;
+
+        for (int i = 0; i < data.length; i++) {
+            result = forest.getConditionalField(data[i], 1, missingIndexes, 1.0);
+        }
+
+        blackhole.consume(result);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_DATA_SIZE)
+    public RandomCutForest nearNeighborsOnly(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        List<Neighbor> result = null;
+
+        for (int i = 0; i < data.length; i++) {
+            result = forest.getNearNeighborsInSample(data[i]);
+        }
+
+        blackhole.consume(result);
+        return forest;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EXTRAPOLATION_DATA_SIZE)
+    public RandomCutForest extrapolateAndUpdate(BenchmarkState state, Blackhole blackhole) {
+        double[][] data = state.queryData;
+        forest = state.forest;
+        double[] result = null;
+
+        for (int i = 0; i < EXTRAPOLATION_DATA_SIZE; i++) {
+            result = forest.extrapolate(state.horizon);
+            forest.update(data[i]);
+        }
+
+        blackhole.consume(result);
+        return forest;
+    }
+}
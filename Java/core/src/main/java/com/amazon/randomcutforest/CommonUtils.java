@@ -104,23 +104,14 @@ public class CommonUtils {
         double sumOfNewRange = 0d;
         double sumOfDifferenceInRange = 0d;
 
+        // the loop has no branches; when a coordinate of the point lies inside the
+        // box, the new range equals the old range and the difference is 0
         for (int i = 0; i < queryPoint.length; ++i) {
             double maxVal = boundingBox.getMaxValue(i);
             double minVal = boundingBox.getMinValue(i);
-            double oldRange = maxVal - minVal;
-
-            if (maxVal < queryPoint[i]) {
-                maxVal = queryPoint[i];
-            } else if (minVal > queryPoint[i]) {
-                minVal = queryPoint[i];
-            } else {
-                sumOfNewRange += oldRange;
-                continue;
-            }
-
-            double newRange = maxVal - minVal;
+            double newRange = Math.max(maxVal, queryPoint[i]) - Math.min(minVal, queryPoint[i]);
             sumOfNewRange += newRange;
-            sumOfDifferenceInRange += (newRange - oldRange);
+            sumOfDifferenceInRange += newRange - (maxVal - minVal);
         }
 
         if (sumOfNewRange <= 0) {
@@ -216,4 +207,57 @@ public class CommonUtils {
         }
         return result;
     }
+
+    /**
+     * Selects the value of a given rank without sorting the values, in expected
+     * linear time. Ties are broken by index, so that the index returned is the
+     * index of the value at position rank after a stable sort of the values in
+     * increasing order (with the order of {@link Double#compare}).
+     *
+     * @param values the values, which are not modified
+     * @param rank   the rank of the value to select, 0 for the smallest value
+     * @return the index of the value of the given rank
+     */
+    public static int selectIndexOfRank(double[] values, int rank) {
+        checkNotNull(values, "values must not be null");
+        checkArgument(0 <= rank && rank < values.length, "rank must be between 0 and values.length (exclusive)");
+        int[] indices = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            indices[i] = i;
+        }
+        int low = 0;
+        int high = values.length - 1;
+        while (low < high) {
+            // partition around the middle entry; the keys (value, index) are distinct
+            int pivot = indices[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compareValueThenIndex(values, indices[i], pivot) < 0) {
+                    i++;
+                }
+                while (compareValueThenIndex(values, indices[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = indices[i];
+                    indices[i++] = indices[j];
+                    indices[j--] = swap;
+                }
+            }
+            if (rank <= j) {
+                high = j;
+            } else if (rank >= i) {
+                low = i;
+            } else {
+                break;
+            }
+        }
+        return indices[rank];
+    }
+
+    private static int compareValueThenIndex(double[] values, int first, int second) {
+        int result = Double.compare(values[first], values[second]);
+        return (result != 0) ? result : Integer.compare(first, second);
+    }
 }
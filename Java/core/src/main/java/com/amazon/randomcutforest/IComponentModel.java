@@ -15,9 +15,12 @@
 
 package com.amazon.randomcutforest;
 
+import java.util.function.Consumer;
+
 import com.amazon.randomcutforest.config.IDynamicConfig;
 import com.amazon.randomcutforest.executor.ITraversable;
 import com.amazon.randomcutforest.executor.IUpdatable;
+import com.amazon.randomcutforest.executor.UpdateResult;
 
 /**
  *
@@ -28,4 +31,26 @@ import com.amazon.randomcutforest.executor.IUpdatable;
 
 public interface IComponentModel<PointReference, Point>
         extends ITraversable, IUpdatable<PointReference>, IDynamicConfig {
+
+    /**
+     * Traverses the model with a point and then updates the model with a
+     * reference to the same point. The traversal sees the model as it was before
+     * the update, and the result is the same as calling
+     * {@link #traverse(double[], IVisitorFactory)} and then
+     * {@link #update(Object, long)}; a model may share work between the two, such
+     * as the descent of a tree.
+     *
+     * @param point          the point to traverse the model with
+     * @param visitorFactory a factory method which is invoked to create a visitor
+     * @param traversal      receives the result of the traversal
+     * @param pointReference the reference of the point to update the model with
+     * @param sequenceIndex  the sequence index of the update
+     * @param <R>            The return type of the Visitor
+     * @return the result of the update
+     */
+    default <R> UpdateResult<PointReference> traverseThenUpdate(double[] point, IVisitorFactory<R> visitorFactory,
+            Consumer<R> traversal, PointReference pointReference, long sequenceIndex) {
+        traversal.accept(traverse(point, visitorFactory));
+        return update(pointReference, sequenceIndex);
+    }
 }
@@ -24,4 +24,17 @@ public interface IVisitorFactory<R> {
     default R liftResult(ITree<?, ?> tree, R result) {
         return result;
     }
+
+    /**
+     * Visitors normally receive a distinct node view for every node in the
+     * traversal. If the visitors produced by this factory only access each node
+     * view for the duration of the corresponding accept call (and do not start
+     * other traversals in the meantime), then a tree may instead present a single
+     * reused view, which avoids allocation during the traversal.
+     *
+     * @return true if node views can be reused during a traversal
+     */
+    default boolean isNodeViewReusable() {
+        return false;
+    }
 }
@@ -17,24 +17,29 @@ package com.amazon.randomcutforest;
 
 import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
+import static com.amazon.randomcutforest.CommonUtils.checkState;
+import static com.amazon.randomcutforest.CommonUtils.selectIndexOfRank;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.stream.Collector;
 
 import com.amazon.randomcutforest.anomalydetection.AnomalyAttributionVisitor;
 import com.amazon.randomcutforest.anomalydetection.AnomalyScoreVisitor;
+import com.amazon.randomcutforest.anomalydetection.ReusableAnomalyScoreVisitorFactory;
 import com.amazon.randomcutforest.config.Config;
 import com.amazon.randomcutforest.config.Precision;
 import com.amazon.randomcutforest.executor.AbstractForestTraversalExecutor;
 import com.amazon.randomcutforest.executor.AbstractForestUpdateExecutor;
+import com.amazon.randomcutforest.executor.ConcurrentSamplerPlusTree;
 import com.amazon.randomcutforest.executor.IStateCoordinator;
 import com.amazon.randomcutforest.executor.ParallelForestTraversalExecutor;
 import com.amazon.randomcutforest.executor.ParallelForestUpdateExecutor;
@@ -46,6 +51,8 @@ import com.amazon.randomcutforest.executor.SequentialForestUpdateExecutor;
 import com.amazon.randomcutforest.imputation.ImputeVisitor;
 import com.amazon.randomcutforest.inspect.NearNeighborVisitor;
 import com.amazon.randomcutforest.interpolation.SimpleInterpolationVisitor;
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.NoOpForestMetrics;
 import com.amazon.randomcutforest.returntypes.ConvergingAccumulator;
 import com.amazon.randomcutforest.returntypes.DensityOutput;
 import com.amazon.randomcutforest.returntypes.DiVector;
@@ -57,8 +64,11 @@ import com.amazon.randomcutforest.sampler.CompactSampler;
 import com.amazon.randomcutforest.sampler.IStreamSampler;
 import com.amazon.randomcutforest.sampler.SimpleStreamSampler;
 import com.amazon.randomcutforest.store.IPointStore;
+import com.amazon.randomcutforest.store.IPointStoreView;
+import com.amazon.randomcutforest.store.PointStore;
 import com.amazon.randomcutforest.store.PointStoreDouble;
 import com.amazon.randomcutforest.store.PointStoreFloat;
+import com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree;
 import com.amazon.randomcutforest.tree.CompactRandomCutTreeDouble;
 import com.amazon.randomcutforest.tree.CompactRandomCutTreeFloat;
 import com.amazon.randomcutforest.tree.ITree;
@@ -123,6 +133,18 @@ public class RandomCutForest {
      */
     public static final boolean DEFAULT_DYNAMIC_RESIZING_ENABLED = true;
 
+    /**
+     * By default, the point store is compacted in a single pass when it runs out
+     * of space
+     */
+    public static final boolean DEFAULT_INCREMENTAL_COMPACTION_ENABLED = false;
+
+    /**
+     * By default, the nodes of the trees are only renumbered when the trees are
+     * serialized
+     */
+    public static final boolean DEFAULT_NODE_RELAYOUT_ENABLED = false;
+
     /**
      * By default, shingling will be external
      */
@@ -164,6 +186,11 @@ public class RandomCutForest {
      */
     public static final boolean DEFAULT_PARALLEL_EXECUTION_ENABLED = false;
 
+    /**
+     * By default, the forest is not safe for concurrent use.
+     */
+    public static final boolean DEFAULT_CONCURRENT_SCORING_ENABLED = false;
+
     public static final boolean DEFAULT_APPROXIMATE_ANOMALY_SCORE_HIGH_IS_CRITICAL = true;
 
     public static final double DEFAULT_APPROXIMATE_DYNAMIC_SCORE_PRECISION = 0.1;
@@ -237,6 +264,13 @@ public class RandomCutForest {
      * Number of threads to use in the thread pool if parallel execution is enabled.
      */
     protected final int threadPoolSize;
+    /**
+     * Enable traversals (scoring, attribution etc.) from multiple threads while a
+     * single thread updates the forest. Each tree is locked only for the duration
+     * of its own update or traversal. Updates must be made from one thread at a
+     * time.
+     */
+    protected final boolean concurrentScoringEnabled;
     /**
      * A string to define an "execution mode" that can be used to set multiple
      * configuration options. This field is not currently in use.
@@ -250,7 +284,7 @@ public class RandomCutForest {
      * This flag is initialized to false. It is set to true when all component
      * models are ready.
      */
-    private boolean outputReady;
+    private volatile boolean outputReady;
 
     /**
      * used for initializing the compact forests
@@ -258,6 +292,24 @@ public class RandomCutForest {
     private final int initialPointStoreSize;
     private final int pointStoreCapacity;
 
+    /**
+     * guards the point store shared by the trees when concurrent scoring is
+     * enabled, null otherwise
+     */
+    private ReadWriteLock pointStoreLock;
+
+    /**
+     * true if this forest is a snapshot of another forest, see
+     * {@link #snapshot()}, in which case it cannot be updated.
+     */
+    private boolean readOnly = false;
+
+    /**
+     * the sink for the latencies and counters recorded by this forest, its
+     * executors, its point store and its trees
+     */
+    private final IForestMetrics metrics;
+
     /**
      * An implementation of forest traversal algorithms.
      */
@@ -276,6 +328,14 @@ public class RandomCutForest {
         checkNotNull(components, "componentModels must not be null");
         checkNotNull(random, "random must not be null");
 
+        if (concurrentScoringEnabled) {
+            checkArgument(components.stream().allMatch(c -> c instanceof ConcurrentSamplerPlusTree),
+                    "concurrent scoring requires components created by newComponent");
+            if (stateCoordinator instanceof PointStoreCoordinator) {
+                pointStoreLock = ((PointStoreCoordinator<?>) stateCoordinator).getPointStoreLock();
+                checkArgument(pointStoreLock != null, "concurrent scoring requires a point store lock");
+            }
+        }
         this.stateCoordinator = stateCoordinator;
         this.components = components;
         this.random = random;
@@ -300,21 +360,23 @@ public class RandomCutForest {
                 .directLocationEnabled(builder.directLocationMapEnabled)
                 .internalShinglingEnabled(internalShinglingEnabled)
                 .dynamicResizingEnabled(builder.dynamicResizingEnabled).shingleSize(shingleSize).dimensions(dimensions)
-                .build();
+                .incrementalCompactionEnabled(builder.incrementalCompactionEnabled).build();
 
-        IStateCoordinator<Integer, double[]> stateCoordinator = new PointStoreCoordinator(tempStore);
+        pointStoreLock = (concurrentScoringEnabled) ? new ReentrantReadWriteLock() : null;
+        IStateCoordinator<Integer, double[]> stateCoordinator = new PointStoreCoordinator(tempStore, pointStoreLock);
         ComponentList<Integer, double[]> components = new ComponentList<>(numberOfTrees);
         for (int i = 0; i < numberOfTrees; i++) {
             ITree<Integer, double[]> tree = new CompactRandomCutTreeDouble.Builder().maxSize(sampleSize)
                     .randomSeed(random.nextLong()).pointStore(tempStore)
                     .boundingBoxCacheFraction(boundingBoxCacheFraction).centerOfMassEnabled(centerOfMassEnabled)
-                    .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).outputAfter(outputAfter).build();
+                    .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).outputAfter(outputAfter)
+                    .relayoutEnabled(builder.nodeRelayoutEnabled).build();
 
             IStreamSampler<Integer> sampler = CompactSampler.builder().capacity(sampleSize).timeDecay(timeDecay)
                     .randomSeed(random.nextLong()).storeSequenceIndexesEnabled(storeSequenceIndexesEnabled)
                     .initialAcceptFraction(builder.initialAcceptFraction).build();
 
-            components.add(new SamplerPlusTree<>(sampler, tree));
+            components.add(newComponent(sampler, tree));
         }
         this.stateCoordinator = stateCoordinator;
         this.components = components;
@@ -327,21 +389,23 @@ public class RandomCutForest {
                 .directLocationEnabled(builder.directLocationMapEnabled)
                 .internalShinglingEnabled(internalShinglingEnabled)
                 .dynamicResizingEnabled(builder.dynamicResizingEnabled).shingleSize(shingleSize).dimensions(dimensions)
-                .build();
+                .incrementalCompactionEnabled(builder.incrementalCompactionEnabled).build();
 
-        IStateCoordinator<Integer, float[]> stateCoordinator = new PointStoreCoordinator<>(tempStore);
+        pointStoreLock = (concurrentScoringEnabled) ? new ReentrantReadWriteLock() : null;
+        IStateCoordinator<Integer, float[]> stateCoordinator = new PointStoreCoordinator<>(tempStore, pointStoreLock);
         ComponentList<Integer, float[]> components = new ComponentList<>(numberOfTrees);
         for (int i = 0; i < numberOfTrees; i++) {
             ITree<Integer, float[]> tree = new CompactRandomCutTreeFloat.Builder().maxSize(sampleSize)
                     .randomSeed(random.nextLong()).pointStore(tempStore)
                     .boundingBoxCacheFraction(boundingBoxCacheFraction).centerOfMassEnabled(centerOfMassEnabled)
-                    .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).outputAfter(outputAfter).build();
+                    .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).outputAfter(outputAfter)
+                    .relayoutEnabled(builder.nodeRelayoutEnabled).build();
 
             IStreamSampler<Integer> sampler = CompactSampler.builder().capacity(sampleSize).timeDecay(timeDecay)
                     .randomSeed(random.nextLong()).storeSequenceIndexesEnabled(storeSequenceIndexesEnabled)
                     .initialAcceptFraction(builder.initialAcceptFraction).build();
 
-            components.add(new SamplerPlusTree<>(sampler, tree));
+            components.add(newComponent(sampler, tree));
         }
         this.stateCoordinator = stateCoordinator;
         this.components = components;
@@ -359,13 +423,64 @@ public class RandomCutForest {
             IStreamSampler<double[]> sampler = SimpleStreamSampler.<double[]>builder().capacity(sampleSize)
                     .timeDecay(timeDecay).randomSeed(random.nextLong()).build();
 
-            components.add(new SamplerPlusTree<>(sampler, tree));
+            components.add(newComponent(sampler, tree));
         }
         this.stateCoordinator = stateCoordinator;
         this.components = components;
         initExecutors(stateCoordinator, components);
     }
 
+    private <P, Q> SamplerPlusTree<P, Q> newComponent(IStreamSampler<P> sampler, ITree<P, Q> tree) {
+        return newComponent(sampler, tree, concurrentScoringEnabled, pointStoreLock);
+    }
+
+    /**
+     * Creates a component of a forest from a sampler and a tree. If concurrent
+     * scoring is enabled, then the component is a
+     * {@link ConcurrentSamplerPlusTree} whose traversals hold the read lock of the
+     * point store.
+     *
+     * @param sampler                  the sampler
+     * @param tree                     the tree
+     * @param concurrentScoringEnabled true if the forest can be traversed while it
+     *                                 is updated
+     * @param pointStoreLock           the lock passed to the
+     *                                 {@link PointStoreCoordinator} of the forest,
+     *                                 null if the trees do not share a point store
+     * @param <P>                      the point reference type
+     * @param <Q>                      the point type
+     * @return the component
+     */
+    public static <P, Q> SamplerPlusTree<P, Q> newComponent(IStreamSampler<P> sampler, ITree<P, Q> tree,
+            boolean concurrentScoringEnabled, ReadWriteLock pointStoreLock) {
+        return (concurrentScoringEnabled) ? new ConcurrentSamplerPlusTree<>(sampler, tree, pointStoreLock)
+                : new SamplerPlusTree<>(sampler, tree);
+    }
+
+    /**
+     * Creates a component of a forest whose tree is built from the sampler when it
+     * is first used; see {@link #newComponent(IStreamSampler, ITree, boolean,
+     * ReadWriteLock)}.
+     *
+     * @param sampler                  the sampler
+     * @param treeBuilder              the function that builds the tree from the
+     *                                 sampler
+     * @param concurrentScoringEnabled true if the forest can be traversed while it
+     *                                 is updated
+     * @param pointStoreLock           the lock passed to the
+     *                                 {@link PointStoreCoordinator} of the forest,
+     *                                 null if the trees do not share a point store
+     * @param <P>                      the point reference type
+     * @param <Q>                      the point type
+     * @return the component
+     */
+    public static <P, Q> SamplerPlusTree<P, Q> newLazyComponent(IStreamSampler<P> sampler,
+            Function<IStreamSampler<P>, ITree<P, Q>> treeBuilder, boolean concurrentScoringEnabled,
+            ReadWriteLock pointStoreLock) {
+        return (concurrentScoringEnabled) ? new ConcurrentSamplerPlusTree<>(sampler, treeBuilder, pointStoreLock)
+                : new SamplerPlusTree<>(sampler, treeBuilder);
+    }
+
     protected <PointReference, Point> void initExecutors(IStateCoordinator<PointReference, Point> updateCoordinator,
             ComponentList<PointReference, Point> components) {
         if (parallelExecutionEnabled) {
@@ -375,6 +490,25 @@ public class RandomCutForest {
             traversalExecutor = new SequentialForestTraversalExecutor(components);
             updateExecutor = new SequentialForestUpdateExecutor<>(updateCoordinator, components);
         }
+        attachMetrics(updateCoordinator, components);
+    }
+
+    private void attachMetrics(IStateCoordinator<?, ?> updateCoordinator, ComponentList<?, ?> components) {
+        updateExecutor.setMetrics(metrics);
+        IPointStore<?> store = updateCoordinator.getStore();
+        if (store instanceof PointStore) {
+            ((PointStore<?, ?>) store).setMetrics(metrics);
+        }
+        for (IComponentModel<?, ?> component : components) {
+            if (component instanceof SamplerPlusTree) {
+                // a tree that is built lazily gets the metrics when it is built
+                ((SamplerPlusTree<?, ?>) component).whenTreeMaterialized(tree -> {
+                    if (tree instanceof AbstractCompactRandomCutTree) {
+                        ((AbstractCompactRandomCutTree<?>) tree).setMetrics(metrics);
+                    }
+                });
+            }
+        }
     }
 
     /**
@@ -419,6 +553,7 @@ public class RandomCutForest {
         });
         checkArgument(builder.boundingBoxCacheFraction >= 0 && builder.boundingBoxCacheFraction <= 1,
                 "incorrect cache fraction range");
+        checkNotNull(builder.metrics, "metrics must not be null");
         numberOfTrees = builder.numberOfTrees;
         sampleSize = builder.sampleSize;
         outputAfter = builder.outputAfter.orElse((int) (sampleSize * DEFAULT_OUTPUT_AFTER_FRACTION));
@@ -429,9 +564,11 @@ public class RandomCutForest {
         storeSequenceIndexesEnabled = builder.storeSequenceIndexesEnabled;
         centerOfMassEnabled = builder.centerOfMassEnabled;
         parallelExecutionEnabled = builder.parallelExecutionEnabled;
+        concurrentScoringEnabled = builder.concurrentScoringEnabled;
         compact = builder.compact;
         precision = builder.precision;
         boundingBoxCacheFraction = builder.boundingBoxCacheFraction;
+        metrics = builder.metrics;
         builder.directLocationMapEnabled = builder.directLocationMapEnabled || shingleSize == 1;
         inputDimensions = (internalShinglingEnabled) ? dimensions / shingleSize : dimensions;
         pointStoreCapacity = sampleSize * numberOfTrees + 1;
@@ -563,10 +700,33 @@ public class RandomCutForest {
         return parallelExecutionEnabled;
     }
 
+    /**
+     * @return true if the forest can be traversed by multiple threads while a
+     *         single thread updates it, false otherwise.
+     */
+    public boolean isConcurrentScoringEnabled() {
+        return concurrentScoringEnabled;
+    }
+
+    /**
+     * @return true if this forest is a snapshot that cannot be updated, false
+     *         otherwise.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     public double getBoundingBoxCacheFraction() {
         return boundingBoxCacheFraction;
     }
 
+    /**
+     * @return the metrics sink of this forest
+     */
+    public IForestMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * @return the number of threads in the thread pool if parallel execution is
      *         enabled, 0 otherwise.
@@ -610,9 +770,33 @@ public class RandomCutForest {
 
     public double[] transformToShingledPoint(double[] point) {
         checkNotNull(point, "point must not be null");
-        return (internalShinglingEnabled && point.length == inputDimensions)
-                ? stateCoordinator.getStore().transformToShingledPoint(point)
-                : cleanCopy(point);
+        if (!internalShinglingEnabled || point.length != inputDimensions) {
+            return cleanCopy(point);
+        }
+        if (pointStoreLock == null) {
+            return stateCoordinator.getStore().transformToShingledPoint(point);
+        }
+        // the internal shingle changes with every update
+        pointStoreLock.readLock().lock();
+        try {
+            return stateCoordinator.getStore().transformToShingledPoint(point);
+        } finally {
+            pointStoreLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * applies {@link #transformToShingledPoint(double[])} to each point in a batch
+     *
+     * @param points input points
+     * @return a list of shingled or clean copies of the points
+     */
+    List<double[]> transformToShingledPoints(double[][] points) {
+        List<double[]> result = new ArrayList<>(points.length);
+        for (double[] point : points) {
+            result.add(transformToShingledPoint(point));
+        }
+        return result;
     }
 
     /**
@@ -655,6 +839,7 @@ public class RandomCutForest {
      * @param point The point used to update the forest.
      */
     public void update(double[] point) {
+        checkNotReadOnly();
         checkNotNull(point, "point must not be null");
         checkArgument(internalShinglingEnabled || point.length == dimensions,
                 String.format("point.length must equal %d", dimensions));
@@ -674,12 +859,56 @@ public class RandomCutForest {
      * @param sequenceNum The timestamp of the corresponding point
      */
     public void update(double[] point, long sequenceNum) {
+        checkNotReadOnly();
         checkNotNull(point, "point must not be null");
         checkArgument(!internalShinglingEnabled, "cannot be applied with internal shingling");
         checkArgument(point.length == dimensions, String.format("point.length must equal %d", dimensions));
         updateExecutor.update(point, sequenceNum);
     }
 
+    /**
+     * Update the forest with the given points, in order. The result is the same as
+     * calling {@link #update(double[])} on each point, but the points are handed to
+     * the trees in blocks which reduces the overhead per point, particularly when
+     * parallel execution is enabled.
+     *
+     * @param points The points used to update the forest.
+     */
+    public void update(double[][] points) {
+        checkNotReadOnly();
+        checkNotNull(points, "points must not be null");
+        for (double[] point : points) {
+            checkNotNull(point, "point must not be null");
+            checkArgument(internalShinglingEnabled || point.length == dimensions,
+                    String.format("point.length must equal %d", dimensions));
+            checkArgument(!internalShinglingEnabled || point.length == inputDimensions,
+                    String.format("point.length must equal %d for internal shingling", inputDimensions));
+        }
+        updateExecutor.updateBatch(Arrays.asList(points), stateCoordinator.getTotalUpdates());
+    }
+
+    /**
+     * Update the forest with the given points, where the i-th point is assigned the
+     * timestamp startSequenceNum + i. The result is the same as calling
+     * {@link #update(double[], long)} on each point in order, but the points are
+     * handed to the trees in blocks which reduces the overhead per point. As in
+     * {@link #update(double[], long)}, this method cannot be used with internal
+     * shingling.
+     *
+     * @param points           The points used to update the forest.
+     * @param startSequenceNum The timestamp of the first point
+     */
+    public void updateBatch(List<double[]> points, long startSequenceNum) {
+        checkNotReadOnly();
+        checkNotNull(points, "points must not be null");
+        checkArgument(!internalShinglingEnabled, "cannot be applied with internal shingling");
+        for (double[] point : points) {
+            checkNotNull(point, "point must not be null");
+            checkArgument(point.length == dimensions, String.format("point.length must equal %d", dimensions));
+        }
+        updateExecutor.updateBatch(points, startSequenceNum);
+    }
+
     /**
      * Update the forest such that each tree caches a fraction of the bounding
      * boxes. This allows for a tradeoff between speed and storage.
@@ -688,6 +917,7 @@ public class RandomCutForest {
      *                      caching.
      */
     public void setBoundingBoxCacheFraction(double cacheFraction) {
+        checkNotReadOnly();
         checkArgument(0 <= cacheFraction && cacheFraction <= 1, "cacheFraction must be between 0 and 1 (inclusive)");
         updateExecutor.getComponents().forEach(c -> c.setConfig(Config.BOUNDING_BOX_CACHE_FRACTION, cacheFraction));
     }
@@ -698,11 +928,97 @@ public class RandomCutForest {
      * @param timeDecay new value of sampling rate
      */
     public void setTimeDecay(double timeDecay) {
+        checkNotReadOnly();
         checkArgument(0 <= timeDecay, "timeDecay must be greater than or equal to 0");
         this.timeDecay = timeDecay;
         updateExecutor.getComponents().forEach(c -> c.setConfig(Config.TIME_DECAY, timeDecay));
     }
 
+    private void checkNotReadOnly() {
+        checkState(!readOnly, "this forest is a read-only snapshot");
+    }
+
+    /**
+     * Builds the trees that are not built yet, in parallel if parallel execution
+     * is enabled. The trees of a forest restored with lazy tree materialization,
+     * see {@link com.amazon.randomcutforest.state.RandomCutForestMapper}, are
+     * otherwise built when they are first used; this method can be called from a
+     * background thread while the forest is idle, so that the first score or
+     * update does not wait for the trees. A tree that is being built by another
+     * thread is built only once.
+     *
+     * This method must not be called while the forest is being updated, but can
+     * be called while it is being scored.
+     */
+    public void materializeTrees() {
+        (parallelExecutionEnabled ? components.parallelStream() : components.stream())
+                .filter(component -> component instanceof SamplerPlusTree)
+                .forEach(component -> ((SamplerPlusTree<?, ?>) component).materializeTree());
+    }
+
+    /**
+     * Creates a read-only copy of this forest, which supports all the scoring,
+     * attribution, density, imputation and near neighbor methods and which is not
+     * affected by later updates to this forest. The copy is made directly from the
+     * point store, the samplers and the node stores of the trees, without going
+     * through {@link com.amazon.randomcutforest.state.RandomCutForestMapper}. All
+     * the cached bounding boxes of the snapshot are computed when it is created,
+     * so the snapshot can be traversed from several threads at once. The random
+     * number generator of the snapshot is seeded with the number of updates of
+     * this forest, whose own random number generator is left untouched.
+     *
+     * This method must not be called while the forest is being updated; when
+     * concurrent scoring is enabled it should be called from the thread that
+     * updates the forest.
+     *
+     * @return a read-only snapshot of this forest
+     */
+    public RandomCutForest snapshot() {
+        checkState(compact, "snapshots are only supported for compact forests");
+        Builder<?> builder = builder().numberOfTrees(numberOfTrees).dimensions(dimensions).timeDecay(timeDecay)
+                .sampleSize(sampleSize).centerOfMassEnabled(centerOfMassEnabled).outputAfter(outputAfter)
+                .parallelExecutionEnabled(parallelExecutionEnabled)
+                .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).shingleSize(shingleSize)
+                .boundingBoxCacheFraction(boundingBoxCacheFraction).compact(true)
+                .internalShinglingEnabled(internalShinglingEnabled)
+                .internalRotationEnabled(stateCoordinator.getStore().isInternalRotationEnabled())
+                .precision(precision).metrics(metrics);
+        if (parallelExecutionEnabled) {
+            builder.threadPoolSize(threadPoolSize);
+        }
+
+        RandomCutForest snapshot;
+        if (precision == Precision.FLOAT_32) {
+            PointStoreFloat store = ((PointStoreFloat) stateCoordinator.getStore()).copy();
+            snapshot = snapshot(builder, new PointStoreCoordinator<>(store), copyComponents(store));
+        } else {
+            PointStoreDouble store = ((PointStoreDouble) stateCoordinator.getStore()).copy();
+            snapshot = snapshot(builder, new PointStoreCoordinator<>(store), copyComponents(store));
+        }
+        snapshot.readOnly = true;
+        return snapshot;
+    }
+
+    private <Point> RandomCutForest snapshot(Builder<?> builder, PointStoreCoordinator<Point> coordinator,
+            ComponentList<Integer, Point> components) {
+        coordinator.setTotalUpdates(stateCoordinator.getTotalUpdates());
+        // the seed does not advance the random number generator of this forest, so
+        // that taking a snapshot does not change the behavior of this forest
+        return new RandomCutForest(builder, coordinator, components, new Random(stateCoordinator.getTotalUpdates()));
+    }
+
+    private <Point> ComponentList<Integer, Point> copyComponents(IPointStoreView<Point> store) {
+        ComponentList<Integer, Point> copy = new ComponentList<>(numberOfTrees);
+        for (IComponentModel<?, ?> component : components) {
+            SamplerPlusTree<Integer, Point> samplerPlusTree = (SamplerPlusTree<Integer, Point>) component;
+            CompactSampler sampler = ((CompactSampler) samplerPlusTree.getSampler()).copy();
+            AbstractCompactRandomCutTree<Point> tree = ((AbstractCompactRandomCutTree<Point>) samplerPlusTree
+                    .getTree()).copy(store);
+            copy.add(new SamplerPlusTree<>(sampler, tree));
+        }
+        return copy;
+    }
+
     /**
      * Visit each of the trees in the forest and combine the individual results into
      * an aggregate result. A visitor is constructed for each tree using the visitor
@@ -738,6 +1054,46 @@ public class RandomCutForest {
         return traversalExecutor.traverseForest(point, visitorFactory, accumulator, finisher);
     }
 
+    /**
+     * Visit each of the trees in the forest with each of the given points and
+     * combine the individual results for each point into an aggregate result. The
+     * result for each point is the same as the result of
+     * {@link #traverseForest(double[], IVisitorFactory, BinaryOperator, Function)}
+     * (modulo the order of accumulation), but each tree is visited with all the
+     * points before moving on to the next tree.
+     *
+     * @param points         The points that define the traversal paths.
+     * @param visitorFactory A factory method which is invoked for each tree and
+     *                       point to construct a visitor.
+     * @param accumulator    A function that combines the results from individual
+     *                       trees into an aggregate result.
+     * @param finisher       A function called on the aggregate result in order to
+     *                       produce the final result.
+     * @param <R>            The visitor result type. This is the type that will be
+     *                       returned after traversing each individual tree.
+     * @param <S>            The final type, after any final normalization at the
+     *                       forest level.
+     * @return The aggregated and finalized results, in the same order as the input
+     *         points.
+     */
+    public <R, S> List<S> traverseForestBatch(List<double[]> points, IVisitorFactory<R> visitorFactory,
+            BinaryOperator<R> accumulator, Function<R, S> finisher) {
+
+        checkNotNull(points, "points must not be null");
+        for (double[] point : points) {
+            checkNotNull(point, "point must not be null");
+            checkArgument(point.length == dimensions, String.format("point.length must equal %d", dimensions));
+        }
+        checkNotNull(visitorFactory, "visitorFactory must not be null");
+        checkNotNull(accumulator, "accumulator must not be null");
+        checkNotNull(finisher, "finisher must not be null");
+
+        if (points.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return traversalExecutor.traverseForestBatch(points, visitorFactory, accumulator, finisher);
+    }
+
     /**
      * Visit each of the trees in the forest and combine the individual results into
      * an aggregate result. A visitor is constructed for each tree using the visitor
@@ -890,12 +1246,74 @@ public class RandomCutForest {
             return 0.0;
         }
 
-        IVisitorFactory<Double> visitorFactory = (tree, x) -> new AnomalyScoreVisitor(tree.projectToTree(x),
-                tree.getMass());
+        long startTime = metrics.startTimer();
+        IVisitorFactory<Double> visitorFactory = new ReusableAnomalyScoreVisitorFactory();
         BinaryOperator<Double> accumulator = Double::sum;
         Function<Double, Double> finisher = x -> x / numberOfTrees;
 
-        return traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        double score = traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        metrics.recordLatency(IForestMetrics.Operation.SCORE, startTime);
+        return score;
+    }
+
+    /**
+     * Compute an anomaly score for the given point and then update the forest with
+     * it. The result is the same as calling {@link #getAnomalyScore(double[])}
+     * followed by {@link #update(double[])}, but the point is copied once and
+     * added to the point store once: with internal shingling, the shingle built by
+     * the point store for the update is the point that is scored, and the trees
+     * are updated with the index of the point stored before scoring. Each tree is
+     * scored and then updated in turn, and the add of the point starts from the
+     * leaf reached by the scoring traversal instead of descending the tree again.
+     *
+     * @param point The point being scored and used to update the forest.
+     * @return an anomaly score for the given point, computed before the update.
+     */
+    public double scoreThenUpdate(double[] point) {
+        checkNotReadOnly();
+        checkNotNull(point, "point must not be null");
+        checkArgument(internalShinglingEnabled || point.length == dimensions,
+                String.format("point.length must equal %d", dimensions));
+        checkArgument(!internalShinglingEnabled || point.length == inputDimensions,
+                String.format("point.length must equal %d for internal shingling", inputDimensions));
+
+        // the samplers change with the update, so readiness is checked first
+        if (!isOutputReady()) {
+            updateExecutor.update(point);
+            return 0.0;
+        }
+        // the latency is recorded as an update, which includes the scoring
+        return updateExecutor.traverseThenUpdate(point,
+                pointCopy -> internalShinglingEnabled ? stateCoordinator.getStore().getInternalShingle() : pointCopy,
+                new ReusableAnomalyScoreVisitorFactory(), Double::sum, x -> x / numberOfTrees);
+    }
+
+    /**
+     * Compute anomaly scores for a batch of points. The result is the same as
+     * calling {@link #getAnomalyScore(double[])} on each point (modulo the order of
+     * floating point summation), but each tree scores all the points before the
+     * next tree is visited. This is considerably faster when scoring many points
+     * against a forest that is not being updated in the meantime.
+     *
+     * @param points The points being scored.
+     * @return the anomaly scores, in the same order as the input points.
+     */
+    public double[] getAnomalyScores(double[][] points) {
+        checkNotNull(points, "points must not be null");
+        if (!isOutputReady()) {
+            return new double[points.length];
+        }
+
+        long startTime = metrics.startTimer();
+        IVisitorFactory<Double> visitorFactory = new ReusableAnomalyScoreVisitorFactory();
+        BinaryOperator<Double> accumulator = Double::sum;
+        Function<Double, Double> finisher = x -> x / numberOfTrees;
+
+        List<Double> scores = traverseForestBatch(transformToShingledPoints(points), visitorFactory, accumulator,
+                finisher);
+        double[] result = scores.stream().mapToDouble(Double::doubleValue).toArray();
+        metrics.recordLatency(IForestMetrics.Operation.SCORE_BATCH, startTime);
+        return result;
     }
 
     /**
@@ -917,8 +1335,8 @@ public class RandomCutForest {
             return 0.0;
         }
 
-        IVisitorFactory<Double> visitorFactory = (tree, x) -> new AnomalyScoreVisitor(tree.projectToTree(x),
-                tree.getMass());
+        long startTime = metrics.startTimer();
+        IVisitorFactory<Double> visitorFactory = new ReusableAnomalyScoreVisitorFactory();
 
         ConvergingAccumulator<Double> accumulator = new OneSidedConvergingDoubleAccumulator(
                 DEFAULT_APPROXIMATE_ANOMALY_SCORE_HIGH_IS_CRITICAL, DEFAULT_APPROXIMATE_DYNAMIC_SCORE_PRECISION,
@@ -926,7 +1344,9 @@ public class RandomCutForest {
 
         Function<Double, Double> finisher = x -> x / accumulator.getValuesAccepted();
 
-        return traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        double score = traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        metrics.recordLatency(IForestMetrics.Operation.SCORE, startTime);
+        return score;
     }
 
     /**
@@ -948,13 +1368,48 @@ public class RandomCutForest {
             return new DiVector(dimensions);
         }
 
+        long startTime = metrics.startTimer();
         IVisitorFactory<DiVector> visitorFactory = new VisitorFactory<>(
                 (tree, y) -> new AnomalyAttributionVisitor(tree.projectToTree(y), tree.getMass()),
                 (tree, x) -> x.lift(tree::liftFromTree));
         BinaryOperator<DiVector> accumulator = DiVector::addToLeft;
         Function<DiVector, DiVector> finisher = x -> x.scale(1.0 / numberOfTrees);
 
-        return traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        DiVector attribution = traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        metrics.recordLatency(IForestMetrics.Operation.ATTRIBUTION, startTime);
+        return attribution;
+    }
+
+    /**
+     * Compute anomaly score attribution DiVectors for a batch of points. The result
+     * is the same as calling {@link #getAnomalyAttribution(double[])} on each point
+     * (modulo the order of floating point summation), but each tree processes all
+     * the points before the next tree is visited.
+     *
+     * @param points The points being scored.
+     * @return the attribution DiVectors, in the same order as the input points.
+     */
+    public DiVector[] getAnomalyAttributions(double[][] points) {
+        checkNotNull(points, "points must not be null");
+        if (!isOutputReady()) {
+            DiVector[] result = new DiVector[points.length];
+            for (int i = 0; i < points.length; i++) {
+                result[i] = new DiVector(dimensions);
+            }
+            return result;
+        }
+
+        long startTime = metrics.startTimer();
+        IVisitorFactory<DiVector> visitorFactory = new VisitorFactory<>(
+                (tree, y) -> new AnomalyAttributionVisitor(tree.projectToTree(y), tree.getMass()),
+                (tree, x) -> x.lift(tree::liftFromTree));
+        BinaryOperator<DiVector> accumulator = DiVector::addToLeft;
+        Function<DiVector, DiVector> finisher = x -> x.scale(1.0 / numberOfTrees);
+
+        DiVector[] attributions = traverseForestBatch(transformToShingledPoints(points), visitorFactory, accumulator,
+                finisher).toArray(new DiVector[0]);
+        metrics.recordLatency(IForestMetrics.Operation.ATTRIBUTION_BATCH, startTime);
+        return attributions;
     }
 
     /**
@@ -970,6 +1425,7 @@ public class RandomCutForest {
             return new DiVector(dimensions);
         }
 
+        long startTime = metrics.startTimer();
         IVisitorFactory<DiVector> visitorFactory = new VisitorFactory<>(
                 (tree, y) -> new AnomalyAttributionVisitor(tree.projectToTree(y), tree.getMass()),
                 (tree, x) -> x.lift(tree::liftFromTree));
@@ -980,7 +1436,9 @@ public class RandomCutForest {
 
         Function<DiVector, DiVector> finisher = x -> x.scale(1.0 / accumulator.getValuesAccepted());
 
-        return traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        DiVector attribution = traverseForest(transformToShingledPoint(point), visitorFactory, accumulator, finisher);
+        metrics.recordLatency(IForestMetrics.Operation.ATTRIBUTION, startTime);
+        return attribution;
     }
 
     /**
@@ -1068,18 +1526,17 @@ public class RandomCutForest {
         ArrayList<double[]> conditionalField = getConditionalField(point, numberOfMissingValues, missingIndexes, 1.0);
 
         if (numberOfMissingValues == 1) {
-            // when there is 1 missing value, we sort all the imputed values and return the
-            // median
+            // when there is 1 missing value, we return the median of the imputed values
             double[] returnPoint = Arrays.copyOf(point, point.length);
-            double[] basicList = conditionalField.stream()
-                    .mapToDouble(array -> array[transformIndices(missingIndexes, point.length)[0]]).sorted().toArray();
-            returnPoint[missingIndexes[0]] = basicList[numberOfTrees / 2];
+            int index = transformIndices(missingIndexes, point.length)[0];
+            double[] basicList = conditionalField.stream().mapToDouble(array -> array[index]).toArray();
+            returnPoint[missingIndexes[0]] = basicList[selectIndexOfRank(basicList, numberOfTrees / 2)];
             return returnPoint;
         } else {
-            // when there is more than 1 missing value, we sort the imputed points by
-            // anomaly score and return the point with the 25th percentile anomaly score
-            conditionalField.sort(Comparator.comparing(this::getAnomalyScore));
-            return conditionalField.get(numberOfTrees / 4);
+            // when there is more than 1 missing value, we score the imputed points once, in
+            // a single batch, and return the point with the 25th percentile anomaly score
+            double[] scores = getAnomalyScores(conditionalField.toArray(new double[0][]));
+            return conditionalField.get(selectIndexOfRank(scores, numberOfTrees / 4));
         }
     }
 
@@ -1210,7 +1667,7 @@ public class RandomCutForest {
         checkArgument(internalShinglingEnabled, "incorrect use");
         IPointStore<?> store = stateCoordinator.getStore();
         return extrapolateBasic(lastShingledPoint(), horizon, inputDimensions, store.isInternalRotationEnabled(),
-                ((int) nextSequenceIndex()) % dimensions);
+                ((int) nextSequenceIndex()) % shingleSize);
     }
 
     /**
@@ -1300,16 +1757,20 @@ public class RandomCutForest {
         private boolean storeSequenceIndexesEnabled = DEFAULT_STORE_SEQUENCE_INDEXES_ENABLED;
         private boolean centerOfMassEnabled = DEFAULT_CENTER_OF_MASS_ENABLED;
         private boolean parallelExecutionEnabled = DEFAULT_PARALLEL_EXECUTION_ENABLED;
+        private boolean concurrentScoringEnabled = DEFAULT_CONCURRENT_SCORING_ENABLED;
         private Optional<Integer> threadPoolSize = Optional.empty();
         private boolean directLocationMapEnabled = DEFAULT_DIRECT_LOCATION_MAP;
         private Precision precision = DEFAULT_PRECISION;
         private double boundingBoxCacheFraction = DEFAULT_BOUNDING_BOX_CACHE_FRACTION;
         private int shingleSize = DEFAULT_SHINGLE_SIZE;
         protected boolean dynamicResizingEnabled = DEFAULT_DYNAMIC_RESIZING_ENABLED;
+        protected boolean incrementalCompactionEnabled = DEFAULT_INCREMENTAL_COMPACTION_ENABLED;
+        protected boolean nodeRelayoutEnabled = DEFAULT_NODE_RELAYOUT_ENABLED;
         private boolean internalShinglingEnabled = DEFAULT_INTERNAL_SHINGLING_ENABLED;
         protected boolean internalRotationEnabled = DEFAULT_INTERNAL_ROTATION_ENABLED;
         protected Optional<Integer> initialPointStoreSize = Optional.empty();
         protected double initialAcceptFraction = DEFAULT_INITIAL_ACCEPT_FRACTION;
+        private IForestMetrics metrics = NoOpForestMetrics.INSTANCE;
 
         public T dimensions(int dimensions) {
             this.dimensions = dimensions;
@@ -1356,6 +1817,11 @@ public class RandomCutForest {
             return (T) this;
         }
 
+        public T concurrentScoringEnabled(boolean concurrentScoringEnabled) {
+            this.concurrentScoringEnabled = concurrentScoringEnabled;
+            return (T) this;
+        }
+
         public T threadPoolSize(int threadPoolSize) {
             this.threadPoolSize = Optional.of(threadPoolSize);
             return (T) this;
@@ -1391,6 +1857,16 @@ public class RandomCutForest {
             return (T) this;
         }
 
+        public T incrementalCompactionEnabled(boolean incrementalCompactionEnabled) {
+            this.incrementalCompactionEnabled = incrementalCompactionEnabled;
+            return (T) this;
+        }
+
+        public T nodeRelayoutEnabled(boolean nodeRelayoutEnabled) {
+            this.nodeRelayoutEnabled = nodeRelayoutEnabled;
+            return (T) this;
+        }
+
         public T precision(Precision precision) {
             this.precision = precision;
             return (T) this;
@@ -1406,10 +1882,19 @@ public class RandomCutForest {
             return (T) this;
         }
 
+        public T metrics(IForestMetrics metrics) {
+            this.metrics = metrics;
+            return (T) this;
+        }
+
         public RandomCutForest build() {
             return new RandomCutForest(this);
         }
 
+        public boolean isConcurrentScoringEnabled() {
+            return concurrentScoringEnabled;
+        }
+
         public Random getRandom() {
             // If a random seed was given, use it to create a new Random. Otherwise, call
             // the 0-argument constructor
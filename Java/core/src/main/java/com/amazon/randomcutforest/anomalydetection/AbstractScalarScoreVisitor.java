@@ -49,13 +49,13 @@ public abstract class AbstractScalarScoreVisitor implements Visitor<Double> {
     /**
      * The point whose anomaly score is being computed.
      */
-    protected final double[] pointToScore;
+    protected double[] pointToScore;
 
     /**
      * The mass of the tree being visited. This value is used to normalize the final
      * result.
      */
-    protected final int treeMass;
+    protected int treeMass;
 
     /**
      * This flag is set to 'true' if the point being scored is found to be contained
@@ -131,6 +131,30 @@ public abstract class AbstractScalarScoreVisitor implements Visitor<Double> {
         this(pointToScore, treeMass, DEFAULT_IGNORE_LEAF_MASS_THRESHOLD);
     }
 
+    /**
+     * Prepares the visitor for scoring a new point, so that a single visitor can be
+     * used for many traversals (one after another). The internal buffers are
+     * reused when the dimensions do not change. Subclasses that maintain additional
+     * state need to extend this method.
+     *
+     * @param pointToScore The point whose anomaly score we are computing
+     * @param treeMass     The total mass of the RandomCutTree that is scoring the
+     *                     point
+     */
+    public void reset(double[] pointToScore, int treeMass) {
+        if (this.pointToScore.length == pointToScore.length) {
+            System.arraycopy(pointToScore, 0, this.pointToScore, 0, pointToScore.length);
+            Arrays.fill(coordInsideBox, false);
+        } else {
+            this.pointToScore = Arrays.copyOf(pointToScore, pointToScore.length);
+            coordInsideBox = new boolean[pointToScore.length];
+        }
+        this.treeMass = treeMass;
+        pointInsideBox = false;
+        shadowBox = null;
+        score = 0.0;
+    }
+
     /**
      * @return The score computed up until this point.
      */
@@ -175,7 +199,7 @@ public abstract class AbstractScalarScoreVisitor implements Visitor<Double> {
      */
     @Override
     public void acceptLeaf(INodeView leafNode, int depthOfNode) {
-        if (Arrays.equals(leafNode.getLeafPoint(), pointToScore)
+        if (leafNode.leafPointEquals(pointToScore)
                 && (!ignoreLeafEquals || (leafNode.getMass() > ignoreLeafMassThreshold))) {
             pointInsideBox = true;
             score = damp(leafNode.getMass(), treeMass) * scoreSeen(depthOfNode, leafNode.getMass());
@@ -231,29 +255,14 @@ public abstract class AbstractScalarScoreVisitor implements Visitor<Double> {
         double sumOfNewRange = 0d;
         double sumOfDifferenceInRange = 0d;
 
+        // the loop has no branches; when a coordinate of the point lies inside the
+        // box, the new range equals the old range and the difference is 0
         for (int i = 0; i < pointToScore.length; ++i) {
             double maxVal = boundingBox.getMaxValue(i);
             double minVal = boundingBox.getMinValue(i);
-            double oldRange = maxVal - minVal;
-
-            if (!coordInsideBox[i]) {
-                if (maxVal < pointToScore[i]) {
-                    maxVal = pointToScore[i];
-                } else if (minVal > pointToScore[i]) {
-                    minVal = pointToScore[i];
-                } else if (!ignoreLeafEquals) {
-                    // optimization turned on for ignoreLeafEquals==false
-                    sumOfNewRange += oldRange;
-                    coordInsideBox[i] = true;
-                    continue;
-                }
-
-                double newRange = maxVal - minVal;
-                sumOfNewRange += newRange;
-                sumOfDifferenceInRange += (newRange - oldRange);
-            } else {
-                sumOfNewRange += oldRange;
-            }
+            double newRange = Math.max(maxVal, pointToScore[i]) - Math.min(minVal, pointToScore[i]);
+            sumOfNewRange += newRange;
+            sumOfDifferenceInRange += newRange - (maxVal - minVal);
         }
 
         if (sumOfNewRange <= 0) {
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.anomalydetection;
+
+import com.amazon.randomcutforest.IVisitorFactory;
+import com.amazon.randomcutforest.Visitor;
+import com.amazon.randomcutforest.tree.ITree;
+
+/**
+ * A visitor factory for the standard anomaly score. Instead of creating a new
+ * {@link AnomalyScoreVisitor} for every traversal, each thread reuses a single
+ * visitor which is reset at the start of a traversal. The visitors do not
+ * retain the node views they are given, and therefore trees can present a
+ * reused node view as well. For compact trees with cached bounding boxes, the
+ * traversal then does not allocate in steady state.
+ * <p>
+ * The visitor returned by {@link #newVisitor} is only valid until the next call
+ * to {@link #newVisitor} on the same thread, which is the case for a traversal
+ * of a single tree. The point is used as is, since the projection to a tree is
+ * the identity for the trees in this library.
+ */
+public class ReusableAnomalyScoreVisitorFactory implements IVisitorFactory<Double> {
+
+    private static final ThreadLocal<AnomalyScoreVisitor> VISITOR = ThreadLocal
+            .withInitial(() -> new AnomalyScoreVisitor(new double[0], 0));
+
+    @Override
+    public Visitor<Double> newVisitor(ITree<?, ?> tree, double[] point) {
+        AnomalyScoreVisitor visitor = VISITOR.get();
+        visitor.reset(point, tree.getMass());
+        return visitor;
+    }
+
+    @Override
+    public boolean isNodeViewReusable() {
+        return true;
+    }
+}
@@ -15,11 +15,14 @@
 
 package com.amazon.randomcutforest.executor;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.stream.Collector;
 
 import com.amazon.randomcutforest.ComponentList;
+import com.amazon.randomcutforest.IComponentModel;
 import com.amazon.randomcutforest.IMultiVisitorFactory;
 import com.amazon.randomcutforest.IVisitorFactory;
 import com.amazon.randomcutforest.returntypes.ConvergingAccumulator;
@@ -79,6 +82,32 @@ public abstract class AbstractForestTraversalExecutor {
     public abstract <R, S> S traverseForest(double[] point, IVisitorFactory<R> visitorFactory,
             Collector<R, ?, S> collector);
 
+    /**
+     * Visit each of the trees in the forest with each of the given points and
+     * combine the individual results for each point into an aggregate result. The
+     * result for the i-th point is the same as the result of
+     * {@link #traverseForest(double[], IVisitorFactory, BinaryOperator, Function)}
+     * for that point (modulo the order of accumulation), but each tree is visited
+     * with all the points before moving on to the next tree, which keeps the tree
+     * in cache and avoids the overhead of traversing the forest once per point.
+     *
+     * @param points         The points that define the traversal paths.
+     * @param visitorFactory A factory method which is invoked for each tree and
+     *                       point to construct a visitor.
+     * @param accumulator    A function that combines the results from individual
+     *                       trees into an aggregate result.
+     * @param finisher       A function called on the aggregate result in order to
+     *                       produce the final result.
+     * @param <R>            The visitor result type. This is the type that will be
+     *                       returned after traversing each individual tree.
+     * @param <S>            The final type, after any final normalization at the
+     *                       forest level.
+     * @return The aggregated and finalized results, in the same order as the input
+     *         points.
+     */
+    public abstract <R, S> List<S> traverseForestBatch(List<double[]> points, IVisitorFactory<R> visitorFactory,
+            BinaryOperator<R> accumulator, Function<R, S> finisher);
+
     /**
      * Visit each of the trees in the forest sequentially and combine the individual
      * results into an aggregate result. A visitor is constructed for each tree
@@ -153,4 +182,40 @@ public abstract class AbstractForestTraversalExecutor {
     public abstract <R, S> S traverseForestMulti(double[] point, IMultiVisitorFactory<R> visitorFactory,
             Collector<R, ?, S> collector);
 
+    /**
+     * Visit a single component with each of the given points.
+     *
+     * @param component      The component being visited.
+     * @param points         The points that define the traversal paths.
+     * @param visitorFactory A factory method which is invoked for each point to
+     *                       construct a visitor.
+     * @param <R>            The visitor result type.
+     * @return the results of the traversals, in the same order as the points
+     */
+    protected <R> List<R> traverseComponent(IComponentModel<?, ?> component, List<double[]> points,
+            IVisitorFactory<R> visitorFactory) {
+        List<R> results = new ArrayList<>(points.size());
+        for (double[] point : points) {
+            results.add(component.traverse(point, visitorFactory));
+        }
+        return results;
+    }
+
+    /**
+     * Combines two lists of per-point results element by element. The left list is
+     * updated in place and returned.
+     *
+     * @param left        results for the points from one set of trees
+     * @param right       results for the same points from a different set of trees
+     * @param accumulator A function that combines the results from individual
+     *                    trees into an aggregate result.
+     * @param <R>         The visitor result type.
+     * @return the left list, containing the combined results
+     */
+    protected <R> List<R> accumulate(List<R> left, List<R> right, BinaryOperator<R> accumulator) {
+        for (int i = 0; i < left.size(); i++) {
+            left.set(i, accumulator.apply(left.get(i), right.get(i)));
+        }
+        return left;
+    }
 }
@@ -15,13 +15,22 @@
 
 package com.amazon.randomcutforest.executor;
 
+import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
+
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
 
 import lombok.Getter;
 
 import com.amazon.randomcutforest.ComponentList;
+import com.amazon.randomcutforest.IComponentModel;
+import com.amazon.randomcutforest.IVisitorFactory;
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.NoOpForestMetrics;
 
 /**
  * The class transforms input points into the form expected by internal models,
@@ -36,6 +45,7 @@ public abstract class AbstractForestUpdateExecutor<PointReference, Point> {
 
     protected final IStateCoordinator<PointReference, Point> updateCoordinator;
     protected final ComponentList<PointReference, Point> components;
+    protected IForestMetrics metrics = NoOpForestMetrics.INSTANCE;
 
     /**
      * Create a new AbstractForestUpdateExecutor.
@@ -63,11 +73,130 @@ public abstract class AbstractForestUpdateExecutor<PointReference, Point> {
     }
 
     public void update(double[] point, long sequenceNumber) {
+        long startTime = metrics.startTimer();
         double[] pointCopy = cleanCopy(point);
         PointReference updateInput = updateCoordinator.initUpdate(pointCopy, sequenceNumber);
         List<UpdateResult<PointReference>> results = (updateInput == null) ? Collections.emptyList()
                 : update(updateInput, sequenceNumber);
         updateCoordinator.completeUpdate(results, updateInput);
+        if (updateInput != null) {
+            recordSamplerMetrics(results);
+        }
+        metrics.recordLatency(IForestMetrics.Operation.UPDATE, startTime);
+    }
+
+    /**
+     * Update the forest with the given point after traversing each model with it.
+     * The models are traversed after the point is handed to the update coordinator
+     * and before they are updated, so the traversal sees the models as they were
+     * before the update. Each model is traversed and then updated in a single
+     * step, see {@link IComponentModel#traverseThenUpdate}, so that the work of
+     * the traversal can be shared with the update. The results of the traversals
+     * are accumulated in the order of the models.
+     *
+     * @param point          The point used to update the forest.
+     * @param query          Maps the copy of the point to the point that the
+     *                       models are traversed with.
+     * @param visitorFactory A factory method which is invoked for each model to
+     *                       create a visitor.
+     * @param accumulator    A function that combines the results of the
+     *                       traversals of two models.
+     * @param finisher       A function that maps the accumulated result to the
+     *                       final result.
+     * @param <R>            The type of the result of a traversal.
+     * @param <S>            The type of the final result.
+     * @return the final result.
+     */
+    public <R, S> S traverseThenUpdate(double[] point, Function<double[], double[]> query,
+            IVisitorFactory<R> visitorFactory, BinaryOperator<R> accumulator, Function<R, S> finisher) {
+        long startTime = metrics.startTimer();
+        long sequenceNumber = updateCoordinator.getTotalUpdates();
+        double[] pointCopy = cleanCopy(point);
+        PointReference updateInput = updateCoordinator.initUpdate(pointCopy, sequenceNumber);
+        double[] queryPoint = query.apply(pointCopy);
+        R[] traversalResults = (R[]) new Object[components.size()];
+        List<UpdateResult<PointReference>> results;
+        if (updateInput == null) {
+            for (int i = 0; i < components.size(); i++) {
+                traversalResults[i] = components.get(i).traverse(queryPoint, visitorFactory);
+            }
+            results = Collections.emptyList();
+        } else {
+            results = traverseThenUpdate(queryPoint, visitorFactory, traversalResults, updateInput, sequenceNumber);
+        }
+        updateCoordinator.completeUpdate(results, updateInput);
+        if (updateInput != null) {
+            recordSamplerMetrics(results);
+        }
+        metrics.recordLatency(IForestMetrics.Operation.UPDATE, startTime);
+        R result = traversalResults[0];
+        for (int i = 1; i < traversalResults.length; i++) {
+            result = accumulator.apply(result, traversalResults[i]);
+        }
+        return finisher.apply(result);
+    }
+
+    /**
+     * Update the forest with a batch of points, where the i-th point is assigned
+     * the sequence number startSequenceNumber + i. The result is the same as
+     * calling {@link #update(double[], long)} on each point in order, but each
+     * model processes a block of points at a time so that the overhead of
+     * dispatching work to the models is shared across the block. The block size is
+     * bounded by {@link IStateCoordinator#getUpdateCapacity()}.
+     *
+     * @param points              The points used to update the forest.
+     * @param startSequenceNumber The sequence number of the first point.
+     */
+    public void updateBatch(List<double[]> points, long startSequenceNumber) {
+        int start = 0;
+        while (start < points.size()) {
+            long startTime = metrics.startTimer();
+            int blockSize = Math.min(points.size() - start, updateCoordinator.getUpdateCapacity());
+            List<PointReference> updateInputs = new ArrayList<>(blockSize);
+            for (int i = 0; i < blockSize; i++) {
+                double[] pointCopy = cleanCopy(points.get(start + i));
+                updateInputs.add(updateCoordinator.initUpdate(pointCopy, startSequenceNumber + start + i));
+            }
+            List<List<UpdateResult<PointReference>>> results = updateBlock(updateInputs, startSequenceNumber + start);
+            for (int i = 0; i < blockSize; i++) {
+                updateCoordinator.completeUpdate(results.get(i), updateInputs.get(i));
+                if (updateInputs.get(i) != null) {
+                    recordSamplerMetrics(results.get(i));
+                }
+            }
+            metrics.recordLatency(IForestMetrics.Operation.UPDATE_BATCH, startTime);
+            start += blockSize;
+        }
+    }
+
+    /**
+     * Sets the sink for the update latencies and for the number of points
+     * accepted, rejected and evicted by the samplers.
+     *
+     * @param metrics the metrics sink
+     */
+    public void setMetrics(IForestMetrics metrics) {
+        checkNotNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
+    /**
+     * Counts the points accepted, rejected and evicted by the samplers when a
+     * single point is submitted to all the models. A model changes its state
+     * exactly when its sampler accepts the point.
+     *
+     * @param results the state changing results of the update
+     */
+    private void recordSamplerMetrics(List<UpdateResult<PointReference>> results) {
+        int evicted = 0;
+        for (UpdateResult<PointReference> result : results) {
+            if (result.getDeletedPoint().isPresent()) {
+                evicted++;
+            }
+        }
+        metrics.incrementCounter(IForestMetrics.Counter.SAMPLER_ACCEPT, results.size());
+        metrics.incrementCounter(IForestMetrics.Counter.SAMPLER_REJECT, components.size() - results.size());
+        metrics.incrementCounter(IForestMetrics.Counter.SAMPLER_EVICT, evicted);
     }
 
     /**
@@ -82,6 +211,86 @@ public abstract class AbstractForestUpdateExecutor<PointReference, Point> {
      */
     protected abstract List<UpdateResult<PointReference>> update(PointReference updateInput, long currentIndex);
 
+    /**
+     * Internal update method which submits the given input value, along with the
+     * point to traverse with, to {@link IComponentModel#traverseThenUpdate} for
+     * each model managed by this executor.
+     *
+     * @param point            the point that the models are traversed with
+     * @param visitorFactory   a factory method which is invoked for each model to
+     *                         create a visitor
+     * @param traversalResults receives the result of the traversal of each model,
+     *                         in the order of the models
+     * @param updateInput      Input value that will be submitted to the update
+     *                         method for each tree.
+     * @param currentIndex     the timestamp
+     * @param <R>              The type of the result of a traversal.
+     * @return a list of points that were deleted from the model as part of the
+     *         update.
+     */
+    protected abstract <R> List<UpdateResult<PointReference>> traverseThenUpdate(double[] point,
+            IVisitorFactory<R> visitorFactory, R[] traversalResults, PointReference updateInput, long currentIndex);
+
+    /**
+     * Internal update method which submits each of the given input values, in
+     * order, to {@link IUpdatable#update} for each model managed by this executor.
+     * A null input value corresponds to a point that is not yet ready to be
+     * consumed by the models (for example, during internal shingling) and is
+     * skipped.
+     *
+     * @param updateInputs       Input values that will be submitted to the update
+     *                           method for each tree.
+     * @param startSequenceIndex the timestamp of the first input value
+     * @return for each input value, the list of state changing results of that
+     *         update in the order of the models
+     */
+    protected abstract List<List<UpdateResult<PointReference>>> updateBlock(List<PointReference> updateInputs,
+            long startSequenceIndex);
+
+    /**
+     * Apply a block of input values to a single model, in order.
+     *
+     * @param model              the model to be updated
+     * @param updateInputs       Input values that will be submitted to the update
+     *                           method of the model.
+     * @param startSequenceIndex the timestamp of the first input value
+     * @return the results of the update for each input value
+     */
+    protected UpdateResult<PointReference>[] updateModel(IUpdatable<PointReference> model,
+            List<PointReference> updateInputs, long startSequenceIndex) {
+        UpdateResult<PointReference>[] results = new UpdateResult[updateInputs.size()];
+        for (int i = 0; i < updateInputs.size(); i++) {
+            PointReference updateInput = updateInputs.get(i);
+            results[i] = (updateInput == null) ? UpdateResult.noop()
+                    : model.update(updateInput, startSequenceIndex + i);
+        }
+        return results;
+    }
+
+    /**
+     * Regroups the per-model results produced by {@link #updateModel} into
+     * per-point lists, retaining only the results that changed state.
+     *
+     * @param modelResults   the results for each model, in the order of the
+     *                       models
+     * @param numberOfInputs the number of input values in the block
+     * @return for each input value, the list of state changing results
+     */
+    protected List<List<UpdateResult<PointReference>>> collectResults(
+            List<UpdateResult<PointReference>[]> modelResults, int numberOfInputs) {
+        List<List<UpdateResult<PointReference>>> results = new ArrayList<>(numberOfInputs);
+        for (int i = 0; i < numberOfInputs; i++) {
+            List<UpdateResult<PointReference>> pointResults = new ArrayList<>();
+            for (UpdateResult<PointReference>[] modelResult : modelResults) {
+                if (modelResult[i].isStateChange()) {
+                    pointResults.add(modelResult[i]);
+                }
+            }
+            results.add(pointResults);
+        }
+        return results;
+    }
+
     /**
      * Returns a clean deep copy of the point.
      *
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.executor;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.amazon.randomcutforest.IMultiVisitorFactory;
+import com.amazon.randomcutforest.IVisitorFactory;
+import com.amazon.randomcutforest.sampler.IStreamSampler;
+import com.amazon.randomcutforest.tree.ITree;
+
+/**
+ * A SamplerPlusTree that can be traversed by multiple threads while a single
+ * writer thread updates the forest. Each instance has its own lock, which is
+ * held for the duration of a single update or a single traversal; therefore a
+ * traversal only waits for the update (or traversal) of the same tree, and
+ * never for the update of the whole forest. Exclusive locks are used instead of
+ * read-write locks because traversals can modify the tree, for example by
+ * caching bounding boxes.
+ *
+ * Trees that share a point store also share a read-write lock for that store.
+ * A traversal holds the read lock so that the store is not compacted or resized
+ * under it; the write lock is held by the {@link PointStoreCoordinator} while
+ * points are added to, or released from, the store.
+ *
+ * @param <P> The internal point representation expected by the component models
+ *            in this list.
+ * @param <Q> The explicit data type of points being passed
+ */
+public class ConcurrentSamplerPlusTree<P, Q> extends SamplerPlusTree<P, Q> {
+
+    private final Lock lock;
+    private final ReadWriteLock pointStoreLock;
+
+    /**
+     * Constructor of a pair of sampler + tree, guarded by a lock.
+     *
+     * @param sampler        the sampler
+     * @param tree           the corresponding tree
+     * @param pointStoreLock the lock of the point store shared by the trees, can
+     *                       be null if the trees do not share a point store
+     */
+    public ConcurrentSamplerPlusTree(IStreamSampler<P> sampler, ITree<P, Q> tree, ReadWriteLock pointStoreLock) {
+        super(sampler, tree);
+        this.lock = new ReentrantLock();
+        this.pointStoreLock = pointStoreLock;
+    }
+
+    /**
+     * Constructor of a pair of sampler + tree, guarded by a lock, where the tree is
+     * not built until it is first used. See
+     * {@link SamplerPlusTree#SamplerPlusTree(IStreamSampler, Function)}.
+     *
+     * @param sampler        the sampler
+     * @param treeBuilder    the function that builds the tree from the sampler
+     * @param pointStoreLock the lock of the point store shared by the trees, can
+     *                       be null if the trees do not share a point store
+     */
+    public ConcurrentSamplerPlusTree(IStreamSampler<P> sampler, Function<IStreamSampler<P>, ITree<P, Q>> treeBuilder,
+            ReadWriteLock pointStoreLock) {
+        super(sampler, treeBuilder);
+        this.lock = new ReentrantLock();
+        this.pointStoreLock = pointStoreLock;
+    }
+
+    @Override
+    public UpdateResult<P> update(P point, long sequenceIndex) {
+        lock.lock();
+        try {
+            return super.update(point, sequenceIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public <R> R traverse(double[] point, IVisitorFactory<R> visitorFactory) {
+        lockForTraversal();
+        try {
+            return super.traverse(point, visitorFactory);
+        } finally {
+            unlockForTraversal();
+        }
+    }
+
+    @Override
+    public <R> UpdateResult<P> traverseThenUpdate(double[] point, IVisitorFactory<R> visitorFactory,
+            Consumer<R> traversal, P pointReference, long sequenceIndex) {
+        // the lock is reentrant, and the update takes it again
+        lockForTraversal();
+        try {
+            return super.traverseThenUpdate(point, visitorFactory, traversal, pointReference, sequenceIndex);
+        } finally {
+            unlockForTraversal();
+        }
+    }
+
+    @Override
+    public <R> R traverseMulti(double[] point, IMultiVisitorFactory<R> visitorFactory) {
+        lockForTraversal();
+        try {
+            return super.traverseMulti(point, visitorFactory);
+        } finally {
+            unlockForTraversal();
+        }
+    }
+
+    @Override
+    public <T> void setConfig(String name, T value, Class<T> clazz) {
+        lock.lock();
+        try {
+            super.setConfig(name, value, clazz);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the store lock is always acquired first, the writer never holds both
+    private void lockForTraversal() {
+        if (pointStoreLock != null) {
+            pointStoreLock.readLock().lock();
+        }
+        lock.lock();
+    }
+
+    private void unlockForTraversal() {
+        lock.unlock();
+        if (pointStoreLock != null) {
+            pointStoreLock.readLock().unlock();
+        }
+    }
+}
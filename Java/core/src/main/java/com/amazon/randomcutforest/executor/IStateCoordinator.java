@@ -56,6 +56,18 @@ public interface IStateCoordinator<PointReference, Point> {
 
     void setTotalUpdates(long totalUpdates);
 
+    /**
+     * The number of points that can be initialized via {@link #initUpdate} before
+     * any of them are completed. Batched updates hold on to every point in a batch
+     * until all the components have processed the batch, and this bound ensures
+     * that the coordinator does not run out of space in the meantime.
+     *
+     * @return the maximum number of outstanding updates
+     */
+    default int getUpdateCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
     default IPointStore<Point> getStore() {
         return null;
     }
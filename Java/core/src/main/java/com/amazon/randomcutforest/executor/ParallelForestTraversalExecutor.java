@@ -18,10 +18,12 @@ package com.amazon.randomcutforest.executor;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.amazon.randomcutforest.ComponentList;
 import com.amazon.randomcutforest.IMultiVisitorFactory;
@@ -60,21 +62,38 @@ public class ParallelForestTraversalExecutor extends AbstractForestTraversalExec
     }
 
     @Override
-    public <R, S> S traverseForest(double[] point, IVisitorFactory<R> visitorFactory,
-            ConvergingAccumulator<R> accumulator, Function<R, S> finisher) {
+    public <R, S> List<S> traverseForestBatch(List<double[]> points, IVisitorFactory<R> visitorFactory,
+            BinaryOperator<R> accumulator, Function<R, S> finisher) {
 
-        for (int i = 0; i < components.size(); i += threadPoolSize) {
-            final int start = i;
-            final int end = Math.min(start + threadPoolSize, components.size());
+        // a single task per tree visits all the points
+        List<R> unnormalizedResults = submitAndJoin(
+                () -> components.parallelStream().map(c -> traverseComponent(c, points, visitorFactory))
+                        .reduce((left, right) -> accumulate(left, right, accumulator)))
+                                .orElseThrow(() -> new IllegalStateException("accumulator returned an empty result"));
 
-            List<R> results = submitAndJoin(() -> components.subList(start, end).parallelStream()
-                    .map(c -> c.traverse(point, visitorFactory)).collect(Collectors.toList()));
-            results.forEach(accumulator::accept);
+        return unnormalizedResults.stream().map(finisher).collect(Collectors.toList());
+    }
 
-            if (accumulator.isConverged()) {
-                break;
-            }
-        }
+    /**
+     * Each thread of the pool claims the next tree that has not been traversed,
+     * until the accumulator has converged, so that no thread waits for the others
+     * between trees. The results are accepted in the order of the trees, as in
+     * {@link SequentialForestTraversalExecutor}, and the result is the same.
+     */
+    @Override
+    public <R, S> S traverseForest(double[] point, IVisitorFactory<R> visitorFactory,
+            ConvergingAccumulator<R> accumulator, Function<R, S> finisher) {
+
+        ConvergingTraversal<R> traversal = new ConvergingTraversal<>(accumulator, components.size());
+        int workers = Math.min(threadPoolSize, components.size());
+        submitAndJoin(() -> {
+            IntStream.range(0, workers).parallel().forEach(worker -> {
+                for (int i = traversal.claim(); i >= 0; i = traversal.claim()) {
+                    traversal.complete(i, components.get(i).traverse(point, visitorFactory));
+                }
+            });
+            return null;
+        });
 
         return finisher.apply(accumulator.getAccumulatedValue());
     }
@@ -96,6 +115,51 @@ public class ParallelForestTraversalExecutor extends AbstractForestTraversalExec
                 () -> components.parallelStream().map(c -> c.traverseMulti(point, visitorFactory)).collect(collector));
     }
 
+    /**
+     * The state shared by the threads of a converging traversal. The trees are
+     * claimed in order, and a result that is completed before the results of the
+     * trees claimed earlier is held back until those are accepted. No tree is
+     * claimed once the accumulator has converged; the results of the trees still
+     * being traversed at that point are discarded.
+     */
+    private static class ConvergingTraversal<R> {
+        private final ConvergingAccumulator<R> accumulator;
+        private final AtomicInteger nextTree = new AtomicInteger();
+        private final Object[] results;
+        private final boolean[] completed;
+        private int nextResult;
+        private volatile boolean converged;
+
+        ConvergingTraversal(ConvergingAccumulator<R> accumulator, int numberOfTrees) {
+            this.accumulator = accumulator;
+            results = new Object[numberOfTrees];
+            completed = new boolean[numberOfTrees];
+        }
+
+        /**
+         * @return the index of the next tree to traverse, or -1 if the traversal is
+         *         complete
+         */
+        int claim() {
+            if (converged) {
+                return -1;
+            }
+            int tree = nextTree.getAndIncrement();
+            return (tree < results.length) ? tree : -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void complete(int tree, R result) {
+            results[tree] = result;
+            completed[tree] = true;
+            while (!converged && nextResult < results.length && completed[nextResult]) {
+                accumulator.accept((R) results[nextResult]);
+                results[nextResult++] = null;
+                converged = accumulator.isConverged();
+            }
+        }
+    }
+
     private <T> T submitAndJoin(Callable<T> callable) {
         if (forkJoinPool == null) {
             forkJoinPool = new ForkJoinPool(threadPoolSize);
@@ -19,8 +19,10 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.amazon.randomcutforest.ComponentList;
+import com.amazon.randomcutforest.IVisitorFactory;
 
 /**
  * An implementation of forest traversal methods that uses a private thread pool
@@ -48,6 +50,25 @@ public class ParallelForestUpdateExecutor<PointReference, Point>
                 .filter(UpdateResult::isStateChange).collect(Collectors.toList()));
     }
 
+    @Override
+    protected <R> List<UpdateResult<PointReference>> traverseThenUpdate(double[] point,
+            IVisitorFactory<R> visitorFactory, R[] traversalResults, PointReference updateInput, long seqNum) {
+        // each task writes the result of its own model
+        return submitAndJoin(() -> IntStream.range(0, components.size()).parallel()
+                .mapToObj(i -> components.get(i).traverseThenUpdate(point, visitorFactory,
+                        r -> traversalResults[i] = r, updateInput, seqNum))
+                .filter(UpdateResult::isStateChange).collect(Collectors.toList()));
+    }
+
+    @Override
+    protected List<List<UpdateResult<PointReference>>> updateBlock(List<PointReference> points, long startSeqNum) {
+        // a single task per tree processes the whole block; the stream preserves the
+        // order of the components when collecting
+        List<UpdateResult<PointReference>[]> modelResults = submitAndJoin(() -> components.parallelStream()
+                .map(t -> updateModel(t, points, startSeqNum)).collect(Collectors.toList()));
+        return collectResults(modelResults, points.size());
+    }
+
     private <T> T submitAndJoin(Callable<T> callable) {
         if (forkJoinPool == null) {
             forkJoinPool = new ForkJoinPool(threadPoolSize);
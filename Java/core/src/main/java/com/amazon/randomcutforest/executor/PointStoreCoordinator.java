@@ -18,6 +18,8 @@ package com.amazon.randomcutforest.executor;
 import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
 
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import com.amazon.randomcutforest.store.IPointStore;
 import com.amazon.randomcutforest.store.PointStore;
@@ -32,29 +34,89 @@ public class PointStoreCoordinator<Point> extends AbstractUpdateCoordinator<Inte
 
     private final IPointStore<Point> store;
 
+    /**
+     * held while the store is modified, if not null; see
+     * {@link ConcurrentSamplerPlusTree}
+     */
+    private final Lock writeLock;
+
+    /**
+     * the lock whose write lock is held while the store is modified, null if none
+     */
+    private final ReadWriteLock pointStoreLock;
+
     public PointStoreCoordinator(IPointStore<Point> store) {
+        this(store, null);
+    }
+
+    /**
+     * Creates a coordinator that acquires the write lock of the given lock
+     * whenever the store is modified, so that traversals holding the read lock see
+     * a consistent store.
+     *
+     * @param store          the point store
+     * @param pointStoreLock the lock of the store, can be null
+     */
+    public PointStoreCoordinator(IPointStore<Point> store, ReadWriteLock pointStoreLock) {
         checkNotNull(store, "store must not be null");
         this.store = store;
+        this.pointStoreLock = pointStoreLock;
+        this.writeLock = (pointStoreLock == null) ? null : pointStoreLock.writeLock();
+    }
+
+    /**
+     * @return the lock of the store, null if the store is modified without locking
+     */
+    public ReadWriteLock getPointStoreLock() {
+        return pointStoreLock;
     }
 
     @Override
     public Integer initUpdate(double[] point, long sequenceNumber) {
-        int index = store.add(point, sequenceNumber);
-        return (index == PointStore.INFEASIBLE_POINTSTORE_INDEX) ? null : index;
+        lock();
+        try {
+            int index = store.add(point, sequenceNumber);
+            return (index == PointStore.INFEASIBLE_POINTSTORE_INDEX) ? null : index;
+        } finally {
+            unlock();
+        }
     }
 
     @Override
     public void completeUpdate(List<UpdateResult<Integer>> updateResults, Integer updateInput) {
         if (updateInput != null) { // can be null for initial shingling
-            updateResults.forEach(result -> {
-                result.getAddedPoint().ifPresent(store::incrementRefCount);
-                result.getDeletedPoint().ifPresent(store::decrementRefCount);
-            });
-            store.decrementRefCount(updateInput);
+            lock();
+            try {
+                updateResults.forEach(result -> {
+                    result.getAddedPoint().ifPresent(store::incrementRefCount);
+                    result.getDeletedPoint().ifPresent(store::decrementRefCount);
+                });
+                store.decrementRefCount(updateInput);
+            } finally {
+                unlock();
+            }
         }
         totalUpdates++;
     }
 
+    private void lock() {
+        if (writeLock != null) {
+            writeLock.lock();
+        }
+    }
+
+    private void unlock() {
+        if (writeLock != null) {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int getUpdateCapacity() {
+        // at least one point can always be processed, as in a single update
+        return Math.max(store.getCapacity() - store.size(), 1);
+    }
+
     public IPointStore<Point> getStore() {
         return store;
     }
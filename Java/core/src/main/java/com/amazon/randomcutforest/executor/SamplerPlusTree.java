@@ -18,6 +18,8 @@ package com.amazon.randomcutforest.executor;
 import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
 
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import lombok.Getter;
 
@@ -38,12 +40,18 @@ import com.amazon.randomcutforest.tree.ITree;
  *            in this list.
  * @param <Q> The explicit data type of points being passed
  */
-@Getter
 public class SamplerPlusTree<P, Q> implements IComponentModel<P, Q> {
 
-    private ITree<P, Q> tree;
+    private volatile ITree<P, Q> tree;
+    @Getter
     private IStreamSampler<P> sampler;
 
+    /**
+     * the function that builds the tree from the sampler when the tree is first
+     * used, null once the tree is built
+     */
+    private Function<IStreamSampler<P>, ITree<P, Q>> treeBuilder;
+
     /**
      * Constructor of a pair of sampler + tree. The sampler is the driver's seat
      * because it aceepts/rejects independently of the tree and the tree has to
@@ -59,6 +67,75 @@ public class SamplerPlusTree<P, Q> implements IComponentModel<P, Q> {
         this.tree = tree;
     }
 
+    /**
+     * Constructor of a pair of sampler + tree where the tree is not built until it
+     * is first used, by a traversal, an update or any call to {@link #getTree()}.
+     * The tree must be built from the points of the sampler, and the sampler is
+     * not modified before the tree is built. Until then, the component is ready
+     * when the sampler is, see {@link IStreamSampler#isReady()}, which matches a
+     * tree with the default output threshold.
+     *
+     * @param sampler     the sampler
+     * @param treeBuilder the function that builds the tree from the sampler
+     */
+    public SamplerPlusTree(IStreamSampler<P> sampler, Function<IStreamSampler<P>, ITree<P, Q>> treeBuilder) {
+        checkNotNull(sampler, "sampler must not be null");
+        checkNotNull(treeBuilder, "treeBuilder must not be null");
+        this.sampler = sampler;
+        this.treeBuilder = treeBuilder;
+    }
+
+    /**
+     * @return the tree, which is built first if it was not built yet
+     */
+    public ITree<P, Q> getTree() {
+        ITree<P, Q> result = tree;
+        return (result != null) ? result : materializeTree();
+    }
+
+    /**
+     * @return true if the tree is built
+     */
+    public boolean isTreeMaterialized() {
+        return tree != null;
+    }
+
+    /**
+     * Builds the tree if it was not built yet. Concurrent calls build the tree only
+     * once; the tree can be built by another thread than the one that uses it,
+     * for instance in the background, as long as the sampler and the point store
+     * are not updated meanwhile.
+     *
+     * @return the tree
+     */
+    public synchronized ITree<P, Q> materializeTree() {
+        if (tree == null) {
+            ITree<P, Q> result = treeBuilder.apply(sampler);
+            checkNotNull(result, "treeBuilder must not return null");
+            treeBuilder = null;
+            tree = result;
+        }
+        return tree;
+    }
+
+    /**
+     * Applies an action to the tree when it is built, or at once if the tree is
+     * built already, without building it.
+     *
+     * @param action the action
+     */
+    public synchronized void whenTreeMaterialized(Consumer<ITree<P, Q>> action) {
+        checkNotNull(action, "action must not be null");
+        if (tree != null) {
+            action.accept(tree);
+        } else {
+            treeBuilder = treeBuilder.andThen(result -> {
+                action.accept(result);
+                return result;
+            });
+        }
+    }
+
     /**
      * This is main function that maintains the coordination between the sampler and
      * the tree. The sampler proposes acceptance (by setting the weight in
@@ -78,18 +155,20 @@ public class SamplerPlusTree<P, Q> implements IComponentModel<P, Q> {
 
     @Override
     public UpdateResult<P> update(P point, long sequenceIndex) {
+        // the tree is built from the sampler before the sampler is modified
+        ITree<P, Q> currentTree = getTree();
         P deleteRef = null;
         if (sampler.acceptPoint(sequenceIndex)) {
             Optional<ISampled<P>> deletedPoint = sampler.getEvictedPoint();
             if (deletedPoint.isPresent()) {
                 ISampled<P> p = deletedPoint.get();
                 deleteRef = p.getValue();
-                tree.deletePoint(deleteRef, p.getSequenceIndex());
+                currentTree.deletePoint(deleteRef, p.getSequenceIndex());
             }
 
             // the tree may choose to return a reference to an existing point
             // whose value is equal to `point`
-            P addedPoint = tree.addPoint(point, sequenceIndex);
+            P addedPoint = currentTree.addPoint(point, sequenceIndex);
 
             sampler.addPoint(addedPoint);
             return UpdateResult.<P>builder().addedPoint(addedPoint).deletedPoint(deleteRef).build();
@@ -99,18 +178,29 @@ public class SamplerPlusTree<P, Q> implements IComponentModel<P, Q> {
 
     @Override
     public <R> R traverse(double[] point, IVisitorFactory<R> visitorFactory) {
-        return tree.traverse(point, visitorFactory);
+        return getTree().traverse(point, visitorFactory);
+    }
+
+    /**
+     * The tree is traversed with {@link ITree#traverseForAdd}, so that adding the
+     * point, if the sampler accepts it, does not descend the tree again.
+     */
+    @Override
+    public <R> UpdateResult<P> traverseThenUpdate(double[] point, IVisitorFactory<R> visitorFactory,
+            Consumer<R> traversal, P pointReference, long sequenceIndex) {
+        traversal.accept(getTree().traverseForAdd(point, visitorFactory));
+        return update(pointReference, sequenceIndex);
     }
 
     @Override
     public <R> R traverseMulti(double[] point, IMultiVisitorFactory<R> visitorFactory) {
-        return tree.traverseMulti(point, visitorFactory);
+        return getTree().traverseMulti(point, visitorFactory);
     }
 
     @Override
     public <T> void setConfig(String name, T value, Class<T> clazz) {
         if (Config.BOUNDING_BOX_CACHE_FRACTION.equals(name)) {
-            tree.setConfig(name, value, clazz);
+            getTree().setConfig(name, value, clazz);
         } else if (Config.TIME_DECAY.equals(name)) {
             sampler.setConfig(name, value, clazz);
         } else {
@@ -122,7 +212,7 @@ public class SamplerPlusTree<P, Q> implements IComponentModel<P, Q> {
     public <T> T getConfig(String name, Class<T> clazz) {
         checkNotNull(clazz, "clazz must not be null");
         if (Config.BOUNDING_BOX_CACHE_FRACTION.equals(name)) {
-            return tree.getConfig(name, clazz);
+            return getTree().getConfig(name, clazz);
         } else if (Config.TIME_DECAY.equals(name)) {
             return sampler.getConfig(name, clazz);
         } else {
@@ -130,8 +220,13 @@ public class SamplerPlusTree<P, Q> implements IComponentModel<P, Q> {
         }
     }
 
+    /**
+     * Checking readiness does not build the tree, see
+     * {@link #SamplerPlusTree(IStreamSampler, Function)}.
+     */
     @Override
     public boolean isOutputReady() {
-        return tree.isOutputReady();
+        ITree<P, Q> result = tree;
+        return (result != null) ? result.isOutputReady() : sampler.isReady();
     }
 }
@@ -15,9 +15,11 @@
 
 package com.amazon.randomcutforest.executor;
 
+import java.util.List;
 import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.stream.Collector;
+import java.util.stream.Collectors;
 
 import com.amazon.randomcutforest.ComponentList;
 import com.amazon.randomcutforest.IComponentModel;
@@ -50,6 +52,17 @@ public class SequentialForestTraversalExecutor extends AbstractForestTraversalEx
         return components.stream().map(c -> c.traverse(point, visitorFactory)).collect(collector);
     }
 
+    @Override
+    public <R, S> List<S> traverseForestBatch(List<double[]> points, IVisitorFactory<R> visitorFactory,
+            BinaryOperator<R> accumulator, Function<R, S> finisher) {
+
+        List<R> unnormalizedResults = components.stream().map(c -> traverseComponent(c, points, visitorFactory))
+                .reduce((left, right) -> accumulate(left, right, accumulator))
+                .orElseThrow(() -> new IllegalStateException("accumulator returned an empty result"));
+
+        return unnormalizedResults.stream().map(finisher).collect(Collectors.toList());
+    }
+
     @Override
     public <R, S> S traverseForest(double[] point, IVisitorFactory<R> visitorFactory,
             ConvergingAccumulator<R> accumulator, Function<R, S> finisher) {
@@ -15,10 +15,12 @@
 
 package com.amazon.randomcutforest.executor;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import com.amazon.randomcutforest.ComponentList;
+import com.amazon.randomcutforest.IVisitorFactory;
 
 /**
  * Traverse the trees in a forest sequentially.
@@ -39,4 +41,26 @@ public class SequentialForestUpdateExecutor<PointReference, Point>
         return components.stream().map(t -> t.update(point, seqNum)).filter(UpdateResult::isStateChange)
                 .collect(Collectors.toList());
     }
+
+    @Override
+    protected <R> List<UpdateResult<PointReference>> traverseThenUpdate(double[] point,
+            IVisitorFactory<R> visitorFactory, R[] traversalResults, PointReference updateInput, long seqNum) {
+        List<UpdateResult<PointReference>> results = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) {
+            int index = i;
+            UpdateResult<PointReference> result = components.get(i).traverseThenUpdate(point, visitorFactory,
+                    r -> traversalResults[index] = r, updateInput, seqNum);
+            if (result.isStateChange()) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    protected List<List<UpdateResult<PointReference>>> updateBlock(List<PointReference> points, long startSeqNum) {
+        List<UpdateResult<PointReference>[]> modelResults = components.stream()
+                .map(t -> updateModel(t, points, startSeqNum)).collect(Collectors.toList());
+        return collectResults(modelResults, points.size());
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.metrics;
+
+/**
+ * A sink for the metrics recorded on the hot paths of a forest: the latency of
+ * updates, scores and attributions, the number of points accepted, rejected and
+ * evicted by the samplers, the hit rate of the bounding box caches, the
+ * compactions and resizes of the point store, and the depth of the leaves
+ * reached by traversals.
+ *
+ * The methods are called from the update and traversal threads of the forest,
+ * possibly concurrently when parallel execution is enabled, and must be thread
+ * safe and cheap. The default sink {@link NoOpForestMetrics} does nothing, and
+ * its calls are removed by the JIT compiler. A sink that forwards the metrics
+ * to a monitoring system should aggregate them in memory, see
+ * {@link SimpleForestMetrics}, and publish them from a separate thread.
+ */
+public interface IForestMetrics {
+
+    /**
+     * The operations whose latency is recorded.
+     */
+    enum Operation {
+        /**
+         * an update of the forest with a single point
+         */
+        UPDATE,
+        /**
+         * an update of the forest with a block of points
+         */
+        UPDATE_BATCH,
+        /**
+         * an anomaly score, exact or approximate
+         */
+        SCORE,
+        /**
+         * the anomaly scores of a batch of points
+         */
+        SCORE_BATCH,
+        /**
+         * an anomaly attribution, exact or approximate
+         */
+        ATTRIBUTION,
+        /**
+         * the anomaly attributions of a batch of points
+         */
+        ATTRIBUTION_BATCH,
+        /**
+         * a compaction of the point store in a single pass
+         */
+        POINT_STORE_COMPACT,
+        /**
+         * a step of an incremental compaction of the point store, performed as part
+         * of an add
+         */
+        POINT_STORE_COMPACT_STEP,
+        /**
+         * a resize of the point store
+         */
+        POINT_STORE_RESIZE
+    }
+
+    /**
+     * The events that are counted.
+     */
+    enum Counter {
+        /**
+         * a point accepted by a sampler
+         */
+        SAMPLER_ACCEPT,
+        /**
+         * a point rejected by a sampler
+         */
+        SAMPLER_REJECT,
+        /**
+         * a point evicted from a sampler to make room for an accepted point
+         */
+        SAMPLER_EVICT,
+        /**
+         * a bounding box found in the cache of a tree
+         */
+        BOX_CACHE_HIT,
+        /**
+         * a bounding box that had to be constructed because it was not cached
+         */
+        BOX_CACHE_MISS
+    }
+
+    /**
+     * @return the start time of an operation, to be passed to
+     *         {@link #recordLatency}
+     */
+    long startTimer();
+
+    /**
+     * Records the completion of an operation.
+     *
+     * @param operation the operation
+     * @param startTime the value returned by {@link #startTimer()} when the
+     *                  operation started
+     */
+    void recordLatency(Operation operation, long startTime);
+
+    /**
+     * Adds to the count of an event.
+     *
+     * @param counter the event
+     * @param amount  the number of occurrences of the event
+     */
+    void incrementCounter(Counter counter, long amount);
+
+    /**
+     * Records the depth of the leaf reached by a traversal of a tree.
+     *
+     * @param depth the number of internal nodes on the path from the root to the
+     *              leaf
+     */
+    void recordTreeDepth(int depth);
+}
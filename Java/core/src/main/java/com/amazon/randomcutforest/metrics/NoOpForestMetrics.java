@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.metrics;
+
+/**
+ * The default metrics sink, which discards all the metrics. The methods are
+ * empty and do not read the clock, so that the JIT compiler can remove the
+ * calls entirely when this is the only sink in use.
+ */
+public final class NoOpForestMetrics implements IForestMetrics {
+
+    public static final NoOpForestMetrics INSTANCE = new NoOpForestMetrics();
+
+    private NoOpForestMetrics() {
+    }
+
+    @Override
+    public long startTimer() {
+        return 0L;
+    }
+
+    @Override
+    public void recordLatency(Operation operation, long startTime) {
+    }
+
+    @Override
+    public void incrementCounter(Counter counter, long amount) {
+    }
+
+    @Override
+    public void recordTreeDepth(int depth) {
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metrics sink that aggregates the metrics in memory. Latencies are kept in
+ * histograms with power of two buckets: bucket 0 counts the latencies of 0
+ * nanoseconds and bucket i, for i greater than 0, counts the latencies between
+ * 2^(i-1) (inclusive) and 2^i (exclusive) nanoseconds. Tree depths are kept in
+ * a histogram with one bucket per depth, and the depths greater than
+ * {@link #MAX_TREE_DEPTH} are counted in the last bucket.
+ *
+ * The counts are kept in {@link LongAdder}s, so that recording is cheap even
+ * when the forest updates or traverses the trees in parallel. The values
+ * returned by the getters are not an atomic snapshot when metrics are being
+ * recorded concurrently.
+ */
+public class SimpleForestMetrics implements IForestMetrics {
+
+    public static final int NUMBER_OF_LATENCY_BUCKETS = 64;
+
+    public static final int MAX_TREE_DEPTH = 127;
+
+    private final LongAdder[] counters;
+    private final LongAdder[] operationCounts;
+    private final LongAdder[] operationNanos;
+    private final LongAdder[][] latencyHistograms;
+    private final LongAdder[] treeDepthHistogram;
+
+    public SimpleForestMetrics() {
+        counters = newAdders(Counter.values().length);
+        operationCounts = newAdders(Operation.values().length);
+        operationNanos = newAdders(Operation.values().length);
+        latencyHistograms = new LongAdder[Operation.values().length][];
+        for (int i = 0; i < latencyHistograms.length; i++) {
+            latencyHistograms[i] = newAdders(NUMBER_OF_LATENCY_BUCKETS);
+        }
+        treeDepthHistogram = newAdders(MAX_TREE_DEPTH + 1);
+    }
+
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sum(LongAdder[] adders) {
+        long[] result = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            result[i] = adders[i].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public long startTimer() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void recordLatency(Operation operation, long startTime) {
+        long nanos = Math.max(0L, System.nanoTime() - startTime);
+        int index = operation.ordinal();
+        operationCounts[index].increment();
+        operationNanos[index].add(nanos);
+        latencyHistograms[index][Long.SIZE - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    @Override
+    public void incrementCounter(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    @Override
+    public void recordTreeDepth(int depth) {
+        treeDepthHistogram[Math.min(depth, MAX_TREE_DEPTH)].increment();
+    }
+
+    /**
+     * @param counter an event
+     * @return the number of occurrences of the event
+     */
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @param operation an operation
+     * @return the number of completed operations
+     */
+    public long getCount(Operation operation) {
+        return operationCounts[operation.ordinal()].sum();
+    }
+
+    /**
+     * @param operation an operation
+     * @return the total time spent in the completed operations, in nanoseconds
+     */
+    public long getTotalNanos(Operation operation) {
+        return operationNanos[operation.ordinal()].sum();
+    }
+
+    /**
+     * @param operation an operation
+     * @return the latency histogram of the operation, see the class comment for
+     *         the bucket boundaries
+     */
+    public long[] getLatencyHistogram(Operation operation) {
+        return sum(latencyHistograms[operation.ordinal()]);
+    }
+
+    /**
+     * @return the histogram of the depths of the leaves reached by traversals,
+     *         indexed by depth
+     */
+    public long[] getTreeDepthHistogram() {
+        return sum(treeDepthHistogram);
+    }
+
+    /**
+     * Resets all the metrics to 0. Metrics recorded concurrently with a reset may
+     * be lost.
+     */
+    public void reset() {
+        for (LongAdder adder : counters) {
+            adder.reset();
+        }
+        for (int i = 0; i < operationCounts.length; i++) {
+            operationCounts[i].reset();
+            operationNanos[i].reset();
+            for (LongAdder adder : latencyHistograms[i]) {
+                adder.reset();
+            }
+        }
+        for (LongAdder adder : treeDepthHistogram) {
+            adder.reset();
+        }
+    }
+}
@@ -19,6 +19,7 @@ import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 import static com.amazon.randomcutforest.CommonUtils.checkState;
 import static com.amazon.randomcutforest.RandomCutForest.DEFAULT_STORE_SEQUENCE_INDEXES_ENABLED;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -319,6 +320,22 @@ public class CompactSampler extends AbstractStreamSampler<Integer> {
         return storeSequenceIndexesEnabled;
     }
 
+    /**
+     * Creates a copy of this sampler that shares no state with it, in the same way
+     * as a round trip through
+     * {@link com.amazon.randomcutforest.state.sampler.CompactSamplerMapper}.
+     *
+     * @return a deep copy of this sampler
+     */
+    public CompactSampler copy() {
+        return new Builder<>().capacity(capacity).timeDecay(timeDecay).randomSeed(getRandomSeed())
+                .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).weight(Arrays.copyOf(weight, capacity))
+                .pointIndex(Arrays.copyOf(pointIndex, capacity))
+                .sequenceIndex((sequenceIndex == null) ? null : Arrays.copyOf(sequenceIndex, capacity))
+                .initialAcceptFraction(initialAcceptFraction).mostRecentTimeDecayUpdate(mostRecentTimeDecayUpdate)
+                .maxSequenceIndex(maxSequenceIndex).size(size).build();
+    }
+
     private void swapWeights(int a, int b) {
         int tmp = pointIndex[a];
         pointIndex[a] = pointIndex[b];
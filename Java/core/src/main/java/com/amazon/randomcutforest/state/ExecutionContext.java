@@ -22,6 +22,12 @@ public class ExecutionContext {
     private boolean parallelExecutionEnabled;
     private int threadPoolSize;
 
+    /**
+     * If true, then the forest can be traversed by multiple threads while a single
+     * thread updates it.
+     */
+    private boolean concurrentScoringEnabled;
+
     /**
      * A string to define an "execution mode" that can be used to set multiple
      * configuration options. This field is not currently in use.
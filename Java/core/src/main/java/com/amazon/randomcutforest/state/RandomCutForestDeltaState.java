@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.state;
+
+import static com.amazon.randomcutforest.state.Version.V2_0;
+
+import java.util.List;
+
+import lombok.Data;
+
+import com.amazon.randomcutforest.state.sampler.CompactSamplerDeltaState;
+import com.amazon.randomcutforest.state.store.PointStoreDeltaState;
+import com.amazon.randomcutforest.state.tree.CompactRandomCutTreeState;
+
+/**
+ * The changes of a {@link RandomCutForestState} since a previous state of the
+ * same forest, written by the same mapper, see
+ * {@link RandomCutForestMapper#toDeltaState}. The changes of the point store
+ * and of every sampler are included, and the trees that changed are included
+ * as a whole.
+ */
+@Data
+public class RandomCutForestDeltaState {
+
+    private String version = V2_0;
+
+    /**
+     * the total number of updates of the state the changes apply to
+     */
+    private long baseTotalUpdates;
+
+    private long totalUpdates;
+
+    private double timeDecay;
+
+    private double boundingBoxCacheFraction;
+
+    private PointStoreDeltaState pointStoreDeltaState;
+
+    private List<CompactSamplerDeltaState> compactSamplerDeltaStates;
+
+    private int[] treeIndexes;
+
+    private List<CompactRandomCutTreeState> compactRandomCutTreeStates;
+}
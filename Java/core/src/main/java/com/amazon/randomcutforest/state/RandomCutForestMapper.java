@@ -19,9 +19,16 @@ import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -34,12 +41,16 @@ import com.amazon.randomcutforest.executor.PassThroughCoordinator;
 import com.amazon.randomcutforest.executor.PointStoreCoordinator;
 import com.amazon.randomcutforest.executor.SamplerPlusTree;
 import com.amazon.randomcutforest.sampler.CompactSampler;
+import com.amazon.randomcutforest.sampler.ISampled;
 import com.amazon.randomcutforest.sampler.IStreamSampler;
 import com.amazon.randomcutforest.sampler.SimpleStreamSampler;
 import com.amazon.randomcutforest.sampler.Weighted;
 import com.amazon.randomcutforest.state.sampler.ArraySamplersToCompactStateConverter;
+import com.amazon.randomcutforest.state.sampler.CompactSamplerDeltaMapper;
+import com.amazon.randomcutforest.state.sampler.CompactSamplerDeltaState;
 import com.amazon.randomcutforest.state.sampler.CompactSamplerMapper;
 import com.amazon.randomcutforest.state.sampler.CompactSamplerState;
+import com.amazon.randomcutforest.state.store.PointStoreDeltaMapper;
 import com.amazon.randomcutforest.state.store.PointStoreDoubleMapper;
 import com.amazon.randomcutforest.state.store.PointStoreFloatMapper;
 import com.amazon.randomcutforest.state.store.PointStoreState;
@@ -50,6 +61,7 @@ import com.amazon.randomcutforest.state.tree.CompactRandomCutTreeState;
 import com.amazon.randomcutforest.store.IPointStore;
 import com.amazon.randomcutforest.store.PointStoreDouble;
 import com.amazon.randomcutforest.store.PointStoreFloat;
+import com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree;
 import com.amazon.randomcutforest.tree.CompactRandomCutTreeDouble;
 import com.amazon.randomcutforest.tree.CompactRandomCutTreeFloat;
 import com.amazon.randomcutforest.tree.ITree;
@@ -76,7 +88,10 @@ public class RandomCutForestMapper
     /**
      * A flag indicating whether the point store should be included in the
      * {@link RandomCutForestState} object produced by the mapper. This is saved by
-     * default for compact trees
+     * default for compact trees. Only the heap point stores can be saved; a forest
+     * on an {@link com.amazon.randomcutforest.store.OffHeapPointStoreFloat} is
+     * saved without its point store, which is passed to
+     * {@link #singlePrecisionForest} when the forest is restored.
      */
     private boolean saveCoordinatorStateEnabled = true;
 
@@ -106,6 +121,39 @@ public class RandomCutForestMapper
      */
     private boolean partialTreeStateEnabled = false;
 
+    /**
+     * If true, then when the tree state is not saved, toModel builds each tree of
+     * a compact forest from the points of its sampler in a single top-down pass,
+     * see {@link AbstractCompactRandomCutTree#makeTree}, rather than by adding the
+     * points one at a time. The trees have the same distribution, but are not the
+     * same trees as those built one point at a time.
+     */
+    private boolean bulkTreeConstructionEnabled = false;
+
+    /**
+     * If true, then when the tree state is not saved, toModel does not build the
+     * trees of a compact forest: each tree is built from the points of its sampler
+     * when it is first traversed or updated, or by
+     * {@link RandomCutForest#materializeTrees()}. A tree built lazily is the same
+     * tree as the one toModel would build.
+     */
+    private boolean lazyTreeMaterializationEnabled = false;
+
+    /**
+     * If true, then the samplers and trees of a compact forest are mapped
+     * concurrently, each of them independently of the others, by toState and
+     * toModel. The state and the model produced are the same as when they are
+     * mapped one after another.
+     */
+    private boolean parallelMappingEnabled = false;
+
+    /**
+     * The pool used for parallel mapping. If null, then a pool is created for each
+     * call, with the thread pool size of the forest (or of the execution context
+     * in toModel) if it is positive, and one thread per processor otherwise.
+     */
+    private ForkJoinPool forkJoinPool = null;
+
     /**
      * Create a {@link RandomCutForestState} object representing the state of the
      * given forest. If the forest is compact and the {@code saveTreeState} flag is
@@ -152,6 +200,7 @@ public class RandomCutForestMapper
             ExecutionContext executionContext = new ExecutionContext();
             executionContext.setParallelExecutionEnabled(forest.isParallelExecutionEnabled());
             executionContext.setThreadPoolSize(forest.getThreadPoolSize());
+            executionContext.setConcurrentScoringEnabled(forest.isConcurrentScoringEnabled());
             state.setExecutionContext(executionContext);
         }
 
@@ -160,6 +209,11 @@ public class RandomCutForestMapper
                 PointStoreCoordinator<?> pointStoreCoordinator = (PointStoreCoordinator<?>) forest
                         .getUpdateCoordinator();
                 PointStoreState pointStoreState;
+                // an off-heap store is saved by its own buffer or file, and is passed to
+                // singlePrecisionForest when the forest is restored
+                checkArgument(pointStoreCoordinator.getStore() instanceof PointStoreFloat
+                        || pointStoreCoordinator.getStore() instanceof PointStoreDouble,
+                        "only heap point stores can be saved, disable saveCoordinatorStateEnabled for other stores");
                 if (forest.getPrecision() == Precision.FLOAT_32) {
                     PointStoreFloatMapper mapper = new PointStoreFloatMapper();
                     mapper.setCompressionEnabled(compressionEnabled);
@@ -172,27 +226,24 @@ public class RandomCutForestMapper
                 state.setPointStoreState(pointStoreState);
             }
             List<CompactSamplerState> samplerStates = null;
-            if (saveSamplerStateEnabled) {
-                samplerStates = new ArrayList<>();
-            }
-            List<ITree<Integer, ?>> trees = null;
-            if (saveTreeStateEnabled) {
-                trees = new ArrayList<>();
-            }
+            List<ITree<Integer, ?>> trees = saveTreeStateEnabled ? new ArrayList<>() : null;
 
             CompactSamplerMapper samplerMapper = new CompactSamplerMapper();
             samplerMapper.setCompressionEnabled(compressionEnabled);
 
+            List<CompactSampler> samplers = new ArrayList<>();
             for (IComponentModel<?, ?> component : forest.getComponents()) {
                 SamplerPlusTree<Integer, ?> samplerPlusTree = (SamplerPlusTree<Integer, ?>) component;
-                CompactSampler sampler = (CompactSampler) samplerPlusTree.getSampler();
-                if (samplerStates != null) {
-                    samplerStates.add(samplerMapper.toState(sampler));
-                }
+                samplers.add((CompactSampler) samplerPlusTree.getSampler());
                 if (trees != null) {
                     trees.add(samplerPlusTree.getTree());
                 }
             }
+            int threadPoolSize = forest.getThreadPoolSize();
+            if (saveSamplerStateEnabled) {
+                samplerStates = mapComponents(samplers.size(), i -> samplerMapper.toState(samplers.get(i)),
+                        threadPoolSize);
+            }
 
             state.setCompactSamplerStates(samplerStates);
 
@@ -202,16 +253,16 @@ public class RandomCutForestMapper
                     treeMapper.setCompressed(compressionEnabled);
                     treeMapper.setPartialTreeStateEnabled(
                             partialTreeStateEnabled || forest.isStoreSequenceIndexesEnabled());
-                    List<CompactRandomCutTreeState> treeStates = trees.stream()
-                            .map(t -> treeMapper.toState((CompactRandomCutTreeFloat) t)).collect(Collectors.toList());
+                    List<CompactRandomCutTreeState> treeStates = mapComponents(trees.size(),
+                            i -> treeMapper.toState((CompactRandomCutTreeFloat) trees.get(i)), threadPoolSize);
                     state.setCompactRandomCutTreeStates(treeStates);
                 } else {
                     CompactRandomCutTreeDoubleMapper treeMapper = new CompactRandomCutTreeDoubleMapper();
                     treeMapper.setCompress(compressionEnabled);
                     treeMapper.setPartialTreeStateEnabled(
                             partialTreeStateEnabled || forest.isStoreSequenceIndexesEnabled());
-                    List<CompactRandomCutTreeState> treeStates = trees.stream()
-                            .map(t -> treeMapper.toState((CompactRandomCutTreeDouble) t)).collect(Collectors.toList());
+                    List<CompactRandomCutTreeState> treeStates = mapComponents(trees.size(),
+                            i -> treeMapper.toState((CompactRandomCutTreeDouble) trees.get(i)), threadPoolSize);
                     state.setCompactRandomCutTreeStates(treeStates);
                 }
             }
@@ -266,15 +317,16 @@ public class RandomCutForestMapper
                 .dimensions(state.getDimensions()).timeDecay(state.getTimeDecay()).sampleSize(state.getSampleSize())
                 .centerOfMassEnabled(state.isCenterOfMassEnabled()).outputAfter(state.getOutputAfter())
                 .parallelExecutionEnabled(ec.isParallelExecutionEnabled()).threadPoolSize(ec.getThreadPoolSize())
+                .concurrentScoringEnabled(ec.isConcurrentScoringEnabled())
                 .storeSequenceIndexesEnabled(state.isStoreSequenceIndexesEnabled()).shingleSize(state.getShingleSize())
                 .boundingBoxCacheFraction(state.getBoundingBoxCacheFraction()).compact(state.isCompact())
                 .internalShinglingEnabled(state.isInternalShinglingEnabled()).randomSeed(seed);
 
         if (state.isCompact()) {
             if (state.getPrecisionEnumValue() == Precision.FLOAT_32) {
-                return singlePrecisionForest(builder, state, null, null, null);
+                return singlePrecisionForest(builder, state, null, null, null, ec.getThreadPoolSize());
             } else {
-                return doublePrecisionForest(builder, state, null, null, null);
+                return doublePrecisionForest(builder, state, null, null, null, ec.getThreadPoolSize());
             }
         }
 
@@ -303,7 +355,7 @@ public class RandomCutForestMapper
                 sampler.addSample(new Weighted<>(point, sample.getWeight(), sample.getSequenceIndex()));
                 tree.addPoint(point, sample.getSequenceIndex());
             }
-            components.add(new SamplerPlusTree<>(sampler, tree));
+            components.add(RandomCutForest.newComponent(sampler, tree, builder.isConcurrentScoringEnabled(), null));
         }
 
         return new RandomCutForest(builder, coordinator, components, random);
@@ -338,9 +390,172 @@ public class RandomCutForestMapper
         return toModel(state, null);
     }
 
+    /**
+     * Create a {@link RandomCutForestDeltaState} object representing the changes of
+     * the state of the given forest since a previous state, which was created by a
+     * mapper with the same options. Only the parts of the point store and of the
+     * samplers that changed, the trees that changed, and the fields that change
+     * with every update are included. A slowly changing forest can then be
+     * checkpointed as a full state followed by a chain of deltas, see
+     * {@link #applyDeltas}.
+     *
+     * The forest does not record what changed: the full state of the forest is
+     * created as in {@link #toState} and compared with the previous state. A delta
+     * therefore reduces the size of a checkpoint, and the I/O to write it, but not
+     * the time to create it. The caller keeps the previous full state; to chain
+     * deltas, use {@link #toDeltaState(RandomCutForestState, RandomCutForestState)}
+     * and keep the later state as the base of the next delta.
+     *
+     * @param forest A Random Cut Forest whose state we want to capture.
+     * @param base   A previous state of the forest.
+     * @return a {@link RandomCutForestDeltaState} object representing the changes
+     *         of the state of the given forest since the previous state.
+     */
+    public RandomCutForestDeltaState toDeltaState(RandomCutForest forest, RandomCutForestState base) {
+        return toDeltaState(base, toState(forest));
+    }
+
+    /**
+     * Create a {@link RandomCutForestDeltaState} object representing the changes
+     * between two states of the same forest. Neither state is modified; the delta
+     * shares the states of the trees that changed with the later state.
+     *
+     * @param base  A state of a forest.
+     * @param state A later state of the same forest.
+     * @return a {@link RandomCutForestDeltaState} object representing the changes
+     *         from the earlier state to the later state.
+     * @throws IllegalArgumentException if the states are not of the same forest,
+     *                                  or were created with different options.
+     */
+    public RandomCutForestDeltaState toDeltaState(RandomCutForestState base, RandomCutForestState state) {
+        checkNotNull(base, "base must not be null");
+        checkNotNull(state, "state must not be null");
+        checkArgument(base.getNumberOfTrees() == state.getNumberOfTrees()
+                && base.getDimensions() == state.getDimensions() && base.getSampleSize() == state.getSampleSize()
+                && base.isCompact() == state.isCompact() && base.getPrecision().equals(state.getPrecision())
+                && base.isCompressed() == state.isCompressed()
+                && base.isSaveSamplerStateEnabled() == state.isSaveSamplerStateEnabled()
+                && base.isSaveTreeStateEnabled() == state.isSaveTreeStateEnabled()
+                && base.isSaveCoordinatorStateEnabled() == state.isSaveCoordinatorStateEnabled(),
+                "the states must be of the same forest and created with the same options");
+
+        RandomCutForestDeltaState delta = new RandomCutForestDeltaState();
+        delta.setBaseTotalUpdates(base.getTotalUpdates());
+        delta.setTotalUpdates(state.getTotalUpdates());
+        delta.setTimeDecay(state.getTimeDecay());
+        delta.setBoundingBoxCacheFraction(state.getBoundingBoxCacheFraction());
+
+        if (state.getPointStoreState() != null) {
+            checkArgument(base.getPointStoreState() != null, "base must have a point store state");
+            delta.setPointStoreDeltaState(
+                    new PointStoreDeltaMapper().toDeltaState(base.getPointStoreState(), state.getPointStoreState()));
+        }
+
+        List<CompactSamplerState> samplerStates = state.getCompactSamplerStates();
+        if (samplerStates != null) {
+            List<CompactSamplerState> baseSamplerStates = base.getCompactSamplerStates();
+            checkArgument(baseSamplerStates != null && baseSamplerStates.size() == samplerStates.size(),
+                    "incorrect number of samplers");
+            CompactSamplerDeltaMapper samplerDeltaMapper = new CompactSamplerDeltaMapper();
+            List<CompactSamplerDeltaState> samplerDeltaStates = new ArrayList<>();
+            for (int i = 0; i < samplerStates.size(); i++) {
+                samplerDeltaStates.add(samplerDeltaMapper.toDeltaState(baseSamplerStates.get(i), samplerStates.get(i)));
+            }
+            delta.setCompactSamplerDeltaStates(samplerDeltaStates);
+        }
+
+        List<CompactRandomCutTreeState> treeStates = state.getCompactRandomCutTreeStates();
+        if (treeStates != null) {
+            List<CompactRandomCutTreeState> baseTreeStates = base.getCompactRandomCutTreeStates();
+            checkArgument(baseTreeStates != null && baseTreeStates.size() == treeStates.size(),
+                    "incorrect number of trees");
+            int[] treeIndexes = new int[treeStates.size()];
+            List<CompactRandomCutTreeState> changedTreeStates = new ArrayList<>();
+            for (int i = 0; i < treeStates.size(); i++) {
+                if (!treeStates.get(i).equals(baseTreeStates.get(i))) {
+                    treeIndexes[changedTreeStates.size()] = i;
+                    changedTreeStates.add(treeStates.get(i));
+                }
+            }
+            delta.setTreeIndexes(Arrays.copyOf(treeIndexes, changedTreeStates.size()));
+            delta.setCompactRandomCutTreeStates(changedTreeStates);
+        }
+        return delta;
+    }
+
+    /**
+     * Applies the changes of a {@link RandomCutForestDeltaState} to the state they
+     * were computed from. The state is updated in place, and can then be passed to
+     * {@link #toModel} or used as the base of the next delta.
+     *
+     * @param base  A state of a forest.
+     * @param delta The changes of the state since the state of the forest.
+     * @return the updated state.
+     * @throws IllegalArgumentException if the changes were not computed from a
+     *                                  state with the same number of updates.
+     */
+    public RandomCutForestState applyDelta(RandomCutForestState base, RandomCutForestDeltaState delta) {
+        checkNotNull(base, "base must not be null");
+        checkNotNull(delta, "delta must not be null");
+        checkArgument(base.getTotalUpdates() == delta.getBaseTotalUpdates(), "the delta does not apply to this state");
+
+        base.setTotalUpdates(delta.getTotalUpdates());
+        base.setTimeDecay(delta.getTimeDecay());
+        base.setBoundingBoxCacheFraction(delta.getBoundingBoxCacheFraction());
+
+        if (delta.getPointStoreDeltaState() != null) {
+            checkArgument(base.getPointStoreState() != null, "base must have a point store state");
+            new PointStoreDeltaMapper().applyDelta(base.getPointStoreState(), delta.getPointStoreDeltaState());
+        }
+
+        List<CompactSamplerDeltaState> samplerDeltaStates = delta.getCompactSamplerDeltaStates();
+        if (samplerDeltaStates != null) {
+            checkArgument(base.getCompactSamplerStates() != null
+                    && base.getCompactSamplerStates().size() == samplerDeltaStates.size(),
+                    "incorrect number of samplers");
+            CompactSamplerDeltaMapper samplerDeltaMapper = new CompactSamplerDeltaMapper();
+            for (int i = 0; i < samplerDeltaStates.size(); i++) {
+                samplerDeltaMapper.applyDelta(base.getCompactSamplerStates().get(i), samplerDeltaStates.get(i));
+            }
+        }
+
+        if (delta.getTreeIndexes() != null) {
+            checkArgument(base.getCompactRandomCutTreeStates() != null, "base must have tree states");
+            List<CompactRandomCutTreeState> treeStates = new ArrayList<>(base.getCompactRandomCutTreeStates());
+            for (int i = 0; i < delta.getTreeIndexes().length; i++) {
+                treeStates.set(delta.getTreeIndexes()[i], delta.getCompactRandomCutTreeStates().get(i));
+            }
+            base.setCompactRandomCutTreeStates(treeStates);
+        }
+        return base;
+    }
+
+    /**
+     * Applies a chain of deltas, in order, to the state the first delta was
+     * computed from. See {@link #applyDelta}.
+     *
+     * @param base   A state of a forest.
+     * @param deltas The changes of the state, each computed from the state
+     *               produced by the previous changes.
+     * @return the updated state.
+     */
+    public RandomCutForestState applyDeltas(RandomCutForestState base, List<RandomCutForestDeltaState> deltas) {
+        checkNotNull(deltas, "deltas must not be null");
+        for (RandomCutForestDeltaState delta : deltas) {
+            applyDelta(base, delta);
+        }
+        return base;
+    }
+
     public RandomCutForest singlePrecisionForest(RandomCutForest.Builder<?> builder, RandomCutForestState state,
             IPointStore<float[]> extPointStore, List<ITree<Integer, float[]>> extTrees,
             List<IStreamSampler<Integer>> extSamplers) {
+        return singlePrecisionForest(builder, state, extPointStore, extTrees, extSamplers, 0);
+    }
+
+    private RandomCutForest singlePrecisionForest(RandomCutForest.Builder<?> builder, RandomCutForestState state,
+            IPointStore<float[]> extPointStore, List<ITree<Integer, float[]>> extTrees,
+            List<IStreamSampler<Integer>> extSamplers, int threadPoolSize) {
 
         checkArgument(builder != null, "builder cannot be null");
         checkArgument(extTrees == null || extTrees.size() == state.getNumberOfTrees(), "incorrect number of trees");
@@ -355,7 +570,9 @@ public class RandomCutForestMapper
         IPointStore<float[]> pointStore = (extPointStore == null)
                 ? new PointStoreFloatMapper().toModel(state.getPointStoreState())
                 : extPointStore;
-        PointStoreCoordinator<float[]> coordinator = new PointStoreCoordinator<>(pointStore);
+        boolean concurrentScoringEnabled = builder.isConcurrentScoringEnabled();
+        ReadWriteLock pointStoreLock = concurrentScoringEnabled ? new ReentrantReadWriteLock() : null;
+        PointStoreCoordinator<float[]> coordinator = new PointStoreCoordinator<>(pointStore, pointStoreLock);
         coordinator.setTotalUpdates(state.getTotalUpdates());
         context.setPointStore(pointStore);
         context.setMaxSize(state.getSampleSize());
@@ -366,28 +583,50 @@ public class RandomCutForestMapper
         CompactSamplerMapper samplerMapper = new CompactSamplerMapper();
         List<CompactSamplerState> samplerStates = state.isSaveSamplerStateEnabled() ? state.getCompactSamplerStates()
                 : null;
+        boolean bulk = bulkTreeConstructionEnabled;
+        // the lazy components keep this function, which must not retain the state
+        int sampleSize = state.getSampleSize();
+        double boundingBoxCacheFraction = state.getBoundingBoxCacheFraction();
+        boolean centerOfMassEnabled = state.isCenterOfMassEnabled();
+        boolean storeSequenceIndexesEnabled = state.isStoreSequenceIndexesEnabled();
+        LongFunction<CompactRandomCutTreeFloat> newTree = seed -> new CompactRandomCutTreeFloat.Builder()
+                .maxSize(sampleSize).randomSeed(seed).pointStore(pointStore)
+                .boundingBoxCacheFraction(boundingBoxCacheFraction).centerOfMassEnabled(centerOfMassEnabled)
+                .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).build();
+        // the seeds are drawn in the same order as when the components are mapped one
+        // after another
+        long[] samplerSeeds = new long[state.getNumberOfTrees()];
+        long[] treeSeeds = new long[state.getNumberOfTrees()];
         for (int i = 0; i < state.getNumberOfTrees(); i++) {
+            if (extSamplers == null) {
+                samplerSeeds[i] = random.nextLong();
+            }
+            if (extTrees == null) {
+                treeSeeds[i] = random.nextLong();
+            }
+        }
+        components.addAll(mapComponents(state.getNumberOfTrees(), i -> {
             IStreamSampler<Integer> sampler = (extSamplers != null) ? extSamplers.get(i)
-                    : samplerMapper.toModel(samplerStates.get(i), random.nextLong());
+                    : samplerMapper.toModel(samplerStates.get(i), samplerSeeds[i]);
 
             ITree<Integer, float[]> tree;
             if (extTrees != null) {
                 tree = extTrees.get(i);
             } else if (treeStates != null) {
-                tree = treeMapper.toModel(treeStates.get(i), context, random.nextLong());
+                tree = treeMapper.toModel(treeStates.get(i), context, treeSeeds[i]);
                 if (treeStates.get(i).isPartialTreeState()) {
                     sampler.getSample().forEach(s -> tree.addPoint(s.getValue(), s.getSequenceIndex()));
                 }
+            } else if (lazyTreeMaterializationEnabled) {
+                long treeSeed = treeSeeds[i];
+                return RandomCutForest.newLazyComponent(sampler,
+                        lazySampler -> buildTree(newTree.apply(treeSeed), lazySampler, bulk), concurrentScoringEnabled,
+                        pointStoreLock);
             } else {
-                tree = new CompactRandomCutTreeFloat.Builder().maxSize(state.getSampleSize())
-                        .randomSeed(random.nextLong()).pointStore(pointStore)
-                        .boundingBoxCacheFraction(state.getBoundingBoxCacheFraction())
-                        .centerOfMassEnabled(state.isCenterOfMassEnabled())
-                        .storeSequenceIndexesEnabled(state.isStoreSequenceIndexesEnabled()).build();
-                sampler.getSample().forEach(s -> tree.addPoint(s.getValue(), s.getSequenceIndex()));
+                tree = buildTree(newTree.apply(treeSeeds[i]), sampler, bulk);
             }
-            components.add(new SamplerPlusTree<>(sampler, tree));
-        }
+            return RandomCutForest.newComponent(sampler, tree, concurrentScoringEnabled, pointStoreLock);
+        }, threadPoolSize));
         builder.precision(Precision.FLOAT_32);
         return new RandomCutForest(builder, coordinator, components, random);
     }
@@ -395,6 +634,12 @@ public class RandomCutForestMapper
     public RandomCutForest doublePrecisionForest(RandomCutForest.Builder<?> builder, RandomCutForestState state,
             IPointStore<double[]> extPointStore, List<ITree<Integer, double[]>> extTrees,
             List<IStreamSampler<Integer>> extSamplers) {
+        return doublePrecisionForest(builder, state, extPointStore, extTrees, extSamplers, 0);
+    }
+
+    private RandomCutForest doublePrecisionForest(RandomCutForest.Builder<?> builder, RandomCutForestState state,
+            IPointStore<double[]> extPointStore, List<ITree<Integer, double[]>> extTrees,
+            List<IStreamSampler<Integer>> extSamplers, int threadPoolSize) {
 
         checkArgument(builder != null, "builder cannot be null");
         checkArgument(extTrees == null || extTrees.size() == state.getNumberOfTrees(), "incorrect number of trees");
@@ -409,7 +654,9 @@ public class RandomCutForestMapper
         IPointStore<double[]> pointStore = (extPointStore == null)
                 ? new PointStoreDoubleMapper().toModel(state.getPointStoreState())
                 : extPointStore;
-        PointStoreCoordinator<double[]> coordinator = new PointStoreCoordinator<>(pointStore);
+        boolean concurrentScoringEnabled = builder.isConcurrentScoringEnabled();
+        ReadWriteLock pointStoreLock = concurrentScoringEnabled ? new ReentrantReadWriteLock() : null;
+        PointStoreCoordinator<double[]> coordinator = new PointStoreCoordinator<>(pointStore, pointStoreLock);
         coordinator.setTotalUpdates(state.getTotalUpdates());
         context.setPointStore(pointStore);
         context.setMaxSize(state.getSampleSize());
@@ -420,30 +667,114 @@ public class RandomCutForestMapper
         CompactSamplerMapper samplerMapper = new CompactSamplerMapper();
         List<CompactSamplerState> samplerStates = state.isSaveSamplerStateEnabled() ? state.getCompactSamplerStates()
                 : null;
+        boolean bulk = bulkTreeConstructionEnabled;
+        // the lazy components keep this function, which must not retain the state
+        int sampleSize = state.getSampleSize();
+        double boundingBoxCacheFraction = state.getBoundingBoxCacheFraction();
+        boolean centerOfMassEnabled = state.isCenterOfMassEnabled();
+        boolean storeSequenceIndexesEnabled = state.isStoreSequenceIndexesEnabled();
+        LongFunction<CompactRandomCutTreeDouble> newTree = seed -> new CompactRandomCutTreeDouble.Builder()
+                .maxSize(sampleSize).randomSeed(seed).pointStore(pointStore)
+                .boundingBoxCacheFraction(boundingBoxCacheFraction).centerOfMassEnabled(centerOfMassEnabled)
+                .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).build();
+        // the seeds are drawn in the same order as when the components are mapped one
+        // after another
+        long[] samplerSeeds = new long[state.getNumberOfTrees()];
+        long[] treeSeeds = new long[state.getNumberOfTrees()];
         for (int i = 0; i < state.getNumberOfTrees(); i++) {
-
+            if (extSamplers == null) {
+                samplerSeeds[i] = random.nextLong();
+            }
+            if (extTrees == null) {
+                treeSeeds[i] = random.nextLong();
+            }
+        }
+        components.addAll(mapComponents(state.getNumberOfTrees(), i -> {
             IStreamSampler<Integer> sampler = (extSamplers != null) ? extSamplers.get(i)
-                    : samplerMapper.toModel(samplerStates.get(i), random.nextLong());
+                    : samplerMapper.toModel(samplerStates.get(i), samplerSeeds[i]);
 
             ITree<Integer, double[]> tree;
             if (extTrees != null) {
                 tree = extTrees.get(i);
             } else if (treeStates != null) {
-                tree = treeMapper.toModel(treeStates.get(i), context, random.nextLong());
+                tree = treeMapper.toModel(treeStates.get(i), context, treeSeeds[i]);
                 if (treeStates.get(i).isPartialTreeState()) {
                     sampler.getSample().forEach(s -> tree.addPoint(s.getValue(), s.getSequenceIndex()));
                 }
+            } else if (lazyTreeMaterializationEnabled) {
+                long treeSeed = treeSeeds[i];
+                return RandomCutForest.newLazyComponent(sampler,
+                        lazySampler -> buildTree(newTree.apply(treeSeed), lazySampler, bulk), concurrentScoringEnabled,
+                        pointStoreLock);
             } else {
-                tree = new CompactRandomCutTreeDouble.Builder().maxSize(state.getSampleSize())
-                        .randomSeed(random.nextLong()).pointStore(pointStore)
-                        .boundingBoxCacheFraction(state.getBoundingBoxCacheFraction())
-                        .centerOfMassEnabled(state.isCenterOfMassEnabled())
-                        .storeSequenceIndexesEnabled(state.isStoreSequenceIndexesEnabled()).build();
-                sampler.getSample().forEach(s -> tree.addPoint(s.getValue(), s.getSequenceIndex()));
+                tree = buildTree(newTree.apply(treeSeeds[i]), sampler, bulk);
             }
-            components.add(new SamplerPlusTree<>(sampler, tree));
-        }
+            return RandomCutForest.newComponent(sampler, tree, concurrentScoringEnabled, pointStoreLock);
+        }, threadPoolSize));
         builder.precision(Precision.FLOAT_64);
         return new RandomCutForest(builder, coordinator, components, random);
     }
+
+    /**
+     * Builds an empty compact tree from the points of a sampler.
+     *
+     * @param tree    the tree
+     * @param sampler the sampler
+     * @param bulk    if true, then the tree is built in a single pass, otherwise
+     *                the points are added one at a time
+     * @return the tree
+     */
+    private static <T extends AbstractCompactRandomCutTree<?>> T buildTree(T tree, IStreamSampler<Integer> sampler,
+            boolean bulk) {
+        if (bulk) {
+            makeTree(tree, sampler);
+        } else {
+            sampler.getSample().forEach(s -> tree.addPoint(s.getValue(), s.getSequenceIndex()));
+        }
+        return tree;
+    }
+
+    /**
+     * Builds an empty compact tree from the points of a sampler in a single pass.
+     */
+    private static void makeTree(AbstractCompactRandomCutTree<?> tree, IStreamSampler<Integer> sampler) {
+        List<ISampled<Integer>> sample = sampler.getSample();
+        int[] pointReferences = new int[sample.size()];
+        long[] sequenceIndexes = new long[sample.size()];
+        for (int i = 0; i < sample.size(); i++) {
+            pointReferences[i] = sample.get(i).getValue();
+            sequenceIndexes[i] = sample.get(i).getSequenceIndex();
+        }
+        tree.makeTree(pointReferences, sequenceIndexes);
+    }
+
+    /**
+     * Maps the components of a forest, concurrently if parallel mapping is enabled.
+     *
+     * @param numberOfComponents the number of components
+     * @param mapping            the function that maps the i-th component
+     * @param threadPoolSize     the number of threads used if no pool is provided,
+     *                           or 0 for one thread per processor
+     * @param <T>                the type of the results
+     * @return the results, in the order of the components
+     */
+    private <T> List<T> mapComponents(int numberOfComponents, IntFunction<T> mapping, int threadPoolSize) {
+        if (!parallelMappingEnabled || numberOfComponents < 2) {
+            List<T> result = new ArrayList<>(numberOfComponents);
+            for (int i = 0; i < numberOfComponents; i++) {
+                result.add(mapping.apply(i));
+            }
+            return result;
+        }
+        ForkJoinPool pool = (forkJoinPool != null) ? forkJoinPool
+                : new ForkJoinPool((threadPoolSize > 0) ? threadPoolSize : Runtime.getRuntime().availableProcessors());
+        try {
+            return pool.submit(() -> IntStream.range(0, numberOfComponents).parallel().mapToObj(mapping)
+                    .collect(Collectors.toList())).join();
+        } finally {
+            if (pool != forkJoinPool) {
+                pool.shutdown();
+            }
+        }
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.randomcutforest.state.sampler;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
+
+import com.amazon.randomcutforest.util.ArrayDeltas;
+import com.amazon.randomcutforest.util.ArrayPacking;
+
+/**
+ * Computes the changes between two states of the same sampler, and applies
+ * them to the earlier state. Most updates of a forest are rejected by a given
+ * sampler, and an accepted point only moves the entries on one path of the
+ * heap, so that the heaps of two states taken a few updates apart differ in a
+ * few positions.
+ */
+public class CompactSamplerDeltaMapper {
+
+    /**
+     * Computes the changes from a state to a later state of the same sampler.
+     * Neither state is modified.
+     *
+     * @param base  the earlier state
+     * @param state the later state
+     * @return the changes
+     */
+    public CompactSamplerDeltaState toDeltaState(CompactSamplerState base, CompactSamplerState state) {
+        checkNotNull(base, "base must not be null");
+        checkNotNull(state, "state must not be null");
+        checkArgument(base.getCapacity() == state.getCapacity()
+                && base.isStoreSequenceIndicesEnabled() == state.isStoreSequenceIndicesEnabled()
+                && base.getInitialAcceptFraction() == state.getInitialAcceptFraction(),
+                "incompatible sampler states");
+
+        CompactSamplerDeltaState delta = new CompactSamplerDeltaState();
+        delta.setSize(state.getSize());
+        delta.setTimeDecay(state.getTimeDecay());
+        delta.setSequenceIndexOfMostRecentTimeDecayUpdate(state.getSequenceIndexOfMostRecentTimeDecayUpdate());
+        delta.setMaxSequenceIndex(state.getMaxSequenceIndex());
+        delta.setRandomSeed(state.getRandomSeed());
+
+        float[] baseWeight = base.getWeight();
+        float[] weight = state.getWeight();
+        int[] basePointIndex = ArrayPacking.unpackInts(base.getPointIndex(), base.isCompressed());
+        int[] pointIndex = ArrayPacking.unpackInts(state.getPointIndex(), state.isCompressed());
+        long[] baseSequenceIndex = base.getSequenceIndex();
+        long[] sequenceIndex = state.getSequenceIndex();
+        boolean sequenceIndexes = state.isStoreSequenceIndicesEnabled();
+        int[] ranges = ArrayDeltas.changedRanges(state.getSize(), base.getSize(),
+                i -> Float.floatToIntBits(baseWeight[i]) != Float.floatToIntBits(weight[i])
+                        || basePointIndex[i] != pointIndex[i]
+                        || (sequenceIndexes && baseSequenceIndex[i] != sequenceIndex[i]));
+        delta.setRanges(ranges);
+        delta.setWeight(ArrayDeltas.valuesInRanges(weight, ranges));
+        delta.setPointIndex(ArrayDeltas.valuesInRanges(pointIndex, ranges));
+        if (sequenceIndexes) {
+            delta.setSequenceIndex(ArrayDeltas.valuesInRanges(sequenceIndex, ranges));
+        }
+        return delta;
+    }
+
+    /**
+     * Applies changes to the state they were computed from, in place.
+     *
+     * @param base  the earlier state, which becomes equal to the later state
+     * @param delta the changes from the earlier state to the later state
+     * @return the updated state
+     */
+    public CompactSamplerState applyDelta(CompactSamplerState base, CompactSamplerDeltaState delta) {
+        checkNotNull(base, "base must not be null");
+        checkNotNull(delta, "delta must not be null");
+        checkArgument(delta.getSize() <= base.getCapacity(), "delta does not apply to this sampler state");
+
+        int size = delta.getSize();
+        int[] ranges = delta.getRanges();
+        base.setWeight(ArrayDeltas.applyRanges(base.getWeight(), size, ranges, delta.getWeight()));
+        int[] pointIndex = ArrayDeltas.applyRanges(ArrayPacking.unpackInts(base.getPointIndex(), base.isCompressed()),
+                size, ranges, delta.getPointIndex());
+        base.setPointIndex(ArrayPacking.pack(pointIndex, base.isCompressed()));
+        if (base.isStoreSequenceIndicesEnabled()) {
+            checkArgument(delta.getSequenceIndex() != null, "delta does not apply to this sampler state");
+            base.setSequenceIndex(
+                    ArrayDeltas.applyRanges(base.getSequenceIndex(), size, ranges, delta.getSequenceIndex()));
+        }
+
+        base.setSize(size);
+        base.setTimeDecay(delta.getTimeDecay());
+        base.setSequenceIndexOfMostRecentTimeDecayUpdate(delta.getSequenceIndexOfMostRecentTimeDecayUpdate());
+        base.setMaxSequenceIndex(delta.getMaxSequenceIndex());
+        base.setRandomSeed(delta.getRandomSeed());
+        return base;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.randomcutforest.state.sampler;
+
+import static com.amazon.randomcutforest.state.Version.V2_0;
+
+import lombok.Data;
+
+/**
+ * The changes of a {@link CompactSamplerState} since a previous state of the
+ * same sampler, see {@link CompactSamplerDeltaMapper}. The fields that change
+ * with every update are stored as is; the weights, point indexes and sequence
+ * indexes are stored for the positions of the heap that changed, given by
+ * pairs of (start, length), with the point indexes uncompressed.
+ */
+@Data
+public class CompactSamplerDeltaState {
+    /**
+     * a version string for extensibility
+     */
+    private String version = V2_0;
+    /**
+     * The number of points in the sample.
+     */
+    private int size;
+    /**
+     * The time-decay parameter for this sampler
+     */
+    private double timeDecay;
+    /**
+     * Last update of timeDecay
+     */
+    private long sequenceIndexOfMostRecentTimeDecayUpdate;
+    /**
+     * maximum timestamp seen in update/computeWeight
+     */
+    private long maxSequenceIndex;
+    /**
+     * saving the random state, if desired
+     */
+    private long randomSeed;
+    /**
+     * the changed positions of the heap
+     */
+    private int[] ranges;
+    /**
+     * the weights, point indexes and sequence indexes at the changed positions
+     */
+    private float[] weight;
+    private int[] pointIndex;
+    private long[] sequenceIndex;
+}
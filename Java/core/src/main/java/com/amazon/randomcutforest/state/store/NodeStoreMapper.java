@@ -25,12 +25,14 @@ import lombok.Setter;
 import com.amazon.randomcutforest.CommonUtils;
 import com.amazon.randomcutforest.config.Precision;
 import com.amazon.randomcutforest.state.IStateMapper;
+import com.amazon.randomcutforest.store.AbstractNodeStore;
 import com.amazon.randomcutforest.store.NodeStore;
+import com.amazon.randomcutforest.store.SmallNodeStore;
 import com.amazon.randomcutforest.util.ArrayPacking;
 
 @Getter
 @Setter
-public class NodeStoreMapper implements IStateMapper<NodeStore, NodeStoreState> {
+public class NodeStoreMapper implements IStateMapper<AbstractNodeStore, NodeStoreState> {
 
     /**
      * if single precision, then stores the cut information as a float array
@@ -48,8 +50,14 @@ public class NodeStoreMapper implements IStateMapper<NodeStore, NodeStoreState>
      */
     private boolean partialTreeStateEnabled = false;
 
+    /**
+     * Creates a node store from the state. The indices are stored as shorts
+     * whenever the capacity permits, in the same manner as the node stores
+     * created by the compact trees; the state itself does not depend on the width
+     * of the indices.
+     */
     @Override
-    public NodeStore toModel(NodeStoreState state, long seed) {
+    public AbstractNodeStore toModel(NodeStoreState state, long seed) {
         int capacity = state.getCapacity();
         int[] cutDimension = ArrayPacking.unpackInts(state.getCutDimension(), state.isCompressed());
         double[] cutValue;
@@ -80,12 +88,16 @@ public class NodeStoreMapper implements IStateMapper<NodeStore, NodeStoreState>
         int[] leafFreeIndexes = ArrayPacking.unpackInts(state.getLeafFreeIndexes(), state.isCompressed());
         int leafFreeIndexPointer = state.getLeafFreeIndexPointer();
 
+        if (capacity <= SmallNodeStore.MAX_CAPACITY) {
+            return new SmallNodeStore(capacity, leftIndex, rightIndex, cutDimension, cutValue, leafMass, leafPointIndex,
+                    nodeFreeIndexes, nodeFreeIndexPointer, leafFreeIndexes, leafFreeIndexPointer);
+        }
         return new NodeStore(capacity, leftIndex, rightIndex, cutDimension, cutValue, leafMass, leafPointIndex,
                 nodeFreeIndexes, nodeFreeIndexPointer, leafFreeIndexes, leafFreeIndexPointer);
     }
 
     @Override
-    public NodeStoreState toState(NodeStore model) {
+    public NodeStoreState toState(AbstractNodeStore model) {
         NodeStoreState state = new NodeStoreState();
         state.setCapacity(model.getCapacity());
         state.setCompressed(compressionEnabled);
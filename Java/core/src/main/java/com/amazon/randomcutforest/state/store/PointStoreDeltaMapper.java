@@ -0,0 +1,269 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.randomcutforest.state.store;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import com.amazon.randomcutforest.config.Precision;
+import com.amazon.randomcutforest.util.ArrayDeltas;
+import com.amazon.randomcutforest.util.ArrayPacking;
+
+/**
+ * Computes the changes between two states of the same point store, and applies
+ * them to the earlier state.
+ *
+ * The point store is compacted when its state is saved, so that the points
+ * that were not deleted keep their order but move down by the length of the
+ * deleted points before them. The point data is therefore rebuilt from
+ * segments of the earlier point data, which are found by matching the
+ * locations of the indexes that are in use in both states, and from the values
+ * of the points added since the earlier state. The reference counts are stored
+ * as the ranges of values that changed, and the locations as the ranges of
+ * values that differ from the earlier locations moved with the segments they
+ * fall in, which are only the locations of the added points.
+ */
+public class PointStoreDeltaMapper {
+
+    /**
+     * Computes the changes from a state to a later state of the same point store.
+     * Neither state is modified.
+     *
+     * @param base  the earlier state
+     * @param state the later state
+     * @return the changes
+     */
+    public PointStoreDeltaState toDeltaState(PointStoreState base, PointStoreState state) {
+        checkNotNull(base, "base must not be null");
+        checkNotNull(state, "state must not be null");
+        checkArgument(base.getDimensions() == state.getDimensions() && base.getCapacity() == state.getCapacity()
+                && base.getPrecision().equals(state.getPrecision()) && base.isCompressed() == state.isCompressed(),
+                "incompatible point store states");
+
+        PointStoreDeltaState delta = new PointStoreDeltaState();
+        delta.setStartOfFreeSegment(state.getStartOfFreeSegment());
+        delta.setCurrentStoreCapacity(state.getCurrentStoreCapacity());
+        delta.setIndexCapacity(state.getIndexCapacity());
+        delta.setLastTimeStamp(state.getLastTimeStamp());
+        delta.setInternalShingle(state.getInternalShingle());
+
+        int[] baseRefCount = ArrayPacking.unpackInts(base.getRefCount(), base.isCompressed());
+        int[] refCount = ArrayPacking.unpackInts(state.getRefCount(), state.isCompressed());
+        int[] baseLocationList = ArrayPacking.unpackInts(base.getLocationList(), base.isCompressed());
+        int[] locationList = ArrayPacking.unpackInts(state.getLocationList(), state.isCompressed());
+
+        int bytesPerValue = (state.getPrecisionEnumValue() == Precision.FLOAT_32) ? Float.BYTES : Double.BYTES;
+        byte[] basePointData = base.getPointData();
+        byte[] pointData = state.getPointData();
+        int[] source = new int[pointData.length / bytesPerValue];
+        Arrays.fill(source, -1);
+        int baseValues = basePointData.length / bytesPerValue;
+        int dimensions = state.getDimensions();
+        for (int i = 0; i < Math.min(baseRefCount.length, refCount.length); i++) {
+            if (baseRefCount[i] > 0 && refCount[i] > 0 && baseLocationList[i] >= 0 && locationList[i] >= 0) {
+                for (int j = 0; j < dimensions && locationList[i] + j < source.length
+                        && baseLocationList[i] + j < baseValues; j++) {
+                    source[locationList[i] + j] = baseLocationList[i] + j;
+                }
+            }
+        }
+        encodePointData(basePointData, pointData, source, bytesPerValue, delta);
+
+        int[] refCountRanges = ArrayDeltas.changedRanges(baseRefCount, refCount);
+        delta.setRefCountLength(refCount.length);
+        delta.setRefCountRanges(refCountRanges);
+        delta.setRefCount(ArrayPacking.pack(ArrayDeltas.valuesInRanges(refCount, refCountRanges), true));
+
+        int[] expected = expectedLocations(baseRefCount, baseLocationList, delta.getPointDataSegments(),
+                bytesPerValue);
+        int[] locationListRanges = ArrayDeltas.changedRanges(locationList.length, expected.length,
+                i -> expected[i] != locationList[i]);
+        delta.setLocationListLength(locationList.length);
+        delta.setLocationListRanges(locationListRanges);
+        delta.setLocationList(ArrayPacking.pack(ArrayDeltas.valuesInRanges(locationList, locationListRanges), true));
+        return delta;
+    }
+
+    /**
+     * Applies changes to the state they were computed from, in place.
+     *
+     * @param base  the earlier state, which becomes equal to the later state
+     * @param delta the changes from the earlier state to the later state
+     * @return the updated state
+     */
+    public PointStoreState applyDelta(PointStoreState base, PointStoreDeltaState delta) {
+        checkNotNull(base, "base must not be null");
+        checkNotNull(delta, "delta must not be null");
+
+        base.setPointData(decodePointData(base.getPointData(), delta));
+
+        int[] baseRefCount = ArrayPacking.unpackInts(base.getRefCount(), base.isCompressed());
+        int[] refCount = ArrayDeltas.applyRanges(baseRefCount, delta.getRefCountLength(), delta.getRefCountRanges(),
+                ArrayPacking.unpackInts(delta.getRefCount(), true));
+        base.setRefCount(ArrayPacking.pack(refCount, base.isCompressed()));
+
+        int bytesPerValue = (base.getPrecisionEnumValue() == Precision.FLOAT_32) ? Float.BYTES : Double.BYTES;
+        int[] expected = expectedLocations(baseRefCount,
+                ArrayPacking.unpackInts(base.getLocationList(), base.isCompressed()), delta.getPointDataSegments(),
+                bytesPerValue);
+        int[] locationList = ArrayDeltas.applyRanges(expected, delta.getLocationListLength(),
+                delta.getLocationListRanges(), ArrayPacking.unpackInts(delta.getLocationList(), true));
+        base.setLocationList(ArrayPacking.pack(locationList, base.isCompressed()));
+
+        base.setStartOfFreeSegment(delta.getStartOfFreeSegment());
+        base.setCurrentStoreCapacity(delta.getCurrentStoreCapacity());
+        base.setIndexCapacity(delta.getIndexCapacity());
+        base.setLastTimeStamp(delta.getLastTimeStamp());
+        base.setInternalShingle(delta.getInternalShingle());
+        return base;
+    }
+
+    /**
+     * Describes the point data as a sequence of segments, each of which is either
+     * copied from the earlier point data, starting where the first of its values
+     * was found, or stored in the delta. A copied segment is extended for as long
+     * as the values agree, whether or not they were found.
+     *
+     * @param source for each value of the point data, the position of the same
+     *               value in the earlier point data, or -1 if it is not known
+     */
+    static void encodePointData(byte[] basePointData, byte[] pointData, int[] source, int bytesPerValue,
+            PointStoreDeltaState delta) {
+        int[] segments = new int[16];
+        int size = 0;
+        ByteArrayOutputStream literals = new ByteArrayOutputStream();
+        int values = pointData.length / bytesPerValue;
+        int baseValues = basePointData.length / bytesPerValue;
+        int position = 0;
+        while (position < values) {
+            int start = position;
+            int offset;
+            if (source[position] >= 0 && valueEquals(basePointData, source[position], pointData, position,
+                    bytesPerValue)) {
+                offset = source[position] - position;
+                do {
+                    ++position;
+                } while (position < values && position + offset < baseValues
+                        && valueEquals(basePointData, position + offset, pointData, position, bytesPerValue));
+            } else {
+                offset = -1;
+                do {
+                    ++position;
+                } while (position < values && (source[position] < 0 || !valueEquals(basePointData,
+                        source[position], pointData, position, bytesPerValue)));
+                literals.write(pointData, start * bytesPerValue, (position - start) * bytesPerValue);
+            }
+            if (size == segments.length) {
+                segments = Arrays.copyOf(segments, 2 * size);
+            }
+            segments[size++] = (offset < 0) ? -1 : (start + offset) * bytesPerValue;
+            segments[size++] = (position - start) * bytesPerValue;
+        }
+        delta.setPointDataSegments(Arrays.copyOf(segments, size));
+        delta.setPointData(literals.toByteArray());
+    }
+
+    /**
+     * The locations of the points of the earlier state, moved with the segments
+     * of the point data that they fall in. Only the locations that differ from
+     * these need to be stored.
+     */
+    static int[] expectedLocations(int[] baseRefCount, int[] baseLocationList, int[] segments, int bytesPerValue) {
+        // the copied segments, in increasing order of their offset in the earlier
+        // point data, as (offset << 32 | position of the segment)
+        long[] copied = new long[segments.length / 2];
+        int size = 0;
+        int[] positions = new int[segments.length / 2];
+        int position = 0;
+        for (int i = 0; i < segments.length; i += 2) {
+            positions[i / 2] = position;
+            if (segments[i] >= 0) {
+                copied[size++] = ((long) segments[i] << 32) | (i / 2);
+            }
+            position += segments[i + 1];
+        }
+        Arrays.sort(copied, 0, size);
+
+        int[] expected = Arrays.copyOf(baseLocationList, baseLocationList.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (i < baseRefCount.length && baseRefCount[i] > 0 && expected[i] >= 0) {
+                long offset = (long) expected[i] * bytesPerValue;
+                // the last segment that starts at or before the location
+                int low = 0;
+                int high = size;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if ((copied[middle] >> 32) <= offset) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                if (low > 0) {
+                    int segment = (int) copied[low - 1];
+                    long start = copied[low - 1] >> 32;
+                    if (offset < start + segments[2 * segment + 1]) {
+                        expected[i] = (int) ((positions[segment] + offset - start) / bytesPerValue);
+                    }
+                }
+            }
+        }
+        return expected;
+    }
+
+    static byte[] decodePointData(byte[] basePointData, PointStoreDeltaState delta) {
+        int[] segments = delta.getPointDataSegments();
+        checkArgument(segments.length % 2 == 0, "segments must be pairs of (offset, length)");
+        int length = 0;
+        for (int i = 1; i < segments.length; i += 2) {
+            length += segments[i];
+        }
+        byte[] pointData = new byte[length];
+        byte[] literals = delta.getPointData();
+        int position = 0;
+        int literalPosition = 0;
+        for (int i = 0; i < segments.length; i += 2) {
+            int segmentLength = segments[i + 1];
+            if (segments[i] < 0) {
+                checkArgument(literalPosition + segmentLength <= literals.length, "incorrect point data");
+                System.arraycopy(literals, literalPosition, pointData, position, segmentLength);
+                literalPosition += segmentLength;
+            } else {
+                checkArgument(segments[i] + segmentLength <= basePointData.length,
+                        "delta does not apply to this point store state");
+                System.arraycopy(basePointData, segments[i], pointData, position, segmentLength);
+            }
+            position += segmentLength;
+        }
+        return pointData;
+    }
+
+    private static boolean valueEquals(byte[] first, int firstIndex, byte[] second, int secondIndex,
+            int bytesPerValue) {
+        int firstOffset = firstIndex * bytesPerValue;
+        int secondOffset = secondIndex * bytesPerValue;
+        for (int i = 0; i < bytesPerValue; i++) {
+            if (first[firstOffset + i] != second[secondOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.state.store;
+
+import static com.amazon.randomcutforest.state.Version.V2_0;
+
+import lombok.Data;
+
+/**
+ * The changes of a {@link PointStoreState} since a previous state of the same
+ * point store, see {@link PointStoreDeltaMapper}. The point data is stored as
+ * a sequence of segments, and the reference counts and locations as the ranges
+ * of values that differ, given by pairs of (start, length), followed by the
+ * values in these ranges, compressed.
+ */
+@Data
+public class PointStoreDeltaState {
+    /**
+     * version string for future extensibility
+     */
+    private String version = V2_0;
+    /**
+     * the header fields of the point store state that can change
+     */
+    private int startOfFreeSegment;
+    private int currentStoreCapacity;
+    private int indexCapacity;
+    private long lastTimeStamp;
+    private double[] internalShingle;
+    /**
+     * the segments of the point data, as pairs of (offset, length) in bytes,
+     * where the offset is the start of the segment in the previous point data,
+     * or -1 if the segment is the next part of pointData
+     */
+    private int[] pointDataSegments;
+    private byte[] pointData;
+    /**
+     * the changed reference counts
+     */
+    private int refCountLength;
+    private int[] refCountRanges;
+    private int[] refCount;
+    /**
+     * the locations that differ from the previous locations, moved with the
+     * segments of the point data that they fall in
+     */
+    private int locationListLength;
+    private int[] locationListRanges;
+    private int[] locationList;
+}
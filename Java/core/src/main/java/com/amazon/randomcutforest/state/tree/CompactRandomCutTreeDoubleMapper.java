@@ -20,9 +20,9 @@ import lombok.Setter;
 
 import com.amazon.randomcutforest.state.IContextualStateMapper;
 import com.amazon.randomcutforest.state.store.NodeStoreMapper;
+import com.amazon.randomcutforest.store.AbstractNodeStore;
 import com.amazon.randomcutforest.store.INodeStore;
-import com.amazon.randomcutforest.store.NodeStore;
-import com.amazon.randomcutforest.store.PointStoreDouble;
+import com.amazon.randomcutforest.store.IPointStoreView;
 import com.amazon.randomcutforest.tree.CompactRandomCutTreeDouble;
 
 @Getter
@@ -46,7 +46,7 @@ public class CompactRandomCutTreeDoubleMapper implements
                 .boundingBoxCacheFraction(state.getBoundingBoxCacheFraction())
                 .storeSequenceIndexesEnabled(state.isStoreSequenceIndexesEnabled()).maxSize(state.getMaxSize())
                 .root(state.getRoot()).randomSeed(state.getSeed())
-                .pointStore((PointStoreDouble) context.getPointStore()).nodeStore(nodeStore)
+                .pointStore((IPointStoreView<double[]>) context.getPointStore()).nodeStore(nodeStore)
                 .centerOfMassEnabled(state.isCenterOfMassEnabled()).outputAfter(state.getOutputAfter()).build();
         return tree;
 
@@ -67,7 +67,7 @@ public class CompactRandomCutTreeDoubleMapper implements
         NodeStoreMapper nodeStoreMapper = new NodeStoreMapper();
         nodeStoreMapper.setCompressionEnabled(compress);
         nodeStoreMapper.setPartialTreeStateEnabled(state.isPartialTreeState());
-        state.setNodeStoreState(nodeStoreMapper.toState((NodeStore) model.getNodeStore()));
+        state.setNodeStoreState(nodeStoreMapper.toState((AbstractNodeStore) model.getNodeStore()));
         return state;
     }
 }
@@ -21,9 +21,9 @@ import lombok.Setter;
 import com.amazon.randomcutforest.config.Precision;
 import com.amazon.randomcutforest.state.IContextualStateMapper;
 import com.amazon.randomcutforest.state.store.NodeStoreMapper;
+import com.amazon.randomcutforest.store.AbstractNodeStore;
 import com.amazon.randomcutforest.store.INodeStore;
-import com.amazon.randomcutforest.store.NodeStore;
-import com.amazon.randomcutforest.store.PointStoreFloat;
+import com.amazon.randomcutforest.store.IPointStoreView;
 import com.amazon.randomcutforest.tree.CompactRandomCutTreeFloat;
 
 @Getter
@@ -47,9 +47,9 @@ public class CompactRandomCutTreeFloatMapper implements
         CompactRandomCutTreeFloat tree = new CompactRandomCutTreeFloat.Builder()
                 .boundingBoxCacheFraction(state.getBoundingBoxCacheFraction())
                 .storeSequenceIndexesEnabled(state.isStoreSequenceIndexesEnabled()).maxSize(state.getMaxSize())
-                .root(state.getRoot()).randomSeed(state.getSeed()).pointStore((PointStoreFloat) context.getPointStore())
-                .nodeStore(nodeStore).centerOfMassEnabled(state.isCenterOfMassEnabled())
-                .outputAfter(state.getOutputAfter()).build();
+                .root(state.getRoot()).randomSeed(state.getSeed())
+                .pointStore((IPointStoreView<float[]>) context.getPointStore()).nodeStore(nodeStore)
+                .centerOfMassEnabled(state.isCenterOfMassEnabled()).outputAfter(state.getOutputAfter()).build();
         return tree;
     }
 
@@ -70,7 +70,7 @@ public class CompactRandomCutTreeFloatMapper implements
         nodeStoreMapper.setCompressionEnabled(compressed);
         nodeStoreMapper.setPartialTreeStateEnabled(state.isPartialTreeState());
         nodeStoreMapper.setPrecision(Precision.FLOAT_32);
-        state.setNodeStoreState(nodeStoreMapper.toState((NodeStore) model.getNodeStore()));
+        state.setNodeStoreState(nodeStoreMapper.toState((AbstractNodeStore) model.getNodeStore()));
 
         return state;
     }
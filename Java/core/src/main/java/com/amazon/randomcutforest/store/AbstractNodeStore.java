@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+
+import java.util.Arrays;
+
+/**
+ * The part of an array based node store that does not depend on the width of
+ * the node indices. The random cuts and the point indices of the leaves are
+ * stored in the same way by all the subclasses; the subclasses decide how the
+ * parent, child and mass columns are stored.
+ *
+ * The array accessors (without an index argument) are used by
+ * {@link com.amazon.randomcutforest.state.store.NodeStoreMapper} and always
+ * return int arrays, independent of the width used internally.
+ */
+public abstract class AbstractNodeStore implements INodeStore {
+
+    protected final int capacity;
+    protected final int[] cutDimension;
+    protected final double[] cutValue;
+    protected final int[] leafPointIndex;
+
+    protected IndexManager freeNodeManager;
+    protected IndexManager freeLeafManager;
+
+    protected AbstractNodeStore(int capacity) {
+        this.capacity = capacity;
+        freeNodeManager = new IndexManager(capacity);
+        freeLeafManager = new IndexManager(capacity + 1);
+        cutDimension = new int[capacity];
+        cutValue = new double[capacity];
+        leafPointIndex = new int[capacity + 1];
+        Arrays.fill(leafPointIndex, PointStore.INFEASIBLE_POINTSTORE_INDEX);
+    }
+
+    protected AbstractNodeStore(int capacity, int[] cutDimension, double[] cutValue, int[] leafPointIndex,
+            int[] freeNodeIndexes, int freeNodeIndexPointer, int[] freeLeafIndexes, int freeLeafIndexPointer) {
+        this.capacity = capacity;
+        this.freeNodeManager = new IndexManager(capacity, freeNodeIndexes, freeNodeIndexPointer);
+        this.freeLeafManager = new IndexManager(capacity + 1, freeLeafIndexes, freeLeafIndexPointer);
+        this.cutDimension = cutDimension;
+        this.cutValue = cutValue;
+        if (leafPointIndex != null) {
+            this.leafPointIndex = leafPointIndex;
+        } else {
+            this.leafPointIndex = new int[capacity + 1];
+            Arrays.fill(this.leafPointIndex, PointStore.INFEASIBLE_POINTSTORE_INDEX);
+        }
+    }
+
+    @Override
+    public void clear() {
+        freeNodeManager.reset();
+        freeLeafManager.reset();
+        Arrays.fill(cutDimension, 0);
+        Arrays.fill(cutValue, 0.0);
+        Arrays.fill(leafPointIndex, PointStore.INFEASIBLE_POINTSTORE_INDEX);
+    }
+
+    /**
+     * @return the left children of the internal nodes
+     */
+    public abstract int[] getLeftIndex();
+
+    /**
+     * @return the right children of the internal nodes
+     */
+    public abstract int[] getRightIndex();
+
+    /**
+     * @return the masses of the leaves
+     */
+    public abstract int[] getLeafMass();
+
+    @Override
+    public int getCutDimension(int index) {
+        return cutDimension[index];
+    }
+
+    public int[] getCutDimension() {
+        return cutDimension;
+    }
+
+    @Override
+    public double getCutValue(int index) {
+        return cutValue[index];
+    }
+
+    public double[] getCutValue() {
+        return cutValue;
+    }
+
+    @Override
+    public int getSibling(int parent, int node) {
+        int left = getLeftIndex(parent);
+        return left == node ? getRightIndex(parent) : left;
+    }
+
+    @Override
+    public boolean isLeaf(int index) {
+        checkArgument(index >= 0, "index has to be non-negative");
+        return computeLeafIndex(index) >= 0;
+    }
+
+    @Override
+    public int computeLeafIndex(int index) {
+        return index - capacity;
+    }
+
+    @Override
+    public int getPointIndex(int index) {
+        return leafPointIndex[computeLeafIndex(index)];
+    }
+
+    @Override
+    public int setPointIndex(int index, int pointIndex) {
+        int newIndex = computeLeafIndex(index);
+        int savedPointIndex = this.leafPointIndex[newIndex];
+        this.leafPointIndex[newIndex] = pointIndex;
+        return savedPointIndex;
+    }
+
+    public int[] getLeafPointIndex() {
+        return leafPointIndex;
+    }
+
+    public int[] getLeafFreeIndexes() {
+        return freeLeafManager.getFreeIndexes();
+    }
+
+    public int[] getNodeFreeIndexes() {
+        return freeNodeManager.getFreeIndexes();
+    }
+
+    public int getLeafFreeIndexPointer() {
+        return freeLeafManager.getFreeIndexPointer();
+    }
+
+    public int getNodeFreeIndexPointer() {
+        return freeNodeManager.getFreeIndexPointer();
+    }
+
+    @Override
+    public int getCapacity() {
+        return freeNodeManager.getCapacity();
+    }
+
+    @Override
+    public int size() {
+        return freeNodeManager.size();
+    }
+
+    @Override
+    public boolean isCanonicalAndNotALeaf() {
+        int leafCounter = capacity;
+        int nodeCounter = 1;
+
+        // the root = 0; which means node 0 has no parent and is in use
+        boolean check = (getParentIndex(0) == NULL) && freeNodeManager.occupied.get(0);
+        for (int i = 0; i < size() && check; i++) {
+            int left = getLeftIndex(i);
+            int right = getRightIndex(i);
+            if (left != NULL) {
+                if (left < capacity) {
+                    check = (nodeCounter == left);
+                    ++nodeCounter;
+                } else {
+                    check = (left == leafCounter);
+                    ++leafCounter;
+                }
+                check = check && (right != NULL);
+
+                if (right < capacity) {
+                    check = check && (nodeCounter == right);
+                    ++nodeCounter;
+                } else {
+                    check = check && (right == leafCounter);
+                    ++leafCounter;
+                }
+            } else {
+                check = check && (right == NULL);
+            }
+        }
+        return check;
+    }
+}
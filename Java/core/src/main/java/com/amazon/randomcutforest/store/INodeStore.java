@@ -87,6 +87,13 @@ public interface INodeStore {
      */
     void delete(int index);
 
+    /**
+     * deletes every node, after which the store is in the same state as a new
+     * store with the same capacity; this allows a store to be reused without
+     * allocating
+     */
+    void clear();
+
     /**
      * replaces node oldIndex with provided parent by newIndex, but does not change
      * newIndex because newIndex need not be an internal node.
@@ -41,4 +41,7 @@ public interface IPointStore<Point> extends IPointStoreView<Point> {
     // decrements and returns the decremented value
     int decrementRefCount(int index);
 
+    // the number of indices currently in use
+    int size();
+
 }
@@ -23,10 +23,56 @@ public interface IPointStoreView<Point> {
 
     int getCapacity();
 
+    /**
+     * Compares the stored point with a point in the sense of Arrays.equals, without
+     * creating a copy of the stored point.
+     *
+     * @param index identifier of the stored point
+     * @param point the point to compare with
+     * @return true if the points are equal, false otherwise
+     */
     boolean pointEquals(int index, Point point);
 
+    // compares the stored point (converted to double precision) with a query in
+    // the sense of Arrays.equals, without creating a copy of the stored point
+    boolean pointEqualsQuery(int index, double[] query);
+
     Point get(int index);
 
+    /**
+     * Reads a single coordinate of a stored point in place, irrespective of the
+     * encoding of the point and of the rotation of shingles.
+     *
+     * @param index     identifier of the point
+     * @param dimension the coordinate to read
+     * @return the value of the coordinate, converted to double precision
+     */
+    double getCoordinate(int index, int dimension);
+
+    /**
+     * Tests on which side of a cut a stored point lies, without creating a copy of
+     * the point; consistent with the test applied to the copy.
+     *
+     * @param index        identifier of the point
+     * @param cutDimension the dimension of the cut
+     * @param cutValue     the value of the cut
+     * @return true if the point lies to the left of the cut, false otherwise
+     */
+    default boolean leftOf(int index, int cutDimension, double cutValue) {
+        return getCoordinate(index, cutDimension) <= cutValue;
+    }
+
+    /**
+     * Widens the ranges given by the min and max values so that they contain a
+     * stored point, reading the point in place. The result is the same as merging
+     * a copy of the point into a box with these ranges.
+     *
+     * @param index     identifier of the point
+     * @param minValues the min values, updated in place
+     * @param maxValues the max values, updated in place
+     */
+    void expandRanges(int index, Point minValues, Point maxValues);
+
     double[] getInternalShingle();
 
     long getNextSequenceIndex();
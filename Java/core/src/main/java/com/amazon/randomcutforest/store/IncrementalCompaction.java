@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A compaction of a {@link PointStore} that is spread over many calls to
+ * {@link PointStore#add}, so that no single add pays for a pass over the whole
+ * store. Only used for stores that are not directly mapped and do not rotate
+ * shingles.
+ *
+ * The points are kept in a list of packed (location, index) pairs in increasing
+ * order of location: a point is appended when it is added, since it is written
+ * at the start of the free segment, and moving the points down preserves their
+ * order. The list replaces the map from old to new locations of
+ * {@link PointStore#compact()}, and starting a compaction does not need a pass
+ * over the store. An entry is live if the point with its index is still at its
+ * location; the other entries are dropped by the next compaction.
+ *
+ * A compaction visits the list in order. Each live point is moved down to the
+ * end of the compacted prefix of the store, sharing the values that it has in
+ * common with the previously moved point, and its location is updated at once.
+ * Points added while the compaction is in progress are appended to the list and
+ * visited in turn; since every step visits more entries than an add appends,
+ * the compaction completes after a number of adds proportional to the length
+ * of the list when it started.
+ *
+ * Between two steps, every point in the store can be read at its current
+ * location: a point that was not visited yet is never overwritten, because the
+ * values moved so far lie below its location. The only exception is when the
+ * values were moved by less than the length of a point, in which case a step
+ * continues past its budget to the end of the current run of overlapping
+ * points.
+ *
+ * A full compaction moves the points without updating the list, which is then
+ * rebuilt, by sorting the locations of the points, when the next incremental
+ * compaction starts.
+ */
+class IncrementalCompaction {
+
+    private final PointStore<?, ?> pointStore;
+
+    /**
+     * the points of the store, as (location << 32 | index) in increasing order
+     */
+    private long[] order = new long[0];
+    private int orderSize;
+
+    /**
+     * false if the points were moved without updating the list
+     */
+    private boolean valid;
+
+    /**
+     * the number of entries visited by each step, 0 if no compaction is in
+     * progress
+     */
+    private int pointsPerStep;
+
+    /**
+     * the next entry to be visited; the entries of the moved points are rewritten
+     * below it
+     */
+    private int position;
+    private int keptSize;
+
+    /**
+     * the values below readLocation have been moved, or discarded
+     */
+    private int readLocation;
+
+    /**
+     * the end of the compacted prefix of the store
+     */
+    private int writeLocation;
+
+    IncrementalCompaction(PointStore<?, ?> pointStore) {
+        this.pointStore = pointStore;
+        // the list of an empty store is empty
+        this.valid = pointStore.startOfFreeSegment == 0;
+    }
+
+    /**
+     * @return the number of entries a compaction started now would visit
+     */
+    int size() {
+        return valid ? orderSize : pointStore.size();
+    }
+
+    boolean isInProgress() {
+        return pointsPerStep > 0;
+    }
+
+    /**
+     * Records a point added to the store.
+     *
+     * @param index    the index of the point
+     * @param location the location of the point, which is greater than the
+     *                 location of any other point in the store
+     */
+    void recordAdd(int index, int location) {
+        if (valid) {
+            if (orderSize == order.length) {
+                order = Arrays.copyOf(order, Math.max(16, 2 * orderSize));
+            }
+            order[orderSize++] = ((long) location << 32) | index;
+        }
+    }
+
+    /**
+     * Records that the points were moved by a full compaction, which supersedes
+     * the incremental compaction in progress.
+     */
+    void invalidate() {
+        valid = false;
+        pointsPerStep = 0;
+    }
+
+    /**
+     * Starts a compaction.
+     *
+     * @param pointsPerStep the number of entries visited by each step
+     */
+    void start(int pointsPerStep) {
+        if (!valid) {
+            rebuild();
+        }
+        this.pointsPerStep = pointsPerStep;
+        position = 0;
+        keptSize = 0;
+        readLocation = 0;
+        writeLocation = 0;
+    }
+
+    private void rebuild() {
+        BitSet occupied = pointStore.indexManager.occupied;
+        order = new long[Math.max(16, occupied.cardinality())];
+        orderSize = 0;
+        for (int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i + 1)) {
+            order[orderSize++] = ((long) pointStore.getLocation(i) << 32) | i;
+        }
+        Arrays.sort(order, 0, orderSize);
+        valid = true;
+    }
+
+    /**
+     * Moves the next points of the store. When the compaction completes, the free
+     * segment of the store starts at the end of the compacted prefix.
+     *
+     * @return true if the compaction is complete, false otherwise
+     */
+    boolean step() {
+        int dimensions = pointStore.dimensions;
+        int visited = 0;
+        while (position < orderSize) {
+            int location = (int) (order[position] >>> 32);
+            int index = (int) order[position];
+            if (visited >= pointsPerStep && (readLocation == writeLocation || location >= writeLocation)) {
+                return false;
+            }
+            ++position;
+            ++visited;
+            if (pointStore.indexManager.occupied.get(index) && pointStore.getLocation(index) == location) {
+                int newLocation;
+                if (location >= readLocation) {
+                    // the point starts a new run of overlapping points
+                    newLocation = writeLocation;
+                    copy(location, dimensions);
+                } else {
+                    // the point shares a prefix with the previously moved point
+                    newLocation = location - (readLocation - writeLocation);
+                    copy(readLocation, location + dimensions - readLocation);
+                }
+                readLocation = location + dimensions;
+                pointStore.setLocation(index, newLocation);
+                order[keptSize++] = ((long) newLocation << 32) | index;
+            }
+        }
+        orderSize = keptSize;
+        pointsPerStep = 0;
+        pointStore.startOfFreeSegment = writeLocation;
+        return true;
+    }
+
+    private void copy(int source, int length) {
+        if (source != writeLocation) {
+            pointStore.copyTo(writeLocation, source, length);
+        }
+        writeLocation += length;
+    }
+}
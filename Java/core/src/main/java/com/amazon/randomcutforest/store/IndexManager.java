@@ -115,6 +115,18 @@ public class IndexManager {
         freeIndexPointer = newCapacity - manager.capacity - 1;
     }
 
+    /**
+     * Release every index, after which the indices are taken in the same order as
+     * in a new manager with the same capacity.
+     */
+    protected void reset() {
+        occupied.clear();
+        freeIndexPointer = capacity - 1;
+        for (int i = 0; i < freeIndexes.length; i++) {
+            freeIndexes[i] = capacity - i - 1;
+        }
+    }
+
     public boolean isFull() {
         return (freeIndexPointer == -1);
     }
@@ -15,7 +15,6 @@
 
 package com.amazon.randomcutforest.store;
 
-import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 import static com.amazon.randomcutforest.CommonUtils.checkState;
 import static com.amazon.randomcutforest.CommonUtils.validateInternalState;
 import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
@@ -39,19 +38,12 @@ import java.util.Arrays;
  * Note that a NodeStore does not store instances of the
  * {@link com.amazon.randomcutforest.tree.Node} class.
  */
-public class NodeStore implements INodeStore {
+public class NodeStore extends AbstractNodeStore {
 
-    private final int capacity;
     private final int[] parentIndex;
     private final int[] leftIndex;
     private final int[] rightIndex;
-    private final int[] cutDimension;
-    private final double[] cutValue;
     private final int[] mass;
-    private final int[] leafPointIndex;
-
-    protected IndexManager freeNodeManager;
-    protected IndexManager freeLeafManager;
 
     /**
      * Create a new NodeStore with the given capacity.
@@ -59,45 +51,30 @@ public class NodeStore implements INodeStore {
      * @param capacity The maximum number of Nodes whose data can be stored.
      */
     public NodeStore(int capacity) {
-        this.capacity = capacity;
-        freeNodeManager = new IndexManager(capacity);
-        freeLeafManager = new IndexManager(capacity + 1);
+        super(capacity);
         parentIndex = new int[2 * capacity + 1];
         mass = new int[2 * capacity + 1];
         leftIndex = new int[capacity];
         rightIndex = new int[capacity];
-        cutDimension = new int[capacity];
-        cutValue = new double[capacity];
-        leafPointIndex = new int[capacity + 1];
         Arrays.fill(parentIndex, NULL);
         Arrays.fill(leftIndex, NULL);
         Arrays.fill(rightIndex, NULL);
-        Arrays.fill(leafPointIndex, PointStore.INFEASIBLE_POINTSTORE_INDEX);
     }
 
     public NodeStore(int capacity, int[] leftIndex, int[] rightIndex, int[] cutDimension, double[] cutValue,
             int[] leafMass, int[] leafPointIndex, int[] freeNodeIndexes, int freeNodeIndexPointer,
             int[] freeLeafIndexes, int freeLeafIndexPointer) {
         // TODO validations
-        this.capacity = capacity;
-        this.freeNodeManager = new IndexManager(capacity, freeNodeIndexes, freeNodeIndexPointer);
-        this.freeLeafManager = new IndexManager(capacity + 1, freeLeafIndexes, freeLeafIndexPointer);
+        super(capacity, cutDimension, cutValue, (leafMass != null) ? leafPointIndex : null, freeNodeIndexes,
+                freeNodeIndexPointer, freeLeafIndexes, freeLeafIndexPointer);
         this.parentIndex = deriveParentIndex(leftIndex, rightIndex);
         this.leftIndex = leftIndex;
         this.rightIndex = rightIndex;
-        this.cutDimension = cutDimension;
-        this.cutValue = cutValue;
         this.mass = new int[2 * capacity + 1];
         // copy leaf mass to the later half; if mass is not null
         if (leafMass != null) {
             validateInternalState(leafPointIndex != null, " incorrect state for needing samplers");
             System.arraycopy(leafMass, 0, this.mass, capacity, capacity + 1);
-            this.leafPointIndex = leafPointIndex;
-        } else {
-            this.leafPointIndex = new int[capacity + 1];
-            Arrays.fill(this.leafPointIndex, PointStore.INFEASIBLE_POINTSTORE_INDEX);
-        }
-        if (leafMass != null) {
             for (int i = 0; i < capacity; i++) {
                 if (parentIndex[i] == NULL) {
                     rebuildMass(i);
@@ -170,6 +147,15 @@ public class NodeStore implements INodeStore {
         }
     }
 
+    @Override
+    public void clear() {
+        super.clear();
+        Arrays.fill(parentIndex, NULL);
+        Arrays.fill(leftIndex, NULL);
+        Arrays.fill(rightIndex, NULL);
+        Arrays.fill(mass, 0);
+    }
+
     @Override
     public void replaceChild(int parent, int oldIndex, int newIndex) {
         if (leftIndex[parent] == oldIndex) {
@@ -217,24 +203,6 @@ public class NodeStore implements INodeStore {
         return --mass[index];
     }
 
-    @Override
-    public int getCutDimension(int index) {
-        return cutDimension[index];
-    }
-
-    public int[] getCutDimension() {
-        return cutDimension;
-    }
-
-    @Override
-    public double getCutValue(int index) {
-        return cutValue[index];
-    }
-
-    public double[] getCutValue() {
-        return cutValue;
-    }
-
     @Override
     public int getMass(int index) {
         return mass[index];
@@ -261,10 +229,6 @@ public class NodeStore implements INodeStore {
         }
     }
 
-    public int getSibling(int parent, int node) {
-        return leftIndex[parent] == node ? rightIndex[parent] : leftIndex[parent];
-    }
-
     int[] deriveParentIndex(int[] leftIndex, int[] rightIndex) {
         int capacity = leftIndex.length;
         checkState(rightIndex.length == capacity, "incorrect function call, arrays should be equal");
@@ -283,93 +247,10 @@ public class NodeStore implements INodeStore {
         return parentIndex;
     }
 
-    @Override
-    public boolean isLeaf(int index) {
-        checkArgument(index >= 0, "index has to be non-negative");
-        return computeLeafIndex(index) >= 0;
-    }
-
-    public int computeLeafIndex(int index) {
-        return index - capacity;
-    }
-
-    @Override
-    public int getPointIndex(int index) {
-        return leafPointIndex[computeLeafIndex(index)];
-    }
-
-    @Override
-    public int setPointIndex(int index, int pointIndex) {
-        int newIndex = computeLeafIndex(index);
-        int savedPointIndex = this.leafPointIndex[newIndex];
-        this.leafPointIndex[newIndex] = pointIndex;
-        return savedPointIndex;
-    }
-
-    public int[] getLeafFreeIndexes() {
-        return freeLeafManager.getFreeIndexes();
-    }
-
-    public int[] getNodeFreeIndexes() {
-        return freeNodeManager.getFreeIndexes();
-    }
-
-    public int[] getLeafPointIndex() {
-        return leafPointIndex;
-    }
-
     public int[] getLeafMass() {
         int[] result = new int[capacity + 1];
         System.arraycopy(mass, capacity, result, 0, capacity + 1);
         return result;
     }
 
-    public int getLeafFreeIndexPointer() {
-        return freeLeafManager.getFreeIndexPointer();
-    }
-
-    public int getNodeFreeIndexPointer() {
-        return freeNodeManager.getFreeIndexPointer();
-    }
-
-    public int getCapacity() {
-        return freeNodeManager.getCapacity();
-    }
-
-    public int size() {
-        return freeNodeManager.size();
-    }
-
-    public boolean isCanonicalAndNotALeaf() {
-        boolean check = leftIndex.length == rightIndex.length;
-        int leafCounter = leftIndex.length;
-        int nodeCounter = 1;
-
-        // the root = 0; which means node 0 has no parent and is in use
-        check = check && (parentIndex[0] == -1) && freeNodeManager.occupied.get(0);
-        for (int i = 0; i < size() && check; i++) {
-            if (leftIndex[i] != NULL) {
-                if (leftIndex[i] < leftIndex.length) {
-                    check = (nodeCounter == leftIndex[i]);
-                    ++nodeCounter;
-                } else {
-                    check = (leftIndex[i] == leafCounter);
-                    ++leafCounter;
-                }
-                check = check && (rightIndex[i] != NULL);
-
-                if (rightIndex[i] < rightIndex.length) {
-                    check = check && (nodeCounter == rightIndex[i]);
-                    ++nodeCounter;
-                } else {
-                    check = check && (rightIndex[i] == leafCounter);
-                    ++leafCounter;
-                }
-            } else {
-                check = check && (rightIndex[i] == NULL);
-            }
-        }
-        return check;
-    }
-
 }
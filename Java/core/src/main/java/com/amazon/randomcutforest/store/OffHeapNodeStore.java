@@ -0,0 +1,384 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A node store with the same semantics as {@link NodeStore}, where the columns
+ * (parent, children, cuts, mass and point index) are regions of a single direct
+ * ByteBuffer instead of separate heap arrays. This reduces the number of heap
+ * objects per tree to a handful, independent of the size of the tree.
+ *
+ * The cut dimensions are stored as shorts when the number of dimensions
+ * permits. The cut values can optionally be stored as floats; this is only
+ * meant for trees over float points (e.g., CompactRandomCutTreeFloat). A cut
+ * value is then rounded down to the nearest float, which does not change the
+ * outcome of the comparison with any float coordinate.
+ */
+public class OffHeapNodeStore implements INodeStore {
+
+    private final int capacity;
+    private final int dimensions;
+    private final boolean floatCutValues;
+    private final boolean shortCutDimensions;
+    private final IntBuffer parentIndex;
+    private final IntBuffer mass;
+    private final IntBuffer leftIndex;
+    private final IntBuffer rightIndex;
+    private final IntBuffer leafPointIndex;
+    private final DoubleBuffer doubleCutValue;
+    private final FloatBuffer floatCutValue;
+    private final IntBuffer intCutDimension;
+    private final ShortBuffer shortCutDimension;
+
+    protected IndexManager freeNodeManager;
+    protected IndexManager freeLeafManager;
+
+    /**
+     * Create a new OffHeapNodeStore with the given capacity, which stores cut
+     * values as doubles and cut dimensions as ints.
+     *
+     * @param capacity The maximum number of Nodes whose data can be stored.
+     */
+    public OffHeapNodeStore(int capacity) {
+        this(capacity, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Create a new OffHeapNodeStore with the given capacity.
+     *
+     * @param capacity       The maximum number of Nodes whose data can be stored.
+     * @param dimensions     The number of dimensions of the points in the tree.
+     * @param floatCutValues If true, then cut values are stored as floats.
+     */
+    public OffHeapNodeStore(int capacity, int dimensions, boolean floatCutValues) {
+        checkArgument(capacity > 0, "capacity must be greater than 0");
+        checkArgument(dimensions > 0, "dimensions must be greater than 0");
+        this.capacity = capacity;
+        this.dimensions = dimensions;
+        this.floatCutValues = floatCutValues;
+        this.shortCutDimensions = dimensions <= Short.MAX_VALUE + 1;
+        freeNodeManager = new IndexManager(capacity);
+        freeLeafManager = new IndexManager(capacity + 1);
+
+        int cutValueBytes = (floatCutValues) ? Float.BYTES : Double.BYTES;
+        int cutDimensionBytes = (shortCutDimensions) ? Short.BYTES : Integer.BYTES;
+        long size = (long) capacity * cutValueBytes + Integer.BYTES * (2L * (2 * capacity + 1) + 3L * capacity + 1)
+                + (long) capacity * cutDimensionBytes;
+        checkArgument(size <= Integer.MAX_VALUE, "capacity is too large for a single buffer");
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+
+        // the widest column comes first so that every column is aligned
+        int offset = 0;
+        ByteBuffer cutValues = slice(buffer, offset, capacity * cutValueBytes);
+        doubleCutValue = (floatCutValues) ? null : cutValues.asDoubleBuffer();
+        floatCutValue = (floatCutValues) ? cutValues.asFloatBuffer() : null;
+        offset += capacity * cutValueBytes;
+        parentIndex = slice(buffer, offset, Integer.BYTES * (2 * capacity + 1)).asIntBuffer();
+        offset += Integer.BYTES * (2 * capacity + 1);
+        mass = slice(buffer, offset, Integer.BYTES * (2 * capacity + 1)).asIntBuffer();
+        offset += Integer.BYTES * (2 * capacity + 1);
+        leftIndex = slice(buffer, offset, Integer.BYTES * capacity).asIntBuffer();
+        offset += Integer.BYTES * capacity;
+        rightIndex = slice(buffer, offset, Integer.BYTES * capacity).asIntBuffer();
+        offset += Integer.BYTES * capacity;
+        leafPointIndex = slice(buffer, offset, Integer.BYTES * (capacity + 1)).asIntBuffer();
+        offset += Integer.BYTES * (capacity + 1);
+        ByteBuffer cutDimensions = slice(buffer, offset, capacity * cutDimensionBytes);
+        intCutDimension = (shortCutDimensions) ? null : cutDimensions.asIntBuffer();
+        shortCutDimension = (shortCutDimensions) ? cutDimensions.asShortBuffer() : null;
+        fillEmpty();
+    }
+
+    /**
+     * sets the values of every node to those of an absent node; a new direct
+     * buffer is zeroed, so the masses, cuts and cut dimensions are already 0
+     */
+    private void fillEmpty() {
+        for (int i = 0; i < 2 * capacity + 1; i++) {
+            parentIndex.put(i, NULL);
+        }
+        for (int i = 0; i < capacity; i++) {
+            leftIndex.put(i, NULL);
+            rightIndex.put(i, NULL);
+        }
+        for (int i = 0; i < capacity + 1; i++) {
+            leafPointIndex.put(i, PointStore.INFEASIBLE_POINTSTORE_INDEX);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice().order(buffer.order());
+    }
+
+    /**
+     * @return a new empty store with the same capacity and encoding
+     */
+    public OffHeapNodeStore newEmptyStore() {
+        return new OffHeapNodeStore(capacity, dimensions, floatCutValues);
+    }
+
+    public boolean isFloatCutValues() {
+        return floatCutValues;
+    }
+
+    public boolean isShortCutDimensions() {
+        return shortCutDimensions;
+    }
+
+    @Override
+    public int addNode(int parentIndex, int leftIndex, int rightIndex, int cutDimension, double cutValue, int mass) {
+        checkArgument(cutDimension >= 0 && cutDimension < dimensions, "incorrect cut dimension");
+        int index = freeNodeManager.takeIndex();
+        if (floatCutValues) {
+            float value = (float) cutValue;
+            floatCutValue.put(index, (value > cutValue) ? Math.nextDown(value) : value);
+        } else {
+            doubleCutValue.put(index, cutValue);
+        }
+        if (shortCutDimensions) {
+            shortCutDimension.put(index, (short) cutDimension);
+        } else {
+            intCutDimension.put(index, cutDimension);
+        }
+        this.leftIndex.put(index, leftIndex);
+        this.rightIndex.put(index, rightIndex);
+        this.parentIndex.put(index, parentIndex);
+        this.mass.put(index, mass);
+        return index;
+    }
+
+    @Override
+    public int addLeaf(int parentIndex, int pointIndex, int mass) {
+        int index = freeLeafManager.takeIndex();
+        this.parentIndex.put(index + capacity, parentIndex);
+        this.mass.put(index + capacity, mass);
+        this.leafPointIndex.put(index, pointIndex);
+        return index + capacity;
+    }
+
+    @Override
+    public void setParentIndex(int index, int parent) {
+        parentIndex.put(index, parent);
+    }
+
+    @Override
+    public int getParentIndex(int index) {
+        return parentIndex.get(index);
+    }
+
+    @Override
+    public void delete(int index) {
+        if (isLeaf(index)) {
+            parentIndex.put(index, NULL);
+            leafPointIndex.put(computeLeafIndex(index), PointStore.INFEASIBLE_POINTSTORE_INDEX);
+            mass.put(index, 0);
+            freeLeafManager.releaseIndex(computeLeafIndex(index));
+        } else {
+            mass.put(index, 0);
+            leftIndex.put(index, NULL);
+            rightIndex.put(index, NULL);
+            parentIndex.put(index, NULL);
+            freeNodeManager.releaseIndex(index);
+        }
+    }
+
+    @Override
+    public void clear() {
+        freeNodeManager.reset();
+        freeLeafManager.reset();
+        fillEmpty();
+        for (int i = 0; i < 2 * capacity + 1; i++) {
+            mass.put(i, 0);
+        }
+        for (int i = 0; i < capacity; i++) {
+            if (floatCutValues) {
+                floatCutValue.put(i, 0.0f);
+            } else {
+                doubleCutValue.put(i, 0.0);
+            }
+            if (shortCutDimensions) {
+                shortCutDimension.put(i, (short) 0);
+            } else {
+                intCutDimension.put(i, 0);
+            }
+        }
+    }
+
+    @Override
+    public void replaceChild(int parent, int oldIndex, int newIndex) {
+        if (leftIndex.get(parent) == oldIndex) {
+            leftIndex.put(parent, newIndex);
+        } else {
+            rightIndex.put(parent, newIndex);
+        }
+    }
+
+    @Override
+    public int getRightIndex(int index) {
+        return rightIndex.get(index);
+    }
+
+    @Override
+    public void setRightIndex(int index, int child) {
+        rightIndex.put(index, child);
+    }
+
+    @Override
+    public int getLeftIndex(int index) {
+        return leftIndex.get(index);
+    }
+
+    @Override
+    public void setLeftIndex(int index, int child) {
+        leftIndex.put(index, child);
+    }
+
+    @Override
+    public int incrementMass(int index) {
+        int newMass = mass.get(index) + 1;
+        mass.put(index, newMass);
+        return newMass;
+    }
+
+    @Override
+    public int decrementMass(int index) {
+        int newMass = mass.get(index) - 1;
+        mass.put(index, newMass);
+        return newMass;
+    }
+
+    @Override
+    public int getCutDimension(int index) {
+        return (shortCutDimensions) ? shortCutDimension.get(index) & 0xffff : intCutDimension.get(index);
+    }
+
+    @Override
+    public double getCutValue(int index) {
+        return (floatCutValues) ? floatCutValue.get(index) : doubleCutValue.get(index);
+    }
+
+    @Override
+    public int getMass(int index) {
+        return mass.get(index);
+    }
+
+    @Override
+    public void setMass(int index, int newMass) {
+        mass.put(index, newMass);
+    }
+
+    @Override
+    public void increaseMassOfSelfAndAncestors(int index) {
+        while (index != NULL) {
+            mass.put(index, mass.get(index) + 1);
+            index = parentIndex.get(index);
+        }
+    }
+
+    @Override
+    public void decreaseMassOfSelfAndAncestors(int index) {
+        while (index != NULL) {
+            mass.put(index, mass.get(index) - 1);
+            index = parentIndex.get(index);
+        }
+    }
+
+    @Override
+    public int getSibling(int parent, int node) {
+        return leftIndex.get(parent) == node ? rightIndex.get(parent) : leftIndex.get(parent);
+    }
+
+    @Override
+    public boolean isLeaf(int index) {
+        checkArgument(index >= 0, "index has to be non-negative");
+        return computeLeafIndex(index) >= 0;
+    }
+
+    @Override
+    public int computeLeafIndex(int index) {
+        return index - capacity;
+    }
+
+    @Override
+    public int getPointIndex(int index) {
+        return leafPointIndex.get(computeLeafIndex(index));
+    }
+
+    @Override
+    public int setPointIndex(int index, int pointIndex) {
+        int newIndex = computeLeafIndex(index);
+        int savedPointIndex = leafPointIndex.get(newIndex);
+        leafPointIndex.put(newIndex, pointIndex);
+        return savedPointIndex;
+    }
+
+    @Override
+    public int getCapacity() {
+        return freeNodeManager.getCapacity();
+    }
+
+    @Override
+    public int size() {
+        return freeNodeManager.size();
+    }
+
+    @Override
+    public boolean isCanonicalAndNotALeaf() {
+        int leafCounter = capacity;
+        int nodeCounter = 1;
+
+        // the root = 0; which means node 0 has no parent and is in use
+        boolean check = (parentIndex.get(0) == NULL) && freeNodeManager.occupied.get(0);
+        for (int i = 0; i < size() && check; i++) {
+            int left = leftIndex.get(i);
+            int right = rightIndex.get(i);
+            if (left != NULL) {
+                if (left < capacity) {
+                    check = (nodeCounter == left);
+                    ++nodeCounter;
+                } else {
+                    check = (left == leafCounter);
+                    ++leafCounter;
+                }
+                check = check && (right != NULL);
+
+                if (right < capacity) {
+                    check = check && (nodeCounter == right);
+                    ++nodeCounter;
+                } else {
+                    check = check && (right == leafCounter);
+                    ++leafCounter;
+                }
+            } else {
+                check = check && (right == NULL);
+            }
+        }
+        return check;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * OffHeapPointStoreFloat is a PointStore defined on base type Float, which
+ * keeps the point values, the reference counts and the locations of the points
+ * outside of the Java heap; either in a direct ByteBuffer or in a memory mapped
+ * file. The store is allocated at its maximum size on construction (the
+ * operating system only commits the pages that are used) and therefore never
+ * resizes.
+ *
+ * For a memory mapped file, {@link #force()} writes the remaining state of the
+ * store to the file, after which the store can be reopened with
+ * {@link #load(Path)}, e.g., after a restart. The index manager is
+ * reconstructed from the reference counts.
+ */
+public class OffHeapPointStoreFloat extends PointStore<FloatBuffer, float[]> {
+
+    static final int MAGIC = 0x52434650;
+
+    static final int HEADER_BYTES = 40;
+
+    private static final int INTERNAL_SHINGLING_FLAG = 1;
+
+    private static final int ROTATION_FLAG = 2;
+
+    private static final int DIRECT_LOCATION_FLAG = 4;
+
+    private static final int DYNAMIC_RESIZING_FLAG = 8;
+
+    /**
+     * the buffer containing the header, the reference counts, the locations and
+     * the point values
+     */
+    private final ByteBuffer buffer;
+
+    private final IntBuffer refCounts;
+
+    private final IntBuffer locations;
+
+    public OffHeapPointStoreFloat(Builder builder) {
+        super(builder);
+        currentStoreCapacity = (rotationEnabled) ? 2 * capacity : capacity;
+        long size = bufferSize(dimensions, capacity, currentStoreCapacity);
+        checkArgument(size <= Integer.MAX_VALUE, "store is too large for a single buffer");
+        if (builder.buffer != null) {
+            checkArgument(builder.buffer.capacity() == size, "incorrect buffer size");
+            buffer = builder.buffer;
+        } else if (builder.mappedFile != null) {
+            buffer = map(builder.mappedFile, (int) size, true);
+        } else {
+            buffer = ByteBuffer.allocateDirect((int) size);
+        }
+        buffer.order(ByteOrder.nativeOrder());
+
+        int offset = HEADER_BYTES + Double.BYTES * dimensions;
+        refCounts = slice(buffer, offset, Integer.BYTES * capacity).asIntBuffer();
+        offset += Integer.BYTES * capacity;
+        locations = slice(buffer, offset, Integer.BYTES * capacity).asIntBuffer();
+        offset += Integer.BYTES * capacity;
+        store = slice(buffer, offset, Float.BYTES * currentStoreCapacity * dimensions).asFloatBuffer();
+
+        // the arrays created (or provided) by the superclass are moved to the buffer
+        int indexCapacity = refCount.length;
+        for (int i = 0; i < capacity; i++) {
+            refCounts.put(i, (i < indexCapacity) ? refCount[i] : 0);
+            locations.put(i, (i < indexCapacity) ? locationList[i] : INFEASIBLE_POINTSTORE_LOCATION);
+        }
+        refCount = null;
+        locationList = null;
+        if (builder.store != null) {
+            checkArgument(builder.store.length <= currentStoreCapacity * dimensions, "incorrect store length");
+            for (int i = 0; i < builder.store.length; i++) {
+                store.put(i, builder.store[i]);
+            }
+        }
+        writeHeader();
+    }
+
+    public OffHeapPointStoreFloat(int dimensions, int capacity) {
+        this(new Builder().dimensions(dimensions).shingleSize(1).capacity(capacity).initialSize(capacity));
+    }
+
+    static long bufferSize(int dimensions, int capacity, int storeCapacity) {
+        return HEADER_BYTES + (long) Double.BYTES * dimensions + 2L * Integer.BYTES * capacity
+                + (long) Float.BYTES * storeCapacity * dimensions;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice().order(buffer.order());
+    }
+
+    private static MappedByteBuffer map(Path file, int size, boolean create) {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (create && channel.size() > size) {
+                channel.truncate(size);
+            }
+            checkArgument(create || channel.size() == size, "incorrect file size");
+            // the mapping remains valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader() {
+        int flags = (internalShinglingEnabled ? INTERNAL_SHINGLING_FLAG : 0) | (rotationEnabled ? ROTATION_FLAG : 0)
+                | (directLocationMap ? DIRECT_LOCATION_FLAG : 0)
+                | (dynamicResizingEnabled ? DYNAMIC_RESIZING_FLAG : 0);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, dimensions);
+        buffer.putInt(8, shingleSize);
+        buffer.putInt(12, capacity);
+        buffer.putInt(16, currentStoreCapacity);
+        buffer.putInt(20, flags);
+        buffer.putInt(24, startOfFreeSegment);
+        buffer.putLong(32, nextSequenceIndex);
+        for (int i = 0; i < dimensions; i++) {
+            buffer.putDouble(HEADER_BYTES + Double.BYTES * i, internalShinglingEnabled ? internalShingle[i] : 0.0);
+        }
+    }
+
+    /**
+     * Writes the state of the store which is kept on the heap (the free segment,
+     * the sequence index and the internal shingle) to the buffer and, for a memory
+     * mapped file, flushes the buffer to the file.
+     */
+    public void force() {
+        writeHeader();
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    /**
+     * Opens a store which was previously created with
+     * {@link Builder#mappedFile(Path)} and saved with {@link #force()}.
+     *
+     * @param file the memory mapped file
+     * @return the point store backed by the file
+     */
+    public static OffHeapPointStoreFloat load(Path file) {
+        checkNotNull(file, "file must not be null");
+        ByteBuffer header;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            checkArgument(channel.size() >= HEADER_BYTES, "file is too small");
+            header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        checkArgument(header.getInt(0) == MAGIC, "not a point store file, or a different byte order");
+        int dimensions = header.getInt(4);
+        int capacity = header.getInt(12);
+        int storeCapacity = header.getInt(16);
+        int flags = header.getInt(20);
+        ByteBuffer buffer = map(file, (int) bufferSize(dimensions, capacity, storeCapacity), false)
+                .order(ByteOrder.nativeOrder());
+
+        boolean internalShinglingEnabled = (flags & INTERNAL_SHINGLING_FLAG) != 0;
+        double[] knownShingle = null;
+        if (internalShinglingEnabled) {
+            knownShingle = new double[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                knownShingle[i] = buffer.getDouble(HEADER_BYTES + Double.BYTES * i);
+            }
+        }
+        int offset = HEADER_BYTES + Double.BYTES * dimensions;
+        int[] refCount = new int[capacity];
+        slice(buffer, offset, Integer.BYTES * capacity).asIntBuffer().get(refCount);
+        offset += Integer.BYTES * capacity;
+        int[] locationList = new int[capacity];
+        slice(buffer, offset, Integer.BYTES * capacity).asIntBuffer().get(locationList);
+
+        Builder builder = new Builder().dimensions(dimensions).shingleSize(header.getInt(8)).capacity(capacity)
+                .internalShinglingEnabled(internalShinglingEnabled)
+                .internalRotationEnabled((flags & ROTATION_FLAG) != 0)
+                .directLocationEnabled((flags & DIRECT_LOCATION_FLAG) != 0)
+                .dynamicResizingEnabled((flags & DYNAMIC_RESIZING_FLAG) != 0).indexCapacity(capacity)
+                .currentStoreCapacity(storeCapacity).refCount(refCount).locationList(locationList)
+                .startOfFreeSegment(header.getInt(24)).nextTimeStamp(header.getLong(32)).knownShingle(knownShingle);
+        builder.buffer = buffer;
+        return builder.build();
+    }
+
+    @Override
+    int getLocation(int index) {
+        return locations.get(index);
+    }
+
+    @Override
+    void setLocation(int index, int location) {
+        locations.put(index, location);
+    }
+
+    @Override
+    public int getRefCount(int index) {
+        return refCounts.get(index);
+    }
+
+    @Override
+    void setRefCount(int index, int count) {
+        refCounts.put(index, count);
+    }
+
+    @Override
+    void resizeIndices(int oldCapacity, int newCapacity) {
+        // the buffers are allocated for the maximum capacity, and the locations of
+        // unused indices are infeasible
+    }
+
+    /**
+     * @return a copy of the reference counts, used in mappers
+     */
+    @Override
+    public int[] getRefCount() {
+        int[] answer = new int[getIndexCapacity()];
+        for (int i = 0; i < answer.length; i++) {
+            answer[i] = refCounts.get(i);
+        }
+        return answer;
+    }
+
+    /**
+     * @return a copy of the locations of the points, used in mappers
+     */
+    @Override
+    public int[] getLocationList() {
+        int[] answer = new int[getIndexCapacity()];
+        for (int i = 0; i < answer.length; i++) {
+            answer[i] = locations.get(i);
+        }
+        return answer;
+    }
+
+    @Override
+    void resizeStore() {
+        // the store is allocated at the maximum capacity
+    }
+
+    @Override
+    boolean checkShingleAlignment(int location, double[] point) {
+        boolean test = (location - dimensions + baseDimension >= 0);
+        for (int i = 0; i < dimensions - baseDimension && test; i++) {
+            test = (((float) point[i]) == store.get(location - dimensions + baseDimension + i));
+        }
+        return test;
+    }
+
+    @Override
+    void copyPoint(double[] point, int src, int location, int length) {
+        for (int i = 0; i < length; i++) {
+            store.put(location + i, (float) point[src + i]);
+        }
+    }
+
+    @Override
+    public boolean pointEquals(int index, float[] point) {
+        indexManager.checkValidIndex(index);
+        checkArgument(point.length == dimensions, "point.length must be equal to dimensions");
+        int address = getLocation(index);
+        for (int j = 0; j < dimensions; j++) {
+            int position = (rotationEnabled) ? (j + address) % dimensions : j;
+            if (Float.floatToIntBits(point[position]) != Float.floatToIntBits(store.get(j + address))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean pointEqualsQuery(int index, double[] query) {
+        indexManager.checkValidIndex(index);
+        checkArgument(query.length == dimensions, "point.length must be equal to dimensions");
+        int address = getLocation(index);
+        for (int j = 0; j < dimensions; j++) {
+            int position = (rotationEnabled) ? (j + address) % dimensions : j;
+            if (Double.doubleToLongBits(query[position]) != Double.doubleToLongBits(store.get(j + address))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public float[] get(int index) {
+        indexManager.checkValidIndex(index);
+        int address = getLocation(index);
+        float[] answer = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            answer[(rotationEnabled) ? (address + i) % dimensions : i] = store.get(address + i);
+        }
+        return answer;
+    }
+
+    @Override
+    public double getCoordinate(int index, int dimension) {
+        indexManager.checkValidIndex(index);
+        checkArgument(dimension >= 0 && dimension < dimensions, "incorrect dimension");
+        return store.get(coordinateOffset(getLocation(index), dimension));
+    }
+
+    @Override
+    public void expandRanges(int index, float[] minValues, float[] maxValues) {
+        indexManager.checkValidIndex(index);
+        checkArgument(minValues.length == dimensions && maxValues.length == dimensions, "incorrect length");
+        int address = getLocation(index);
+        for (int j = 0; j < dimensions; j++) {
+            int position = (rotationEnabled) ? (j + address) % dimensions : j;
+            float value = store.get(j + address);
+            minValues[position] = Math.min(minValues[position], value);
+            maxValues[position] = Math.max(maxValues[position], value);
+        }
+    }
+
+    public float[] getScaledPoint(int index, double factor) {
+        float[] answer = get(index);
+        for (int i = 0; i < dimensions; i++) {
+            answer[i] *= factor;
+        }
+        return answer;
+    }
+
+    @Override
+    public String toString(int index) {
+        return Arrays.toString(get(index));
+    }
+
+    @Override
+    void copyTo(int dest, int source, int length) {
+        // dest is not larger than source, so copying forward is safe
+        for (int i = 0; i < length; i++) {
+            store.put(dest + i, store.get(source + i));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder extends PointStore.Builder<Builder> {
+        private float[] store = null;
+        private Path mappedFile = null;
+        private ByteBuffer buffer = null;
+
+        // initial point values, used for serialization
+        public Builder store(float[] store) {
+            this.store = store;
+            return this;
+        }
+
+        // the file to be memory mapped; the file is created or overwritten
+        public Builder mappedFile(Path mappedFile) {
+            this.mappedFile = mappedFile;
+            return this;
+        }
+
+        public OffHeapPointStoreFloat build() {
+            return new OffHeapPointStoreFloat(this);
+        }
+    }
+}
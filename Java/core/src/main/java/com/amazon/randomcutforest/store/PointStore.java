@@ -16,6 +16,7 @@
 package com.amazon.randomcutforest.store;
 
 import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
 import static com.amazon.randomcutforest.CommonUtils.checkState;
 
 import java.util.Arrays;
@@ -23,6 +24,9 @@ import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Optional;
 
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.NoOpForestMetrics;
+
 /**
  * PointStore is a fixed size repository of points, where each point is a float
  * array of a specified length. A PointStore counts references to points that
@@ -39,6 +43,8 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
     public static int INFEASIBLE_POINTSTORE_LOCATION = -2;
 
     public static int INFEASIBLE_POINTSTORE_INDEX = -1;
+
+    public static final int MIN_POINTS_PER_COMPACTION_STEP = 4;
     /**
      * an index manager to manage free locations
      */
@@ -112,6 +118,19 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
      * enable rotation of shingles; use a cyclic buffer instead of sliding window
      */
     boolean rotationEnabled;
+    /**
+     * records the compactions and the resizes of the store
+     */
+    protected IForestMetrics metrics = NoOpForestMetrics.INSTANCE;
+    /**
+     * spreads compactions over many adds, null unless incremental compaction is
+     * enabled and the location list is used and shingles are not rotated
+     */
+    IncrementalCompaction compaction;
+    /**
+     * the start of the free segment at the end of the last compaction
+     */
+    int compactedSize;
 
     /**
      * Decrement the reference count for the given index.
@@ -124,11 +143,60 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
     @Override
     public int decrementRefCount(int index) {
         indexManager.checkValidIndex(index);
-        if (refCount[index] == 1) {
+        int count = getRefCount(index);
+        if (count == 1) {
             indexManager.releaseIndex(index);
-            locationList[index] = PointStore.INFEASIBLE_POINTSTORE_LOCATION;
+            setLocation(index, PointStore.INFEASIBLE_POINTSTORE_LOCATION);
+        }
+        setRefCount(index, count - 1);
+        return count - 1;
+    }
+
+    /**
+     * the location in the store of the point with the given index; the arrays
+     * locationList and refCount are only accessed through these methods in this
+     * class, so that subclasses can keep them elsewhere
+     *
+     * @param index index of the point
+     * @return location of the point in the store
+     */
+    int getLocation(int index) {
+        return locationList[index];
+    }
+
+    /**
+     * the position in the store of a coordinate of the point at a location; with
+     * rotation, the coordinate c of a point is stored at the position congruent to
+     * c modulo the dimensions
+     *
+     * @param location  location of the point
+     * @param dimension the coordinate
+     * @return the position of the coordinate in the store
+     */
+    int coordinateOffset(int location, int dimension) {
+        return rotationEnabled ? location + Math.floorMod(dimension - location, dimensions) : location + dimension;
+    }
+
+    void setLocation(int index, int location) {
+        locationList[index] = location;
+    }
+
+    void setRefCount(int index, int count) {
+        refCount[index] = count;
+    }
+
+    /**
+     * grows the arrays indexed by the point index, new locations are infeasible
+     *
+     * @param oldCapacity the current index capacity
+     * @param newCapacity the new index capacity
+     */
+    void resizeIndices(int oldCapacity, int newCapacity) {
+        refCount = Arrays.copyOf(refCount, newCapacity);
+        locationList = Arrays.copyOf(locationList, newCapacity);
+        for (int i = oldCapacity; i < newCapacity; i++) {
+            locationList[i] = INFEASIBLE_POINTSTORE_LOCATION;
         }
-        return --refCount[index];
     }
 
     /**
@@ -163,11 +231,7 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
                 int oldCapacity = indexManager.getCapacity();
                 int newCapacity = Math.min(capacity, 2 * oldCapacity);
                 indexManager = new IndexManager(indexManager, newCapacity);
-                refCount = Arrays.copyOf(refCount, newCapacity);
-                locationList = Arrays.copyOf(locationList, newCapacity);
-                for (int i = oldCapacity; i < newCapacity; i++) {
-                    locationList[i] = INFEASIBLE_POINTSTORE_LOCATION;
-                }
+                resizeIndices(oldCapacity, newCapacity);
             } else {
                 throw new IllegalStateException(" index manager in point store is full ");
             }
@@ -182,7 +246,7 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
             compact();
             if (startOfFreeSegment > currentStoreCapacity * dimensions - amount) {
                 checkState(dynamicResizingEnabled, " out of store, enable dynamic resizing ");
-                resizeStore();
+                timedResizeStore();
                 checkState(startOfFreeSegment + amount <= currentStoreCapacity * dimensions, "out of space");
             }
         }
@@ -215,40 +279,93 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
         }
         int nextIndex;
         if (!directLocationMap) {
+            if (compaction != null) {
+                advanceCompaction();
+            }
             // suppose there was shingling then only the contents of the most recent
             // point has to be written, otherwise we need to write the full shingle
             int amountToWrite = checkShingleAlignment(startOfFreeSegment, tempPoint) ? baseDimension : dimensions;
 
             verifyAndMakeSpace(amountToWrite);
+            // making space may have compacted away the values the point was aligned with
+            if (amountToWrite < dimensions && !checkShingleAlignment(startOfFreeSegment, tempPoint)) {
+                amountToWrite = dimensions;
+                verifyAndMakeSpace(amountToWrite);
+            }
             nextIndex = takeIndex();
 
-            locationList[nextIndex] = startOfFreeSegment - dimensions + amountToWrite;
+            setLocation(nextIndex, startOfFreeSegment - dimensions + amountToWrite);
             copyPoint(tempPoint, dimensions - amountToWrite, startOfFreeSegment, amountToWrite);
             startOfFreeSegment += amountToWrite;
+            if (compaction != null) {
+                compaction.recordAdd(nextIndex, getLocation(nextIndex));
+            }
         } else {
             nextIndex = takeIndex();
-            int address = locationList[nextIndex];
+            int address = getLocation(nextIndex);
             if (address == INFEASIBLE_POINTSTORE_LOCATION) {
                 if (startOfFreeSegment + dimensions > currentStoreCapacity * dimensions) {
                     checkState(dynamicResizingEnabled, " out of store, enable dynamic resizing ");
-                    resizeStore();
+                    timedResizeStore();
                     if (startOfFreeSegment + dimensions > currentStoreCapacity * dimensions) {
                         indexManager.releaseIndex(nextIndex); // put back the last index
                         compact();
                         nextIndex = takeIndex();
                     }
                 }
-                locationList[nextIndex] = address = startOfFreeSegment;
+                address = startOfFreeSegment;
+                setLocation(nextIndex, address);
                 startOfFreeSegment = Math.max(startOfFreeSegment, address + dimensions);
             }
             copyPoint(tempPoint, 0, address, dimensions);
         }
-        refCount[nextIndex] = 1; // has to be after compactions
+        setRefCount(nextIndex, 1); // has to be after compactions
         return nextIndex;
     }
 
     abstract void resizeStore();
 
+    /**
+     * Advances the incremental compaction in progress, or starts a new one when
+     * half of the space that was free after the last compaction is used. The
+     * number of points moved per add is chosen so that the compaction completes
+     * well before the store runs out of space.
+     */
+    private void advanceCompaction() {
+        if (compaction.isInProgress()) {
+            long startTime = metrics.startTimer();
+            if (compaction.step()) {
+                compactedSize = startOfFreeSegment;
+            }
+            metrics.recordLatency(IForestMetrics.Operation.POINT_STORE_COMPACT_STEP, startTime);
+        } else {
+            int free = currentStoreCapacity * dimensions - startOfFreeSegment;
+            if (free < (currentStoreCapacity * dimensions - compactedSize) / 2) {
+                // visiting the entries takes size() / pointsPerStep adds, each of which
+                // writes at most dimensions values, and uses at most half of the free space
+                int pointsPerStep = (int) Math.max(MIN_POINTS_PER_COMPACTION_STEP,
+                        Math.ceil(2.0 * compaction.size() * dimensions / Math.max(free, 1)));
+                compaction.start(pointsPerStep);
+            }
+        }
+    }
+
+    private void timedResizeStore() {
+        long startTime = metrics.startTimer();
+        resizeStore();
+        metrics.recordLatency(IForestMetrics.Operation.POINT_STORE_RESIZE, startTime);
+    }
+
+    /**
+     * Sets the sink for the metrics of this store.
+     *
+     * @param metrics the metrics sink
+     */
+    public void setMetrics(IForestMetrics metrics) {
+        checkNotNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
     /**
      * Increment the reference count for the given index. This operation assumes
      * that there is currently a point stored at the given index and will throw an
@@ -261,7 +378,9 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
      */
     public int incrementRefCount(int index) {
         indexManager.checkValidIndex(index);
-        return ++refCount[index];
+        int count = getRefCount(index) + 1;
+        setRefCount(index, count);
+        return count;
     }
 
     @Override
@@ -271,7 +390,8 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
 
     /**
      * Test whether the given point is equal to the point stored at the given index.
-     * This operation uses point-wise <code>==</code> to test for equality.
+     * The coordinates are compared in the sense of Arrays.equals, so that the
+     * result agrees with comparing a copy of the stored point.
      *
      * @param index The index value of the point we are comparing to.
      * @param point The point we are comparing for equality.
@@ -472,9 +592,9 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
 
         for (int i = 0; i < indexManager.capacity; i++) {
             if (indexManager.occupied.get(i)) {
-                result.set(locationList[i] / baseDimension);
+                result.set(getLocation(i) / baseDimension);
             } else {
-                locationList[i] = INFEASIBLE_POINTSTORE_LOCATION;
+                setLocation(i, INFEASIBLE_POINTSTORE_LOCATION);
             }
         }
         return result;
@@ -487,6 +607,11 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
 
     public void compact() {
 
+        long startTime = metrics.startTimer();
+        // a full compaction supersedes an incremental one
+        if (compaction != null) {
+            compaction.invalidate();
+        }
         int runningLocation = 0;
         startOfFreeSegment = 0;
 
@@ -556,12 +681,14 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
         // now fix the addressing, assuming something has moved
         if (!movedTo.isEmpty()) {
             for (int i = 0; i < indexManager.capacity; i++) {
-                if (movedTo.containsKey(locationList[i])) { // need not have moved
-                    locationList[i] = movedTo.get(locationList[i]);
+                Integer newLocation = movedTo.get(getLocation(i));
+                if (newLocation != null) { // need not have moved
+                    setLocation(i, newLocation);
                 }
             }
         }
-
+        compactedSize = startOfFreeSegment;
+        metrics.recordLatency(IForestMetrics.Operation.POINT_STORE_COMPACT, startTime);
     }
 
     /**
@@ -677,6 +804,7 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
         private int[] refCount = null;
         private long nextTimeStamp = 0;
         private int startOfFreeSegment = 0;
+        private boolean incrementalCompactionEnabled = false;
 
         // dimension of the points being stored
         public T dimensions(int dimensions) {
@@ -779,6 +907,13 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
             return (T) this;
         }
 
+        // spread compactions over many adds, bounding the latency of an add
+        // has no effect with direct location or rotation
+        public T incrementalCompactionEnabled(boolean incrementalCompactionEnabled) {
+            this.incrementalCompactionEnabled = incrementalCompactionEnabled;
+            return (T) this;
+        }
+
     }
 
     public PointStore(Builder builder) {
@@ -846,6 +981,9 @@ public abstract class PointStore<Store, Point> implements IPointStore<Point> {
             }
             indexManager = new IndexManager(builder.indexCapacity, bits);
         }
+        if (builder.incrementalCompactionEnabled && !directLocationMap && !rotationEnabled) {
+            compaction = new IncrementalCompaction(this);
+        }
     }
 
 }
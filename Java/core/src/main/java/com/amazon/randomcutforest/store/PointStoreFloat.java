@@ -65,7 +65,8 @@ public class PointStoreFloat extends PointStore<float[], float[]> {
 
     /**
      * Test whether the given point is equal to the point stored at the given index.
-     * This operation uses point-wise <code>==</code> to test for equality.
+     * The coordinates are compared in the sense of Arrays.equals, so that the
+     * result agrees with comparing a copy of the stored point.
      *
      * @param index The index value of the point we are comparing to.
      * @param point The point we are comparing for equality.
@@ -85,13 +86,14 @@ public class PointStoreFloat extends PointStore<float[], float[]> {
         int address = directLocationMap ? index * dimensions : locationList[index];
         if (!rotationEnabled) {
             for (int j = 0; j < dimensions; j++) {
-                if (point[j] != store[j + address]) {
+                if (Float.floatToIntBits(point[j]) != Float.floatToIntBits(store[j + address])) {
                     return false;
                 }
             }
         } else {
             for (int j = 0; j < dimensions; j++) {
-                if (point[(j + address) % dimensions] != store[j + address]) {
+                if (Float.floatToIntBits(point[(j + address) % dimensions]) != Float
+                        .floatToIntBits(store[j + address])) {
                     return false;
                 }
             }
@@ -110,6 +112,28 @@ public class PointStoreFloat extends PointStore<float[], float[]> {
      * @throws IllegalArgumentException if the current reference count for this
      *                                  index is nonpositive.
      */
+    @Override
+    public boolean pointEqualsQuery(int index, double[] query) {
+        indexManager.checkValidIndex(index);
+        checkArgument(query.length == dimensions, "point.length must be equal to dimensions");
+        int address = locationList[index];
+        if (!rotationEnabled) {
+            for (int j = 0; j < dimensions; j++) {
+                if (Double.doubleToLongBits(query[j]) != Double.doubleToLongBits(store[j + address])) {
+                    return false;
+                }
+            }
+        } else {
+            for (int j = 0; j < dimensions; j++) {
+                if (Double.doubleToLongBits(query[(j + address) % dimensions]) != Double
+                        .doubleToLongBits(store[j + address])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     @Override
     public float[] get(int index) {
         indexManager.checkValidIndex(index);
@@ -125,6 +149,25 @@ public class PointStoreFloat extends PointStore<float[], float[]> {
         }
     }
 
+    @Override
+    public double getCoordinate(int index, int dimension) {
+        indexManager.checkValidIndex(index);
+        checkArgument(dimension >= 0 && dimension < dimensions, "incorrect dimension");
+        return store[coordinateOffset(locationList[index], dimension)];
+    }
+
+    @Override
+    public void expandRanges(int index, float[] minValues, float[] maxValues) {
+        indexManager.checkValidIndex(index);
+        checkArgument(minValues.length == dimensions && maxValues.length == dimensions, "incorrect length");
+        int address = locationList[index];
+        for (int j = 0; j < dimensions; j++) {
+            int position = (rotationEnabled) ? (j + address) % dimensions : j;
+            minValues[position] = Math.min(minValues[position], store[j + address]);
+            maxValues[position] = Math.max(maxValues[position], store[j + address]);
+        }
+    }
+
     public float[] getScaledPoint(int index, double factor) {
         float[] answer = get(index);
         for (int i = 0; i < dimensions; i++) {
@@ -146,6 +189,24 @@ public class PointStoreFloat extends PointStore<float[], float[]> {
         }
     }
 
+    /**
+     * Creates a copy of this point store that shares no state with it; later
+     * updates to either store are not visible in the other.
+     *
+     * @return a deep copy of this point store
+     */
+    public PointStoreFloat copy() {
+        return builder().internalRotationEnabled(rotationEnabled).internalShinglingEnabled(internalShinglingEnabled)
+                .dynamicResizingEnabled(dynamicResizingEnabled).directLocationEnabled(directLocationMap)
+                .indexCapacity(getIndexCapacity()).currentStoreCapacity(currentStoreCapacity).capacity(capacity)
+                .shingleSize(shingleSize).dimensions(dimensions)
+                .locationList(Arrays.copyOf(locationList, locationList.length))
+                .refCount(Arrays.copyOf(refCount, refCount.length)).startOfFreeSegment(startOfFreeSegment)
+                .nextTimeStamp(nextSequenceIndex)
+                .knownShingle((internalShinglingEnabled) ? getInternalShingle() : null)
+                .store(Arrays.copyOf(store, store.length)).build();
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.CommonUtils.checkState;
+import static com.amazon.randomcutforest.CommonUtils.validateInternalState;
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+
+import java.util.Arrays;
+
+/**
+ * A node store with the same semantics as {@link NodeStore}, where the parent,
+ * child and mass columns are short arrays. Every node index (including the
+ * leaves, which are stored at [capacity .. 2 * capacity]) and every mass is at
+ * most 2 * capacity, so the narrow columns can be used whenever the capacity is
+ * at most {@link #MAX_CAPACITY}. This covers the usual sample sizes and makes
+ * the columns read in a descent to a leaf half as wide.
+ */
+public class SmallNodeStore extends AbstractNodeStore {
+
+    /**
+     * The largest capacity for which all the node indices fit in a short.
+     */
+    public static final int MAX_CAPACITY = Short.MAX_VALUE / 2;
+
+    private final short[] parentIndex;
+    private final short[] leftIndex;
+    private final short[] rightIndex;
+    private final short[] mass;
+
+    /**
+     * Create a new SmallNodeStore with the given capacity.
+     *
+     * @param capacity The maximum number of Nodes whose data can be stored.
+     */
+    public SmallNodeStore(int capacity) {
+        super(capacity);
+        checkArgument(capacity <= MAX_CAPACITY, "capacity is too large for short indices");
+        parentIndex = new short[2 * capacity + 1];
+        mass = new short[2 * capacity + 1];
+        leftIndex = new short[capacity];
+        rightIndex = new short[capacity];
+        Arrays.fill(parentIndex, (short) NULL);
+        Arrays.fill(leftIndex, (short) NULL);
+        Arrays.fill(rightIndex, (short) NULL);
+    }
+
+    public SmallNodeStore(int capacity, int[] leftIndex, int[] rightIndex, int[] cutDimension, double[] cutValue,
+            int[] leafMass, int[] leafPointIndex, int[] freeNodeIndexes, int freeNodeIndexPointer,
+            int[] freeLeafIndexes, int freeLeafIndexPointer) {
+        super(capacity, cutDimension, cutValue, (leafMass != null) ? leafPointIndex : null, freeNodeIndexes,
+                freeNodeIndexPointer, freeLeafIndexes, freeLeafIndexPointer);
+        checkArgument(capacity <= MAX_CAPACITY, "capacity is too large for short indices");
+        checkArgument(leftIndex.length == capacity, "incorrect length of left indices");
+        this.leftIndex = toShortArray(leftIndex);
+        this.rightIndex = toShortArray(rightIndex);
+        this.parentIndex = deriveParentIndex(this.leftIndex, this.rightIndex);
+        this.mass = new short[2 * capacity + 1];
+        if (leafMass != null) {
+            validateInternalState(leafPointIndex != null, " incorrect state for needing samplers");
+            for (int i = 0; i < capacity + 1; i++) {
+                this.mass[i + capacity] = (short) leafMass[i];
+            }
+            for (int i = 0; i < capacity; i++) {
+                if (parentIndex[i] == NULL) {
+                    rebuildMass(i);
+                }
+            }
+        }
+    }
+
+    private static short[] toShortArray(int[] array) {
+        short[] result = new short[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = (short) array[i];
+        }
+        return result;
+    }
+
+    private static int[] toIntArray(short[] array, int from, int length) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = array[from + i];
+        }
+        return result;
+    }
+
+    void rebuildMass(int node) {
+        if (!isLeaf(node) && (leftIndex[node] != NULL && rightIndex[node] != NULL)) {
+            rebuildMass(leftIndex[node]);
+            rebuildMass(rightIndex[node]);
+            mass[node] = (short) (mass[leftIndex[node]] + mass[rightIndex[node]]);
+        }
+    }
+
+    short[] deriveParentIndex(short[] leftIndex, short[] rightIndex) {
+        int capacity = leftIndex.length;
+        checkState(rightIndex.length == capacity, "incorrect function call, arrays should be equal");
+        short[] parentIndex = new short[2 * capacity + 1];
+        Arrays.fill(parentIndex, (short) NULL);
+        for (short i = 0; i < capacity; i++) {
+            if (leftIndex[i] != NULL) {
+                checkState(parentIndex[leftIndex[i]] == NULL, "incorrect state, conflicting parent");
+                parentIndex[leftIndex[i]] = i;
+            }
+            if (rightIndex[i] != NULL) {
+                checkState(parentIndex[rightIndex[i]] == NULL, "incorrect state, conflicting parent");
+                parentIndex[rightIndex[i]] = i;
+            }
+        }
+        return parentIndex;
+    }
+
+    @Override
+    public int addNode(int parentIndex, int leftIndex, int rightIndex, int cutDimension, double cutValue, int mass) {
+        int index = freeNodeManager.takeIndex();
+        this.cutValue[index] = cutValue;
+        this.cutDimension[index] = cutDimension;
+        this.leftIndex[index] = (short) leftIndex;
+        this.rightIndex[index] = (short) rightIndex;
+        this.parentIndex[index] = (short) parentIndex;
+        this.mass[index] = (short) mass;
+        return index;
+    }
+
+    @Override
+    public int addLeaf(int parentIndex, int pointIndex, int mass) {
+        int index = freeLeafManager.takeIndex();
+        this.parentIndex[index + capacity] = (short) parentIndex;
+        this.mass[index + capacity] = (short) mass;
+        this.leafPointIndex[index] = pointIndex;
+        return index + capacity;
+    }
+
+    @Override
+    public void setParentIndex(int index, int parent) {
+        parentIndex[index] = (short) parent;
+    }
+
+    @Override
+    public int getParentIndex(int index) {
+        return parentIndex[index];
+    }
+
+    @Override
+    public void delete(int index) {
+        if (isLeaf(index)) {
+            parentIndex[index] = NULL;
+            leafPointIndex[computeLeafIndex(index)] = PointStore.INFEASIBLE_POINTSTORE_INDEX;
+            mass[index] = 0;
+            freeLeafManager.releaseIndex(computeLeafIndex(index));
+        } else {
+            mass[index] = 0;
+            leftIndex[index] = NULL;
+            rightIndex[index] = NULL;
+            parentIndex[index] = NULL;
+            freeNodeManager.releaseIndex(index);
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        Arrays.fill(parentIndex, (short) NULL);
+        Arrays.fill(leftIndex, (short) NULL);
+        Arrays.fill(rightIndex, (short) NULL);
+        Arrays.fill(mass, (short) 0);
+    }
+
+    @Override
+    public void replaceChild(int parent, int oldIndex, int newIndex) {
+        if (leftIndex[parent] == oldIndex) {
+            leftIndex[parent] = (short) newIndex;
+        } else {
+            rightIndex[parent] = (short) newIndex;
+        }
+    }
+
+    @Override
+    public int getRightIndex(int index) {
+        return rightIndex[index];
+    }
+
+    @Override
+    public int[] getRightIndex() {
+        return toIntArray(rightIndex, 0, capacity);
+    }
+
+    @Override
+    public void setRightIndex(int index, int child) {
+        rightIndex[index] = (short) child;
+    }
+
+    @Override
+    public int getLeftIndex(int index) {
+        return leftIndex[index];
+    }
+
+    @Override
+    public int[] getLeftIndex() {
+        return toIntArray(leftIndex, 0, capacity);
+    }
+
+    @Override
+    public void setLeftIndex(int index, int child) {
+        leftIndex[index] = (short) child;
+    }
+
+    @Override
+    public int incrementMass(int index) {
+        return ++mass[index];
+    }
+
+    @Override
+    public int decrementMass(int index) {
+        return --mass[index];
+    }
+
+    @Override
+    public int getMass(int index) {
+        return mass[index];
+    }
+
+    @Override
+    public void setMass(int index, int newMass) {
+        mass[index] = (short) newMass;
+    }
+
+    @Override
+    public void increaseMassOfSelfAndAncestors(int index) {
+        while (index != NULL) {
+            ++mass[index];
+            index = parentIndex[index];
+        }
+    }
+
+    @Override
+    public void decreaseMassOfSelfAndAncestors(int index) {
+        while (index != NULL) {
+            --mass[index];
+            index = parentIndex[index];
+        }
+    }
+
+    @Override
+    public int[] getLeafMass() {
+        return toIntArray(mass, capacity, capacity + 1);
+    }
+}
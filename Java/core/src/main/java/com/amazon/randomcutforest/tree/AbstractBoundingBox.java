@@ -17,6 +17,8 @@ package com.amazon.randomcutforest.tree;
 
 import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 
+import com.amazon.randomcutforest.store.IPointStoreView;
+
 /**
  * A BoundingBox is an n-dimensional rectangle. Formally, for i = 1, ..., n
  * there are min and max values a_i and b_i, with a_i less than or equal to b_i,
@@ -88,6 +90,16 @@ public abstract class AbstractBoundingBox<Point> implements IBoundingBoxView {
      */
     public abstract AbstractBoundingBox<Point> addPoint(final Point point);
 
+    /**
+     * The following will perform merge in place of a point of a point store, which
+     * is read without creating a copy; same as adding a copy of the point.
+     *
+     * @param pointStore the point store
+     * @param index      the index of the point in the store
+     * @return merged bounding box
+     */
+    abstract AbstractBoundingBox<Point> addPoint(IPointStoreView<Point> pointStore, int index);
+
     /**
      * The following will perform merge in place;
      *
@@ -17,16 +17,22 @@ package com.amazon.randomcutforest.tree;
 
 import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
+import static com.amazon.randomcutforest.CommonUtils.checkState;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Random;
 
+import com.amazon.randomcutforest.IVisitorFactory;
+import com.amazon.randomcutforest.MultiVisitor;
 import com.amazon.randomcutforest.RandomCutForest;
 import com.amazon.randomcutforest.Visitor;
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.NoOpForestMetrics;
 import com.amazon.randomcutforest.store.INodeStore;
 import com.amazon.randomcutforest.store.IPointStoreView;
 import com.amazon.randomcutforest.store.NodeStore;
+import com.amazon.randomcutforest.store.OffHeapNodeStore;
+import com.amazon.randomcutforest.store.SmallNodeStore;
 
 /**
  * A Compact Random Cut Tree is a tree data structure whose leaves represent
@@ -53,6 +59,25 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
      */
     public static final int NULL = -1;
 
+    /**
+     * a flyweight node view per thread, shared by all the compact trees and used
+     * in traversals that allow reuse of node views; the view is released at the
+     * end of each traversal, so that it does not keep the last tree reachable
+     */
+    private static final ThreadLocal<CompactNodeView> NODE_VIEW = ThreadLocal.withInitial(CompactNodeView::new);
+
+    private static final int INITIAL_PATH_CAPACITY = 64;
+
+    /**
+     * a path buffer per thread, used in the same traversals as the node view
+     */
+    private static final ThreadLocal<NodePath> NODE_PATH = ThreadLocal.withInitial(NodePath::new);
+
+    /**
+     * the stacks of the multi-visitor traversals per thread
+     */
+    private static final ThreadLocal<MultiNodePath> MULTI_NODE_PATH = ThreadLocal.withInitial(MultiNodePath::new);
+
     /**
      * number of maximum leaves in the tree
      */
@@ -62,7 +87,30 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
     protected IPointStoreView<Point> pointStore;
     protected IBoxCache<Point> boxCache;
     protected Point[] pointSum;
-    protected HashMap<Long, Integer>[] sequenceIndexes;
+    protected SequenceIndexes[] sequenceIndexes;
+    protected IForestMetrics metrics = NoOpForestMetrics.INSTANCE;
+
+    /**
+     * the leaf reached by the point of the last call to
+     * {@link #traverseForAdd(double[], IVisitorFactory)}, kept up to date by
+     * deletes until the next add, and NULL if there is none
+     */
+    private int addLeaf = NULL;
+    private Point addPoint;
+
+    /**
+     * if true, the nodes are laid out again in van Emde Boas order after every
+     * maxSize additions, see {@link #reorderNodesInVanEmdeBoasOrder()}; the tree
+     * then keeps a second node store of the same capacity
+     */
+    protected boolean relayoutEnabled;
+    private int addsSinceRelayout;
+
+    /**
+     * the node store replaced by the last relayout, which is cleared and reused by
+     * the next one when relayout is enabled, and null otherwise
+     */
+    private INodeStore spareNodeStore;
 
     public AbstractCompactRandomCutTree(
             com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.Builder<?> builder) {
@@ -77,7 +125,14 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
         }
 
         if (builder.root == NULL) {
-            this.nodeStore = new NodeStore(maxSize - 1);
+            // an empty store can be provided, e.g., an OffHeapNodeStore
+            if (builder.nodeStore != null) {
+                checkArgument(builder.nodeStore.getCapacity() == maxSize - 1, "incorrect node store capacity");
+                checkArgument(builder.nodeStore.size() == 0, "node store must be empty");
+                this.nodeStore = builder.nodeStore;
+            } else {
+                this.nodeStore = newNodeStore();
+            }
             this.root = null;
         } else {
             checkNotNull(builder.nodeStore, "nodeStore must not be null");
@@ -86,30 +141,347 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
         }
 
         if (storeSequenceIndexesEnabled) {
-            sequenceIndexes = new HashMap[maxSize];
+            sequenceIndexes = new SequenceIndexes[maxSize];
         }
+        this.relayoutEnabled = builder.relayoutEnabled;
+    }
+
+    /**
+     * @return a new empty node store for this tree; the indices are stored as
+     *         shorts when the maximum size of the tree permits
+     */
+    private INodeStore newNodeStore() {
+        return (maxSize - 1 <= SmallNodeStore.MAX_CAPACITY) ? new SmallNodeStore(maxSize - 1)
+                : new NodeStore(maxSize - 1);
     }
 
     public INodeStore getNodeStore() {
         return nodeStore;
     }
 
+    /**
+     * Sets the sink for the metrics of this tree, namely the hits and misses of
+     * the bounding box cache and the depths of the leaves reached by traversals.
+     *
+     * @param metrics the metrics sink
+     */
+    public void setMetrics(IForestMetrics metrics) {
+        checkNotNull(metrics, "metrics must not be null");
+        this.metrics = metrics;
+    }
+
     @Override
     protected INode<Integer> getNode(Integer node) {
         return new CompactNodeView(this, node);
     }
 
+    /**
+     * Checks if the point at a leaf equals the given point without copying the
+     * leaf point out of the point store. Note that the projection to the tree is
+     * the identity for compact trees.
+     *
+     * @param node  the leaf node
+     * @param point the point to compare with
+     * @return true if the leaf point equals the given point
+     */
+    boolean leafPointEquals(int node, double[] point) {
+        return pointStore.pointEqualsQuery(getPointReference(node), point);
+    }
+
+    /**
+     * The traversal descends using primitive node indices and records the path in
+     * an int buffer, and then replays the visitor from the leaf back to the root.
+     * When the visitor factory allows it, the visitor is presented with a single
+     * flyweight node view which is repositioned at each node. Together with
+     * visitors that are reused across traversals, this avoids all allocation per
+     * node and per tree. The order of the visits is the same as in
+     * {@link AbstractRandomCutTree}.
+     */
+    @Override
+    public <R> R traverse(double[] point, IVisitorFactory<R> visitorFactory) {
+        checkState(root != null, "this tree doesn't contain any nodes");
+        Visitor<R> visitor = visitorFactory.newVisitor(this, point);
+        if (visitorFactory.isNodeViewReusable()) {
+            // the projection to the tree is the identity, and the traversal only reads
+            // the point; so no copy is needed
+            traversePathToLeafAndVisitNodes(point, null, visitor, NODE_PATH.get(), NODE_VIEW.get());
+        } else {
+            // the visitor may start other traversals, so the buffers are not shared
+            traversePathToLeafAndVisitNodes(projectToTree(point), null, visitor, new NodePath(), null);
+        }
+        return visitorFactory.liftResult(this, visitor.getResult());
+    }
+
+    /**
+     * The traversal also checks that the point, in the precision of the point
+     * store, follows the same path; in that case the leaf reached is kept, and the
+     * following add of the point starts from that leaf instead of descending the
+     * tree again. The boxes of the ancestors of the leaf that the add examines are
+     * the boxes that the scoring visitors examine, and they are read from the
+     * cache rather than constructed again.
+     */
+    @Override
+    public <R> R traverseForAdd(double[] point, IVisitorFactory<R> visitorFactory) {
+        checkState(root != null, "this tree doesn't contain any nodes");
+        Visitor<R> visitor = visitorFactory.newVisitor(this, point);
+        Point treePoint = toTreePoint(point);
+        int leaf;
+        if (visitorFactory.isNodeViewReusable()) {
+            leaf = traversePathToLeafAndVisitNodes(point, treePoint, visitor, NODE_PATH.get(), NODE_VIEW.get());
+        } else {
+            leaf = traversePathToLeafAndVisitNodes(projectToTree(point), treePoint, visitor, new NodePath(), null);
+        }
+        addLeaf = leaf;
+        addPoint = (leaf == NULL) ? null : treePoint;
+        return visitorFactory.liftResult(this, visitor.getResult());
+    }
+
+    /**
+     * Descends to the leaf reached by the point, and visits the nodes from the leaf
+     * back to the root.
+     *
+     * @param point     the point
+     * @param treePoint the point in the precision of the point store, can be null
+     * @param visitor   the visitor
+     * @param path      the buffer for the path
+     * @param view      the flyweight node view, null if the visitor is presented
+     *                  with a new view at each node
+     * @return the leaf reached, or NULL if treePoint is null or would have followed
+     *         a different path
+     */
+    private <R> int traversePathToLeafAndVisitNodes(double[] point, Point treePoint, Visitor<R> visitor,
+            NodePath path, CompactNodeView<Point> view) {
+        path.clear();
+        int node = root;
+        while (!nodeStore.isLeaf(node)) {
+            path.add(node);
+            int cutDimension = nodeStore.getCutDimension(node);
+            double cutValue = nodeStore.getCutValue(node);
+            boolean left = point[cutDimension] <= cutValue;
+            if (treePoint != null && left != leftOf(treePoint, cutDimension, cutValue)) {
+                treePoint = null;
+            }
+            node = left ? nodeStore.getLeftIndex(node) : nodeStore.getRightIndex(node);
+        }
+        metrics.recordTreeDepth(path.size);
+        try {
+            visitor.acceptLeaf(nodeView(view, node), path.size);
+            for (int depthOfNode = path.size - 1; depthOfNode >= 0; depthOfNode--) {
+                visitor.accept(nodeView(view, path.nodes[depthOfNode]), depthOfNode);
+            }
+        } finally {
+            if (view != null) {
+                // the view outlives the traversal, and should not keep this tree reachable
+                view.release();
+            }
+        }
+        return (treePoint == null) ? NULL : node;
+    }
+
+    /**
+     * Visits the nodes in the same order as {@link AbstractRandomCutTree}, reading
+     * the node store directly. The nodes, the states and the visitors of the
+     * frames are held in arrays indexed by depth, which are reused by the
+     * traversals of a thread.
+     */
+    @Override
+    <R> void traverseTreeMulti(double[] point, MultiVisitor<R> visitor) {
+        MultiNodePath path = MULTI_NODE_PATH.get();
+        if (path.inUse) {
+            // a visitor started another traversal on this thread
+            path = new MultiNodePath();
+        }
+        path.inUse = true;
+        try {
+            traverseTreeMulti(point, visitor, path);
+        } finally {
+            path.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> void traverseTreeMulti(double[] point, MultiVisitor<R> visitor, MultiNodePath path) {
+        path.push(root, visitor);
+        while (path.size > 0) {
+            int depthOfNode = path.size - 1;
+            int node = path.nodes[depthOfNode];
+            MultiVisitor<R> nodeVisitor = (MultiVisitor<R>) path.visitors[depthOfNode];
+            if (nodeStore.isLeaf(node)) {
+                nodeVisitor.acceptLeaf(nodeView(null, node), depthOfNode);
+                path.pop();
+            } else if (path.states[depthOfNode] == MultiNodePath.NEW) {
+                boolean split = nodeVisitor.trigger(nodeView(null, node));
+                path.states[depthOfNode] = split ? MultiNodePath.SPLIT : MultiNodePath.DESCENDED;
+                boolean left = split || point[nodeStore.getCutDimension(node)] <= nodeStore.getCutValue(node);
+                path.push(left ? nodeStore.getLeftIndex(node) : nodeStore.getRightIndex(node), nodeVisitor);
+            } else if (path.states[depthOfNode] == MultiNodePath.SPLIT) {
+                MultiVisitor<R> splitVisitor = nodeVisitor.newCopy();
+                path.splitVisitors[depthOfNode] = splitVisitor;
+                path.states[depthOfNode] = MultiNodePath.SPLIT_DESCENDED;
+                path.push(nodeStore.getRightIndex(node), splitVisitor);
+            } else {
+                if (path.states[depthOfNode] == MultiNodePath.SPLIT_DESCENDED) {
+                    nodeVisitor.combine((MultiVisitor<R>) path.splitVisitors[depthOfNode]);
+                }
+                nodeVisitor.accept(nodeView(null, node), depthOfNode);
+                path.pop();
+            }
+        }
+    }
+
+    /**
+     * @param point a point in double precision
+     * @return a new point in the precision of the point store
+     */
+    protected abstract Point toTreePoint(double[] point);
+
+    @Override
+    public Integer addPoint(Integer pointReference, long sequenceNumber) {
+        try {
+            Integer result = super.addPoint(pointReference, sequenceNumber);
+            // the nodes are allocated wherever indices are free, and after maxSize
+            // additions the nodes on a path are typically scattered over the store
+            if (relayoutEnabled && ++addsSinceRelayout >= maxSize) {
+                addsSinceRelayout = 0;
+                reorderNodesInVanEmdeBoasOrder();
+            }
+            return result;
+        } finally {
+            addLeaf = NULL;
+            addPoint = null;
+        }
+    }
+
+    @Override
+    Integer findLeafForAdd(Point point) {
+        if (addLeaf != NULL && equals(addPoint, point)) {
+            return addLeaf;
+        }
+        addLeaf = NULL;
+        return findLeaf(point);
+    }
+
+    @Override
+    AbstractBoundingBox<Point> getBoundingBoxForAdd(Integer nodeReference) {
+        if (addLeaf != NULL) {
+            AbstractBoundingBox<Point> box = boxCache.getBox(nodeReference);
+            if (box != null) {
+                metrics.incrementCounter(IForestMetrics.Counter.BOX_CACHE_HIT, 1);
+                return box;
+            }
+        }
+        return getBoundingBox(nodeReference);
+    }
+
+    /**
+     * Keeps the leaf reached by the point of the last traversal for an add. The
+     * point still reaches that leaf when any other leaf is removed, since removing
+     * a leaf only removes the cut of its parent from the paths through its sibling.
+     * If that leaf is removed, the point reaches a leaf below the sibling.
+     */
+    @Override
+    void leafRemoved(Integer leaf, Integer sibling) {
+        if (addLeaf != NULL && addLeaf == leaf) {
+            if (sibling == null) {
+                addLeaf = NULL;
+                addPoint = null;
+            } else {
+                int node = sibling;
+                while (!nodeStore.isLeaf(node)) {
+                    node = leftOf(addPoint, nodeStore.getCutDimension(node), nodeStore.getCutValue(node))
+                            ? nodeStore.getLeftIndex(node)
+                            : nodeStore.getRightIndex(node);
+                }
+                addLeaf = node;
+            }
+        }
+    }
+
+    private INodeView nodeView(CompactNodeView<Point> view, int node) {
+        if (view == null) {
+            return new CompactNodeView<>(this, node);
+        }
+        view.setCurrentNode(this, node);
+        return view;
+    }
+
+    /**
+     * A growable buffer of the node indices on a path from the root.
+     */
+    private static class NodePath {
+        int[] nodes = new int[INITIAL_PATH_CAPACITY];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * size);
+            }
+            nodes[size++] = node;
+        }
+    }
+
+    /**
+     * The frames of a multi-visitor traversal, indexed by the depth of their node.
+     * The frame of a node that is not a leaf is new until the node is triggered,
+     * then descended once the child on the path of the point is pushed, or split
+     * until the copy of the visitor descends to the right child.
+     */
+    private static class MultiNodePath {
+        static final byte NEW = 0;
+        static final byte DESCENDED = 1;
+        static final byte SPLIT = 2;
+        static final byte SPLIT_DESCENDED = 3;
+
+        int[] nodes = new int[INITIAL_PATH_CAPACITY];
+        byte[] states = new byte[INITIAL_PATH_CAPACITY];
+        MultiVisitor<?>[] visitors = new MultiVisitor<?>[INITIAL_PATH_CAPACITY];
+        MultiVisitor<?>[] splitVisitors = new MultiVisitor<?>[INITIAL_PATH_CAPACITY];
+        int size;
+        boolean inUse;
+
+        void push(int node, MultiVisitor<?> visitor) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * size);
+                states = Arrays.copyOf(states, 2 * size);
+                visitors = Arrays.copyOf(visitors, 2 * size);
+                splitVisitors = Arrays.copyOf(splitVisitors, 2 * size);
+            }
+            nodes[size] = node;
+            states[size] = NEW;
+            visitors[size] = visitor;
+            splitVisitors[size] = null;
+            ++size;
+        }
+
+        void pop() {
+            --size;
+            visitors[size] = null;
+            splitVisitors[size] = null;
+        }
+
+        /**
+         * Drops the references to the visitors, which may be left on the stack if
+         * a visitor threw.
+         */
+        void release() {
+            while (size > 0) {
+                pop();
+            }
+            inUse = false;
+        }
+    }
+
     @Override
     protected void addSequenceIndex(Integer nodeRef, long sequenceIndex) {
         int leafRef = nodeStore.computeLeafIndex(nodeRef);
         if (sequenceIndexes[leafRef] == null) {
-            sequenceIndexes[leafRef] = new HashMap<>();
-        }
-        int num = 0;
-        if (sequenceIndexes[leafRef].containsKey(sequenceIndex)) {
-            num = sequenceIndexes[leafRef].get(sequenceIndex);
+            sequenceIndexes[leafRef] = new SequenceIndexes();
         }
-        sequenceIndexes[leafRef].put(sequenceIndex, num + 1);
+        sequenceIndexes[leafRef].add(sequenceIndex);
     }
 
     public double getBoundingBoxCacheFraction() {
@@ -146,63 +518,48 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
      * producing the cannoical order.
      *
      * The algorithm first renumbers the nodes in BFS ordering. Then the cached
-     * bounding boxes (for the internal nodes) and the sequence Index maps (for the
-     * leaves) are swapped based on the renumbering map. The swapping of the
-     * bounding boxes are abstract and left to the concrete implemenations that know
-     * the precision setting. The algorithm validates its work as it proceeds.
+     * bounding boxes and point sums (for the internal nodes) and the sequence Index
+     * maps (for the leaves) are swapped based on the renumbering map. The swapping
+     * of the bounding boxes are abstract and left to the concrete implemenations
+     * that know the precision setting. The algorithm validates its work as it
+     * proceeds.
      *
      * Note that if the root is a singleton leaf then it will get mapped to 0 +
      * maxSize in the current node store implementation.
      */
     public void reorderNodesInBreadthFirstOrder() {
-        NodeStore result = new NodeStore(maxSize - 1);
+        reorderNodes(false);
+    }
+
+    /**
+     * Renumbers the nodes in van Emde Boas order: the top half of the levels of
+     * the tree is laid out first (recursively in the same order), followed by each
+     * of the subtrees below it from left to right (also recursively). The nodes on
+     * any path from the root to a leaf then span few blocks of the node store, for
+     * every size of cache line and page, which makes descents such as
+     * {@link #findLeaf} cheaper in trees that have been updated for a long time.
+     * The structure of the tree, and hence every score, is unchanged.
+     */
+    public void reorderNodesInVanEmdeBoasOrder() {
+        reorderNodes(true);
+    }
+
+    private void reorderNodes(boolean vanEmdeBoas) {
+        addLeaf = NULL;
+        addPoint = null;
+        INodeStore result = spareNodeStore;
+        if (result == null) {
+            result = newEmptyNodeStore();
+        } else {
+            result.clear();
+        }
         if (root != null) {
+            int[] map = copyInOrder(result, vanEmdeBoas ? vanEmdeBoasOrder() : breadthFirstOrder());
             if (!isLeaf(root)) {
-                int nodeCounter = 0;
-                int currentNode = 0;
-                int leafcounter = maxSize - 1;
-                int[] map = new int[2 * maxSize - 1];
-                Arrays.fill(map, NULL);
-                ArrayBlockingQueue<Integer> nodeQueue = new ArrayBlockingQueue<>(maxSize - 1);
-                nodeQueue.add(root);
-                while (!nodeQueue.isEmpty()) {
-                    int head = nodeQueue.poll();
-                    int newLeft;
-                    int leftChild = getLeftChild(head);
-                    if (isLeaf(leftChild)) {
-                        // the parent is the current node and the indices, mass are being copied over
-                        map[leftChild] = result.addLeaf(currentNode, getPointReference(leftChild), getMass(leftChild));
-                        assert map[leftChild] == leafcounter : "incorrect state";
-                        newLeft = leafcounter++;
-                    } else { // leftchild is an internal node
-                        newLeft = ++nodeCounter;
-                        nodeQueue.add(leftChild);
-                    }
-                    int newRight;
-                    int rightChild = getRightChild(head);
-                    if (isLeaf(rightChild)) {
-                        // the parent is the current node and the indices, mass are being copied over
-                        map[rightChild] = result.addLeaf(currentNode, getPointReference(rightChild),
-                                getMass(rightChild));
-                        assert map[rightChild] == leafcounter : "incorrect state";
-                        newRight = leafcounter++;
-                    } else {
-                        newRight = ++nodeCounter;
-                        nodeQueue.add(rightChild);
-                    }
-                    // the parent has to be added by now
-                    int parent = (head == root) ? -1 : map[getParent(head)];
-                    map[head] = result.addNode(parent, newLeft, newRight, getCutDimension(head), getCutValue(head),
-                            getMass(head));
-                    assert map[head] == currentNode : "incorrect state";
-                    currentNode++;
-                }
-                assert currentNode == nodeStore.size() : "incorrect state";
-
                 boxCache.swapCaches(map);
 
                 if (storeSequenceIndexesEnabled) {
-                    HashMap<Long, Integer>[] newSequence = new HashMap[maxSize];
+                    SequenceIndexes[] newSequence = new SequenceIndexes[maxSize];
                     for (int i = 0; i < maxSize; i++) { // iterate over leaves
                         if (map[i + maxSize - 1] != NULL) { // leaf is in use
                             assert isLeaf(map[i + maxSize - 1]) : "error in map";
@@ -211,19 +568,442 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
                     }
                     sequenceIndexes = newSequence;
                 }
-                root = 0;
-            } else {
-                root = result.addLeaf(NULL, getPointReference(root), getMass(root));
+
+                if (centerOfMassEnabled) {
+                    Point[] newPointSum = Arrays.copyOf(pointSum, pointSum.length);
+                    Arrays.fill(newPointSum, null);
+                    for (int i = 0; i < maxSize - 1; i++) { // iterate over internal nodes
+                        if (map[i] != NULL) {
+                            newPointSum[map[i]] = pointSum[i];
+                        }
+                    }
+                    pointSum = newPointSum;
+                }
             }
+            root = map[root];
         }
+        // the two stores of a tree with automatic relayout take turns, and no store
+        // is allocated after the first relayout
+        spareNodeStore = relayoutEnabled ? nodeStore : null;
         nodeStore = result;
-        if (centerOfMassEnabled) {
-            if (!isLeaf(root)) {
-                recomputePointSum(root);
+    }
+
+    /**
+     * @return a new empty node store of the same kind as the current one
+     */
+    private INodeStore newEmptyNodeStore() {
+        return (nodeStore instanceof OffHeapNodeStore) ? ((OffHeapNodeStore) nodeStore).newEmptyStore()
+                : newNodeStore();
+    }
+
+    /**
+     * @return the internal nodes of this tree in breadth first order, empty if the
+     *         root is a leaf
+     */
+    private int[] breadthFirstOrder() {
+        if (nodeStore.isLeaf(root)) {
+            return new int[0];
+        }
+        int[] order = new int[nodeStore.size()];
+        int size = 0;
+        order[size++] = root;
+        for (int head = 0; head < size; head++) {
+            int leftChild = nodeStore.getLeftIndex(order[head]);
+            if (!nodeStore.isLeaf(leftChild)) {
+                order[size++] = leftChild;
+            }
+            int rightChild = nodeStore.getRightIndex(order[head]);
+            if (!nodeStore.isLeaf(rightChild)) {
+                order[size++] = rightChild;
+            }
+        }
+        assert size == order.length : "incorrect state";
+        return order;
+    }
+
+    /**
+     * @return the internal nodes of this tree in van Emde Boas order, empty if the
+     *         root is a leaf
+     */
+    private int[] vanEmdeBoasOrder() {
+        if (nodeStore.isLeaf(root)) {
+            return new int[0];
+        }
+        return new VanEmdeBoasLayout(nodeStore).layout(root);
+    }
+
+    /**
+     * Copies the nodes of this tree into an empty node store, such that the
+     * internal node order[i] becomes node i of the store. The leaves are numbered
+     * in the order in which their parents are copied, left child first. The tree
+     * itself is not modified. The root must not be null.
+     *
+     * @param result an empty node store with the same capacity as the current one
+     * @param order  the internal nodes of the tree, starting with the root and
+     *               such that every node comes after its parent
+     * @return the renumbering of the nodes, node i is renumbered to map[i] in the
+     *         result and unused nodes are mapped to NULL
+     */
+    private int[] copyInOrder(INodeStore result, int[] order) {
+        int[] map = new int[2 * maxSize - 1];
+        Arrays.fill(map, NULL);
+        int rootIndex = root;
+        if (nodeStore.isLeaf(rootIndex)) {
+            map[rootIndex] = result.addLeaf(NULL, nodeStore.getPointIndex(rootIndex), nodeStore.getMass(rootIndex));
+            return map;
+        }
+        for (int i = 0; i < order.length; i++) {
+            map[order[i]] = i;
+        }
+        for (int i = 0; i < order.length; i++) {
+            int node = order[i];
+            int leftChild = nodeStore.getLeftIndex(node);
+            if (nodeStore.isLeaf(leftChild)) {
+                // the parent is the current node and the indices, mass are being copied over
+                map[leftChild] = result.addLeaf(i, nodeStore.getPointIndex(leftChild), nodeStore.getMass(leftChild));
+            }
+            int rightChild = nodeStore.getRightIndex(node);
+            if (nodeStore.isLeaf(rightChild)) {
+                map[rightChild] = result.addLeaf(i, nodeStore.getPointIndex(rightChild),
+                        nodeStore.getMass(rightChild));
+            }
+            // the parent has been copied by now
+            int parent = (node == rootIndex) ? NULL : map[nodeStore.getParentIndex(node)];
+            int index = result.addNode(parent, map[leftChild], map[rightChild], nodeStore.getCutDimension(node),
+                    nodeStore.getCutValue(node), nodeStore.getMass(node));
+            assert index == i : "incorrect state";
+        }
+        assert order.length == nodeStore.size() : "incorrect state";
+        return map;
+    }
+
+    /**
+     * Computes the van Emde Boas order of the internal nodes of a tree, see
+     * {@link #reorderNodesInVanEmdeBoasOrder()}, with explicit stacks of primitive
+     * values. The recursion is only on the number of levels, which is halved at
+     * each call.
+     */
+    private static class VanEmdeBoasLayout {
+        private final INodeStore nodeStore;
+        private final int[] order;
+        private int size;
+
+        /**
+         * the roots of the bottom subtrees that remain to be laid out, for every
+         * level of the recursion
+         */
+        private final int[] roots;
+        private int rootsSize;
+
+        /**
+         * the stack of a depth first search, with the depths of the nodes
+         */
+        private final int[] stack;
+        private final int[] depths;
+
+        VanEmdeBoasLayout(INodeStore nodeStore) {
+            this.nodeStore = nodeStore;
+            order = new int[nodeStore.size()];
+            roots = new int[nodeStore.size()];
+            stack = new int[nodeStore.size()];
+            depths = new int[nodeStore.size()];
+        }
+
+        int[] layout(int root) {
+            layout(root, height(root));
+            assert size == order.length : "incorrect state";
+            return order;
+        }
+
+        /**
+         * @return the number of levels of internal nodes below the root, inclusive
+         */
+        private int height(int root) {
+            int height = 0;
+            int top = 0;
+            stack[top] = root;
+            depths[top++] = 1;
+            while (top > 0) {
+                int node = stack[--top];
+                int depth = depths[top];
+                height = Math.max(height, depth);
+                top = pushChildren(node, depth + 1, top);
+            }
+            return height;
+        }
+
+        /**
+         * Pushes the internal children of a node, the left child on top.
+         */
+        private int pushChildren(int node, int depth, int top) {
+            int rightChild = nodeStore.getRightIndex(node);
+            if (!nodeStore.isLeaf(rightChild)) {
+                stack[top] = rightChild;
+                depths[top++] = depth;
+            }
+            int leftChild = nodeStore.getLeftIndex(node);
+            if (!nodeStore.isLeaf(leftChild)) {
+                stack[top] = leftChild;
+                depths[top++] = depth;
+            }
+            return top;
+        }
+
+        /**
+         * Lays out the internal nodes of the subtree of a node that are less than a
+         * given number of levels below it.
+         */
+        private void layout(int node, int levels) {
+            if (levels == 1) {
+                order[size++] = node;
+                return;
             }
+            int topLevels = levels / 2;
+            layout(node, topLevels);
+            // the roots of the bottom subtrees, from left to right
+            int base = rootsSize;
+            int top = 0;
+            stack[top] = node;
+            depths[top++] = 0;
+            while (top > 0) {
+                int current = stack[--top];
+                int depth = depths[top];
+                if (depth == topLevels) {
+                    roots[rootsSize++] = current;
+                } else {
+                    top = pushChildren(current, depth + 1, top);
+                }
+            }
+            for (int i = base; i < rootsSize; i++) {
+                layout(roots[i], levels - topLevels);
+            }
+            rootsSize = base;
         }
     }
 
+    /**
+     * Creates a copy of this tree that shares no state with it, except for the
+     * point store provided, which is typically a copy of the point store of this
+     * tree (see {@link com.amazon.randomcutforest.store.PointStoreFloat#copy()}).
+     * The nodes of the copy are laid out in breadth first order. Every bounding
+     * box managed by the cache of the copy (and every point sum, if the center of
+     * mass is enabled) is computed up front, so that traversals of the copy do not
+     * write to it and the copy can be traversed from several threads as long as it
+     * is not updated.
+     *
+     * @param pointStore the point store used by the copy, it must contain the
+     *                   points of this tree at the same indices
+     * @return a copy of this tree
+     */
+    public AbstractCompactRandomCutTree<Point> copy(IPointStoreView<Point> pointStore) {
+        INodeStore store = newEmptyNodeStore();
+        if (root == null) {
+            return newTree(pointStore, store, NULL);
+        }
+        int[] map = copyInOrder(store, breadthFirstOrder());
+        AbstractCompactRandomCutTree<Point> copy = newTree(pointStore, store, map[root]);
+        if (storeSequenceIndexesEnabled) {
+            for (int i = 0; i < maxSize; i++) { // iterate over leaves
+                if (map[i + maxSize - 1] != NULL && sequenceIndexes[i] != null) {
+                    copy.sequenceIndexes[map[i + maxSize - 1] - maxSize + 1] = sequenceIndexes[i].copy();
+                }
+            }
+        }
+        if (!isLeaf(root)) {
+            // children are numbered after their parents, so the boxes are built bottom up
+            for (int i = store.size() - 1; i >= 0; i--) {
+                if (copy.boxCache.containsKey(i) && !copy.boxCache.hasBox(i)) {
+                    copy.boxCache.setBox(i, copy.constructBoxInPlace(i));
+                }
+            }
+            if (centerOfMassEnabled) {
+                copy.recomputePointSum(copy.root);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Builds this tree from a sample of points in a single top-down pass, as
+     * {@link HyperTree#makeTree} does for pointer based trees, instead of adding
+     * the points one at a time. Each node is given a random cut of the bounding
+     * box of the points below it, which is the distribution of the cut of that
+     * node in a tree built by {@link #addPoint}; hence the tree has the same
+     * distribution as a tree to which the points are added in any order, but it
+     * is not the same tree. The points are partitioned by the cut in place, the
+     * bounding boxes of the children are built during the partition, and equal
+     * points end up in a single leaf. The boxes managed by the cache and the point
+     * sums, if enabled, are set as the tree is built.
+     *
+     * @param pointReferences the references of the points in the point store,
+     *                        which are not modified
+     * @param sequenceIndexes the sequence indexes of the points, in the same
+     *                        order; only used if sequence indexes are stored
+     */
+    public void makeTree(int[] pointReferences, long[] sequenceIndexes) {
+        checkState(root == null, "the tree must be empty");
+        checkNotNull(pointReferences, "pointReferences must not be null");
+        checkArgument(pointReferences.length <= maxSize, "too many points");
+        checkArgument(!storeSequenceIndexesEnabled
+                || (sequenceIndexes != null && sequenceIndexes.length == pointReferences.length),
+                "incorrect sequence indexes");
+        if (pointReferences.length == 0) {
+            return;
+        }
+        int[] references = Arrays.copyOf(pointReferences, pointReferences.length);
+        long[] sequences = storeSequenceIndexesEnabled ? Arrays.copyOf(sequenceIndexes, sequenceIndexes.length)
+                : null;
+        AbstractBoundingBox<Point> box = null;
+        for (int reference : references) {
+            box = extendBox(box, reference);
+        }
+        root = makeSubtree(references, sequences, 0, references.length, box, nextRandom());
+    }
+
+    /**
+     * Builds the subtree of the points in a range of the arrays, see
+     * {@link #makeTree}. The subtrees are built depth first, left child first,
+     * with an explicit stack of ranges instead of recursion, since the depth of a
+     * tree can be as large as the number of points. A node is added to the store
+     * once both of its children have been built.
+     *
+     * @return the root of the subtree, with no parent
+     */
+    @SuppressWarnings("unchecked")
+    private int makeSubtree(int[] references, long[] sequences, int start, int end, AbstractBoundingBox<Point> box,
+            Random random) {
+        // the ranges on the stack are nested, so the stack holds at most one range
+        // per point
+        int capacity = end - start;
+        int[] starts = new int[capacity];
+        int[] middles = new int[capacity];
+        int[] ends = new int[capacity];
+        int[] cutDimensions = new int[capacity];
+        double[] cutValues = new double[capacity];
+        int[] leftChildren = new int[capacity];
+        AbstractBoundingBox<Point>[] boxes = new AbstractBoundingBox[capacity];
+        AbstractBoundingBox<Point>[] rightBoxes = new AbstractBoundingBox[capacity];
+
+        int size = 0;
+        starts[size] = start;
+        ends[size] = end;
+        boxes[size] = box;
+        leftChildren[size] = NULL;
+        middles[size++] = NULL;
+        // the root of the last subtree that was completed
+        int child = NULL;
+        while (size > 0) {
+            int top = size - 1;
+            int rangeStart = starts[top];
+            int rangeEnd = ends[top];
+            if (middles[top] == NULL) {
+                // a new range
+                if (boxes[top].getRangeSum() <= 0) {
+                    // all the points are equal
+                    child = nodeStore.addLeaf(NULL, references[rangeStart], rangeEnd - rangeStart);
+                    if (storeSequenceIndexesEnabled) {
+                        for (int i = rangeStart; i < rangeEnd; i++) {
+                            addSequenceIndex(child, sequences[i]);
+                        }
+                    }
+                    boxes[top] = null;
+                    --size;
+                    continue;
+                }
+
+                Cut cut = randomCut(random, boxes[top]);
+                int cutDimension = cut.getDimension();
+                double cutValue = cut.getValue();
+                AbstractBoundingBox<Point> leftBox = null;
+                AbstractBoundingBox<Point> rightBox = null;
+                int middle = rangeStart;
+                int rightStart = rangeEnd;
+                while (middle < rightStart) {
+                    if (pointStore.leftOf(references[middle], cutDimension, cutValue)) {
+                        leftBox = extendBox(leftBox, references[middle]);
+                        ++middle;
+                    } else {
+                        --rightStart;
+                        swap(references, sequences, middle, rightStart);
+                        rightBox = extendBox(rightBox, references[rightStart]);
+                    }
+                }
+                // the cut lies in the box, so that both sides are nonempty
+                checkState(leftBox != null && rightBox != null, "incorrect cut");
+                cutDimensions[top] = cutDimension;
+                cutValues[top] = cutValue;
+                middles[top] = middle;
+                rightBoxes[top] = rightBox;
+
+                starts[size] = rangeStart;
+                ends[size] = middle;
+                boxes[size] = leftBox;
+                leftChildren[size] = NULL;
+                middles[size++] = NULL;
+            } else if (leftChildren[top] == NULL) {
+                // the left subtree is complete
+                leftChildren[top] = child;
+                starts[size] = middles[top];
+                ends[size] = rangeEnd;
+                boxes[size] = rightBoxes[top];
+                rightBoxes[top] = null;
+                leftChildren[size] = NULL;
+                middles[size++] = NULL;
+            } else {
+                // both subtrees are complete
+                int leftChild = leftChildren[top];
+                int rightChild = child;
+                int node = nodeStore.addNode(NULL, leftChild, rightChild, cutDimensions[top], cutValues[top],
+                        rangeEnd - rangeStart);
+                nodeStore.setParentIndex(leftChild, node);
+                nodeStore.setParentIndex(rightChild, node);
+                if (isBoundingBoxCacheEnabled()) {
+                    boxCache.setBox(node, boxes[top]);
+                }
+                if (centerOfMassEnabled) {
+                    // the point sums of the children are present
+                    recomputePointSum(node);
+                }
+                boxes[top] = null;
+                child = node;
+                --size;
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @return the box extended by a point of the store, or a new box containing
+     *         just the point if the box is null
+     */
+    private AbstractBoundingBox<Point> extendBox(AbstractBoundingBox<Point> box, int reference) {
+        return (box == null) ? getInternalTwoPointBox(reference, reference) : box.addPoint(pointStore, reference);
+    }
+
+    private static void swap(int[] references, long[] sequences, int i, int j) {
+        int reference = references[i];
+        references[i] = references[j];
+        references[j] = reference;
+        if (sequences != null) {
+            long sequence = sequences[i];
+            sequences[i] = sequences[j];
+            sequences[j] = sequence;
+        }
+    }
+
+    /**
+     * Creates a tree with the same configuration as this tree, for
+     * {@link #copy(IPointStoreView)}.
+     *
+     * @param pointStore the point store of the new tree
+     * @param nodeStore  the node store of the new tree
+     * @param root       the root of the new tree in the node store, NULL if the
+     *                   node store is empty
+     * @return a new tree
+     */
+    protected abstract AbstractCompactRandomCutTree<Point> newTree(IPointStoreView<Point> pointStore,
+            INodeStore nodeStore, int root);
+
     /**
      * deletes a sequence index from a leaf map; if multiple sequence indices are
      * present (for external shingling, timestamp etc. reasons) then the count is
@@ -235,15 +1015,10 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
     @Override
     protected void deleteSequenceIndex(Integer nodeRef, long sequenceIndex) {
         int leafRef = nodeStore.computeLeafIndex(nodeRef);
-        if (sequenceIndexes[leafRef] == null || !sequenceIndexes[leafRef].containsKey(sequenceIndex)) {
+        if (sequenceIndexes[leafRef] == null) {
             throw new IllegalStateException("Error in sequence index. Inconsistency in trees in delete step.");
         }
-        int num = sequenceIndexes[leafRef].get(sequenceIndex);
-        if (num == 1) {
-            sequenceIndexes[leafRef].remove(sequenceIndex);
-        } else {
-            sequenceIndexes[leafRef].put(sequenceIndex, num - 1);
-        }
+        sequenceIndexes[leafRef].remove(sequenceIndex);
     }
 
     /**
@@ -263,16 +1038,18 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
         if (isLeaf(nodeReference)) {
             return getMutableLeafBoxFromLeafNode(nodeReference);
         } else if (isBoundingBoxCacheEnabled()) {
-            return constructBoxInPlace(constructBoxInPlace(getLeftChild(nodeReference)), getRightChild(nodeReference));
-        } else {
             AbstractBoundingBox<Point> oldBox = boxCache.getBox(nodeReference);
             if (oldBox != null) { // note cachemanager can have a null box, after deserialization
+                metrics.incrementCounter(IForestMetrics.Counter.BOX_CACHE_HIT, 1);
                 return oldBox.copy();
             }
+            metrics.incrementCounter(IForestMetrics.Counter.BOX_CACHE_MISS, 1);
             AbstractBoundingBox<Point> currentBox = constructBoxInPlace(
                     constructBoxInPlace(getLeftChild(nodeReference)), getRightChild(nodeReference));
             boxCache.setBox(nodeReference, currentBox.copy());
             return currentBox;
+        } else {
+            return constructBoxInPlace(constructBoxInPlace(getLeftChild(nodeReference)), getRightChild(nodeReference));
         }
     }
 
@@ -289,12 +1066,13 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
      */
     AbstractBoundingBox<Point> constructBoxInPlace(AbstractBoundingBox<Point> currentBox, Integer nodeReference) {
         if (isLeaf(nodeReference)) {
-            return currentBox.addPoint(getPointFromLeafNode(nodeReference));
+            return currentBox.addPoint(pointStore, getPointReference(nodeReference));
         } else if (isBoundingBoxCacheEnabled()) {
-            AbstractBoundingBox<Point> oldBox = boxCache.getBox(nodeReference);
-            if (oldBox != null) {
-                return currentBox.addBox(oldBox);
+            if (boxCache.addBoxTo(nodeReference, currentBox)) {
+                metrics.incrementCounter(IForestMetrics.Counter.BOX_CACHE_HIT, 1);
+                return currentBox;
             }
+            metrics.incrementCounter(IForestMetrics.Counter.BOX_CACHE_MISS, 1);
             AbstractBoundingBox<Point> newBox = constructBoxInPlace(nodeReference);
             boxCache.setBox(nodeReference, newBox);
             return currentBox.addBox(newBox);
@@ -315,7 +1093,7 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
      */
     @Override
     AbstractBoundingBox<Point> recomputeBox(Integer node) {
-        if (boxCache.getBox(node) != null) {
+        if (boxCache.hasBox(node)) {
             // cannot invoke constructBoxInPlace(node) because that would re-use the old
             // box
             AbstractBoundingBox<Point> newBox = constructBoxInPlace(constructBoxInPlace(getLeftChild(node)),
@@ -357,6 +1135,27 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
         return (pointIndex == NULL) ? null : pointStore.get(pointIndex);
     }
 
+    // compares the point in the store without creating a copy
+    @Override
+    boolean pointEquals(Integer pointReference, Point point) {
+        return pointReference != null && pointStore.pointEquals(pointReference, point);
+    }
+
+    // follows the path of a point in the store without creating a copy
+    @Override
+    Integer findLeafOfReference(Integer pointReference) {
+        if (root == null) {
+            return null;
+        }
+        int node = root;
+        while (!nodeStore.isLeaf(node)) {
+            node = pointStore.leftOf(pointReference, nodeStore.getCutDimension(node), nodeStore.getCutValue(node))
+                    ? nodeStore.getLeftIndex(node)
+                    : nodeStore.getRightIndex(node);
+        }
+        return node;
+    }
+
     // returns the position in the point store
     @Override
     Integer getPointReference(Integer node) {
@@ -538,6 +1337,7 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
         private INodeStore nodeStore = null;
         private int root = NULL;
         private int maxSize = RandomCutForest.DEFAULT_SAMPLE_SIZE;
+        private boolean relayoutEnabled = false;
 
         public T nodeStore(INodeStore nodeStore) {
             this.nodeStore = nodeStore;
@@ -554,6 +1354,11 @@ public abstract class AbstractCompactRandomCutTree<Point> extends AbstractRandom
             return (T) this;
         }
 
+        public T relayoutEnabled(boolean relayoutEnabled) {
+            this.relayoutEnabled = relayoutEnabled;
+            return (T) this;
+        }
+
     }
 
 }
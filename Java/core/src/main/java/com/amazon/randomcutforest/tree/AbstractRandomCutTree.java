@@ -19,6 +19,8 @@ import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
 import static com.amazon.randomcutforest.CommonUtils.checkState;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.Random;
@@ -149,6 +151,12 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
     // checks equality based on precision
     protected abstract boolean equals(Point oldPoint, Point point);
 
+    // checks equality of a point in the tree, given by its reference, and a point;
+    // by default based on a copy of the point in the tree
+    boolean pointEquals(PointReference pointReference, Point point) {
+        return equals(getPointFromPointReference(pointReference), point);
+    }
+
     // checks equality based on reference
     protected abstract boolean referenceEquals(PointReference oldPointRef, PointReference pointRef);
 
@@ -299,16 +307,49 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
         return nodeReference;
     }
 
+    /**
+     * finds the leaf node which corresponds to the path followed in the tree by a
+     * point given by its reference, by default by {@link #findLeaf} on a copy of
+     * the point
+     *
+     * @param pointReference reference of the point
+     * @return reference of the leaf node
+     */
+    NodeReference findLeafOfReference(PointReference pointReference) {
+        return findLeaf(getPointFromPointReference(pointReference));
+    }
+
+    /**
+     * finds the leaf node at which a point is added, by default the leaf found by
+     * {@link #findLeaf}
+     *
+     * @param point point
+     * @return reference of the leaf node
+     */
+    NodeReference findLeafForAdd(Point point) {
+        return findLeaf(point);
+    }
+
+    /**
+     * returns the bounding box of an internal node on the path of a point being
+     * added; the box is only read, and the default is {@link #getBoundingBox}
+     *
+     * @param nodeReference reference of an internal node
+     * @return the bounding box corresponding to the node
+     */
+    AbstractBoundingBox<Point> getBoundingBoxForAdd(NodeReference nodeReference) {
+        return getBoundingBox(nodeReference);
+    }
+
     NodeReference findLeafAndVerify(PointReference pointReference) {
-        Point point = getPointFromPointReference(pointReference);
-        NodeReference nodeReference = findLeaf(point);
+        NodeReference nodeReference = findLeafOfReference(pointReference);
         // the following should suffice for compact in most cases
         // unless the deletion is for an equivalent point
         if (referenceEquals(pointReference, getPointReference(nodeReference))) {
             return nodeReference;
         }
-        Point oldPoint = getPointFromLeafNode(nodeReference);
-        if (!equals(oldPoint, point)) {
+        Point point = getPointFromPointReference(pointReference);
+        if (!pointEquals(getPointReference(nodeReference), point)) {
             throw new IllegalStateException(toString(point) + " " + toString(getPointFromLeafNode(nodeReference)) + " "
                     + nodeReference + " node " + false + " Inconsistency in trees.");
         }
@@ -351,7 +392,7 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
         NodeReference nodeReference = findLeaf(point);
         if (nodeReference != null) {
             PointReference reference = getPointReference(nodeReference);
-            if (!equals(point, getPointFromPointReference(reference))) {
+            if (!pointEquals(reference, point)) {
                 return null;
             }
             return reference;
@@ -404,6 +445,7 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
         }
 
         NodeReference parent = getParent(nodeReference);
+        leafRemoved(nodeReference, (parent == null) ? null : getSibling(nodeReference));
 
         if (parent == null) {
             root = null;
@@ -425,6 +467,17 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
         return returnVal;
     }
 
+    /**
+     * called by {@link #deletePoint} before a leaf is removed from the tree, along
+     * with its parent which is replaced by the sibling of the leaf
+     *
+     * @param leaf    reference of the leaf
+     * @param sibling reference of the sibling of the leaf, null if the leaf is the
+     *                root
+     */
+    void leafRemoved(NodeReference leaf, NodeReference sibling) {
+    }
+
     abstract void setCachedBox(NodeReference node, AbstractBoundingBox<Point> savedBox);
 
     abstract void addToBox(NodeReference node, Point point);
@@ -445,6 +498,17 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
         }
     }
 
+    /**
+     * @return the random number generator for the cuts of the next add; unless a
+     *         generator was provided to the builder, it is seeded by the seed of
+     *         the tree, which is advanced
+     */
+    Random nextRandom() {
+        Random random = (testRandom != null) ? testRandom : new Random(randomSeed);
+        randomSeed = (testRandom != null) ? randomSeed : random.nextLong();
+        return random;
+    }
+
     /**
      * adds a point to the tree
      *
@@ -468,11 +532,10 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
             AbstractBoundingBox<Point> savedBox;
             AbstractBoundingBox<Point> currentUnmergedBox;
 
-            NodeReference followReference = findLeaf(point);
+            NodeReference followReference = findLeafForAdd(point);
 
             PointReference leafPointReference = getPointReference(followReference);
-            Point oldPoint = (leafPointReference == null) ? null : getPointFromPointReference(leafPointReference);
-            if (leafPointReference == null || equals(oldPoint, point)) {
+            if (leafPointReference == null || pointEquals(leafPointReference, point)) {
                 // the inserted point is equal to an existing leaf point
                 if (leafPointReference == null) {
                     setLeafPointReference(followReference, pointReference);
@@ -487,8 +550,7 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
                 // at a leaf and found a previous copy
             }
 
-            Random random = (testRandom != null) ? testRandom : new Random(randomSeed);
-            randomSeed = (testRandom != null) ? randomSeed : random.nextLong();
+            Random random = nextRandom();
 
             // construct a potential cut
             savedBox = getInternalTwoPointBox(pointReference, leafPointReference);
@@ -507,7 +569,7 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
                 if (boundingBoxCacheFraction > 0) {
                     // if the boxes are being cached, use the box if present, otherwise
                     // generate and cache the box
-                    existingBox = getBoundingBox(followReference);
+                    existingBox = getBoundingBoxForAdd(followReference);
                 } else {
                     NodeReference sibling = (leftOf(point, getCutDimension(followReference),
                             getCutValue(followReference))) ? getRightChild(followReference)
@@ -602,12 +664,12 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
      * the nodes along the path. The canonical path is determined by the input
      * point: at each interior node, we select the child node by comparing the
      * node's {@link Cut} to the corresponding coordinate value in the input point.
-     * The method recursively traverses to the leaf node first and then invokes the
-     * visitor on each node in reverse order. That is, if the path to the leaf node
-     * determined by the input point is root, node1, node2, ..., node(N-1), nodeN,
-     * leaf; then we will first invoke visitor::acceptLeaf on the leaf node, and
-     * then we will invoke visitor::accept on the remaining nodes in the following
-     * order: nodeN, node(N-1), ..., node2, node1, and root.
+     * The method descends to the leaf node first, recording the path, and then
+     * invokes the visitor on each node in reverse order. That is, if the path to
+     * the leaf node determined by the input point is root, node1, node2, ...,
+     * node(N-1), nodeN, leaf; then we will first invoke visitor::acceptLeaf on the
+     * leaf node, and then we will invoke visitor::accept on the remaining nodes in
+     * the following order: nodeN, node(N-1), ..., node2, node1, and root.
      *
      * @param point          A point which determines the traversal path from the
      *                       root to a leaf node.
@@ -620,18 +682,22 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
     public <R> R traverse(double[] point, IVisitorFactory<R> visitorFactory) {
         checkState(root != null, "this tree doesn't contain any nodes");
         Visitor<R> visitor = visitorFactory.newVisitor(this, point);
-        traversePathToLeafAndVisitNodes(projectToTree(point), visitor, root, 0);
+        traversePathToLeafAndVisitNodes(projectToTree(point), visitor);
         return visitorFactory.liftResult(this, visitor.getResult());
     }
 
-    private <R> void traversePathToLeafAndVisitNodes(double[] point, Visitor<R> visitor, NodeReference node,
-            int depthOfNode) {
-        if (isLeaf(node)) {
-            visitor.acceptLeaf(getNode(node), depthOfNode);
-        } else {
-            NodeReference nextNode = leftOf(point, node) ? getLeftChild(node) : getRightChild(node);
-            traversePathToLeafAndVisitNodes(point, visitor, nextNode, depthOfNode + 1);
-            visitor.accept(getNode(node), depthOfNode);
+    // iterative, so that the depth of the tree is not limited by the stack; the
+    // depth of a node on the path equals its position in the path
+    private <R> void traversePathToLeafAndVisitNodes(double[] point, Visitor<R> visitor) {
+        ArrayList<NodeReference> path = new ArrayList<>();
+        NodeReference node = root;
+        while (!isLeaf(node)) {
+            path.add(node);
+            node = leftOf(point, node) ? getLeftChild(node) : getRightChild(node);
+        }
+        visitor.acceptLeaf(getNode(node), path.size());
+        for (int depthOfNode = path.size() - 1; depthOfNode >= 0; depthOfNode--) {
+            visitor.accept(getNode(path.get(depthOfNode)), depthOfNode);
         }
     }
 
@@ -656,24 +722,59 @@ public abstract class AbstractRandomCutTree<Point, NodeReference, PointReference
         checkNotNull(visitorFactory, "visitor must not be null");
         checkState(root != null, "this tree doesn't contain any nodes");
         MultiVisitor<R> visitor = visitorFactory.newVisitor(this, point);
-        traverseTreeMulti(projectToTree(point), visitor, root, 0);
+        traverseTreeMulti(projectToTree(point), visitor);
         return visitorFactory.liftResult(this, visitor.getResult());
     }
 
-    private <R> void traverseTreeMulti(double[] point, MultiVisitor<R> visitor, NodeReference node, int depthOfNode) {
-        if (isLeaf(node)) {
-            visitor.acceptLeaf(getNode(node), depthOfNode);
-        } else {
-            if (visitor.trigger(getNode(node))) {
-                traverseTreeMulti(point, visitor, getLeftChild(node), depthOfNode + 1);
-                MultiVisitor<R> newVisitor = visitor.newCopy();
-                traverseTreeMulti(point, newVisitor, getRightChild(node), depthOfNode + 1);
-                visitor.combine(newVisitor);
+    /**
+     * The state of a node on the stack of the iterative multi-visitor traversal.
+     * An internal node is visited after the traversal of its subtree (or
+     * subtrees, if the visitor split at the node) is complete.
+     */
+    private static class MultiVisitorFrame<NodeReference, R> {
+        final NodeReference node;
+        final int depthOfNode;
+        final MultiVisitor<R> visitor;
+        MultiVisitor<R> splitVisitor;
+        boolean split;
+        boolean descended;
+
+        MultiVisitorFrame(NodeReference node, int depthOfNode, MultiVisitor<R> visitor) {
+            this.node = node;
+            this.depthOfNode = depthOfNode;
+            this.visitor = visitor;
+        }
+    }
+
+    // iterative equivalent of a recursion which, at a split, traverses the left
+    // subtree with the visitor, then the right subtree with a copy of the visitor
+    // (created after the left subtree is complete) and then combines the two
+    <R> void traverseTreeMulti(double[] point, MultiVisitor<R> visitor) {
+        ArrayDeque<MultiVisitorFrame<NodeReference, R>> stack = new ArrayDeque<>();
+        stack.push(new MultiVisitorFrame<>(root, 0, visitor));
+        while (!stack.isEmpty()) {
+            MultiVisitorFrame<NodeReference, R> frame = stack.peek();
+            NodeReference node = frame.node;
+            int childDepth = frame.depthOfNode + 1;
+            if (isLeaf(node)) {
+                frame.visitor.acceptLeaf(getNode(node), frame.depthOfNode);
+                stack.pop();
+            } else if (!frame.descended) {
+                frame.descended = true;
+                frame.split = frame.visitor.trigger(getNode(node));
+                NodeReference nextNode = (frame.split || leftOf(point, node)) ? getLeftChild(node)
+                        : getRightChild(node);
+                stack.push(new MultiVisitorFrame<>(nextNode, childDepth, frame.visitor));
+            } else if (frame.split && frame.splitVisitor == null) {
+                frame.splitVisitor = frame.visitor.newCopy();
+                stack.push(new MultiVisitorFrame<>(getRightChild(node), childDepth, frame.splitVisitor));
             } else {
-                NodeReference nextNode = leftOf(point, node) ? getLeftChild(node) : getRightChild(node);
-                traverseTreeMulti(point, visitor, nextNode, depthOfNode + 1);
+                if (frame.split) {
+                    frame.visitor.combine(frame.splitVisitor);
+                }
+                frame.visitor.accept(getNode(node), frame.depthOfNode);
+                stack.pop();
             }
-            visitor.accept(getNode(node), depthOfNode);
         }
     }
 
@@ -20,6 +20,8 @@ import static com.amazon.randomcutforest.CommonUtils.checkState;
 
 import java.util.Arrays;
 
+import com.amazon.randomcutforest.store.IPointStoreView;
+
 /**
  * A BoundingBox is an n-dimensional rectangle. Formally, for i = 1, ..., n
  * there are min and max values a_i and b_i, with a_i less than or equal to b_i,
@@ -51,8 +53,8 @@ public class BoundingBox extends AbstractBoundingBox<double[]> {
         for (int i = 0; i < minValues.length; ++i) {
             minValues[i] = Math.min(first[i], second[i]);
             maxValues[i] = Math.max(first[i], second[i]);
-            rangeSum += maxValues[i] - minValues[i];
         }
+        rangeSum = sumOfRanges(minValues, maxValues);
 
     }
 
@@ -72,43 +74,70 @@ public class BoundingBox extends AbstractBoundingBox<double[]> {
     // TODO: Clean up tests
     @Override
     public BoundingBox getMergedBox(IBoundingBoxView otherBox) {
+        if (otherBox instanceof BoundingBox) {
+            // the arrays of the other box are read directly rather than through the view
+            return copy().addBox((BoundingBox) otherBox);
+        }
         double[] minValuesMerged = new double[minValues.length];
         double[] maxValuesMerged = new double[minValues.length];
-        double sum = 0.0;
-
         for (int i = 0; i < minValues.length; ++i) {
             minValuesMerged[i] = Math.min(minValues[i], otherBox.getMinValue(i));
             maxValuesMerged[i] = Math.max(maxValues[i], otherBox.getMaxValue(i));
-            sum += maxValuesMerged[i] - minValuesMerged[i];
         }
-        return new BoundingBox(minValuesMerged, maxValuesMerged, sum);
+        return new BoundingBox(minValuesMerged, maxValuesMerged, sumOfRanges(minValuesMerged, maxValuesMerged));
     }
 
     @Override
     public BoundingBox addPoint(double[] point) {
         checkArgument(minValues.length == point.length, "incorrect length");
         checkArgument(minValues != maxValues, "not a mutable box");
-        rangeSum = 0;
         for (int i = 0; i < point.length; ++i) {
             minValues[i] = Math.min(minValues[i], point[i]);
             maxValues[i] = Math.max(maxValues[i], point[i]);
-            rangeSum += maxValues[i] - minValues[i];
         }
+        rangeSum = sumOfRanges(minValues, maxValues);
+        return this;
+    }
+
+    @Override
+    BoundingBox addPoint(IPointStoreView<double[]> pointStore, int index) {
+        checkArgument(minValues.length == pointStore.getDimensions(), "incorrect length");
+        checkArgument(minValues != maxValues, "not a mutable box");
+        pointStore.expandRanges(index, minValues, maxValues);
+        rangeSum = sumOfRanges(minValues, maxValues);
         return this;
     }
 
     @Override
     public BoundingBox addBox(AbstractBoundingBox<double[]> otherBox) {
         checkState(minValues != maxValues, "not a mutable box");
-        rangeSum = 0;
+        double[] otherMinValues = otherBox.minValues;
+        double[] otherMaxValues = otherBox.maxValues;
         for (int i = 0; i < minValues.length; ++i) {
-            minValues[i] = Math.min(minValues[i], otherBox.minValues[i]);
-            maxValues[i] = Math.max(maxValues[i], otherBox.maxValues[i]);
-            rangeSum += maxValues[i] - minValues[i];
+            minValues[i] = Math.min(minValues[i], otherMinValues[i]);
+            maxValues[i] = Math.max(maxValues[i], otherMaxValues[i]);
         }
+        rangeSum = sumOfRanges(minValues, maxValues);
         return this;
     }
 
+    /**
+     * The ranges are summed in a separate loop, in the order of the dimensions, so
+     * that the loops that update the min and max values have no dependency across
+     * dimensions and can be vectorized by the JIT compiler.
+     *
+     * @param minValues the min values of a box
+     * @param maxValues the max values of a box
+     * @return the sum of the side lengths of the box
+     */
+    static double sumOfRanges(double[] minValues, double[] maxValues) {
+        double sum = 0.0;
+        for (int i = 0; i < minValues.length; ++i) {
+            sum += maxValues[i] - minValues[i];
+        }
+        return sum;
+    }
+
     @Override
     public int getDimensions() {
         return minValues.length;
@@ -141,7 +170,8 @@ public class BoundingBox extends AbstractBoundingBox<double[]> {
     public boolean contains(double[] point) {
         checkArgument(point.length == getDimensions(), " incorrect lengths");
         for (int i = 0; i < point.length; i++) {
-            if (minValues[i] > point[i] || maxValues[i] < point[i]) {
+            // a single branch per dimension
+            if (minValues[i] > point[i] | maxValues[i] < point[i]) {
                 return false;
             }
         }
@@ -21,6 +21,8 @@ import static com.amazon.randomcutforest.CommonUtils.toFloatArray;
 
 import java.util.Arrays;
 
+import com.amazon.randomcutforest.store.IPointStoreView;
+
 /**
  * A single precision implementation of AbstractBoundingBox which also satisfies
  * the interface for Visitor classes
@@ -40,8 +42,8 @@ public class BoundingBoxFloat extends AbstractBoundingBox<float[]> {
         for (int i = 0; i < minValues.length; ++i) {
             minValues[i] = Math.min(first[i], second[i]);
             maxValues[i] = Math.max(first[i], second[i]);
-            rangeSum += maxValues[i] - minValues[i];
         }
+        rangeSum = sumOfRanges(minValues, maxValues);
 
     }
 
@@ -58,16 +60,17 @@ public class BoundingBoxFloat extends AbstractBoundingBox<float[]> {
 
     @Override
     public IBoundingBoxView getMergedBox(IBoundingBoxView otherBox) {
+        if (otherBox instanceof BoundingBoxFloat) {
+            // the arrays of the other box are read directly rather than through the view
+            return copy().addBox((BoundingBoxFloat) otherBox);
+        }
         float[] minValuesMerged = new float[minValues.length];
         float[] maxValuesMerged = new float[minValues.length];
-        double sum = 0.0;
-
         for (int i = 0; i < minValues.length; ++i) {
             minValuesMerged[i] = Math.min(minValues[i], (float) otherBox.getMinValue(i));
             maxValuesMerged[i] = Math.max(maxValues[i], (float) otherBox.getMaxValue(i));
-            sum += maxValuesMerged[i] - minValuesMerged[i];
         }
-        return new BoundingBoxFloat(minValuesMerged, maxValuesMerged, sum);
+        return new BoundingBoxFloat(minValuesMerged, maxValuesMerged, sumOfRanges(minValuesMerged, maxValuesMerged));
     }
 
     public IBoundingBoxView getMergedBox(float[] point) {
@@ -79,27 +82,53 @@ public class BoundingBoxFloat extends AbstractBoundingBox<float[]> {
     public BoundingBoxFloat addPoint(float[] point) {
         checkArgument(minValues.length == point.length, "incorrect length");
         checkArgument(minValues != maxValues, "not a mutable box");
-        rangeSum = 0;
         for (int i = 0; i < point.length; ++i) {
             minValues[i] = Math.min(minValues[i], point[i]);
             maxValues[i] = Math.max(maxValues[i], point[i]);
-            rangeSum += maxValues[i] - minValues[i];
         }
+        rangeSum = sumOfRanges(minValues, maxValues);
+        return this;
+    }
+
+    @Override
+    BoundingBoxFloat addPoint(IPointStoreView<float[]> pointStore, int index) {
+        checkArgument(minValues.length == pointStore.getDimensions(), "incorrect length");
+        checkArgument(minValues != maxValues, "not a mutable box");
+        pointStore.expandRanges(index, minValues, maxValues);
+        rangeSum = sumOfRanges(minValues, maxValues);
         return this;
     }
 
     @Override
     public BoundingBoxFloat addBox(AbstractBoundingBox<float[]> otherBox) {
         checkState(minValues != maxValues, "not a mutable box");
-        rangeSum = 0;
+        float[] otherMinValues = otherBox.minValues;
+        float[] otherMaxValues = otherBox.maxValues;
         for (int i = 0; i < minValues.length; ++i) {
-            minValues[i] = Math.min(minValues[i], otherBox.minValues[i]);
-            maxValues[i] = Math.max(maxValues[i], otherBox.maxValues[i]);
-            rangeSum += maxValues[i] - minValues[i];
+            minValues[i] = Math.min(minValues[i], otherMinValues[i]);
+            maxValues[i] = Math.max(maxValues[i], otherMaxValues[i]);
         }
+        rangeSum = sumOfRanges(minValues, maxValues);
         return this;
     }
 
+    /**
+     * The ranges are summed in a separate loop, in the order of the dimensions, so
+     * that the loops that update the min and max values have no dependency across
+     * dimensions and can be vectorized by the JIT compiler.
+     *
+     * @param minValues the min values of a box
+     * @param maxValues the max values of a box
+     * @return the sum of the side lengths of the box
+     */
+    static double sumOfRanges(float[] minValues, float[] maxValues) {
+        double sum = 0.0;
+        for (int i = 0; i < minValues.length; ++i) {
+            sum += maxValues[i] - minValues[i];
+        }
+        return sum;
+    }
+
     @Override
     public int getDimensions() {
         return minValues.length;
@@ -143,7 +172,8 @@ public class BoundingBoxFloat extends AbstractBoundingBox<float[]> {
     public boolean contains(float[] point) {
         checkArgument(point.length == minValues.length, " incorrect lengths");
         for (int i = 0; i < minValues.length; i++) {
-            if (minValues[i] > point[i] || maxValues[i] < point[i]) {
+            // a single branch per dimension
+            if (minValues[i] > point[i] | maxValues[i] < point[i]) {
                 return false;
             }
         }
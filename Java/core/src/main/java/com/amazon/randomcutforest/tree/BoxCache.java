@@ -21,6 +21,12 @@ import java.util.Random;
 
 public abstract class BoxCache<Point> implements IBoxCache<Point> {
 
+    /**
+     * the smallest fraction for which the boxes are stored in an array indexed by
+     * node, rather than through a map
+     */
+    public static final double MIN_DIRECT_MAP_FRACTION = 0.3;
+
     protected double cacheFraction;
     protected Random random;
     protected long randomSeed;
@@ -39,7 +45,7 @@ public abstract class BoxCache<Point> implements IBoxCache<Point> {
     abstract void initialize();
 
     boolean isDirectMap() {
-        return cacheFraction >= 0.3;
+        return cacheFraction >= MIN_DIRECT_MAP_FRACTION;
     }
 
     @Override
@@ -99,7 +105,8 @@ public abstract class BoxCache<Point> implements IBoxCache<Point> {
                 }
             }
             bitSet = newBitSet;
-        } else if (cachedBoxes != null) {
+        }
+        if (cacheMap == null && cachedBoxes != null) {
             remap(map);
         }
     }
@@ -23,18 +23,65 @@ import java.util.Set;
 import com.amazon.randomcutforest.store.INodeStore;
 
 public class CompactNodeView<Point> implements INode<Integer> {
-    final AbstractCompactRandomCutTree<Point> tree;
+    AbstractCompactRandomCutTree<Point> tree;
     int currentNodeOffset;
     IBoxCache<Point> boxCache;
     INodeStore nodeStore;
 
+    /**
+     * the view of a cached box that is repositioned for every node (and across
+     * trees), only used by an unpositioned view and null otherwise
+     */
+    IBoundingBoxView boxView;
+    final boolean reuseBoxView;
+
     public CompactNodeView(AbstractCompactRandomCutTree<Point> tree, int initialNodeIndex) {
+        reuseBoxView = false;
+        setCurrentNode(tree, initialNodeIndex);
+    }
+
+    /**
+     * creates an unpositioned view, to be used as a flyweight via
+     * {@link #setCurrentNode}; the bounding boxes it returns are reused as well
+     * and are only valid until the next call
+     */
+    CompactNodeView() {
+        currentNodeOffset = AbstractCompactRandomCutTree.NULL;
+        reuseBoxView = true;
+    }
+
+    /**
+     * repositions the view at a node; this allows a single view to be reused for
+     * all the nodes in a traversal (and across trees) instead of allocating a view
+     * per node
+     *
+     * @param tree       the tree containing the node
+     * @param nodeOffset the node
+     */
+    void setCurrentNode(AbstractCompactRandomCutTree<Point> tree, int nodeOffset) {
         this.tree = tree;
-        this.currentNodeOffset = initialNodeIndex;
+        this.currentNodeOffset = nodeOffset;
         boxCache = tree.boxCache;
         nodeStore = tree.nodeStore;
     }
 
+    /**
+     * unbinds the view from its tree, so that a view that is kept for reuse does
+     * not keep the tree, or its stores, reachable; the view of a cached box is
+     * kept for reuse as well, but is unbound from its cache
+     */
+    void release() {
+        tree = null;
+        currentNodeOffset = AbstractCompactRandomCutTree.NULL;
+        boxCache = null;
+        nodeStore = null;
+        if (boxView instanceof FlatBoxCache.ReusableBoxView) {
+            ((FlatBoxCache.ReusableBoxView) boxView).release();
+        } else {
+            boxView = null;
+        }
+    }
+
     public int getMass() {
         return nodeStore.getMass(currentNodeOffset);
     }
@@ -45,9 +92,17 @@ public class CompactNodeView<Point> implements INode<Integer> {
 
     IBoundingBoxView getBox(int node) {
         if (!nodeStore.isLeaf(node)) {
-            IBoundingBoxView box = boxCache.getBox(node);
-            if (box != null)
-                return box;
+            if (reuseBoxView) {
+                IBoundingBoxView box = boxCache.getBoxView(node, boxView);
+                if (box != null) {
+                    boxView = box;
+                    return box;
+                }
+            } else {
+                IBoundingBoxView box = boxCache.getBoxView(node);
+                if (box != null)
+                    return box;
+            }
         }
         return tree.getBoundingBox(node);
     }
@@ -78,10 +133,15 @@ public class CompactNodeView<Point> implements INode<Integer> {
         return tree.getPoint(currentNodeOffset);
     }
 
+    @Override
+    public boolean leafPointEquals(double[] point) {
+        return tree.leafPointEquals(currentNodeOffset, point);
+    }
+
     public Set<Long> getSequenceIndexes() {
         checkArgument(nodeStore.isLeaf(currentNodeOffset), " not a leaf node");
         return tree.storeSequenceIndexesEnabled
-                ? tree.sequenceIndexes[nodeStore.computeLeafIndex(currentNodeOffset)].keySet()
+                ? tree.sequenceIndexes[nodeStore.computeLeafIndex(currentNodeOffset)].asSet()
                 : Collections.emptySet();
     }
 
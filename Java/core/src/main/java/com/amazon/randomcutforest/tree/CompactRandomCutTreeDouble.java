@@ -19,6 +19,7 @@ import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
 
 import java.util.Arrays;
 
+import com.amazon.randomcutforest.store.INodeStore;
 import com.amazon.randomcutforest.store.IPointStoreView;
 
 public class CompactRandomCutTreeDouble extends AbstractCompactRandomCutTree<double[]> {
@@ -31,12 +32,25 @@ public class CompactRandomCutTreeDouble extends AbstractCompactRandomCutTree<dou
         super(builder);
         checkNotNull(builder.pointStoreView, "pointStore must not be null");
         super.pointStore = builder.pointStoreView;
-        super.boxCache = new BoxCacheDouble(0L, boundingBoxCacheFraction, maxSize - 1);
+        if (boundingBoxCacheFraction >= BoxCache.MIN_DIRECT_MAP_FRACTION) {
+            super.boxCache = new FlatBoxCacheDouble(0L, boundingBoxCacheFraction, maxSize - 1,
+                    pointStore.getDimensions());
+        } else {
+            super.boxCache = new BoxCacheDouble(0L, boundingBoxCacheFraction, maxSize - 1);
+        }
         if (builder.centerOfMassEnabled) {
             pointSum = new double[maxSize - 1][];
         }
     }
 
+    @Override
+    protected CompactRandomCutTreeDouble newTree(IPointStoreView<double[]> pointStore, INodeStore nodeStore, int root) {
+        return new Builder().maxSize(maxSize).randomSeed(getRandomSeed()).pointStore(pointStore).nodeStore(nodeStore)
+                .root(root).boundingBoxCacheFraction(boundingBoxCacheFraction).centerOfMassEnabled(centerOfMassEnabled)
+                .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).outputAfter(outputAfter)
+                .relayoutEnabled(relayoutEnabled).build();
+    }
+
     @Override
     protected String toString(double[] point) {
         return Arrays.toString(point);
@@ -44,9 +58,9 @@ public class CompactRandomCutTreeDouble extends AbstractCompactRandomCutTree<dou
 
     @Override
     protected AbstractBoundingBox<double[]> getInternalTwoPointBox(Integer firstRef, Integer secondRef) {
-        double[] first = getPointFromPointReference(firstRef);
-        double[] second = getPointFromPointReference(secondRef);
-        return new BoundingBox(first, second);
+        // a single copy of the first point, the second point is merged in place
+        double[] first = pointStore.get(firstRef);
+        return new BoundingBox(first, Arrays.copyOf(first, first.length), 0).addPoint(pointStore, secondRef);
     }
 
     @Override
@@ -71,6 +85,11 @@ public class CompactRandomCutTreeDouble extends AbstractCompactRandomCutTree<dou
         return point[dimension] <= val;
     }
 
+    @Override
+    protected double[] toTreePoint(double[] point) {
+        return Arrays.copyOf(point, point.length);
+    }
+
     // the following is for visitors; pointStore makes an explicit copy
     @Override
     protected double[] getPoint(Integer node) {
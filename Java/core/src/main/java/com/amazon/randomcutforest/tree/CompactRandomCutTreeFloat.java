@@ -17,11 +17,12 @@ package com.amazon.randomcutforest.tree;
 
 import static com.amazon.randomcutforest.CommonUtils.checkArgument;
 import static com.amazon.randomcutforest.CommonUtils.checkNotNull;
-import static com.amazon.randomcutforest.CommonUtils.toDoubleArray;
+import static com.amazon.randomcutforest.CommonUtils.toFloatArray;
 
 import java.util.Arrays;
 import java.util.Random;
 
+import com.amazon.randomcutforest.store.INodeStore;
 import com.amazon.randomcutforest.store.IPointStoreView;
 
 public class CompactRandomCutTreeFloat extends AbstractCompactRandomCutTree<float[]> {
@@ -34,12 +35,25 @@ public class CompactRandomCutTreeFloat extends AbstractCompactRandomCutTree<floa
         super(builder);
         checkNotNull(builder.pointStoreView, "pointStore must not be null");
         super.pointStore = builder.pointStoreView;
-        super.boxCache = new BoxCacheFloat(0L, boundingBoxCacheFraction, maxSize - 1);
+        if (boundingBoxCacheFraction >= BoxCache.MIN_DIRECT_MAP_FRACTION) {
+            super.boxCache = new FlatBoxCacheFloat(0L, boundingBoxCacheFraction, maxSize - 1,
+                    pointStore.getDimensions());
+        } else {
+            super.boxCache = new BoxCacheFloat(0L, boundingBoxCacheFraction, maxSize - 1);
+        }
         if (builder.centerOfMassEnabled) {
             pointSum = new float[maxSize - 1][];
         }
     }
 
+    @Override
+    protected CompactRandomCutTreeFloat newTree(IPointStoreView<float[]> pointStore, INodeStore nodeStore, int root) {
+        return new Builder().maxSize(maxSize).randomSeed(getRandomSeed()).pointStore(pointStore).nodeStore(nodeStore)
+                .root(root).boundingBoxCacheFraction(boundingBoxCacheFraction).centerOfMassEnabled(centerOfMassEnabled)
+                .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).outputAfter(outputAfter)
+                .relayoutEnabled(relayoutEnabled).build();
+    }
+
     @Override
     protected String toString(float[] point) {
         return Arrays.toString(point);
@@ -59,9 +73,9 @@ public class CompactRandomCutTreeFloat extends AbstractCompactRandomCutTree<floa
 
     @Override
     protected AbstractBoundingBox<float[]> getInternalTwoPointBox(Integer firstRef, Integer secondRef) {
-        float[] first = getPointFromPointReference(firstRef);
-        float[] second = getPointFromPointReference(secondRef);
-        return new BoundingBoxFloat(first, second);
+        // a single copy of the first point, the second point is merged in place
+        float[] first = pointStore.get(firstRef);
+        return new BoundingBoxFloat(first, Arrays.copyOf(first, first.length), 0).addPoint(pointStore, secondRef);
     }
 
     @Override
@@ -74,9 +88,19 @@ public class CompactRandomCutTreeFloat extends AbstractCompactRandomCutTree<floa
         return point[dimension] <= val;
     }
 
+    @Override
+    protected float[] toTreePoint(double[] point) {
+        return toFloatArray(point);
+    }
+
     @Override
     protected double[] getPoint(Integer nodeOffset) {
-        return toDoubleArray(getPointFromLeafNode(nodeOffset));
+        int pointIndex = getPointReference(nodeOffset);
+        double[] point = new double[pointStore.getDimensions()];
+        for (int i = 0; i < point.length; i++) {
+            point[i] = pointStore.getCoordinate(pointIndex, i);
+        }
+        return point;
     }
 
     @Override
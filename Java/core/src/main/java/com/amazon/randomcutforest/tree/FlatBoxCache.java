@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.tree;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * A bounding box cache that stores the boxes of the internal nodes in a single
+ * flat array of primitive values, instead of one box object (and two arrays)
+ * per node. The min values of the box of node i start at offset 2 * i *
+ * dimensions and are followed by its max values; the sums of the side lengths
+ * of the boxes are stored in a parallel array. Renaming the nodes permutes the
+ * arrays in bulk.
+ *
+ * The boxes that are managed are chosen as in the direct map of
+ * {@link BoxCache}, and the cache is meant for the fractions that use a direct
+ * map. Visitors read the cached boxes through views that do not copy the
+ * values, see {@link #getBoxView(int)}, whereas {@link #getBox(int)} returns a
+ * copy of the box. A traversal that does not retain the views can reposition a
+ * single view at every node of every tree, see
+ * {@link #getBoxView(int, IBoundingBoxView)}.
+ *
+ * @param <Point> the representation of a point
+ */
+public abstract class FlatBoxCache<Point> implements IBoxCache<Point> {
+
+    /**
+     * the sum of the side lengths recorded for a box that is not present
+     */
+    protected static final double ABSENT = -1.0;
+
+    protected final int maxSize;
+    protected final int dimensions;
+
+    /**
+     * the nodes whose boxes are not managed, null if every box is managed
+     */
+    protected BitSet excluded;
+
+    /**
+     * the sums of the side lengths of the boxes, ABSENT if a box is not present
+     */
+    protected double[] rangeSums;
+
+    protected FlatBoxCache(long seed, double cacheFraction, int maxSize, int dimensions) {
+        checkArgument(cacheFraction >= BoxCache.MIN_DIRECT_MAP_FRACTION && cacheFraction <= 1.0,
+                "incorrect cache fraction for a flat cache");
+        this.maxSize = maxSize;
+        this.dimensions = dimensions;
+        if (cacheFraction < 1.0) {
+            Random random = new Random(seed);
+            excluded = new BitSet(maxSize);
+            int exclude = (int) Math.floor((1.0 - cacheFraction) * maxSize);
+            for (int i = 0; i < exclude; i++) {
+                excluded.set(random.nextInt(maxSize));
+            }
+        }
+        rangeSums = new double[maxSize];
+        Arrays.fill(rangeSums, ABSENT);
+    }
+
+    @Override
+    public boolean containsKey(int index) {
+        return excluded == null || !excluded.get(index);
+    }
+
+    @Override
+    public boolean hasBox(int index) {
+        // the boxes that are not managed are never present
+        return rangeSums[index] != ABSENT;
+    }
+
+    /**
+     * A view of a cached box that can be re-bound to another cache, see
+     * {@link #getBoxView(int, IBoundingBoxView)}.
+     */
+    interface ReusableBoxView extends IBoundingBoxView {
+
+        /**
+         * unbinds the view from its cache, so that a view that is kept for reuse does
+         * not keep the cache reachable; the view is not valid until it is re-bound
+         */
+        void release();
+    }
+
+    /**
+     * @param index internal node
+     * @return the offset of the min values of the box of the node
+     */
+    protected int offset(int index) {
+        return 2 * index * dimensions;
+    }
+
+    /**
+     * Moves the values of the box of node i to the position of node map[i], for
+     * every node that is in use.
+     *
+     * @param map a renaming of the internal nodes, unused nodes are mapped to NULL
+     */
+    abstract void remap(int[] map);
+
+    @Override
+    public void swapCaches(int[] map) {
+        double[] newRangeSums = new double[maxSize];
+        Arrays.fill(newRangeSums, ABSENT);
+        BitSet newExcluded = (excluded == null) ? null : new BitSet(maxSize);
+        for (int i = 0; i < maxSize; i++) {
+            if (map[i] != NULL) {
+                newRangeSums[map[i]] = rangeSums[i];
+                if (excluded != null && excluded.get(i)) {
+                    newExcluded.set(map[i]);
+                }
+            }
+        }
+        remap(map);
+        rangeSums = newRangeSums;
+        excluded = newExcluded;
+    }
+}
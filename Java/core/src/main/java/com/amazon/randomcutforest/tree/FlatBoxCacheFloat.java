@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.tree;
+
+import static com.amazon.randomcutforest.CommonUtils.checkState;
+import static com.amazon.randomcutforest.CommonUtils.toFloatArray;
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+
+import java.util.Arrays;
+
+/**
+ * A {@link FlatBoxCache} for boxes in float precision.
+ */
+public class FlatBoxCacheFloat extends FlatBoxCache<float[]> {
+
+    private float[] values;
+
+    public FlatBoxCacheFloat(long seed, double cacheFraction, int maxSize, int dimensions) {
+        super(seed, cacheFraction, maxSize, dimensions);
+        values = new float[2 * maxSize * dimensions];
+    }
+
+    @Override
+    public void setBox(int index, AbstractBoundingBox<float[]> box) {
+        if (!containsKey(index)) {
+            return;
+        }
+        if (box == null) {
+            rangeSums[index] = ABSENT;
+            return;
+        }
+        int offset = offset(index);
+        System.arraycopy(box.minValues, 0, values, offset, dimensions);
+        System.arraycopy(box.maxValues, 0, values, offset + dimensions, dimensions);
+        rangeSums[index] = box.getRangeSum();
+    }
+
+    @Override
+    public BoundingBoxFloat getBox(int index) {
+        if (!hasBox(index)) {
+            return null;
+        }
+        int offset = offset(index);
+        return new BoundingBoxFloat(Arrays.copyOfRange(values, offset, offset + dimensions),
+                Arrays.copyOfRange(values, offset + dimensions, offset + 2 * dimensions), rangeSums[index]);
+    }
+
+    @Override
+    public IBoundingBoxView getBoxView(int index) {
+        return hasBox(index) ? new BoxView(this, index) : null;
+    }
+
+    @Override
+    public IBoundingBoxView getBoxView(int index, IBoundingBoxView reuse) {
+        if (!hasBox(index)) {
+            return null;
+        }
+        if (reuse instanceof BoxView) {
+            ((BoxView) reuse).reset(this, index);
+            return reuse;
+        }
+        return new BoxView(this, index);
+    }
+
+    @Override
+    public boolean addBoxTo(int index, AbstractBoundingBox<float[]> box) {
+        if (!hasBox(index)) {
+            return false;
+        }
+        checkState(box.minValues != box.maxValues, "not a mutable box");
+        int offset = offset(index);
+        for (int i = 0; i < dimensions; ++i) {
+            box.minValues[i] = Math.min(box.minValues[i], values[offset + i]);
+            box.maxValues[i] = Math.max(box.maxValues[i], values[offset + dimensions + i]);
+        }
+        box.rangeSum = BoundingBoxFloat.sumOfRanges(box.minValues, box.maxValues);
+        return true;
+    }
+
+    @Override
+    public void addToBox(int index, float[] point) {
+        if (!hasBox(index)) {
+            return;
+        }
+        int offset = offset(index);
+        for (int i = 0; i < dimensions; ++i) {
+            values[offset + i] = Math.min(values[offset + i], point[i]);
+            values[offset + dimensions + i] = Math.max(values[offset + dimensions + i], point[i]);
+        }
+        // summed in the same order as BoundingBoxFloat
+        double sum = 0.0;
+        for (int i = 0; i < dimensions; ++i) {
+            sum += values[offset + dimensions + i] - values[offset + i];
+        }
+        rangeSums[index] = sum;
+    }
+
+    @Override
+    void remap(int[] map) {
+        float[] newValues = new float[values.length];
+        for (int i = 0; i < maxSize; i++) {
+            if (map[i] != NULL) {
+                System.arraycopy(values, offset(i), newValues, offset(map[i]), 2 * dimensions);
+            }
+        }
+        values = newValues;
+    }
+
+    /**
+     * A read-only view of a cached box, which reads the values in place. The
+     * operations that produce a new box produce a {@link BoundingBoxFloat}. A view
+     * can be repositioned at another box, of this cache or of another cache in the
+     * same precision, see {@link #getBoxView(int, IBoundingBoxView)}.
+     */
+    static class BoxView implements ReusableBoxView {
+        private FlatBoxCacheFloat cache;
+        private int index;
+        private int offset;
+
+        BoxView(FlatBoxCacheFloat cache, int index) {
+            reset(cache, index);
+        }
+
+        void reset(FlatBoxCacheFloat cache, int index) {
+            this.cache = cache;
+            this.index = index;
+            this.offset = cache.offset(index);
+        }
+
+        @Override
+        public void release() {
+            cache = null;
+        }
+
+        @Override
+        public double getRangeSum() {
+            return cache.rangeSums[index];
+        }
+
+        @Override
+        public int getDimensions() {
+            return cache.dimensions;
+        }
+
+        @Override
+        public double getRange(int i) {
+            return cache.values[offset + cache.dimensions + i] - cache.values[offset + i];
+        }
+
+        @Override
+        public double getMinValue(int i) {
+            return cache.values[offset + i];
+        }
+
+        @Override
+        public double getMaxValue(int i) {
+            return cache.values[offset + cache.dimensions + i];
+        }
+
+        @Override
+        public IBoundingBoxView copy() {
+            return cache.getBox(index);
+        }
+
+        @Override
+        public IBoundingBoxView getMergedBox(double[] point) {
+            return cache.getBox(index).addPoint(toFloatArray(point));
+        }
+
+        @Override
+        public IBoundingBoxView getMergedBox(IBoundingBoxView otherBox) {
+            BoundingBoxFloat box = cache.getBox(index);
+            for (int i = 0; i < cache.dimensions; ++i) {
+                box.minValues[i] = Math.min(box.minValues[i], (float) otherBox.getMinValue(i));
+                box.maxValues[i] = Math.max(box.maxValues[i], (float) otherBox.getMaxValue(i));
+            }
+            box.rangeSum = BoundingBoxFloat.sumOfRanges(box.minValues, box.maxValues);
+            return box;
+        }
+    }
+}
@@ -40,10 +40,64 @@ public interface IBoxCache<Point> {
      *
      * @param index internal node
      * @return the bounding of the node (if present) or null otherwise (even if the
-     *         box is not managed)
+     *         box is not managed); the box may be a copy of the cached box, which
+     *         is modified through {@link #addToBox} and {@link #setBox}
      */
     AbstractBoundingBox<Point> getBox(int index);
 
+    /**
+     *
+     * @param index internal node
+     * @return true if the bounding box of the node is present
+     */
+    default boolean hasBox(int index) {
+        return getBox(index) != null;
+    }
+
+    /**
+     * a read-only view of the bounding box of a node, which need not copy the
+     * cached values; the view is valid until the box is modified
+     *
+     * @param index internal node
+     * @return a view of the bounding box of the node (if present) or null
+     *         otherwise
+     */
+    default IBoundingBoxView getBoxView(int index) {
+        return getBox(index);
+    }
+
+    /**
+     * a read-only view of the bounding box of a node, as in
+     * {@link #getBoxView(int)}, which may reuse a view returned earlier by this
+     * cache or by another cache of the same type; the earlier view then no longer
+     * refers to its previous box and should not be retained by the caller
+     *
+     * @param index internal node
+     * @param reuse a view returned earlier by a cache, or null
+     * @return a view of the bounding box of the node (if present) or null
+     *         otherwise
+     */
+    default IBoundingBoxView getBoxView(int index, IBoundingBoxView reuse) {
+        return getBoxView(index);
+    }
+
+    /**
+     * merges the bounding box of a node, if present, into a mutable box
+     *
+     * @param index internal node
+     * @param box   a mutable bounding box
+     * @return true if the box of the node was present and has been merged, false
+     *         otherwise
+     */
+    default boolean addBoxTo(int index, AbstractBoundingBox<Point> box) {
+        AbstractBoundingBox<Point> cachedBox = getBox(index);
+        if (cachedBox == null) {
+            return false;
+        }
+        box.addBox(cachedBox);
+        return true;
+    }
+
     /**
      * swaps the managed boxes
      * 
@@ -15,6 +15,7 @@
 
 package com.amazon.randomcutforest.tree;
 
+import java.util.Arrays;
 import java.util.Set;
 
 public interface INodeView {
@@ -34,6 +35,12 @@ public interface INodeView {
         return getLeafPoint();
     };
 
+    // checks if the leaf point equals the given point, in the sense of
+    // Arrays.equals; implementations can avoid materializing the leaf point
+    default boolean leafPointEquals(double[] point) {
+        return Arrays.equals(getLeafPoint(), point);
+    }
+
     Set<Long> getSequenceIndexes();
 
 }
@@ -15,6 +15,7 @@
 
 package com.amazon.randomcutforest.tree;
 
+import com.amazon.randomcutforest.IVisitorFactory;
 import com.amazon.randomcutforest.config.IDynamicConfig;
 import com.amazon.randomcutforest.executor.ITraversable;
 
@@ -37,4 +38,20 @@ public interface ITree<PointReference, Point> extends ITraversable, IDynamicConf
     PointReference addPoint(PointReference point, long sequenceIndex);
 
     PointReference deletePoint(PointReference point, long sequenceIndex);
+
+    /**
+     * Traverses the tree as {@link #traverse(double[], IVisitorFactory)}, ahead of
+     * an add of the same point. A tree may keep what the traversal learns about
+     * the point, such as the leaf it reaches, so that the next call to
+     * {@link #addPoint} with a reference to that point does not search for it
+     * again; points can be deleted in between.
+     *
+     * @param point          the point
+     * @param visitorFactory a factory method which is invoked to create a visitor
+     * @param <R>            The return type of the Visitor
+     * @return the result of the traversal
+     */
+    default <R> R traverseForAdd(double[] point, IVisitorFactory<R> visitorFactory) {
+        return traverse(point, visitorFactory);
+    }
 }
@@ -19,8 +19,6 @@ import static com.amazon.randomcutforest.CommonUtils.checkState;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -76,7 +74,7 @@ public class Node implements INode<Node> {
      * RandomCutTree, this set stores the indexes corresponding to times when the
      * given leaf point was added to the tree.
      */
-    private Map<Long, Integer> sequenceIndexes;
+    private SequenceIndexes sequenceIndexes;
 
     /**
      * Create a new non-leaf Node.
@@ -405,7 +403,7 @@ public class Node implements INode<Node> {
      */
     public Set<Long> getSequenceIndexes() {
         if (sequenceIndexes != null) {
-            return sequenceIndexes.keySet();
+            return sequenceIndexes.asSet();
         } else {
             return Collections.emptySet();
         }
@@ -418,13 +416,9 @@ public class Node implements INode<Node> {
      */
     protected void addSequenceIndex(long sequenceIndex) {
         if (sequenceIndexes == null) {
-            sequenceIndexes = new HashMap<>();
+            sequenceIndexes = new SequenceIndexes();
         }
-        int num = 0;
-        if (sequenceIndexes.containsKey(sequenceIndex)) {
-            num = sequenceIndexes.get(sequenceIndex);
-        }
-        sequenceIndexes.put(sequenceIndex, num + 1);
+        sequenceIndexes.add(sequenceIndex);
     }
 
     /**
@@ -434,12 +428,7 @@ public class Node implements INode<Node> {
      */
     protected void deleteSequenceIndex(long sequenceIndex) {
         if (sequenceIndexes != null) {
-            int num = sequenceIndexes.get(sequenceIndex);
-            if (num == 1) {
-                sequenceIndexes.remove(sequenceIndex);
-            } else {
-                sequenceIndexes.put(sequenceIndex, num - 1);
-            }
+            sequenceIndexes.remove(sequenceIndex);
         }
     }
 
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.tree;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The sequence indexes of the copies of a point stored at a leaf, along with
+ * the number of copies for each sequence index. The sequence indexes are kept
+ * as a sorted array of primitive longs with a parallel array of counts, which
+ * avoids the boxed keys, values and entries of a hash map. A leaf typically
+ * holds a single sequence index, and rarely more than a few, so the linear
+ * cost of an insertion or a deletion is not a concern.
+ */
+class SequenceIndexes {
+
+    private long[] sequenceIndexes;
+    private int[] counts;
+    private int size;
+
+    SequenceIndexes() {
+        sequenceIndexes = new long[1];
+        counts = new int[1];
+        size = 0;
+    }
+
+    /**
+     * Adds a copy of the given sequence index.
+     *
+     * @param sequenceIndex the sequence index to be added
+     */
+    void add(long sequenceIndex) {
+        int position = Arrays.binarySearch(sequenceIndexes, 0, size, sequenceIndex);
+        if (position >= 0) {
+            ++counts[position];
+            return;
+        }
+        position = -position - 1;
+        if (size == sequenceIndexes.length) {
+            sequenceIndexes = Arrays.copyOf(sequenceIndexes, 2 * size);
+            counts = Arrays.copyOf(counts, 2 * size);
+        }
+        System.arraycopy(sequenceIndexes, position, sequenceIndexes, position + 1, size - position);
+        System.arraycopy(counts, position, counts, position + 1, size - position);
+        sequenceIndexes[position] = sequenceIndex;
+        counts[position] = 1;
+        ++size;
+    }
+
+    /**
+     * Removes a copy of the given sequence index; the sequence index is removed
+     * once there are no more copies.
+     *
+     * @param sequenceIndex the sequence index to be removed
+     * @throws IllegalStateException if the sequence index is not present
+     */
+    void remove(long sequenceIndex) {
+        int position = Arrays.binarySearch(sequenceIndexes, 0, size, sequenceIndex);
+        if (position < 0) {
+            throw new IllegalStateException("Error in sequence index. Inconsistency in trees in delete step.");
+        }
+        if (--counts[position] == 0) {
+            System.arraycopy(sequenceIndexes, position + 1, sequenceIndexes, position, size - position - 1);
+            System.arraycopy(counts, position + 1, counts, position, size - position - 1);
+            --size;
+        }
+    }
+
+    boolean contains(long sequenceIndex) {
+        return Arrays.binarySearch(sequenceIndexes, 0, size, sequenceIndex) >= 0;
+    }
+
+    /**
+     * @param sequenceIndex a sequence index
+     * @return the number of copies of the sequence index, 0 if not present
+     */
+    int getCount(long sequenceIndex) {
+        int position = Arrays.binarySearch(sequenceIndexes, 0, size, sequenceIndex);
+        return (position >= 0) ? counts[position] : 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of these sequence indexes that shares no state with them
+     */
+    SequenceIndexes copy() {
+        SequenceIndexes copy = new SequenceIndexes();
+        copy.sequenceIndexes = Arrays.copyOf(sequenceIndexes, sequenceIndexes.length);
+        copy.counts = Arrays.copyOf(counts, counts.length);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * @return an unmodifiable view of the distinct sequence indexes, in
+     *         increasing order
+     */
+    Set<Long> asSet() {
+        return new AbstractSet<Long>() {
+            @Override
+            public Iterator<Long> iterator() {
+                return new Iterator<Long>() {
+                    private int position = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < size;
+                    }
+
+                    @Override
+                    public Long next() {
+                        if (position >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        return sequenceIndexes[position++];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return (o instanceof Long) && SequenceIndexes.this.contains((Long) o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
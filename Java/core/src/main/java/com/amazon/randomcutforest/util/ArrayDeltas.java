@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.randomcutforest.util;
+
+import static com.amazon.randomcutforest.CommonUtils.checkArgument;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Utilities to store the changes of an array as the ranges of positions where
+ * it differs from a previous version of the array, given by pairs of (start,
+ * length), followed by the values in these ranges.
+ */
+public class ArrayDeltas {
+
+    /**
+     * Ranges separated by at most this many unchanged values are merged, since a
+     * range costs two values.
+     */
+    static final int MAX_GAP = 2;
+
+    /**
+     * Find the ranges of positions where an array differs from a previous
+     * version. The positions at or after the length of the previous version are
+     * always changed.
+     *
+     * @param length     the length of the array
+     * @param baseLength the length of the previous version of the array
+     * @param changed    a predicate that is true for the positions, smaller than
+     *                   both lengths, where the values differ
+     * @return the ranges of changed positions, as pairs of (start, length)
+     */
+    public static int[] changedRanges(int length, int baseLength, IntPredicate changed) {
+        int[] ranges = new int[16];
+        int size = 0;
+        int end = -MAX_GAP - 1;
+        for (int i = 0; i < length; i++) {
+            if (i >= baseLength || changed.test(i)) {
+                if (i - end > MAX_GAP) {
+                    if (size == ranges.length) {
+                        ranges = Arrays.copyOf(ranges, 2 * size);
+                    }
+                    ranges[size] = i;
+                    size += 2;
+                }
+                end = i + 1;
+                ranges[size - 1] = end - ranges[size - 2];
+            }
+        }
+        return Arrays.copyOf(ranges, size);
+    }
+
+    /**
+     * Find the ranges of positions where an array differs from a previous
+     * version.
+     *
+     * @param base  the previous version of the array
+     * @param array the array
+     * @return the ranges of changed positions, as pairs of (start, length)
+     */
+    public static int[] changedRanges(int[] base, int[] array) {
+        return changedRanges(array.length, base.length, i -> base[i] != array[i]);
+    }
+
+    /**
+     * @param ranges ranges of positions, as pairs of (start, length)
+     * @return the number of positions in the ranges
+     */
+    public static int rangesLength(int[] ranges) {
+        int length = 0;
+        for (int i = 1; i < ranges.length; i += 2) {
+            length += ranges[i];
+        }
+        return length;
+    }
+
+    public static int[] valuesInRanges(int[] array, int[] ranges) {
+        int[] values = new int[rangesLength(ranges)];
+        int position = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            System.arraycopy(array, ranges[i], values, position, ranges[i + 1]);
+            position += ranges[i + 1];
+        }
+        return values;
+    }
+
+    public static float[] valuesInRanges(float[] array, int[] ranges) {
+        float[] values = new float[rangesLength(ranges)];
+        int position = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            System.arraycopy(array, ranges[i], values, position, ranges[i + 1]);
+            position += ranges[i + 1];
+        }
+        return values;
+    }
+
+    public static long[] valuesInRanges(long[] array, int[] ranges) {
+        long[] values = new long[rangesLength(ranges)];
+        int position = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            System.arraycopy(array, ranges[i], values, position, ranges[i + 1]);
+            position += ranges[i + 1];
+        }
+        return values;
+    }
+
+    /**
+     * Rebuild an array from its previous version and its changes. The previous
+     * version is not modified.
+     *
+     * @param base   the previous version of the array
+     * @param length the length of the array
+     * @param ranges the ranges of changed positions, as pairs of (start, length)
+     * @param values the values in the ranges
+     * @return the array
+     */
+    public static int[] applyRanges(int[] base, int length, int[] ranges, int[] values) {
+        checkRanges(length, ranges, values.length);
+        int[] array = Arrays.copyOf(base, length);
+        int position = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            System.arraycopy(values, position, array, ranges[i], ranges[i + 1]);
+            position += ranges[i + 1];
+        }
+        return array;
+    }
+
+    public static float[] applyRanges(float[] base, int length, int[] ranges, float[] values) {
+        checkRanges(length, ranges, values.length);
+        float[] array = Arrays.copyOf(base, length);
+        int position = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            System.arraycopy(values, position, array, ranges[i], ranges[i + 1]);
+            position += ranges[i + 1];
+        }
+        return array;
+    }
+
+    public static long[] applyRanges(long[] base, int length, int[] ranges, long[] values) {
+        checkRanges(length, ranges, values.length);
+        long[] array = Arrays.copyOf(base, length);
+        int position = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            System.arraycopy(values, position, array, ranges[i], ranges[i + 1]);
+            position += ranges[i + 1];
+        }
+        return array;
+    }
+
+    private static void checkRanges(int length, int[] ranges, int valuesLength) {
+        checkArgument(ranges.length % 2 == 0, "ranges must be pairs of (start, length)");
+        for (int i = 0; i < ranges.length; i += 2) {
+            checkArgument(ranges[i] >= 0 && ranges[i + 1] >= 0 && ranges[i] + ranges[i + 1] <= length,
+                    "incorrect range");
+        }
+        checkArgument(rangesLength(ranges) == valuesLength, "incorrect number of values");
+    }
+}
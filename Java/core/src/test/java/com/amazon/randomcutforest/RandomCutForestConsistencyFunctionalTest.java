@@ -15,15 +15,18 @@
 
 package com.amazon.randomcutforest;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
 import com.amazon.randomcutforest.config.Precision;
+import com.amazon.randomcutforest.returntypes.DiVector;
 import com.amazon.randomcutforest.testutils.NormalMixtureTestData;
 
 /**
@@ -162,4 +165,124 @@ public class RandomCutForestConsistencyFunctionalTest {
         assertTrue(anomalies > 0);
     }
 
+    @Test
+    public void testConsistentBatchUpdate() {
+        RandomCutForest.Builder<?> builder = RandomCutForest.builder().dimensions(dimensions).sampleSize(sampleSize)
+                .randomSeed(randomSeed);
+
+        RandomCutForest compactSequential = builder.compact(true).parallelExecutionEnabled(false).build();
+        RandomCutForest compactBatchSequential = builder.compact(true).parallelExecutionEnabled(false).build();
+        RandomCutForest compactBatchParallel = builder.compact(true).parallelExecutionEnabled(true).build();
+        RandomCutForest pointerBatchParallel = builder.compact(false).parallelExecutionEnabled(true).build();
+
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        double[][] data = testData.generateTestData(testSize, dimensions, 99);
+        int batchSize = 100;
+        double delta = 1e-10;
+
+        for (int start = 0; start < data.length; start += batchSize) {
+            double[][] batch = Arrays.copyOfRange(data, start, Math.min(start + batchSize, data.length));
+            for (double[] point : batch) {
+                compactSequential.update(point);
+            }
+            compactBatchSequential.update(batch);
+            compactBatchParallel.update(batch);
+            pointerBatchParallel.update(batch);
+
+            assertEquals(compactSequential.getTotalUpdates(), compactBatchSequential.getTotalUpdates());
+            assertEquals(compactSequential.getTotalUpdates(), compactBatchParallel.getTotalUpdates());
+            assertEquals(compactSequential.getTotalUpdates(), pointerBatchParallel.getTotalUpdates());
+
+            for (double[] point : batch) {
+                double score = compactSequential.getAnomalyScore(point);
+                assertEquals(score, compactBatchSequential.getAnomalyScore(point), delta);
+                assertEquals(score, compactBatchParallel.getAnomalyScore(point), delta);
+                assertEquals(score, pointerBatchParallel.getAnomalyScore(point), delta);
+            }
+        }
+    }
+
+    @Test
+    public void testConsistentBatchScoring() {
+        RandomCutForest.Builder<?> builder = RandomCutForest.builder().dimensions(dimensions).sampleSize(sampleSize)
+                .randomSeed(randomSeed);
+
+        RandomCutForest compactSequential = builder.compact(true).parallelExecutionEnabled(false).build();
+        RandomCutForest compactParallel = builder.compact(true).parallelExecutionEnabled(true).build();
+        RandomCutForest pointerSequential = builder.compact(false).parallelExecutionEnabled(false).build();
+
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        double[][] data = testData.generateTestData(testSize, dimensions, 99);
+        for (double[] point : data) {
+            compactSequential.update(point);
+            compactParallel.update(point);
+            pointerSequential.update(point);
+        }
+
+        double[][] queries = testData.generateTestData(200, dimensions, 100);
+        double delta = 1e-10;
+
+        double[] compactSequentialScores = compactSequential.getAnomalyScores(queries);
+        double[] compactParallelScores = compactParallel.getAnomalyScores(queries);
+        double[] pointerSequentialScores = pointerSequential.getAnomalyScores(queries);
+        DiVector[] attributions = compactParallel.getAnomalyAttributions(queries);
+
+        for (int i = 0; i < queries.length; i++) {
+            double score = compactSequential.getAnomalyScore(queries[i]);
+            assertEquals(score, compactSequentialScores[i], delta);
+            assertEquals(score, compactParallelScores[i], delta);
+            assertEquals(score, pointerSequentialScores[i], delta);
+
+            DiVector attribution = compactSequential.getAnomalyAttribution(queries[i]);
+            assertArrayEquals(attribution.high, attributions[i].high, delta);
+            assertArrayEquals(attribution.low, attributions[i].low, delta);
+        }
+    }
+
+    @Test
+    public void testConsistentScoreThenUpdate() {
+        RandomCutForest.Builder<?> builder = RandomCutForest.builder().dimensions(dimensions).sampleSize(sampleSize)
+                .randomSeed(randomSeed);
+
+        RandomCutForest compactSequential = builder.compact(true).parallelExecutionEnabled(false).build();
+        RandomCutForest compactFusedSequential = builder.compact(true).parallelExecutionEnabled(false).build();
+        RandomCutForest compactFusedParallel = builder.compact(true).parallelExecutionEnabled(true).build();
+        RandomCutForest pointerFusedSequential = builder.compact(false).parallelExecutionEnabled(false).build();
+
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        double[][] data = testData.generateTestData(testSize, dimensions, 99);
+        double delta = 1e-10;
+        for (double[] point : data) {
+            double score = compactSequential.getAnomalyScore(point);
+            compactSequential.update(point);
+            assertEquals(score, compactFusedSequential.scoreThenUpdate(point));
+            assertEquals(score, compactFusedParallel.scoreThenUpdate(point), delta);
+            assertEquals(score, pointerFusedSequential.scoreThenUpdate(point), delta);
+        }
+        assertEquals(compactSequential.getTotalUpdates(), compactFusedSequential.getTotalUpdates());
+        assertEquals(compactSequential.getTotalUpdates(), pointerFusedSequential.getTotalUpdates());
+    }
+
+    @Test
+    public void testConsistentScoreThenUpdateInternalShingling() {
+        int shingleSize = 4;
+        for (boolean rotation : new boolean[] { false, true }) {
+            RandomCutForest.Builder<?> builder = RandomCutForest.builder().dimensions(dimensions * shingleSize)
+                    .shingleSize(shingleSize).internalShinglingEnabled(true).internalRotationEnabled(rotation)
+                    .sampleSize(sampleSize).randomSeed(randomSeed);
+
+            RandomCutForest sequential = builder.build();
+            RandomCutForest fused = builder.build();
+
+            NormalMixtureTestData testData = new NormalMixtureTestData();
+            double[][] data = testData.generateTestData(testSize, dimensions, 99);
+            for (double[] point : data) {
+                double score = sequential.getAnomalyScore(point);
+                sequential.update(point);
+                assertEquals(score, fused.scoreThenUpdate(point));
+            }
+            assertArrayEquals(sequential.lastShingledPoint(), fused.lastShingledPoint());
+        }
+    }
+
 }
@@ -21,6 +21,7 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.AdditionalMatchers.aryEq;
@@ -60,6 +61,9 @@ import com.amazon.randomcutforest.executor.PassThroughCoordinator;
 import com.amazon.randomcutforest.executor.SamplerPlusTree;
 import com.amazon.randomcutforest.executor.SequentialForestTraversalExecutor;
 import com.amazon.randomcutforest.executor.SequentialForestUpdateExecutor;
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.NoOpForestMetrics;
+import com.amazon.randomcutforest.metrics.SimpleForestMetrics;
 import com.amazon.randomcutforest.returntypes.ConvergingAccumulator;
 import com.amazon.randomcutforest.returntypes.DensityOutput;
 import com.amazon.randomcutforest.returntypes.DiVector;
@@ -325,6 +329,36 @@ public class RandomCutForestTest {
         assertEquals(expectedResult, forest.getAnomalyScore(point), EPSILON);
     }
 
+    @Test
+    public void testGetAnomalyScores() {
+        double[][] points = { { 1.2, -3.4 }, { -5.6, 7.8 } };
+
+        assertFalse(forest.isOutputReady());
+        assertArrayEquals(new double[2], forest.getAnomalyScores(points));
+
+        doReturn(true).when(forest).isOutputReady();
+        double[] expectedResult = new double[2];
+
+        for (int i = 0; i < numberOfTrees; i++) {
+            SamplerPlusTree<double[], double[]> component = (SamplerPlusTree<double[], double[]>) components.get(i);
+            ITree<double[], double[]> tree = component.getTree();
+            for (int j = 0; j < points.length; j++) {
+                double treeResult = Math.random();
+                when(tree.traverse(aryEq(points[j]), any(IVisitorFactory.class))).thenReturn(treeResult);
+                expectedResult[j] += treeResult;
+            }
+
+            when(tree.getMass()).thenReturn(256);
+        }
+
+        expectedResult[0] /= numberOfTrees;
+        expectedResult[1] /= numberOfTrees;
+        assertArrayEquals(expectedResult, forest.getAnomalyScores(points), EPSILON);
+        verify(traversalExecutor, times(1)).traverseForestBatch(any(), any(), any(), any());
+        assertThrows(NullPointerException.class, () -> forest.getAnomalyScores(null));
+        assertThrows(IllegalArgumentException.class, () -> forest.getAnomalyScores(new double[][] { { 1.0 } }));
+    }
+
     @Test
     public void testGetApproximateAnomalyScore() {
         double[] point = { 1.2, -3.4 };
@@ -561,17 +595,47 @@ public class RandomCutForestTest {
             double[] treeResult = { Math.random(), Math.random() };
             when(tree.traverseMulti(aryEq(point), any(IMultiVisitorFactory.class))).thenReturn(treeResult);
 
-            double anomalyScore = anomalyScores.get(i);
-            doReturn(anomalyScore).when(forest).getAnomalyScore(aryEq(treeResult));
-            if (anomalyScore == selectScore) {
+            if (anomalyScores.get(i) == selectScore) {
                 expectedResult = treeResult;
             }
         }
 
+        // the imputed points are scored in a single batch, in the order of the trees
+        double[] scores = anomalyScores.stream().mapToDouble(Double::doubleValue).toArray();
+        doReturn(scores).when(forest).getAnomalyScores(any(double[][].class));
         doReturn(true).when(forest).isOutputReady();
         double[] result = forest.imputeMissingValues(point, numberOfMissingValues, missingIndexes);
 
         assertArrayEquals(expectedResult, result);
+        verify(forest, times(1)).getAnomalyScores(any(double[][].class));
+        verify(forest, never()).getAnomalyScore(any(double[].class));
+    }
+
+    @Test
+    public void testSelectIndexOfRank() {
+        Random random = new Random(0);
+        for (int trial = 0; trial < 100; trial++) {
+            double[] values = new double[1 + random.nextInt(50)];
+            for (int i = 0; i < values.length; i++) {
+                // few distinct values, so that there are ties
+                values[i] = random.nextInt(5);
+            }
+            Integer[] sortedIndices = new Integer[values.length];
+            for (int i = 0; i < values.length; i++) {
+                sortedIndices[i] = i;
+            }
+            // a stable sort
+            Arrays.sort(sortedIndices, (first, second) -> Double.compare(values[first], values[second]));
+            double[] copy = Arrays.copyOf(values, values.length);
+            for (int rank = 0; rank < values.length; rank++) {
+                assertEquals((int) sortedIndices[rank], CommonUtils.selectIndexOfRank(values, rank));
+            }
+            assertArrayEquals(copy, values);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> CommonUtils.selectIndexOfRank(new double[2], 2));
+        assertThrows(IllegalArgumentException.class, () -> CommonUtils.selectIndexOfRank(new double[2], -1));
+        assertThrows(NullPointerException.class, () -> CommonUtils.selectIndexOfRank(null, 0));
     }
 
     @Test
@@ -956,6 +1020,24 @@ public class RandomCutForestTest {
         assertThrows(IllegalArgumentException.class, () -> forest.update(new double[] { 0, 0, 0, 0 }));
     }
 
+    @Test
+    public void testExtrapolateWithInternalShingling() {
+        int baseDimensions = 2;
+        int shingleSize = 4;
+        int horizon = 3;
+        for (boolean rotation : new boolean[] { false, true }) {
+            RandomCutForest forest = new RandomCutForest.Builder<>().compact(true).internalShinglingEnabled(true)
+                    .internalRotationEnabled(rotation).shingleSize(shingleSize)
+                    .dimensions(baseDimensions * shingleSize).sampleSize(32).numberOfTrees(10).randomSeed(42).build();
+            // the shingle index takes every value in [0, shingleSize), and the
+            // sequence index modulo the dimensions would exceed it
+            for (int i = 0; i < 100; i++) {
+                forest.update(new double[] { Math.sin(i / 5.0), Math.cos(i / 5.0) });
+                assertEquals(horizon * baseDimensions, forest.extrapolate(horizon).length);
+            }
+        }
+    }
+
     @Test
     public void testComponents() {
         RandomCutForest forest = new RandomCutForest.Builder<>().dimensions(2).sampleSize(10).numberOfTrees(2).build();
@@ -985,4 +1067,164 @@ public class RandomCutForestTest {
         // the {20,-20} point is present still
         assertEquals(forest.getNearNeighborsInSample(new double[] { 20.0, -20.0 }, 1).size(), 1);
     }
+
+    @Test
+    public void testConcurrentScoringWhileUpdating() throws Exception {
+        for (Precision precision : Precision.values()) {
+            RandomCutForest concurrentForest = RandomCutForest.builder().dimensions(3).sampleSize(64)
+                    .numberOfTrees(10).precision(precision).randomSeed(42).concurrentScoringEnabled(true).build();
+            RandomCutForest forest = RandomCutForest.builder().dimensions(3).sampleSize(64).numberOfTrees(10)
+                    .precision(precision).randomSeed(42).build();
+            assertTrue(concurrentForest.isConcurrentScoringEnabled());
+            assertFalse(forest.isConcurrentScoringEnabled());
+
+            Random random = new Random(0);
+            double[][] points = new double[5000][];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = new double[] { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() };
+            }
+
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+            Thread writer = new Thread(() -> {
+                for (double[] point : points) {
+                    concurrentForest.update(point);
+                }
+            });
+            List<Thread> readers = new ArrayList<>();
+            for (int j = 0; j < 3; j++) {
+                readers.add(new Thread(() -> {
+                    try {
+                        while (writer.isAlive()) {
+                            double score = concurrentForest.getAnomalyScore(new double[] { 0.0, 1.0, 2.0 });
+                            assertTrue(score >= 0.0);
+                            concurrentForest.getAnomalyAttribution(new double[] { 2.0, 1.0, 0.0 });
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }));
+            }
+            writer.start();
+            readers.forEach(Thread::start);
+            writer.join();
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertTrue(errors.isEmpty());
+
+            // scoring does not change the state of the forest
+            for (double[] point : points) {
+                forest.update(point);
+            }
+            double[] query = new double[] { 0.0, 1.0, 2.0 };
+            assertEquals(forest.getAnomalyScore(query), concurrentForest.getAnomalyScore(query), EPSILON);
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        for (Precision precision : Precision.values()) {
+            RandomCutForest forest = RandomCutForest.builder().dimensions(3).sampleSize(64).numberOfTrees(10)
+                    .precision(precision).randomSeed(42).centerOfMassEnabled(true).storeSequenceIndexesEnabled(true)
+                    .boundingBoxCacheFraction(0.5).build();
+            Random random = new Random(0);
+            for (int i = 0; i < 1000; i++) {
+                forest.update(new double[] { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() });
+            }
+
+            double[] query = new double[] { 0.0, 1.0, 2.0 };
+            double score = forest.getAnomalyScore(query);
+            DiVector attribution = forest.getAnomalyAttribution(query);
+            int neighbors = forest.getNearNeighborsInSample(query, 1.0).size();
+
+            RandomCutForest snapshot = forest.snapshot();
+            assertTrue(snapshot.isReadOnly());
+            assertFalse(forest.isReadOnly());
+            assertEquals(forest.getTotalUpdates(), snapshot.getTotalUpdates());
+            assertEquals(score, snapshot.getAnomalyScore(query), EPSILON);
+
+            for (int i = 0; i < 1000; i++) {
+                forest.update(new double[] { random.nextGaussian() + 5, random.nextGaussian(), random.nextGaussian() });
+            }
+            assertEquals(score, snapshot.getAnomalyScore(query), EPSILON);
+            assertArrayEquals(attribution.high, snapshot.getAnomalyAttribution(query).high, EPSILON);
+            assertArrayEquals(attribution.low, snapshot.getAnomalyAttribution(query).low, EPSILON);
+            assertEquals(neighbors, snapshot.getNearNeighborsInSample(query, 1.0).size());
+            assertEquals(1000, snapshot.getTotalUpdates());
+
+            assertThrows(IllegalStateException.class, () -> snapshot.update(query));
+            assertThrows(IllegalStateException.class, () -> snapshot.update(new double[][] { query }));
+            assertThrows(IllegalStateException.class, () -> snapshot.setTimeDecay(0.1));
+        }
+
+        RandomCutForest forest = RandomCutForest.builder().dimensions(3).compact(false).build();
+        assertThrows(IllegalStateException.class, forest::snapshot);
+    }
+
+    @Test
+    public void testSnapshotDoesNotAdvanceRandom() {
+        RandomCutForest forest = RandomCutForest.builder().dimensions(3).sampleSize(64).numberOfTrees(10)
+                .randomSeed(42).build();
+        RandomCutForest forest2 = RandomCutForest.builder().dimensions(3).sampleSize(64).numberOfTrees(10)
+                .randomSeed(42).build();
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            double[] point = new double[] { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() };
+            forest.update(point);
+            forest2.update(point);
+        }
+        forest.snapshot();
+        assertEquals(forest2.random.nextLong(), forest.random.nextLong());
+    }
+
+    @Test
+    public void testMetrics() {
+        for (Precision precision : Precision.values()) {
+            SimpleForestMetrics metrics = new SimpleForestMetrics();
+            RandomCutForest forest = RandomCutForest.builder().dimensions(3).sampleSize(64).numberOfTrees(10)
+                    .precision(precision).randomSeed(42).boundingBoxCacheFraction(0.5).metrics(metrics).build();
+            assertSame(metrics, forest.getMetrics());
+
+            Random random = new Random(0);
+            for (int i = 0; i < 1000; i++) {
+                forest.update(new double[] { random.nextGaussian(), random.nextGaussian(), random.nextGaussian() });
+            }
+            double[] query = new double[] { 0.0, 1.0, 2.0 };
+            for (int i = 0; i < 5; i++) {
+                forest.getAnomalyScore(query);
+                forest.getAnomalyAttribution(query);
+            }
+
+            assertEquals(1000L, metrics.getCount(IForestMetrics.Operation.UPDATE));
+            assertEquals(5L, metrics.getCount(IForestMetrics.Operation.SCORE));
+            assertEquals(5L, metrics.getCount(IForestMetrics.Operation.ATTRIBUTION));
+            long accepted = metrics.getCount(IForestMetrics.Counter.SAMPLER_ACCEPT);
+            assertEquals(10 * 1000L, accepted + metrics.getCount(IForestMetrics.Counter.SAMPLER_REJECT));
+            assertTrue(metrics.getCount(IForestMetrics.Counter.SAMPLER_EVICT) > 0);
+            assertTrue(metrics.getCount(IForestMetrics.Counter.SAMPLER_EVICT) < accepted);
+            assertTrue(metrics.getCount(IForestMetrics.Counter.BOX_CACHE_HIT) > 0);
+            assertTrue(metrics.getCount(IForestMetrics.Counter.BOX_CACHE_MISS) > 0);
+            assertTrue(metrics.getCount(IForestMetrics.Operation.POINT_STORE_RESIZE) > 0);
+            // one traversal per tree for each score and attribution
+            assertEquals(10 * 10L, Arrays.stream(metrics.getTreeDepthHistogram()).sum());
+
+            // a batch is recorded once, and not as the scores of its points
+            double[][] queries = new double[][] { query, { 1.0, 0.0, -1.0 }, { 2.0, 2.0, 2.0 } };
+            forest.getAnomalyScores(queries);
+            forest.getAnomalyScores(queries);
+            forest.getAnomalyAttributions(queries);
+            assertEquals(2L, metrics.getCount(IForestMetrics.Operation.SCORE_BATCH));
+            assertEquals(1L, metrics.getCount(IForestMetrics.Operation.ATTRIBUTION_BATCH));
+            assertEquals(5L, metrics.getCount(IForestMetrics.Operation.SCORE));
+            assertEquals(5L, metrics.getCount(IForestMetrics.Operation.ATTRIBUTION));
+            assertTrue(metrics.getTotalNanos(IForestMetrics.Operation.SCORE_BATCH) > 0);
+
+            // the snapshot shares the metrics sink
+            forest.snapshot().getAnomalyScore(query);
+            assertEquals(6L, metrics.getCount(IForestMetrics.Operation.SCORE));
+        }
+
+        assertThrows(NullPointerException.class, () -> RandomCutForest.builder().dimensions(3).metrics(null).build());
+        assertSame(NoOpForestMetrics.INSTANCE, RandomCutForest.builder().dimensions(3).build().getMetrics());
+    }
 }
@@ -68,6 +68,36 @@ public class AnomalyScoreVisitorTest {
         assertThat(visitor.getResult(), is(0.0));
     }
 
+    @Test
+    public void testReset() {
+        double[] point = { 1.0, 2.0, 3.0 };
+        AnomalyScoreVisitor visitor = new AnomalyScoreVisitor(point, 2);
+        visitor.acceptLeaf(new Node(point), 1);
+        assertTrue(visitor.pointInsideBox);
+        assertTrue(visitor.getResult() > 0.0);
+
+        double[] anotherPoint = { 4.0, 5.0, 6.0 };
+        visitor.reset(anotherPoint, 2);
+        assertFalse(visitor.pointInsideBox);
+        for (int i = 0; i < anotherPoint.length; i++) {
+            assertFalse(visitor.coordInsideBox[i]);
+        }
+        assertThat(visitor.getResult(), is(0.0));
+
+        // the reset visitor scores the new point exactly as a new visitor would
+        AnomalyScoreVisitor expected = new AnomalyScoreVisitor(anotherPoint, 2);
+        expected.acceptLeaf(new Node(point), 1);
+        visitor.acceptLeaf(new Node(point), 1);
+        assertFalse(visitor.pointInsideBox);
+        assertThat(visitor.getResult(), is(expected.getResult()));
+
+        double[] shorterPoint = { 1.0, 2.0 };
+        visitor.reset(shorterPoint, 2);
+        assertEquals(shorterPoint.length, visitor.coordInsideBox.length);
+        visitor.acceptLeaf(new Node(shorterPoint), 1);
+        assertTrue(visitor.pointInsideBox);
+    }
+
     @Test
     public void testAcceptLeafEquals() {
         double[] point = { 1.0, 2.0, 3.0 };
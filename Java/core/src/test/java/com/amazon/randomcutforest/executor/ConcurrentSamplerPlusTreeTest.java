@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.executor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.amazon.randomcutforest.IVisitorFactory;
+import com.amazon.randomcutforest.sampler.IStreamSampler;
+import com.amazon.randomcutforest.tree.ITree;
+
+@ExtendWith(MockitoExtension.class)
+public class ConcurrentSamplerPlusTreeTest {
+    @Mock
+    private ITree<Integer, double[]> tree;
+    @Mock
+    private IStreamSampler<Integer> sampler;
+    @Mock
+    private IVisitorFactory<Double> visitorFactory;
+    private ReentrantReadWriteLock pointStoreLock;
+    private ConcurrentSamplerPlusTree<Integer, double[]> samplerPlusTree;
+
+    @BeforeEach
+    public void setUp() {
+        pointStoreLock = new ReentrantReadWriteLock();
+        samplerPlusTree = new ConcurrentSamplerPlusTree<>(sampler, tree, pointStoreLock);
+    }
+
+    @Test
+    public void testUpdateRejectPoint() {
+        when(sampler.acceptPoint(100L)).thenReturn(false);
+        UpdateResult<Integer> result = samplerPlusTree.update(2, 100L);
+        assertFalse(result.isStateChange());
+        verify(tree, never()).addPoint(any(), anyLong());
+    }
+
+    @Test
+    public void testTraverseWaitsForPointStore() throws InterruptedException {
+        double[] point = new double[] { 1.0, 2.0 };
+        when(tree.traverse(point, visitorFactory)).thenReturn(3.0);
+        AtomicReference<Double> result = new AtomicReference<>();
+        Thread reader = new Thread(() -> result.set(samplerPlusTree.traverse(point, visitorFactory)));
+
+        pointStoreLock.writeLock().lock();
+        try {
+            reader.start();
+            while (!pointStoreLock.hasQueuedThread(reader)) {
+                Thread.yield();
+            }
+            verify(tree, never()).traverse(point, visitorFactory);
+        } finally {
+            pointStoreLock.writeLock().unlock();
+        }
+        reader.join();
+        assertEquals(3.0, result.get());
+        verify(tree, times(1)).traverse(point, visitorFactory);
+        assertEquals(0, pointStoreLock.getReadLockCount());
+    }
+
+    @Test
+    public void testUpdateDoesNotWaitForPointStore() throws InterruptedException {
+        when(sampler.acceptPoint(100L)).thenReturn(false);
+        Thread writer = new Thread(() -> samplerPlusTree.update(2, 100L));
+
+        pointStoreLock.writeLock().lock();
+        try {
+            writer.start();
+            writer.join();
+        } finally {
+            pointStoreLock.writeLock().unlock();
+        }
+        assertFalse(writer.isAlive());
+        assertEquals(0, pointStoreLock.getQueueLength());
+    }
+}
@@ -104,6 +104,40 @@ public class ForestTraversalExecutorTest {
         assertEquals(expectedResult, result, EPSILON);
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(TestExecutorProvider.class)
+    public void testTraverseForestBatch(AbstractForestTraversalExecutor executor) {
+        double[] point1 = new double[] { 1.2, -3.4 };
+        double[] point2 = new double[] { 5.6, 7.8 };
+        double expectedResult1 = 0.0;
+        double expectedResult2 = 0.0;
+
+        for (int i = 0; i < numberOfTrees; i++) {
+            double treeResult1 = Math.random();
+            double treeResult2 = Math.random();
+            ITree<?, ?> tree = ((SamplerPlusTree<?, ?>) executor.components.get(i)).getTree();
+            when(tree.traverse(aryEq(point1), any())).thenReturn(treeResult1);
+            when(tree.traverse(aryEq(point2), any())).thenReturn(treeResult2);
+            expectedResult1 += treeResult1;
+            expectedResult2 += treeResult2;
+        }
+
+        expectedResult1 /= numberOfTrees;
+        expectedResult2 /= numberOfTrees;
+
+        List<Double> result = executor.traverseForestBatch(Arrays.asList(point1, point2),
+                TestUtils.DUMMY_GENERIC_VISITOR_FACTORY, Double::sum, x -> x / 10.0);
+
+        for (IComponentModel<?, ?> component : executor.components) {
+            verify(component, times(1)).traverse(aryEq(point1), any());
+            verify(component, times(1)).traverse(aryEq(point2), any());
+        }
+
+        assertEquals(2, result.size());
+        assertEquals(expectedResult1, result.get(0), EPSILON);
+        assertEquals(expectedResult2, result.get(1), EPSILON);
+    }
+
     @ParameterizedTest
     @ArgumentsSource(TestExecutorProvider.class)
     public void testTraverseForestCollector(AbstractForestTraversalExecutor executor) {
@@ -158,6 +192,31 @@ public class ForestTraversalExecutorTest {
         assertEquals(accumulator.getAccumulatedValue() / accumulator.getValuesAccepted(), result, EPSILON);
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(TestExecutorProvider.class)
+    public void testTraverseForestConvergingInOrder(AbstractForestTraversalExecutor executor) {
+        double[] point = new double[] { 1.2, -3.4 };
+        int convergenceThreshold = numberOfTrees / 2 + 1;
+        double expectedResult = 0.0;
+
+        for (int i = 0; i < numberOfTrees; i++) {
+            double treeResult = Math.random();
+            ITree<?, ?> tree = ((SamplerPlusTree<?, ?>) executor.components.get(i)).getTree();
+            when(tree.traverse(aryEq(point), any())).thenReturn(treeResult);
+            if (i < convergenceThreshold) {
+                expectedResult += treeResult;
+            }
+        }
+
+        // the results of the first trees are accepted, whichever trees complete first
+        ConvergingAccumulator<Double> accumulator = TestUtils.convergeAfter(convergenceThreshold);
+        double result = executor.traverseForest(point, TestUtils.DUMMY_GENERIC_VISITOR_FACTORY, accumulator,
+                x -> x);
+
+        assertEquals(convergenceThreshold, accumulator.getValuesAccepted());
+        assertEquals(expectedResult, result, EPSILON);
+    }
+
     @ParameterizedTest
     @ArgumentsSource(TestExecutorProvider.class)
     public void testTraverseForestMultiBinaryAccumulator(AbstractForestTraversalExecutor executor) {
@@ -28,7 +28,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -43,6 +45,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.amazon.randomcutforest.ComponentList;
 import com.amazon.randomcutforest.IComponentModel;
+import com.amazon.randomcutforest.IVisitorFactory;
 
 @ExtendWith(MockitoExtension.class)
 public class ForestUpdateExecutorTest {
@@ -127,6 +130,84 @@ public class ForestUpdateExecutorTest {
         assertEquals(addOnly, actualAddOnly);
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(TestExecutorProvider.class)
+    public void testUpdateBatch(AbstractForestUpdateExecutor<double[], ?> executor) {
+        int addOnly = 4;
+
+        ComponentList<double[], ?> components = executor.components;
+        for (int i = 0; i < addOnly; i++) {
+            IComponentModel<double[], ?> model = components.get(i);
+            UpdateResult<double[]> result = UpdateResult.<double[]>builder().addedPoint(new double[] { i }).build();
+            when(model.update(any(), anyLong())).thenReturn(result);
+        }
+
+        for (int i = addOnly; i < numberOfTrees; i++) {
+            IComponentModel<double[], ?> model = components.get(i);
+            when(model.update(any(), anyLong())).thenReturn(UpdateResult.noop());
+        }
+
+        double[] point1 = new double[] { 1.0 };
+        double[] point2 = new double[] { 2.0 };
+        double[] point3 = new double[] { -0.0 };
+        executor.updateBatch(Arrays.asList(point1, point2, point3), 10L);
+
+        executor.components.forEach(model -> {
+            verify(model).update(aryEq(point1), eq(10L));
+            verify(model).update(aryEq(point2), eq(11L));
+            verify(model).update(aryEq(new double[] { 0.0 }), eq(12L));
+        });
+
+        IStateCoordinator<double[], ?> coordinator = executor.updateCoordinator;
+        verify(coordinator, times(3)).completeUpdate(updateResultCaptor.capture(), any());
+        assertEquals(3, coordinator.getTotalUpdates());
+
+        List<List<UpdateResult<double[]>>> updateResults = updateResultCaptor.getAllValues();
+        assertEquals(3, updateResults.size());
+        for (List<UpdateResult<double[]>> pointResults : updateResults) {
+            assertEquals(addOnly, pointResults.size());
+            for (int i = 0; i < addOnly; i++) {
+                assertArrayEquals(new double[] { i }, pointResults.get(i).getAddedPoint().get());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(TestExecutorProvider.class)
+    public void testTraverseThenUpdate(AbstractForestUpdateExecutor<double[], ?> executor) {
+        int addOnly = 4;
+
+        ComponentList<double[], ?> components = executor.components;
+        for (int i = 0; i < numberOfTrees; i++) {
+            IComponentModel<double[], ?> model = components.get(i);
+            double traversalResult = i;
+            UpdateResult<double[]> result = (i < addOnly)
+                    ? UpdateResult.<double[]>builder().addedPoint(new double[] { i }).build()
+                    : UpdateResult.noop();
+            when(model.traverseThenUpdate(any(), any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+                Consumer<Double> traversal = invocation.getArgument(2);
+                traversal.accept(traversalResult);
+                return result;
+            });
+        }
+
+        double[] point = new double[] { -0.0 };
+        double[] query = new double[] { 1.0, 0.0 };
+        IVisitorFactory<Double> visitorFactory = mock(IVisitorFactory.class);
+        double sum = executor.traverseThenUpdate(point, pointCopy -> {
+            assertArrayEquals(new double[] { 0.0 }, pointCopy);
+            return query;
+        }, visitorFactory, Double::sum, x -> x);
+        assertEquals(numberOfTrees * (numberOfTrees - 1) / 2.0, sum);
+
+        executor.components.forEach(
+                model -> verify(model).traverseThenUpdate(eq(query), eq(visitorFactory), any(), any(), eq(0L)));
+
+        IStateCoordinator<double[], ?> coordinator = executor.updateCoordinator;
+        verify(coordinator, times(1)).completeUpdate(updateResultCaptor.capture(), any());
+        assertEquals(addOnly, updateResultCaptor.getValue().size());
+    }
+
     @ParameterizedTest
     @ArgumentsSource(TestExecutorProvider.class)
     public void testCleanCopy(AbstractForestUpdateExecutor<double[], ?> executor) {
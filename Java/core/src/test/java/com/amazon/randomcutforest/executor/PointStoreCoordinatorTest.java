@@ -95,4 +95,14 @@ public class PointStoreCoordinatorTest {
         assertEquals(200, arguments.get(1));
         assertEquals(1000, arguments.get(2));
     }
+
+    @Test
+    public void testGetUpdateCapacity() {
+        when(store.getCapacity()).thenReturn(100);
+        when(store.size()).thenReturn(90);
+        assertEquals(10, coordinator.getUpdateCapacity());
+
+        when(store.size()).thenReturn(100);
+        assertEquals(1, coordinator.getUpdateCapacity());
+    }
 }
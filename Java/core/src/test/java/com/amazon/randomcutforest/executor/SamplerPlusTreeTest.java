@@ -26,6 +26,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -34,6 +37,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.amazon.randomcutforest.IVisitorFactory;
 import com.amazon.randomcutforest.sampler.ISampled;
 import com.amazon.randomcutforest.sampler.IStreamSampler;
 import com.amazon.randomcutforest.tree.ITree;
@@ -95,6 +99,28 @@ public class SamplerPlusTreeTest {
         verify(sampler, times(1)).addPoint(existingPointReference);
     }
 
+    @Test
+    public void testTraverseThenUpdate() {
+        int pointReference = 2;
+        long sequenceIndex = 100L;
+        double[] point = new double[] { 1.0, 2.0 };
+        IVisitorFactory<Double> visitorFactory = mock(IVisitorFactory.class);
+        when(tree.traverseForAdd(point, visitorFactory)).thenReturn(0.5);
+        when(sampler.acceptPoint(sequenceIndex)).thenReturn(true);
+        when(sampler.getEvictedPoint()).thenReturn(Optional.empty());
+        when(tree.addPoint(pointReference, sequenceIndex)).thenReturn(pointReference);
+
+        List<Double> traversals = new ArrayList<>();
+        UpdateResult<Integer> result = samplerPlusTree.traverseThenUpdate(point, visitorFactory, traversals::add,
+                pointReference, sequenceIndex);
+        assertEquals(Collections.singletonList(0.5), traversals);
+        assertTrue(result.getAddedPoint().isPresent());
+        assertEquals(pointReference, result.getAddedPoint().get());
+
+        verify(tree, never()).traverse(any(), any());
+        verify(sampler, times(1)).addPoint(pointReference);
+    }
+
     @Test
     public void testRejectPoint() {
         when(sampler.acceptPoint(anyLong())).thenReturn(false);
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SimpleForestMetricsTest {
+
+    private SimpleForestMetrics metrics;
+
+    @BeforeEach
+    public void setUp() {
+        metrics = new SimpleForestMetrics();
+    }
+
+    @Test
+    public void testCounters() {
+        metrics.incrementCounter(IForestMetrics.Counter.SAMPLER_ACCEPT, 3);
+        metrics.incrementCounter(IForestMetrics.Counter.SAMPLER_ACCEPT, 2);
+        metrics.incrementCounter(IForestMetrics.Counter.BOX_CACHE_MISS, 1);
+
+        assertEquals(5L, metrics.getCount(IForestMetrics.Counter.SAMPLER_ACCEPT));
+        assertEquals(1L, metrics.getCount(IForestMetrics.Counter.BOX_CACHE_MISS));
+        assertEquals(0L, metrics.getCount(IForestMetrics.Counter.SAMPLER_EVICT));
+    }
+
+    @Test
+    public void testLatency() {
+        long now = System.nanoTime();
+        metrics.recordLatency(IForestMetrics.Operation.SCORE, now - 1000);
+        metrics.recordLatency(IForestMetrics.Operation.SCORE, metrics.startTimer());
+        // a start time in the future is recorded as 0
+        metrics.recordLatency(IForestMetrics.Operation.SCORE, now + 1_000_000_000L);
+
+        assertEquals(3L, metrics.getCount(IForestMetrics.Operation.SCORE));
+        assertEquals(0L, metrics.getCount(IForestMetrics.Operation.UPDATE));
+        assertTrue(metrics.getTotalNanos(IForestMetrics.Operation.SCORE) >= 1000);
+
+        long[] histogram = metrics.getLatencyHistogram(IForestMetrics.Operation.SCORE);
+        assertEquals(SimpleForestMetrics.NUMBER_OF_LATENCY_BUCKETS, histogram.length);
+        assertEquals(3L, Arrays.stream(histogram).sum());
+        assertTrue(histogram[0] >= 1);
+        // the first latency is at least 1000 nanoseconds, which is in bucket 10 or
+        // above
+        assertTrue(Arrays.stream(histogram, 10, histogram.length).sum() >= 1);
+    }
+
+    @Test
+    public void testTreeDepth() {
+        metrics.recordTreeDepth(0);
+        metrics.recordTreeDepth(5);
+        metrics.recordTreeDepth(5);
+        metrics.recordTreeDepth(SimpleForestMetrics.MAX_TREE_DEPTH + 10);
+
+        long[] histogram = metrics.getTreeDepthHistogram();
+        assertEquals(SimpleForestMetrics.MAX_TREE_DEPTH + 1, histogram.length);
+        assertEquals(1L, histogram[0]);
+        assertEquals(2L, histogram[5]);
+        assertEquals(1L, histogram[SimpleForestMetrics.MAX_TREE_DEPTH]);
+    }
+
+    @Test
+    public void testReset() {
+        metrics.incrementCounter(IForestMetrics.Counter.SAMPLER_REJECT, 7);
+        metrics.recordLatency(IForestMetrics.Operation.UPDATE, metrics.startTimer());
+        metrics.recordTreeDepth(3);
+
+        metrics.reset();
+
+        assertEquals(0L, metrics.getCount(IForestMetrics.Counter.SAMPLER_REJECT));
+        assertEquals(0L, metrics.getCount(IForestMetrics.Operation.UPDATE));
+        assertEquals(0L, metrics.getTotalNanos(IForestMetrics.Operation.UPDATE));
+        assertEquals(0L, Arrays.stream(metrics.getLatencyHistogram(IForestMetrics.Operation.UPDATE)).sum());
+        assertEquals(0L, Arrays.stream(metrics.getTreeDepthHistogram()).sum());
+    }
+}
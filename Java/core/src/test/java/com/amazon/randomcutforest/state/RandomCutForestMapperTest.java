@@ -17,7 +17,15 @@ package com.amazon.randomcutforest.state;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.stream.Stream;
 
@@ -25,13 +33,21 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import com.amazon.randomcutforest.ComponentList;
+import com.amazon.randomcutforest.IComponentModel;
 import com.amazon.randomcutforest.RandomCutForest;
 import com.amazon.randomcutforest.config.Precision;
+import com.amazon.randomcutforest.executor.ConcurrentSamplerPlusTree;
 import com.amazon.randomcutforest.executor.PointStoreCoordinator;
+import com.amazon.randomcutforest.executor.SamplerPlusTree;
+import com.amazon.randomcutforest.sampler.CompactSampler;
+import com.amazon.randomcutforest.store.OffHeapPointStoreFloat;
 import com.amazon.randomcutforest.store.PointStoreDouble;
 import com.amazon.randomcutforest.store.PointStoreFloat;
 import com.amazon.randomcutforest.testutils.NormalMixtureTestData;
+import com.amazon.randomcutforest.tree.CompactRandomCutTreeFloat;
 
 public class RandomCutForestMapperTest {
 
@@ -124,6 +140,241 @@ public class RandomCutForestMapperTest {
         testRoundTripForCompactForest(forest);
     }
 
+    @ParameterizedTest
+    @MethodSource("compactForestProvider")
+    public void testRoundTripWithBulkTreeConstruction(RandomCutForest forest) {
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        for (double[] point : testData.generateTestData(sampleSize, dimensions)) {
+            forest.update(point);
+        }
+
+        mapper.setBulkTreeConstructionEnabled(true);
+        RandomCutForest forest2 = mapper.toModel(mapper.toState(forest));
+        assertCompactForestEquals(forest, forest2);
+        assertTreeMassesEqualSamplerSizes(forest2);
+
+        // the trees built in one pass are updated like any other trees
+        for (double[] point : testData.generateTestData(2 * sampleSize, dimensions)) {
+            forest2.update(point);
+        }
+        assertTreeMassesEqualSamplerSizes(forest2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    public void testRoundTripWithConcurrentScoring(boolean lazy) {
+        for (Precision precision : Precision.values()) {
+            RandomCutForest forest = RandomCutForest.builder().compact(true).dimensions(dimensions)
+                    .sampleSize(sampleSize).precision(precision).concurrentScoringEnabled(true).build();
+            NormalMixtureTestData testData = new NormalMixtureTestData();
+            for (double[] point : testData.generateTestData(sampleSize, dimensions)) {
+                forest.update(point);
+            }
+
+            mapper.setLazyTreeMaterializationEnabled(lazy);
+            RandomCutForestState state = mapper.toState(forest);
+            assertTrue(state.getExecutionContext().isConcurrentScoringEnabled());
+            RandomCutForest forest2 = mapper.toModel(state, 0L);
+            assertTrue(forest2.isConcurrentScoringEnabled());
+            assertNotNull(((PointStoreCoordinator<?>) forest2.getUpdateCoordinator()).getPointStoreLock());
+            for (IComponentModel<?, ?> component : forest2.getComponents()) {
+                assertTrue(component instanceof ConcurrentSamplerPlusTree);
+            }
+            for (double[] point : testData.generateTestData(sampleSize, dimensions)) {
+                forest2.getAnomalyScore(point);
+                forest2.update(point);
+            }
+            assertTreeMassesEqualSamplerSizes(forest2);
+        }
+    }
+
+    @Test
+    public void testRoundTripWithOffHeapPointStore() {
+        int numberOfTrees = 10;
+        OffHeapPointStoreFloat pointStore = OffHeapPointStoreFloat.builder().dimensions(dimensions)
+                .capacity(numberOfTrees * sampleSize + 1).build();
+        Random random = new Random(0);
+        ComponentList<Integer, float[]> components = new ComponentList<>();
+        for (int i = 0; i < numberOfTrees; i++) {
+            components.add(new SamplerPlusTree<>(
+                    CompactSampler.builder().capacity(sampleSize).randomSeed(random.nextLong()).build(),
+                    CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(random.nextLong())
+                            .pointStore(pointStore).build()));
+        }
+        RandomCutForest.Builder<?> builder = RandomCutForest.builder().compact(true).dimensions(dimensions)
+                .numberOfTrees(numberOfTrees).sampleSize(sampleSize).precision(Precision.FLOAT_32);
+        RandomCutForest forest = new RandomCutForest(builder, new PointStoreCoordinator<>(pointStore), components,
+                random);
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        for (double[] point : testData.generateTestData(4 * sampleSize, dimensions)) {
+            forest.update(point);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> mapper.toState(forest));
+
+        // the off-heap store is passed back when the forest is restored
+        mapper.setSaveCoordinatorStateEnabled(false);
+        mapper.setSaveTreeStateEnabled(true);
+        RandomCutForestState state = mapper.toState(forest);
+        RandomCutForest forest2 = mapper.singlePrecisionForest(builder, state, pointStore, null, null);
+        for (double[] point : testData.generateTestData(10, dimensions)) {
+            assertEquals(forest.getAnomalyScore(point), forest2.getAnomalyScore(point));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("compactForestProvider")
+    public void testLazyTreeMaterialization(RandomCutForest forest) {
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        for (double[] point : testData.generateTestData(sampleSize, dimensions)) {
+            forest.update(point);
+        }
+        RandomCutForestState state = mapper.toState(forest);
+        RandomCutForest forest2 = mapper.toModel(state, 0L);
+
+        RandomCutForestMapper lazyMapper = new RandomCutForestMapper();
+        lazyMapper.setLazyTreeMaterializationEnabled(true);
+        RandomCutForest forest3 = lazyMapper.toModel(state, 0L);
+        for (IComponentModel<?, ?> component : forest3.getComponents()) {
+            assertFalse(((SamplerPlusTree<?, ?>) component).isTreeMaterialized());
+        }
+
+        // the trees are built on the first traversal, as they would have been
+        // built by toModel
+        double[][] points = testData.generateTestData(10, dimensions);
+        for (double[] point : points) {
+            assertEquals(forest2.getAnomalyScore(point), forest3.getAnomalyScore(point));
+        }
+        for (IComponentModel<?, ?> component : forest3.getComponents()) {
+            assertTrue(((SamplerPlusTree<?, ?>) component).isTreeMaterialized());
+        }
+        assertCompactForestEquals(forest2, forest3);
+
+        // trees that are updated before they are built, or built ahead of time
+        RandomCutForest forest4 = lazyMapper.toModel(state, 0L);
+        RandomCutForest forest5 = lazyMapper.toModel(state, 0L);
+        forest5.materializeTrees();
+        for (IComponentModel<?, ?> component : forest5.getComponents()) {
+            assertTrue(((SamplerPlusTree<?, ?>) component).isTreeMaterialized());
+        }
+        for (double[] point : points) {
+            forest2.update(point);
+            forest4.update(point);
+            forest5.update(point);
+        }
+        assertCompactForestEquals(forest2, forest4);
+        assertCompactForestEquals(forest2, forest5);
+        for (double[] point : testData.generateTestData(10, dimensions)) {
+            assertEquals(forest2.getAnomalyScore(point), forest4.getAnomalyScore(point));
+            assertEquals(forest2.getAnomalyScore(point), forest5.getAnomalyScore(point));
+        }
+        assertTreeMassesEqualSamplerSizes(forest4);
+    }
+
+    @ParameterizedTest
+    @MethodSource("compactForestProvider")
+    public void testLazyTreeMaterializationDoesNotRetainState(RandomCutForest forest) {
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        for (double[] point : testData.generateTestData(sampleSize, dimensions)) {
+            forest.update(point);
+        }
+        RandomCutForestState state = mapper.toState(forest);
+        RandomCutForest forest2 = mapper.toModel(state, 0L);
+        RandomCutForestMapper lazyMapper = new RandomCutForestMapper();
+        lazyMapper.setLazyTreeMaterializationEnabled(true);
+        RandomCutForest forest3 = lazyMapper.toModel(state, 0L);
+
+        // the trees that are not built yet do not keep the state reachable
+        WeakReference<RandomCutForestState> reference = new WeakReference<>(state);
+        state = null;
+        for (int i = 0; i < 10 && reference.get() != null; i++) {
+            System.gc();
+        }
+        assertNull(reference.get());
+
+        // checking readiness does not build the trees
+        assertTrue(forest3.isOutputReady());
+        for (IComponentModel<?, ?> component : forest3.getComponents()) {
+            assertFalse(((SamplerPlusTree<?, ?>) component).isTreeMaterialized());
+        }
+        for (double[] point : testData.generateTestData(10, dimensions)) {
+            assertEquals(forest2.getAnomalyScore(point), forest3.getAnomalyScore(point));
+        }
+    }
+
+    private static void assertTreeMassesEqualSamplerSizes(RandomCutForest forest) {
+        for (IComponentModel<?, ?> component : forest.getComponents()) {
+            SamplerPlusTree<?, ?> samplerPlusTree = (SamplerPlusTree<?, ?>) component;
+            assertEquals(samplerPlusTree.getSampler().size(), samplerPlusTree.getTree().getMass());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("compactForestProvider")
+    public void testParallelMappingProducesSameStateAndModel(RandomCutForest forest) {
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        for (double[] point : testData.generateTestData(sampleSize, dimensions)) {
+            forest.update(point);
+        }
+
+        RandomCutForestMapper parallelMapper = new RandomCutForestMapper();
+        parallelMapper.setSaveExecutorContextEnabled(true);
+        parallelMapper.setParallelMappingEnabled(true);
+        for (boolean saveTreeState : new boolean[] { false, true }) {
+            mapper.setSaveTreeStateEnabled(saveTreeState);
+            parallelMapper.setSaveTreeStateEnabled(saveTreeState);
+            RandomCutForestState state = mapper.toState(forest);
+            assertEquals(state, parallelMapper.toState(forest));
+
+            RandomCutForest forest2 = mapper.toModel(state, 0L);
+            RandomCutForest forest3 = parallelMapper.toModel(state, 0L);
+            assertCompactForestEquals(forest2, forest3);
+            for (double[] point : testData.generateTestData(10, dimensions)) {
+                assertEquals(forest2.getAnomalyScore(point), forest3.getAnomalyScore(point));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("compactForestProvider")
+    public void testRoundTripWithDeltaStates(RandomCutForest forest) {
+        mapper.setSaveTreeStateEnabled(true);
+        NormalMixtureTestData testData = new NormalMixtureTestData();
+        double[][] data = testData.generateTestData(4 * sampleSize, dimensions);
+        for (int i = 0; i < sampleSize; i++) {
+            forest.update(data[i]);
+        }
+        RandomCutForestState checkpoint = mapper.toState(forest);
+        RandomCutForestState base = mapper.toState(forest);
+
+        // no updates, no changes
+        RandomCutForestDeltaState delta = mapper.toDeltaState(forest, base);
+        delta.getCompactSamplerDeltaStates().forEach(samplerDelta -> assertEquals(0, samplerDelta.getRanges().length));
+        assertEquals(0, delta.getTreeIndexes().length);
+        assertEquals(0, delta.getPointStoreDeltaState().getPointData().length);
+        assertEquals(0, delta.getPointStoreDeltaState().getLocationListRanges().length);
+
+        List<RandomCutForestDeltaState> deltas = new ArrayList<>();
+        for (int i = sampleSize; i < data.length; i++) {
+            forest.update(data[i]);
+            if ((i + 1) % sampleSize == 0) {
+                RandomCutForestState state = mapper.toState(forest);
+                deltas.add(mapper.toDeltaState(base, state));
+                base = state;
+            }
+        }
+
+        RandomCutForestState restored = mapper.applyDeltas(checkpoint, deltas);
+        assertEquals(base, restored);
+        RandomCutForest forest2 = mapper.toModel(restored);
+        assertCompactForestEquals(forest, forest2);
+        for (double[] point : testData.generateTestData(10, dimensions)) {
+            assertEquals(forest.getAnomalyScore(point), forest2.getAnomalyScore(point));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> mapper.applyDelta(restored, deltas.get(0)));
+    }
+
     @Test
     public void testRoundTripForEmptyForest() {
         Precision precision = Precision.FLOAT_64;
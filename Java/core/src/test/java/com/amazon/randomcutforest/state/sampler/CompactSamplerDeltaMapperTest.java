@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.randomcutforest.state.sampler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.amazon.randomcutforest.sampler.CompactSampler;
+import com.amazon.randomcutforest.util.ArrayPacking;
+
+public class CompactSamplerDeltaMapperTest {
+
+    private static int sampleSize = 256;
+    private static double lambda = 0.0001;
+    private static long seed = 4444;
+
+    private CompactSamplerMapper mapper;
+    private CompactSamplerDeltaMapper deltaMapper;
+
+    @BeforeEach
+    public void setUp() {
+        mapper = new CompactSamplerMapper();
+        deltaMapper = new CompactSamplerDeltaMapper();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    public void testRoundTrip(boolean storeSequenceIndexesEnabled) {
+        CompactSampler sampler = CompactSampler.builder().capacity(sampleSize).timeDecay(lambda).randomSeed(seed)
+                .storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).build();
+        Random random = new Random(0);
+        long sequenceIndex = 0;
+        for (int i = 0; i < sampleSize / 2; i++) {
+            sampler.update(random.nextInt(1000), sequenceIndex++);
+        }
+
+        // the sampler fills up
+        CompactSamplerState base = mapper.toState(sampler);
+        for (int i = 0; i < 4 * sampleSize; i++) {
+            sampler.update(random.nextInt(1000), sequenceIndex++);
+        }
+        CompactSamplerState state = mapper.toState(sampler);
+        CompactSamplerDeltaState delta = deltaMapper.toDeltaState(base, state);
+        assertStateEquals(state, deltaMapper.applyDelta(mapper.toState(mapper.toModel(base)), delta));
+
+        // a few updates change a few positions of the heap
+        base = state;
+        for (int i = 0; i < 10; i++) {
+            sampler.update(random.nextInt(1000), sequenceIndex++);
+        }
+        state = mapper.toState(sampler);
+        delta = deltaMapper.toDeltaState(base, state);
+        assertTrue(delta.getWeight().length < sampleSize / 2);
+        assertStateEquals(state, deltaMapper.applyDelta(mapper.toState(mapper.toModel(base)), delta));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { false, true })
+    public void testIncompatibleStates(boolean storeSequenceIndexesEnabled) {
+        CompactSamplerState first = mapper.toState(CompactSampler.builder().capacity(sampleSize).timeDecay(lambda)
+                .randomSeed(seed).storeSequenceIndexesEnabled(storeSequenceIndexesEnabled).build());
+        CompactSamplerState second = mapper.toState(CompactSampler.builder().capacity(sampleSize).timeDecay(lambda)
+                .randomSeed(seed).storeSequenceIndexesEnabled(!storeSequenceIndexesEnabled).build());
+        assertThrows(IllegalArgumentException.class, () -> deltaMapper.toDeltaState(first, second));
+    }
+
+    private static void assertStateEquals(CompactSamplerState expected, CompactSamplerState actual) {
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getMaxSequenceIndex(), actual.getMaxSequenceIndex());
+        assertEquals(expected.getSequenceIndexOfMostRecentTimeDecayUpdate(),
+                actual.getSequenceIndexOfMostRecentTimeDecayUpdate());
+        assertEquals(expected.getRandomSeed(), actual.getRandomSeed());
+        assertArrayEquals(expected.getWeight(), actual.getWeight());
+        assertArrayEquals(ArrayPacking.unpackInts(expected.getPointIndex(), expected.isCompressed()),
+                ArrayPacking.unpackInts(actual.getPointIndex(), actual.isCompressed()));
+        assertArrayEquals(expected.getSequenceIndex(), actual.getSequenceIndex());
+    }
+}
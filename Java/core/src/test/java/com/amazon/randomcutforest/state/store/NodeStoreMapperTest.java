@@ -15,14 +15,19 @@
 
 package com.amazon.randomcutforest.state.store;
 
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.amazon.randomcutforest.store.AbstractNodeStore;
 import com.amazon.randomcutforest.store.NodeStore;
+import com.amazon.randomcutforest.store.SmallNodeStore;
 
 public class NodeStoreMapperTest {
     private NodeStoreMapper mapper;
@@ -40,7 +45,7 @@ public class NodeStoreMapperTest {
         int index3 = store.addNode(6, 7, 8, 1, 9.8, 4);
         int index4 = store.addNode(6, 10, 11, 4, -1000.01, 1);
 
-        NodeStore store2 = mapper.toModel(mapper.toState(store));
+        AbstractNodeStore store2 = mapper.toModel(mapper.toState(store));
         assertEquals(store.getCapacity(), store2.getCapacity());
         assertEquals(store.size(), store2.size());
 
@@ -51,4 +56,36 @@ public class NodeStoreMapperTest {
             assertEquals(store.getCutValue(i), store2.getCutValue(i));
         });
     }
+
+    @Test
+    public void testRoundTripUsesShortIndicesWhenPossible() {
+        NodeStore store = new NodeStore(3);
+        int root = store.addNode(NULL, NULL, NULL, 1, 0.5, 3);
+        int leaf1 = store.addLeaf(root, 11, 1);
+        int node = store.addNode(root, NULL, NULL, 0, -0.5, 2);
+        int leaf2 = store.addLeaf(node, 12, 1);
+        int leaf3 = store.addLeaf(node, 13, 1);
+        store.setLeftIndex(root, leaf1);
+        store.setRightIndex(root, node);
+        store.setLeftIndex(node, leaf2);
+        store.setRightIndex(node, leaf3);
+
+        AbstractNodeStore store2 = mapper.toModel(mapper.toState(store));
+        assertTrue(store2 instanceof SmallNodeStore);
+        assertArrayEquals(store.getLeftIndex(), store2.getLeftIndex());
+        assertArrayEquals(store.getRightIndex(), store2.getRightIndex());
+        assertArrayEquals(store.getLeafMass(), store2.getLeafMass());
+        assertArrayEquals(store.getLeafPointIndex(), store2.getLeafPointIndex());
+        assertEquals(3, store2.getMass(root));
+        assertEquals(2, store2.getMass(node));
+
+        // the state does not depend on the width of the indices
+        AbstractNodeStore store3 = mapper.toModel(mapper.toState(store2));
+        assertArrayEquals(store.getLeftIndex(), store3.getLeftIndex());
+        assertArrayEquals(store.getRightIndex(), store3.getRightIndex());
+        assertEquals(3, store3.getMass(root));
+
+        NodeStore largeStore = new NodeStore(SmallNodeStore.MAX_CAPACITY + 1);
+        assertTrue(mapper.toModel(mapper.toState(largeStore)) instanceof NodeStore);
+    }
 }
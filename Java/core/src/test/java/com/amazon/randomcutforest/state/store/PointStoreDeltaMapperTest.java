@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.state.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.amazon.randomcutforest.store.PointStoreFloat;
+import com.amazon.randomcutforest.util.ArrayPacking;
+
+public class PointStoreDeltaMapperTest {
+    private PointStoreDeltaMapper mapper;
+    private PointStoreFloatMapper storeMapper;
+
+    @BeforeEach
+    public void setUp() {
+        mapper = new PointStoreDeltaMapper();
+        storeMapper = new PointStoreFloatMapper();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        int dimensions = 3;
+        int capacity = 20;
+        PointStoreFloat store = new PointStoreFloat(dimensions, capacity);
+        Random random = new Random(0);
+        int[] indexes = new int[capacity];
+        for (int i = 0; i < capacity / 2; i++) {
+            indexes[i] = store.add(new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() }, i);
+        }
+        PointStoreState base = storeMapper.toState(store);
+
+        store.decrementRefCount(indexes[7]);
+        store.incrementRefCount(indexes[2]);
+        for (int i = capacity / 2; i < capacity - 3; i++) {
+            store.add(new double[] { random.nextDouble(), random.nextDouble(), random.nextDouble() }, i);
+        }
+        PointStoreState state = storeMapper.toState(store);
+
+        PointStoreDeltaState delta = mapper.toDeltaState(base, state);
+        // the points before and after the deleted point are copied from the earlier
+        // point data, and only the added points are stored
+        assertArrayEquals(new int[] { 0, 7 * dimensions * Float.BYTES, 8 * dimensions * Float.BYTES,
+                2 * dimensions * Float.BYTES, -1, (capacity - 3 - capacity / 2) * dimensions * Float.BYTES },
+                delta.getPointDataSegments());
+        assertEquals((capacity - 3 - capacity / 2) * dimensions * Float.BYTES, delta.getPointData().length);
+
+        PointStoreState restored = mapper.applyDelta(storeMapper.toState(storeMapper.toModel(base)), delta);
+        assertArrayEquals(state.getPointData(), restored.getPointData());
+        assertArrayEquals(ArrayPacking.unpackInts(state.getRefCount(), state.isCompressed()),
+                ArrayPacking.unpackInts(restored.getRefCount(), restored.isCompressed()));
+        assertArrayEquals(ArrayPacking.unpackInts(state.getLocationList(), state.isCompressed()),
+                ArrayPacking.unpackInts(restored.getLocationList(), restored.isCompressed()));
+        assertEquals(state.getStartOfFreeSegment(), restored.getStartOfFreeSegment());
+        assertArrayEquals(storeMapper.toModel(state).getStore(), storeMapper.toModel(restored).getStore());
+    }
+
+    @Test
+    public void testIncompatibleStates() {
+        PointStoreState first = storeMapper.toState(new PointStoreFloat(2, 4));
+        PointStoreState second = storeMapper.toState(new PointStoreFloat(3, 4));
+        assertThrows(IllegalArgumentException.class, () -> mapper.toDeltaState(first, second));
+    }
+}
@@ -55,6 +55,28 @@ public class IndexManagerTest {
         assertEquals(4, manager.takeIndex());
     }
 
+    @Test
+    public void testReset() {
+        int[] freeIndexes = { 4, 0, 3, 1, 2 };
+        IndexManager manager = new IndexManager(freeIndexes, 2);
+        manager.reset();
+        assertEquals(0, manager.size());
+        for (int i = 0; i < freeIndexes.length; i++) {
+            assertEquals(i, manager.takeIndex());
+        }
+        assertThrows(IllegalStateException.class, () -> manager.takeIndex());
+
+        store.takeIndex();
+        store.takeIndex();
+        store.releaseIndex(0);
+        store.reset();
+        assertEquals(0, store.size());
+        assertThrows(IllegalArgumentException.class, () -> store.checkValidIndex(1));
+        for (int i = 0; i < capacity; i++) {
+            assertEquals(i, store.takeIndex());
+        }
+    }
+
     @Test
     public void testTakeIndex() {
         Set<Integer> indexes = new HashSet<>();
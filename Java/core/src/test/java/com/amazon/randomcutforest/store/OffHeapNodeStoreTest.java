@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapNodeStoreTest {
+
+    private int capacity;
+    private OffHeapNodeStore store;
+
+    @BeforeEach
+    public void setUp() {
+        capacity = 3;
+        store = new OffHeapNodeStore(capacity);
+    }
+
+    @Test
+    public void testNew() {
+        assertEquals(capacity, store.getCapacity());
+        assertEquals(0, store.size());
+        assertFalse(store.isFloatCutValues());
+        assertFalse(store.isShortCutDimensions());
+        for (int i = 0; i < 2 * capacity + 1; i++) {
+            assertEquals(NULL, store.getParentIndex(i));
+        }
+    }
+
+    @Test
+    public void testAddNode() {
+        int index1 = store.addNode(1, 2, 3, 4, 5.5, 1);
+        int index2 = store.addNode(11, 12, 13, 14, 15.5, 11);
+        assertEquals(2, store.size());
+
+        assertEquals(1, store.getMass(index1));
+        assertEquals(1, store.getParentIndex(index1));
+        assertEquals(2, store.getLeftIndex(index1));
+        assertEquals(3, store.getRightIndex(index1));
+        assertEquals(4, store.getCutDimension(index1));
+        assertEquals(5.5, store.getCutValue(index1));
+
+        assertEquals(11, store.getMass(index2));
+        assertEquals(11, store.getParentIndex(index2));
+        assertEquals(12, store.getLeftIndex(index2));
+        assertEquals(13, store.getRightIndex(index2));
+        assertEquals(14, store.getCutDimension(index2));
+        assertEquals(15.5, store.getCutValue(index2));
+
+        store.addNode(1, 2, 3, 4, 5.5, 1);
+        assertThrows(IllegalStateException.class, () -> store.addNode(1, 2, 3, 4, 5.5, 1));
+    }
+
+    @Test
+    public void testAddAndDeleteLeaf() {
+        int leaf = store.addLeaf(0, 7, 2);
+        assertTrue(store.isLeaf(leaf));
+        assertEquals(0, store.computeLeafIndex(leaf));
+        assertEquals(7, store.getPointIndex(leaf));
+        assertEquals(2, store.getMass(leaf));
+        assertEquals(7, store.setPointIndex(leaf, 8));
+        assertEquals(8, store.getPointIndex(leaf));
+
+        store.delete(leaf);
+        assertEquals(NULL, store.getParentIndex(leaf));
+        assertEquals(PointStore.INFEASIBLE_POINTSTORE_INDEX, store.getPointIndex(leaf));
+        assertEquals(0, store.getMass(leaf));
+    }
+
+    @Test
+    public void testClear() {
+        int root = store.addNode(NULL, NULL, NULL, 1, 2.5, 2);
+        int leaf = store.addLeaf(root, 7, 1);
+        int other = store.addLeaf(root, 8, 1);
+        store.setLeftIndex(root, leaf);
+        store.setRightIndex(root, other);
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(NULL, store.getParentIndex(leaf));
+        assertEquals(NULL, store.getLeftIndex(root));
+        assertEquals(NULL, store.getRightIndex(root));
+        assertEquals(0, store.getMass(root));
+        assertEquals(0, store.getMass(leaf));
+        assertEquals(0, store.getCutDimension(root));
+        assertEquals(0.0, store.getCutValue(root));
+        assertEquals(PointStore.INFEASIBLE_POINTSTORE_INDEX, store.getPointIndex(leaf));
+
+        // the indices are taken again as in a new store
+        assertEquals(root, store.addNode(NULL, NULL, NULL, 0, 0.0, 2));
+        assertEquals(leaf, store.addLeaf(root, 9, 1));
+    }
+
+    @Test
+    public void testMassOfAncestors() {
+        int root = store.addNode(NULL, NULL, NULL, 0, 0.0, 2);
+        int node = store.addNode(root, NULL, NULL, 0, 0.0, 1);
+        int leaf = store.addLeaf(node, 0, 1);
+        store.increaseMassOfSelfAndAncestors(leaf);
+        assertEquals(2, store.getMass(leaf));
+        assertEquals(2, store.getMass(node));
+        assertEquals(3, store.getMass(root));
+        store.decreaseMassOfSelfAndAncestors(node);
+        assertEquals(2, store.getMass(leaf));
+        assertEquals(1, store.getMass(node));
+        assertEquals(2, store.getMass(root));
+    }
+
+    @Test
+    public void testCompactEncoding() {
+        OffHeapNodeStore compactStore = new OffHeapNodeStore(capacity, 40000, true);
+        assertTrue(compactStore.isFloatCutValues());
+        assertFalse(compactStore.isShortCutDimensions());
+        compactStore = new OffHeapNodeStore(capacity, 32768, true);
+        assertTrue(compactStore.isShortCutDimensions());
+
+        // cut values are rounded down, so that comparisons with floats do not change
+        double cutValue = 0.1;
+        int index = compactStore.addNode(NULL, NULL, NULL, 32767, cutValue, 1);
+        assertEquals(32767, compactStore.getCutDimension(index));
+        assertTrue(compactStore.getCutValue(index) <= cutValue);
+        assertEquals(Math.nextDown((float) cutValue), compactStore.getCutValue(index));
+        assertTrue(compactStore.getCutValue(index) < 0.1f);
+
+        index = compactStore.addNode(NULL, NULL, NULL, 1, -0.1, 1);
+        assertEquals((float) -0.1, compactStore.getCutValue(index));
+
+        OffHeapNodeStore finalStore = compactStore;
+        assertThrows(IllegalArgumentException.class, () -> finalStore.addNode(NULL, NULL, NULL, 32768, 0.0, 1));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import static com.amazon.randomcutforest.CommonUtils.toDoubleArray;
+import static com.amazon.randomcutforest.CommonUtils.toFloatArray;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OffHeapPointStoreFloatTest {
+
+    private int dimensions;
+    private int capacity;
+    private OffHeapPointStoreFloat pointStore;
+
+    @BeforeEach
+    public void setUp() {
+        dimensions = 2;
+        capacity = 4;
+        pointStore = new OffHeapPointStoreFloat(dimensions, capacity);
+    }
+
+    @Test
+    public void testNew() {
+        assertEquals(dimensions, pointStore.getDimensions());
+        assertEquals(capacity, pointStore.getCapacity());
+        assertEquals(0, pointStore.size());
+        assertTrue(pointStore.getStore().isDirect());
+
+        for (int i = 0; i < pointStore.getIndexCapacity(); i++) {
+            assertEquals(0, pointStore.getRefCount(i));
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        double[] point1 = { 1.2f, -3.4f };
+        int offset1 = pointStore.add(point1, 1);
+        assertEquals(1, pointStore.getRefCount(offset1));
+        assertEquals(1, pointStore.size());
+        assertArrayEquals(point1, toDoubleArray(pointStore.get(offset1)));
+
+        double[] point2 = { 111.2f, -333.4f };
+        int offset2 = pointStore.add(point2, 2);
+        assertEquals(2, pointStore.size());
+        assertArrayEquals(point2, toDoubleArray(pointStore.get(offset2)));
+        assertArrayEquals(point1, toDoubleArray(pointStore.get(offset1)));
+
+        assertThrows(IllegalArgumentException.class, () -> pointStore.add(new double[] { 1.1, -2.2, 3.0 }, 0));
+        assertThrows(IllegalArgumentException.class, () -> pointStore.get(-1));
+    }
+
+    @Test
+    public void testPointEquals() {
+        double[] point = { 1.2f, -3.4f };
+        int offset = pointStore.add(point, 0);
+        assertTrue(pointStore.pointEquals(offset, toFloatArray(point)));
+        assertFalse(pointStore.pointEquals(offset, new float[] { 5.6f, -7.8f }));
+        assertTrue(pointStore.pointEqualsQuery(offset, point));
+        assertFalse(pointStore.pointEqualsQuery(offset, new double[] { 1.2, -3.4 }));
+    }
+
+    @Test
+    public void testRefCount() {
+        double[] point = { 1.2f, -3.4f };
+        int offset = pointStore.add(point, 0);
+        assertEquals(2, pointStore.incrementRefCount(offset));
+        assertEquals(1, pointStore.decrementRefCount(offset));
+        assertEquals(1, pointStore.size());
+        assertEquals(0, pointStore.decrementRefCount(offset));
+        assertEquals(0, pointStore.size());
+        assertThrows(IllegalArgumentException.class, () -> pointStore.get(offset));
+        assertThrows(IllegalArgumentException.class, () -> pointStore.decrementRefCount(offset));
+
+        for (int i = 0; i < capacity; i++) {
+            pointStore.add(point, i);
+        }
+        assertThrows(IllegalStateException.class, () -> pointStore.add(point, 0));
+    }
+
+    @Test
+    public void testAgreesWithPointStoreFloat() {
+        int shingleSize = 4;
+        int storeCapacity = 50;
+        PointStoreFloat heapStore = PointStoreFloat.builder().dimensions(shingleSize).shingleSize(shingleSize)
+                .capacity(storeCapacity).initialSize(4).internalShinglingEnabled(true).build();
+        OffHeapPointStoreFloat store = OffHeapPointStoreFloat.builder().dimensions(shingleSize)
+                .shingleSize(shingleSize).capacity(storeCapacity).initialSize(4).internalShinglingEnabled(true)
+                .build();
+        Random random = new Random(0);
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            if (indices.size() < storeCapacity - 1 && (indices.isEmpty() || random.nextDouble() < 0.55)) {
+                double[] point = new double[] { random.nextDouble() };
+                int index = store.add(point, i);
+                assertEquals(heapStore.add(point, i), index);
+                if (index >= 0) {
+                    indices.add(index);
+                }
+            } else {
+                int index = indices.remove(random.nextInt(indices.size()));
+                assertEquals(heapStore.decrementRefCount(index), store.decrementRefCount(index));
+            }
+        }
+        for (int index : indices) {
+            assertArrayEquals(heapStore.get(index), store.get(index));
+        }
+        assertArrayEquals(heapStore.getInternalShingle(), store.getInternalShingle());
+    }
+
+    @Test
+    public void testCoordinateAccessAgreesWithGet() {
+        int shingleSize = 4;
+        for (boolean rotation : new boolean[] { false, true }) {
+            OffHeapPointStoreFloat store = OffHeapPointStoreFloat.builder().dimensions(shingleSize)
+                    .shingleSize(shingleSize).capacity(20).initialSize(20).internalShinglingEnabled(true)
+                    .internalRotationEnabled(rotation).build();
+            Random random = new Random(0);
+            List<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                int index = store.add(new double[] { random.nextDouble() }, i);
+                if (index >= 0) {
+                    indices.add(index);
+                }
+            }
+            for (int index : indices) {
+                float[] point = store.get(index);
+                float[] minValues = Arrays.copyOf(point, shingleSize);
+                float[] maxValues = Arrays.copyOf(point, shingleSize);
+                store.expandRanges(index, minValues, maxValues);
+                assertArrayEquals(point, minValues);
+                assertArrayEquals(point, maxValues);
+                for (int j = 0; j < shingleSize; j++) {
+                    assertEquals(point[j], store.getCoordinate(index, j));
+                    assertTrue(store.leftOf(index, j, point[j]));
+                }
+                assertTrue(store.pointEquals(index, point));
+            }
+        }
+    }
+
+    @Test
+    public void testLoadMappedFile(@TempDir Path directory) {
+        Path file = directory.resolve("points");
+        OffHeapPointStoreFloat store = OffHeapPointStoreFloat.builder().dimensions(3).shingleSize(3).capacity(10)
+                .internalShinglingEnabled(true).mappedFile(file).build();
+        for (int i = 0; i < 8; i++) {
+            store.add(new double[] { i }, i);
+        }
+        store.decrementRefCount(2);
+        store.force();
+
+        OffHeapPointStoreFloat loaded = OffHeapPointStoreFloat.load(file);
+        assertEquals(store.size(), loaded.size());
+        assertEquals(store.getNextSequenceIndex(), loaded.getNextSequenceIndex());
+        assertArrayEquals(store.getInternalShingle(), loaded.getInternalShingle());
+        assertThrows(IllegalArgumentException.class, () -> loaded.get(2));
+        for (int i = 3; i < 6; i++) {
+            assertArrayEquals(store.get(i), loaded.get(i));
+        }
+        assertArrayEquals(new float[] { 5, 6, 7 }, loaded.get(5));
+        assertArrayEquals(new float[] { 6, 7, 8 }, loaded.get(loaded.add(new double[] { 8 }, 8)));
+    }
+}
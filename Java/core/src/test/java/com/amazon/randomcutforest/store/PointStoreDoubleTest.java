@@ -24,11 +24,16 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.SimpleForestMetrics;
+
 public class PointStoreDoubleTest {
 
     private int dimensions;
@@ -160,6 +165,37 @@ public class PointStoreDoubleTest {
         assertThrows(IllegalArgumentException.class, () -> pointStore.pointEquals(offset, new double[] { 99.9 }));
     }
 
+    @Test
+    public void testPointEqualsQuery() {
+        double[] point = { 1.2, -3.4 };
+        int offset = pointStore.add(point, 0);
+        assertTrue(pointStore.pointEqualsQuery(offset, point));
+        assertTrue(pointStore.pointEqualsQuery(offset, new double[] { 1.2, -3.4 }));
+        assertFalse(pointStore.pointEqualsQuery(offset, new double[] { 5.6, -7.8 }));
+
+        assertThrows(IllegalArgumentException.class, () -> pointStore.pointEqualsQuery(-1, point));
+        assertThrows(IllegalArgumentException.class, () -> pointStore.pointEqualsQuery(offset, new double[] { 1.2 }));
+    }
+
+    @Test
+    public void testCoordinateAccess() {
+        double[] point = { 1.2, -0.0 };
+        int offset = pointStore.add(point, 0);
+        assertEquals(1.2, pointStore.getCoordinate(offset, 0));
+        assertTrue(pointStore.leftOf(offset, 0, 1.2));
+        assertFalse(pointStore.leftOf(offset, 0, 1.1));
+        assertFalse(pointStore.pointEquals(offset, new double[] { 1.2, 0.0 }));
+
+        double[] minValues = { 1.5, -1.0 };
+        double[] maxValues = { 2.0, 1.0 };
+        pointStore.expandRanges(offset, minValues, maxValues);
+        assertArrayEquals(new double[] { 1.2, -1.0 }, minValues);
+        assertArrayEquals(new double[] { 2.0, 1.0 }, maxValues);
+
+        assertThrows(IllegalArgumentException.class, () -> pointStore.getCoordinate(offset, 2));
+        assertThrows(IllegalArgumentException.class, () -> pointStore.getCoordinate(-1, 0));
+    }
+
     @Test
     public void internalshinglingTestNoRotation() {
         int shinglesize = 10;
@@ -257,4 +293,53 @@ public class PointStoreDoubleTest {
         store.add(new double[] { -6 * shinglesize }, 6 * shinglesize - 1);
         store.compact();
     }
+
+    @Test
+    public void testAddAfterCompactingAwayAlignedValues() {
+        PointStoreDouble store = new PointStoreDouble.Builder().capacity(2).dimensions(2).shingleSize(2)
+                .indexCapacity(2).build();
+        store.add(new double[] { 0, 1 }, 0);
+        int index = store.add(new double[] { 5, 6 }, 1);
+        store.decrementRefCount(index);
+        // the point is aligned with the deleted point, which is dropped by the
+        // compaction that makes space for it
+        int next = store.add(new double[] { 6, 7 }, 2);
+        assertArrayEquals(new double[] { 6, 7 }, store.get(next));
+        assertArrayEquals(new double[] { 0, 1 }, store.get(0));
+    }
+
+    @Test
+    public void testIncrementalCompaction() {
+        int baseDimension = 2;
+        int shingleSize = 4;
+        int dimensions = baseDimension * shingleSize;
+        int capacity = 50;
+        SimpleForestMetrics metrics = new SimpleForestMetrics();
+        PointStoreDouble store = new PointStoreDouble.Builder().capacity(capacity).dimensions(dimensions)
+                .shingleSize(shingleSize).indexCapacity(capacity).dynamicResizingEnabled(false)
+                .incrementalCompactionEnabled(true).build();
+        store.setMetrics(metrics);
+        Random random = new Random(0);
+        HashMap<Integer, double[]> expected = new HashMap<>();
+        double[] point = new double[dimensions];
+        for (int i = 0; i < 5000; i++) {
+            System.arraycopy(point, baseDimension, point, 0, dimensions - baseDimension);
+            for (int j = dimensions - baseDimension; j < dimensions; j++) {
+                point[j] = random.nextInt(4);
+            }
+            // delete points at random, keeping a quarter of the capacity at most
+            while (expected.size() >= capacity / 4 || !expected.isEmpty() && random.nextInt(3) == 0) {
+                int index = expected.keySet().stream().skip(random.nextInt(expected.size())).findFirst().get();
+                store.decrementRefCount(index);
+                expected.remove(index);
+            }
+            expected.put(store.add(point, i), Arrays.copyOf(point, point.length));
+            for (Map.Entry<Integer, double[]> entry : expected.entrySet()) {
+                assertArrayEquals(entry.getValue(), store.get(entry.getKey()));
+            }
+        }
+        assertTrue(metrics.getCount(IForestMetrics.Operation.POINT_STORE_COMPACT_STEP) > 0);
+        assertEquals(0L, metrics.getCount(IForestMetrics.Operation.POINT_STORE_COMPACT));
+    }
+
 }
@@ -25,13 +25,19 @@ import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import com.amazon.randomcutforest.CommonUtils;
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.SimpleForestMetrics;
 
 public class PointStoreFloatTest {
 
@@ -165,6 +171,63 @@ public class PointStoreFloatTest {
         assertThrows(IllegalArgumentException.class, () -> pointStore.pointEquals(offset, new float[] { 99.9f }));
     }
 
+    @Test
+    public void testPointEqualsQuery() {
+        double[] point = { 1.2f, -3.4f };
+        int offset = pointStore.add(point, 0);
+        assertTrue(pointStore.pointEqualsQuery(offset, point));
+        assertFalse(pointStore.pointEqualsQuery(offset, new double[] { 5.6, -7.8 }));
+        // the stored values are floats, so the unrounded double query is not equal
+        assertFalse(pointStore.pointEqualsQuery(offset, new double[] { 1.2, -3.4 }));
+
+        assertThrows(IllegalArgumentException.class, () -> pointStore.pointEqualsQuery(-1, point));
+        assertThrows(IllegalArgumentException.class, () -> pointStore.pointEqualsQuery(offset, new double[] { 1.2f }));
+    }
+
+    @Test
+    public void testPointEqualsIsBitwise() {
+        double[] point = { 0.0, -3.4f };
+        int offset = pointStore.add(point, 0);
+        // agrees with Arrays.equals on a copy of the stored point
+        assertFalse(pointStore.pointEquals(offset, new float[] { -0.0f, -3.4f }));
+        assertFalse(Arrays.equals(pointStore.get(offset), new float[] { -0.0f, -3.4f }));
+    }
+
+    @Test
+    public void testCoordinateAccessWithRotation() {
+        int shingleSize = 5;
+        PointStoreFloat store = new PointStoreFloat.Builder().capacity(20 * shingleSize).dimensions(shingleSize)
+                .shingleSize(shingleSize).indexCapacity(20).internalShinglingEnabled(true)
+                .internalRotationEnabled(true).build();
+        Random random = new Random(0);
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < 2 * shingleSize + 3; i++) {
+            int index = store.add(new double[] { random.nextDouble() }, i);
+            if (index >= 0) {
+                indices.add(index);
+            }
+        }
+        for (int index : indices) {
+            float[] point = store.get(index);
+            float[] minValues = new float[shingleSize];
+            float[] maxValues = new float[shingleSize];
+            Arrays.fill(minValues, 0.5f);
+            Arrays.fill(maxValues, 0.5f);
+            store.expandRanges(index, minValues, maxValues);
+            for (int j = 0; j < shingleSize; j++) {
+                assertEquals(point[j], store.getCoordinate(index, j));
+                assertTrue(store.leftOf(index, j, point[j]));
+                assertFalse(store.leftOf(index, j, Math.nextDown(point[j])));
+                assertEquals(Math.min(0.5f, point[j]), minValues[j]);
+                assertEquals(Math.max(0.5f, point[j]), maxValues[j]);
+            }
+            assertTrue(store.pointEquals(index, point));
+        }
+        assertThrows(IllegalArgumentException.class, () -> store.getCoordinate(indices.get(0), shingleSize));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.expandRanges(indices.get(0), new float[1], new float[shingleSize]));
+    }
+
     @Test
     public void internalshinglingTestNoRotation() {
         int shinglesize = 10;
@@ -262,4 +325,52 @@ public class PointStoreFloatTest {
         store.compact();
     }
 
+    @Test
+    public void testAddAfterCompactingAwayAlignedValues() {
+        PointStoreFloat store = new PointStoreFloat.Builder().capacity(2).dimensions(2).shingleSize(2)
+                .indexCapacity(2).build();
+        store.add(new double[] { 0, 1 }, 0);
+        int index = store.add(new double[] { 5, 6 }, 1);
+        store.decrementRefCount(index);
+        // the point is aligned with the deleted point, which is dropped by the
+        // compaction that makes space for it
+        int next = store.add(new double[] { 6, 7 }, 2);
+        assertArrayEquals(new float[] { 6, 7 }, store.get(next));
+        assertArrayEquals(new float[] { 0, 1 }, store.get(0));
+    }
+
+    @Test
+    public void testIncrementalCompaction() {
+        int baseDimension = 2;
+        int shingleSize = 4;
+        int dimensions = baseDimension * shingleSize;
+        int capacity = 50;
+        SimpleForestMetrics metrics = new SimpleForestMetrics();
+        PointStoreFloat store = new PointStoreFloat.Builder().capacity(capacity).dimensions(dimensions)
+                .shingleSize(shingleSize).indexCapacity(capacity).dynamicResizingEnabled(false)
+                .incrementalCompactionEnabled(true).build();
+        store.setMetrics(metrics);
+        Random random = new Random(0);
+        HashMap<Integer, float[]> expected = new HashMap<>();
+        double[] point = new double[dimensions];
+        for (int i = 0; i < 5000; i++) {
+            System.arraycopy(point, baseDimension, point, 0, dimensions - baseDimension);
+            for (int j = dimensions - baseDimension; j < dimensions; j++) {
+                point[j] = random.nextInt(4);
+            }
+            // delete points at random, keeping a quarter of the capacity at most
+            while (expected.size() >= capacity / 4 || !expected.isEmpty() && random.nextInt(3) == 0) {
+                int index = expected.keySet().stream().skip(random.nextInt(expected.size())).findFirst().get();
+                store.decrementRefCount(index);
+                expected.remove(index);
+            }
+            expected.put(store.add(point, i), toFloatArray(point));
+            for (Map.Entry<Integer, float[]> entry : expected.entrySet()) {
+                assertArrayEquals(entry.getValue(), store.get(entry.getKey()));
+            }
+        }
+        assertTrue(metrics.getCount(IForestMetrics.Operation.POINT_STORE_COMPACT_STEP) > 0);
+        assertEquals(0L, metrics.getCount(IForestMetrics.Operation.POINT_STORE_COMPACT));
+    }
+
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.store;
+
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SmallNodeStoreTest {
+
+    private int capacity;
+    private SmallNodeStore store;
+
+    @BeforeEach
+    public void setUp() {
+        capacity = 3;
+        store = new SmallNodeStore(capacity);
+    }
+
+    @Test
+    public void testNew() {
+        assertEquals(capacity, store.getCapacity());
+        assertEquals(0, store.size());
+        for (int i = 0; i < 2 * capacity + 1; i++) {
+            assertEquals(NULL, store.getParentIndex(i));
+        }
+        assertArrayEquals(new int[] { NULL, NULL, NULL }, store.getLeftIndex());
+        assertArrayEquals(new int[] { NULL, NULL, NULL }, store.getRightIndex());
+
+        assertThrows(IllegalArgumentException.class, () -> new SmallNodeStore(SmallNodeStore.MAX_CAPACITY + 1));
+    }
+
+    @Test
+    public void testAddNode() {
+        int index1 = store.addNode(1, 2, 3, 4, 5.5, 1);
+        int index2 = store.addNode(NULL, 5, 6, 100000, -15.5, 6);
+        assertEquals(2, store.size());
+
+        assertEquals(1, store.getMass(index1));
+        assertEquals(1, store.getParentIndex(index1));
+        assertEquals(2, store.getLeftIndex(index1));
+        assertEquals(3, store.getRightIndex(index1));
+        assertEquals(4, store.getCutDimension(index1));
+        assertEquals(5.5, store.getCutValue(index1));
+
+        assertEquals(6, store.getMass(index2));
+        assertEquals(NULL, store.getParentIndex(index2));
+        assertEquals(5, store.getLeftIndex(index2));
+        assertEquals(6, store.getRightIndex(index2));
+        assertEquals(100000, store.getCutDimension(index2));
+        assertEquals(-15.5, store.getCutValue(index2));
+
+        store.addNode(1, 2, 3, 4, 5.5, 1);
+        assertThrows(IllegalStateException.class, () -> store.addNode(1, 2, 3, 4, 5.5, 1));
+    }
+
+    @Test
+    public void testAddAndDeleteLeaf() {
+        int leaf = store.addLeaf(0, 7, 2);
+        assertTrue(store.isLeaf(leaf));
+        assertEquals(0, store.computeLeafIndex(leaf));
+        assertEquals(7, store.getPointIndex(leaf));
+        assertEquals(2, store.getMass(leaf));
+        assertEquals(7, store.setPointIndex(leaf, 8));
+        assertEquals(8, store.getPointIndex(leaf));
+
+        store.delete(leaf);
+        assertEquals(NULL, store.getParentIndex(leaf));
+        assertEquals(PointStore.INFEASIBLE_POINTSTORE_INDEX, store.getPointIndex(leaf));
+        assertEquals(0, store.getMass(leaf));
+    }
+
+    @Test
+    public void testClear() {
+        int root = store.addNode(NULL, NULL, NULL, 1, 2.5, 2);
+        int leaf = store.addLeaf(root, 7, 1);
+        int other = store.addLeaf(root, 8, 1);
+        store.setLeftIndex(root, leaf);
+        store.setRightIndex(root, other);
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(NULL, store.getParentIndex(leaf));
+        assertEquals(NULL, store.getLeftIndex(root));
+        assertEquals(NULL, store.getRightIndex(root));
+        assertEquals(0, store.getMass(root));
+        assertEquals(0, store.getMass(leaf));
+        assertEquals(0, store.getCutDimension(root));
+        assertEquals(0.0, store.getCutValue(root));
+        assertEquals(PointStore.INFEASIBLE_POINTSTORE_INDEX, store.getPointIndex(leaf));
+
+        // the indices are taken again as in a new store
+        assertEquals(root, store.addNode(NULL, NULL, NULL, 0, 0.0, 2));
+        assertEquals(leaf, store.addLeaf(root, 9, 1));
+    }
+
+    @Test
+    public void testMassOfAncestors() {
+        int root = store.addNode(NULL, NULL, NULL, 0, 0.0, 2);
+        int node = store.addNode(root, NULL, NULL, 0, 0.0, 1);
+        int leaf = store.addLeaf(node, 0, 1);
+        store.increaseMassOfSelfAndAncestors(leaf);
+        assertEquals(2, store.getMass(leaf));
+        assertEquals(2, store.getMass(node));
+        assertEquals(3, store.getMass(root));
+        store.decreaseMassOfSelfAndAncestors(node);
+        assertEquals(2, store.getMass(leaf));
+        assertEquals(1, store.getMass(node));
+        assertEquals(2, store.getMass(root));
+    }
+
+    @Test
+    public void testLargestCapacity() {
+        int largest = SmallNodeStore.MAX_CAPACITY;
+        SmallNodeStore largeStore = new SmallNodeStore(largest);
+        int root = largeStore.addNode(NULL, NULL, NULL, 0, 0.0, largest + 1);
+        int leaf = largeStore.addLeaf(root, 0, largest + 1);
+        for (int i = 0; i < largest; i++) {
+            largeStore.addLeaf(root, i + 1, 1);
+        }
+        assertEquals(largest + 1, largeStore.getMass(root));
+        assertEquals(largest + 1, largeStore.getMass(leaf));
+        assertEquals(root, largeStore.getParentIndex(2 * largest));
+    }
+
+    @Test
+    public void testFromArrays() {
+        int root = store.addNode(NULL, NULL, NULL, 1, 0.5, 3);
+        int leaf1 = store.addLeaf(root, 11, 1);
+        int node = store.addNode(root, NULL, NULL, 0, -0.5, 2);
+        int leaf2 = store.addLeaf(node, 12, 1);
+        int leaf3 = store.addLeaf(node, 13, 1);
+        store.setLeftIndex(root, leaf1);
+        store.setRightIndex(root, node);
+        store.setLeftIndex(node, leaf2);
+        store.setRightIndex(node, leaf3);
+
+        SmallNodeStore copy = new SmallNodeStore(capacity, store.getLeftIndex(), store.getRightIndex(),
+                store.getCutDimension(), store.getCutValue(), store.getLeafMass(), store.getLeafPointIndex(),
+                store.getNodeFreeIndexes(), store.getNodeFreeIndexPointer(), store.getLeafFreeIndexes(),
+                store.getLeafFreeIndexPointer());
+        assertEquals(store.size(), copy.size());
+        for (int i = 0; i < 2 * capacity + 1; i++) {
+            assertEquals(store.getParentIndex(i), copy.getParentIndex(i));
+            assertEquals(store.getMass(i), copy.getMass(i));
+        }
+        assertEquals(leaf3, copy.getSibling(node, leaf2));
+        assertEquals(13, copy.getPointIndex(leaf3));
+        assertTrue(copy.isCanonicalAndNotALeaf());
+    }
+}
@@ -19,9 +19,12 @@ import static com.amazon.randomcutforest.TestUtils.EPSILON;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Random;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -135,4 +138,35 @@ public class BoundingBoxTest {
         assertFalse(box1.contains(new double[] { 5.0, 11.0 }));
     }
 
+    @Test
+    public void testOperationsInHighDimensions() {
+        int dimensions = 256;
+        Random random = new Random(0);
+        double[] first = new double[dimensions];
+        double[] second = new double[dimensions];
+        double[] third = new double[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            first[i] = random.nextGaussian();
+            second[i] = random.nextGaussian();
+            third[i] = 2 * random.nextGaussian();
+        }
+
+        BoundingBox box = new BoundingBox(first, second);
+        BoundingBox mergedBox = box.getMergedBox(new BoundingBox(third));
+        assertEquals(mergedBox, box.getMergedBox(third));
+        assertEquals(mergedBox, box.copy().addBox(new BoundingBox(third, third)));
+        assertFalse(box.contains(third));
+        assertTrue(mergedBox.contains(third));
+        assertTrue(mergedBox.contains(box));
+
+        double rangeSum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            assertThat(mergedBox.getMinValue(i), is(Math.min(Math.min(first[i], second[i]), third[i])));
+            assertThat(mergedBox.getMaxValue(i), is(Math.max(Math.max(first[i], second[i]), third[i])));
+            rangeSum += mergedBox.getRange(i);
+        }
+        // the ranges are summed in the order of the dimensions
+        assertThat(mergedBox.getRangeSum(), is(rangeSum));
+    }
+
 }
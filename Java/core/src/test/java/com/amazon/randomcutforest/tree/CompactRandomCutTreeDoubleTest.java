@@ -29,13 +29,18 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.amazon.randomcutforest.IVisitorFactory;
 import com.amazon.randomcutforest.RandomCutForest;
+import com.amazon.randomcutforest.Visitor;
+import com.amazon.randomcutforest.anomalydetection.AnomalyScoreVisitor;
+import com.amazon.randomcutforest.anomalydetection.ReusableAnomalyScoreVisitorFactory;
 import com.amazon.randomcutforest.sampler.Weighted;
 import com.amazon.randomcutforest.store.PointStoreDouble;
 
@@ -152,7 +157,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
 
         node = tree.getRightChild(node);
         expectedBox = new BoundingBox(new double[] { -1, 0 }).getMergedBox(new double[] { 1, 1 });
@@ -165,7 +170,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 1, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(2L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(2L), 1);
 
         node = tree.getLeftChild(node);
         expectedBox = new BoundingBox(new double[] { -1, 0 }).getMergedBox(new double[] { 0, 1 });
@@ -178,13 +183,13 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, 0 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(3L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(3L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(2));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(4L), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(4L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(5L), 1);
 
         assertThrows(IllegalStateException.class, () -> tree.deletePoint(5, 6));
     }
@@ -208,7 +213,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
 
         // sibling node moves up and bounding box recomputed
 
@@ -223,13 +228,13 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(2));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(4L), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(4L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(5L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 1, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(2L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(2L), 1);
 
         tree.addPoint(4, 5);
         assertEquals(tree.getMass(tree.getLeftChild(node)), 3);
@@ -253,7 +258,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
 
         // sibling node moves up and bounding box stays the same
 
@@ -266,13 +271,13 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, 0 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(3L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(3L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(2));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(4L), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(4L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(5L), 1);
     }
 
     @Test
@@ -291,7 +296,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
         assertArrayEquals(new double[] { -1.0, 1.0 }, tree.getPointSum(), EPSILON);
 
         node = tree.getRightChild(node);
@@ -306,7 +311,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 1, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(2L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(2L), 1);
 
         node = tree.getLeftChild(node);
         expectedBox = new BoundingBox(new double[] { -1, 0 }).getMergedBox(new double[] { 0, 1 });
@@ -321,7 +326,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, 0 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(3L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(3L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 0, 1 }));
@@ -329,7 +334,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertEquals(tree.getEquivalentReference(4), 3);
         assertEquals(tree.getCopiesOfReference(4), 0);
         assertEquals(tree.getCopiesOfReference(3), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(5L), 1);
     }
 
     @Test
@@ -344,7 +349,7 @@ public class CompactRandomCutTreeDoubleTest {
         assertEquals(tree.getRightChild(node), defaultTreeSize - 1);
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 1, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(2L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(2L), 1);
 
         node = tree.getLeftChild(node);
         assertEquals(node, 1);
@@ -355,14 +360,14 @@ public class CompactRandomCutTreeDoubleTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, 0 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(3L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(3L), 1);
 
         assertEquals(tree.getRightChild(node), defaultTreeSize + 1);
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(2));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(5L), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(4L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(4L), 1);
     }
 
     @Test
@@ -398,6 +403,51 @@ public class CompactRandomCutTreeDoubleTest {
         assertThrows(IllegalArgumentException.class, () -> tree.deletePoint(7, 3));
     }
 
+    @Test
+    public void testTraverseWithReusableNodeView() {
+        IVisitorFactory<Double> reusableFactory = new ReusableAnomalyScoreVisitorFactory();
+        IVisitorFactory<Double> factory = (tree, point) -> new AnomalyScoreVisitor(point, tree.getMass());
+        double[][] queries = { { -1, -1 }, { 0, 1 }, { 1, 1 }, { 0.5, 0.5 }, { -2, 3 } };
+        for (double[] query : queries) {
+            assertEquals(tree.traverse(query, factory), tree.traverse(query, reusableFactory), EPSILON);
+        }
+    }
+
+    @Test
+    public void testTraverseVisitsPathFromLeafToRoot() {
+        for (boolean reusable : new boolean[] { false, true }) {
+            List<String> visits = new ArrayList<>();
+            IVisitorFactory<Integer> factory = new IVisitorFactory<Integer>() {
+                @Override
+                public Visitor<Integer> newVisitor(ITree<?, ?> tree, double[] point) {
+                    return new Visitor<Integer>() {
+                        @Override
+                        public void accept(INodeView node, int depthOfNode) {
+                            visits.add(depthOfNode + ":" + node.getMass());
+                        }
+
+                        @Override
+                        public void acceptLeaf(INodeView leafNode, int depthOfNode) {
+                            visits.add("leaf " + depthOfNode + ":" + leafNode.getMass());
+                        }
+
+                        @Override
+                        public Integer getResult() {
+                            return visits.size();
+                        }
+                    };
+                }
+
+                @Override
+                public boolean isNodeViewReusable() {
+                    return reusable;
+                }
+            };
+            assertEquals(4, (int) tree.traverse(new double[] { 0, 1 }, factory));
+            assertEquals(Arrays.asList("leaf 3:2", "2:3", "1:4", "0:5"), visits);
+        }
+    }
+
     @Test
     public void testUpdatesOnSmallBoundingBox() {
         // verifies on small bounding boxes random cuts and tree updates are functional
@@ -422,4 +472,45 @@ public class CompactRandomCutTreeDoubleTest {
             tree.addPoint(i % points.size(), point.getSequenceIndex());
         }
     }
+
+    @Test
+    public void testMakeDeepTree() throws InterruptedException {
+        int sampleSize = 1000;
+        PointStoreDouble pointStoreDouble = new PointStoreDouble(1, sampleSize);
+        CompactRandomCutTreeDouble deepTree = CompactRandomCutTreeDouble.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreDouble).centerOfMassEnabled(true).storeSequenceIndexesEnabled(true).build();
+        // each cut of points on a geometric scale splits off a couple of the largest
+        // points, hence the tree is about half as deep as the number of points
+        int[] references = new int[sampleSize];
+        long[] sequenceIndexes = new long[sampleSize];
+        double pointSum = 0.0;
+        for (int i = 0; i < sampleSize; i++) {
+            references[i] = pointStoreDouble.add(new double[] { Math.pow(2.0, i) }, i);
+            sequenceIndexes[i] = i;
+            pointSum += Math.pow(2.0, i);
+        }
+
+        // the tree is built without recursion, even with a small stack
+        Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                deepTree.makeTree(references, sequenceIndexes);
+            } catch (Throwable e) {
+                error[0] = e;
+            }
+        }, "makeDeepTree", 64 * 1024);
+        thread.start();
+        thread.join();
+        assertThat(error[0], is(nullValue()));
+        assertEquals(sampleSize, deepTree.getMass());
+        assertEquals(pointSum, deepTree.getPointSum()[0], pointSum * EPSILON);
+
+        int depth = 0;
+        int node = deepTree.getRootIndex();
+        while (!deepTree.isLeaf(node)) {
+            node = deepTree.getLeftChild(node);
+            ++depth;
+        }
+        assertTrue(depth > sampleSize / 4);
+    }
 }
@@ -24,20 +24,33 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.amazon.randomcutforest.IVisitorFactory;
+import com.amazon.randomcutforest.MultiVisitor;
+import com.amazon.randomcutforest.MultiVisitorFactory;
+import com.amazon.randomcutforest.Visitor;
+import com.amazon.randomcutforest.anomalydetection.ReusableAnomalyScoreVisitorFactory;
 import com.amazon.randomcutforest.config.Config;
+import com.amazon.randomcutforest.metrics.IForestMetrics;
+import com.amazon.randomcutforest.metrics.SimpleForestMetrics;
 import com.amazon.randomcutforest.sampler.Weighted;
+import com.amazon.randomcutforest.store.INodeStore;
+import com.amazon.randomcutforest.store.OffHeapNodeStore;
 import com.amazon.randomcutforest.store.PointStoreFloat;
 
 public class CompactRandomCutTreeFloatTest {
@@ -143,7 +156,7 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
 
         node = tree.getRightChild(node);
         expectedBox = new BoundingBoxFloat(new float[] { -1, 0 })
@@ -157,7 +170,7 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 1, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(2L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(2L), 1);
 
         node = tree.getLeftChild(node);
         expectedBox = new BoundingBoxFloat(new float[] { -1, 0 }).getMergedBox(new float[] { 0, 1 });
@@ -170,13 +183,13 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, 0 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(3L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(3L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(2));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(4L), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(4L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(5L), 1);
         assertThrows(IllegalStateException.class, () -> tree.deletePoint(5, 6));
     }
 
@@ -199,7 +212,7 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
 
         // sibling node moves up and bounding box recomputed
 
@@ -214,13 +227,13 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(2));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(4L), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(4L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(5L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 1, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(2L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(2L), 1);
     }
 
     @Test
@@ -239,7 +252,7 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
 
         // sibling node moves up and bounding box stays the same
 
@@ -252,13 +265,13 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, 0 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(3L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(3L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(2));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(4L), 1);
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(4L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(5L), 1);
     }
 
     @Test
@@ -277,13 +290,13 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
         assertArrayEquals(new double[] { -1.0, 1.0 }, toDoubleArray(tree.getPointSum(node)), EPSILON);
 
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, -1 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(1L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(1L), 1);
 
         node = tree.getRightChild(node);
         expectedBox = new BoundingBoxFloat(new float[] { -1, 0 }).getMergedBox(new float[] { 1, 1 });
@@ -297,7 +310,7 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 1, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(2L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(2L), 1);
 
         node = tree.getLeftChild(node);
         expectedBox = new BoundingBoxFloat(new float[] { -1, 0 }).getMergedBox(new float[] { 0, 1 });
@@ -312,12 +325,12 @@ public class CompactRandomCutTreeFloatTest {
         assertThat(tree.isLeaf(tree.getLeftChild(node)), is(true));
         assertThat(tree.getPoint(tree.getLeftChild(node)), is(new double[] { -1, 0 }));
         assertThat(tree.getMass(tree.getLeftChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].get(3L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getLeftChild(node))].getCount(3L), 1);
 
         assertThat(tree.isLeaf(tree.getRightChild(node)), is(true));
         assertThat(tree.getPoint(tree.getRightChild(node)), is(new double[] { 0, 1 }));
         assertThat(tree.getMass(tree.getRightChild(node)), is(1));
-        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].get(5L), 1);
+        assertEquals(tree.sequenceIndexes[tree.nodeStore.computeLeafIndex(tree.getRightChild(node))].getCount(5L), 1);
     }
 
     @Test
@@ -388,4 +401,449 @@ public class CompactRandomCutTreeFloatTest {
             tree.addPoint(i % points.size(), point.getSequenceIndex());
         }
     }
+
+    @Test
+    public void testOffHeapNodeStore() {
+        int sampleSize = 32;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(1000).initialSize(1000).dimensions(2)
+                .build();
+        CompactRandomCutTreeFloat heapTree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreFloat).build();
+        CompactRandomCutTreeFloat offHeapTree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize)
+                .randomSeed(17).pointStore(pointStoreFloat)
+                .nodeStore(new OffHeapNodeStore(sampleSize - 1, 2, true)).build();
+
+        Random random = new Random(0);
+        List<Weighted<Integer>> window = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            if (window.size() == sampleSize) {
+                Weighted<Integer> deleted = window.remove(0);
+                heapTree.deletePoint(deleted.getValue(), deleted.getSequenceIndex());
+                offHeapTree.deletePoint(deleted.getValue(), deleted.getSequenceIndex());
+            }
+            int index = pointStoreFloat.add(new double[] { random.nextGaussian(), random.nextDouble() }, i);
+            Integer reference = heapTree.addPoint(index, i);
+            assertEquals(reference, offHeapTree.addPoint(index, i));
+            window.add(new Weighted<>(reference, 0, i));
+        }
+
+        IVisitorFactory<Double> factory = new ReusableAnomalyScoreVisitorFactory();
+        offHeapTree.reorderNodesInBreadthFirstOrder();
+        assertTrue(offHeapTree.getNodeStore() instanceof OffHeapNodeStore);
+        for (int i = 0; i < 100; i++) {
+            double[] query = toDoubleArray(new float[] { (float) random.nextGaussian(), (float) random.nextDouble() });
+            assertEquals(heapTree.traverse(query, factory), offHeapTree.traverse(query, factory));
+        }
+    }
+
+    @Test
+    public void testTraverseForAdd() {
+        int sampleSize = 16;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(2000).initialSize(2000).dimensions(2)
+                .build();
+        CompactRandomCutTreeFloat tree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreFloat).build();
+        CompactRandomCutTreeFloat expectedTree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize)
+                .randomSeed(17).pointStore(pointStoreFloat).build();
+
+        IVisitorFactory<Double> factory = new ReusableAnomalyScoreVisitorFactory();
+        Random random = new Random(0);
+        List<Weighted<Integer>> window = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // few distinct values, which are not exact in single precision, so that
+            // points repeat and the leaves reached are often deleted
+            double[] point = new double[] { 0.1 * random.nextInt(8), 0.1 * random.nextInt(8) };
+            if (window.size() > 0) {
+                assertEquals(expectedTree.traverse(point, factory), tree.traverseForAdd(point, factory));
+            }
+            if (window.size() == sampleSize || (window.size() > 0 && random.nextInt(4) == 0)) {
+                Weighted<Integer> deleted = window.remove(random.nextInt(window.size()));
+                assertEquals(expectedTree.deletePoint(deleted.getValue(), deleted.getSequenceIndex()),
+                        tree.deletePoint(deleted.getValue(), deleted.getSequenceIndex()));
+            }
+            // some points are not added, as if rejected by a sampler
+            if (random.nextInt(8) > 0) {
+                int index = pointStoreFloat.add(point, i);
+                Integer reference = expectedTree.addPoint(index, i);
+                assertEquals(reference, tree.addPoint(index, i));
+                window.add(new Weighted<>(reference, 0, i));
+            }
+        }
+
+        for (int i = 0; i < 100; i++) {
+            double[] query = new double[] { random.nextDouble(), random.nextDouble() };
+            assertEquals(expectedTree.traverse(query, factory), tree.traverse(query, factory));
+        }
+    }
+
+    @Test
+    public void testRelayout() {
+        int sampleSize = 32;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(1000).initialSize(1000).dimensions(2)
+                .build();
+        CompactRandomCutTreeFloat tree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreFloat).centerOfMassEnabled(true).storeSequenceIndexesEnabled(true)
+                .boundingBoxCacheFraction(0.5).relayoutEnabled(true).build();
+        CompactRandomCutTreeFloat expectedTree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize)
+                .randomSeed(17).pointStore(pointStoreFloat).centerOfMassEnabled(true)
+                .storeSequenceIndexesEnabled(true).boundingBoxCacheFraction(0.5).build();
+
+        IVisitorFactory<Double> factory = new ReusableAnomalyScoreVisitorFactory();
+        Random random = new Random(0);
+        List<Weighted<Integer>> window = new ArrayList<>();
+        INodeStore[] stores = new INodeStore[2];
+        for (int i = 0; i < 1000; i++) {
+            double[] point = new double[] { random.nextGaussian(), random.nextDouble() };
+            if (window.size() > 0) {
+                assertEquals(expectedTree.traverse(point, factory), tree.traverse(point, factory));
+            }
+            if (window.size() == sampleSize) {
+                Weighted<Integer> deleted = window.remove(random.nextInt(sampleSize));
+                assertEquals(expectedTree.deletePoint(deleted.getValue(), deleted.getSequenceIndex()),
+                        tree.deletePoint(deleted.getValue(), deleted.getSequenceIndex()));
+                pointStoreFloat.decrementRefCount(deleted.getValue());
+            }
+            int index = pointStoreFloat.add(point, i);
+            Integer reference = expectedTree.addPoint(index, i);
+            assertEquals(reference, tree.addPoint(index, i));
+            window.add(new Weighted<>(reference, 0, i));
+            // the nodes are laid out again after every sampleSize additions
+            if ((i + 1) % sampleSize == 0) {
+                assertEquals(0, tree.getRootIndex());
+                // the tree alternates between two node stores
+                int relayouts = (i + 1) / sampleSize;
+                if (relayouts > 2) {
+                    assertSame(stores[relayouts % 2], tree.getNodeStore());
+                }
+                stores[relayouts % 2] = tree.getNodeStore();
+            }
+        }
+
+        tree.reorderNodesInVanEmdeBoasOrder();
+        assertEquals(0, tree.getRootIndex());
+        List<Integer> nodes = new ArrayList<>();
+        List<Integer> expectedNodes = new ArrayList<>();
+        nodes.add(tree.getRootIndex());
+        expectedNodes.add(expectedTree.getRootIndex());
+        while (!nodes.isEmpty()) {
+            int node = nodes.remove(nodes.size() - 1);
+            int expectedNode = expectedNodes.remove(expectedNodes.size() - 1);
+            assertEquals(expectedTree.getMass(expectedNode), tree.getMass(node));
+            assertArrayEquals(expectedTree.getPointSum(expectedNode), tree.getPointSum(node));
+            if (expectedTree.isLeaf(expectedNode)) {
+                assertEquals(expectedTree.getPointReference(expectedNode), tree.getPointReference(node));
+                assertEquals(expectedTree.sequenceIndexes[expectedNode - sampleSize + 1].asSet(),
+                        tree.sequenceIndexes[node - sampleSize + 1].asSet());
+            } else {
+                assertEquals(expectedTree.getBoundingBox(expectedNode), tree.getBoundingBox(node));
+                nodes.add(tree.getLeftChild(node));
+                nodes.add(tree.getRightChild(node));
+                expectedNodes.add(expectedTree.getLeftChild(expectedNode));
+                expectedNodes.add(expectedTree.getRightChild(expectedNode));
+            }
+        }
+    }
+
+    @Test
+    public void testCopy() {
+        int sampleSize = 32;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(1000).initialSize(1000).dimensions(2)
+                .build();
+        CompactRandomCutTreeFloat tree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreFloat).centerOfMassEnabled(true).storeSequenceIndexesEnabled(true)
+                .boundingBoxCacheFraction(0.5).build();
+
+        Random random = new Random(0);
+        List<Weighted<Integer>> window = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            if (window.size() == sampleSize) {
+                Weighted<Integer> deleted = window.remove(0);
+                tree.deletePoint(deleted.getValue(), deleted.getSequenceIndex());
+                pointStoreFloat.decrementRefCount(deleted.getValue());
+            }
+            int index = pointStoreFloat.add(new double[] { random.nextGaussian(), random.nextDouble() }, i);
+            window.add(new Weighted<>(tree.addPoint(index, i), 0, i));
+        }
+
+        PointStoreFloat storeCopy = pointStoreFloat.copy();
+        AbstractCompactRandomCutTree<float[]> copy = tree.copy(storeCopy);
+        assertTrue(copy.getNodeStore().isCanonicalAndNotALeaf());
+        assertEquals(tree.getMass(), copy.getMass());
+        assertArrayEquals(tree.getPointSum(), copy.getPointSum(), (float) EPSILON);
+
+        IVisitorFactory<Double> factory = new ReusableAnomalyScoreVisitorFactory();
+        double[][] queries = new double[100][];
+        double[] scores = new double[100];
+        for (int i = 0; i < 100; i++) {
+            queries[i] = toDoubleArray(new float[] { (float) random.nextGaussian(), (float) random.nextDouble() });
+            scores[i] = tree.traverse(queries[i], factory);
+            assertEquals(scores[i], copy.traverse(queries[i], factory), EPSILON);
+        }
+
+        // the copy is not affected by later updates to the original
+        for (int i = 1000; i < 1100; i++) {
+            Weighted<Integer> deleted = window.remove(0);
+            tree.deletePoint(deleted.getValue(), deleted.getSequenceIndex());
+            pointStoreFloat.decrementRefCount(deleted.getValue());
+            int index = pointStoreFloat.add(new double[] { random.nextGaussian() + 10, random.nextDouble() }, i);
+            window.add(new Weighted<>(tree.addPoint(index, i), 0, i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(scores[i], copy.traverse(queries[i], factory), EPSILON);
+        }
+    }
+
+    @Test
+    public void testMakeTree() {
+        int sampleSize = 256;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(1000).initialSize(1000).dimensions(2)
+                .build();
+        CompactRandomCutTreeFloat tree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreFloat).centerOfMassEnabled(true).storeSequenceIndexesEnabled(true)
+                .boundingBoxCacheFraction(0.5).build();
+
+        Random random = new Random(0);
+        int[] references = new int[sampleSize];
+        long[] sequenceIndexes = new long[sampleSize];
+        float[] pointSum = new float[2];
+        for (int i = 0; i < sampleSize; i++) {
+            // some of the points are repeated
+            double[] point = (i % 10 == 9) ? toDoubleArray(pointStoreFloat.get(references[i - 1]))
+                    : new double[] { random.nextGaussian(), random.nextDouble() };
+            references[i] = pointStoreFloat.add(point, i);
+            sequenceIndexes[i] = i;
+            pointSum[0] += (float) point[0];
+            pointSum[1] += (float) point[1];
+        }
+        tree.makeTree(references, sequenceIndexes);
+        assertEquals(sampleSize, tree.getMass());
+        assertArrayEquals(pointSum, tree.getPointSum(), 1e-3f);
+        assertThrows(IllegalStateException.class, () -> tree.makeTree(references, sequenceIndexes));
+
+        // the cuts separate the boxes of the children, and the cached boxes are exact
+        List<Integer> nodes = new ArrayList<>();
+        nodes.add(tree.getRootIndex());
+        while (!nodes.isEmpty()) {
+            int node = nodes.remove(nodes.size() - 1);
+            if (!tree.isLeaf(node)) {
+                int left = tree.getLeftChild(node);
+                int right = tree.getRightChild(node);
+                assertEquals(tree.getMass(node), tree.getMass(left) + tree.getMass(right));
+                int dimension = tree.getCutDimension(node);
+                assertTrue(tree.getBoundingBox(left).getMaxValue(dimension) <= tree.getCutValue(node));
+                assertTrue(tree.getBoundingBox(right).getMinValue(dimension) > tree.getCutValue(node));
+                AbstractBoundingBox<float[]> box = tree.getBoundingBox(left).copy();
+                assertEquals(box.addBox(tree.getBoundingBox(right)), tree.getBoundingBox(node));
+                nodes.add(left);
+                nodes.add(right);
+            }
+        }
+
+        // every point can be deleted with its sequence index
+        for (int i = 0; i < sampleSize; i++) {
+            tree.deletePoint(references[i], sequenceIndexes[i]);
+        }
+        assertEquals(0, tree.getMass());
+    }
+
+    @Test
+    public void testBoxCacheMetrics() {
+        int sampleSize = 64;
+        for (double fraction : new double[] { 0.0, 1.0 }) {
+            PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(sampleSize).dimensions(2).build();
+            CompactRandomCutTreeFloat tree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                    .pointStore(pointStoreFloat).boundingBoxCacheFraction(fraction).build();
+            Random random = new Random(0);
+            for (int i = 0; i < sampleSize; i++) {
+                tree.addPoint(pointStoreFloat.add(new double[] { random.nextGaussian(), random.nextGaussian() }, i), i);
+            }
+
+            SimpleForestMetrics metrics = new SimpleForestMetrics();
+            tree.setMetrics(metrics);
+            AbstractBoundingBox<float[]> box = tree.getBoundingBox(tree.getRootIndex());
+            // the box of the root is read from the cache when there is one, and the
+            // cache is not consulted otherwise
+            assertEquals(fraction > 0 ? 1L : 0L, metrics.getCount(IForestMetrics.Counter.BOX_CACHE_HIT));
+            assertEquals(0L, metrics.getCount(IForestMetrics.Counter.BOX_CACHE_MISS));
+            for (int i = 0; i < sampleSize; i++) {
+                assertTrue(box.contains(pointStoreFloat.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testBoxViewReusedAcrossTrees() {
+        int sampleSize = 64;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(2 * sampleSize).dimensions(2).build();
+        CompactRandomCutTreeFloat[] trees = new CompactRandomCutTreeFloat[2];
+        Random random = new Random(0);
+        for (int j = 0; j < trees.length; j++) {
+            trees[j] = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17 + j)
+                    .pointStore(pointStoreFloat).boundingBoxCacheFraction(1.0).build();
+            for (int i = 0; i < sampleSize; i++) {
+                double[] point = new double[] { random.nextGaussian(), random.nextGaussian() };
+                trees[j].addPoint(pointStoreFloat.add(point, i), i);
+            }
+        }
+
+        // records the box of the root, which is read from the flat cache
+        IBoundingBoxView[] views = new IBoundingBoxView[trees.length];
+        double[] rangeSums = new double[trees.length];
+        for (int j = 0; j < trees.length; j++) {
+            int treeIndex = j;
+            IVisitorFactory<Double> factory = new IVisitorFactory<Double>() {
+                @Override
+                public Visitor<Double> newVisitor(ITree<?, ?> tree, double[] point) {
+                    return new Visitor<Double>() {
+                        @Override
+                        public void accept(INodeView node, int depthOfNode) {
+                            if (depthOfNode == 0) {
+                                views[treeIndex] = node.getBoundingBox();
+                                rangeSums[treeIndex] = views[treeIndex].getRangeSum();
+                            }
+                        }
+
+                        @Override
+                        public Double getResult() {
+                            return rangeSums[treeIndex];
+                        }
+                    };
+                }
+
+                @Override
+                public boolean isNodeViewReusable() {
+                    return true;
+                }
+            };
+            assertEquals(trees[j].getBoundingBox(trees[j].getRootIndex()).getRangeSum(),
+                    trees[j].traverse(new double[] { 0.0, 0.0 }, factory), EPSILON);
+        }
+        // a single view serves the trees scored on this thread
+        assertSame(views[0], views[1]);
+        assertNotEquals(rangeSums[0], rangeSums[1]);
+    }
+
+    @Test
+    public void testTraversalDoesNotRetainTree() {
+        int sampleSize = 64;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(sampleSize).dimensions(2).build();
+        CompactRandomCutTreeFloat tree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreFloat).boundingBoxCacheFraction(1.0).build();
+        Random random = new Random(0);
+        for (int i = 0; i < sampleSize; i++) {
+            tree.addPoint(pointStoreFloat.add(new double[] { random.nextGaussian(), random.nextGaussian() }, i), i);
+        }
+
+        // both traversals use the flyweight node view of this thread
+        IVisitorFactory<Double> factory = new ReusableAnomalyScoreVisitorFactory();
+        double[] point = new double[] { random.nextGaussian(), random.nextGaussian() };
+        assertEquals(tree.traverse(point, factory), tree.traverseForAdd(point, factory));
+
+        WeakReference<CompactRandomCutTreeFloat> treeReference = new WeakReference<>(tree);
+        WeakReference<PointStoreFloat> pointStoreReference = new WeakReference<>(pointStoreFloat);
+        tree = null;
+        pointStoreFloat = null;
+        for (int i = 0; i < 10 && (treeReference.get() != null || pointStoreReference.get() != null); i++) {
+            System.gc();
+        }
+        assertNull(treeReference.get());
+        assertNull(pointStoreReference.get());
+    }
+
+    @Test
+    public void testTraverseMulti() {
+        int sampleSize = 256;
+        PointStoreFloat pointStoreFloat = new PointStoreFloat.Builder().capacity(sampleSize).dimensions(2).build();
+        CompactRandomCutTreeFloat tree = CompactRandomCutTreeFloat.builder().maxSize(sampleSize).randomSeed(17)
+                .pointStore(pointStoreFloat).build();
+        Random random = new Random(0);
+        for (int i = 0; i < sampleSize; i++) {
+            tree.addPoint(pointStoreFloat.add(new double[] { random.nextGaussian(), random.nextGaussian() }, i), i);
+        }
+
+        // the visits are the same as those of the recursive traversal
+        for (int i = 0; i < 10; i++) {
+            double[] point = new double[] { random.nextGaussian(), random.nextGaussian() };
+            List<String> events = new ArrayList<>();
+            int visits = tree.traverseMulti(point,
+                    new MultiVisitorFactory<>((t, p) -> new RecordingMultiVisitor(events, new int[1])));
+            List<String> expectedEvents = new ArrayList<>();
+            RecordingMultiVisitor expected = new RecordingMultiVisitor(expectedEvents, new int[1]);
+            traverseMultiRecursively(tree, point, tree.getRootIndex(), 0, expected);
+            assertEquals(expectedEvents, events);
+            assertEquals(expected.getResult().intValue(), visits);
+        }
+    }
+
+    private static void traverseMultiRecursively(CompactRandomCutTreeFloat tree, double[] point, int node,
+            int depthOfNode, MultiVisitor<Integer> visitor) {
+        if (tree.isLeaf(node)) {
+            visitor.acceptLeaf(tree.getNode(node), depthOfNode);
+            return;
+        }
+        if (visitor.trigger(tree.getNode(node))) {
+            traverseMultiRecursively(tree, point, tree.getLeftChild(node), depthOfNode + 1, visitor);
+            MultiVisitor<Integer> copy = visitor.newCopy();
+            traverseMultiRecursively(tree, point, tree.getRightChild(node), depthOfNode + 1, copy);
+            visitor.combine(copy);
+        } else {
+            int child = point[tree.getCutDimension(node)] <= tree.getCutValue(node) ? tree.getLeftChild(node)
+                    : tree.getRightChild(node);
+            traverseMultiRecursively(tree, point, child, depthOfNode + 1, visitor);
+        }
+        visitor.accept(tree.getNode(node), depthOfNode);
+    }
+
+    /**
+     * Records the calls made to the visitor and its copies, and splits at the
+     * nodes whose mass is even.
+     */
+    private static class RecordingMultiVisitor implements MultiVisitor<Integer> {
+        private final List<String> events;
+        private final int[] copies;
+        private final int id;
+        private int visits;
+
+        RecordingMultiVisitor(List<String> events, int[] copies) {
+            this.events = events;
+            this.copies = copies;
+            this.id = copies[0]++;
+        }
+
+        @Override
+        public boolean trigger(INodeView node) {
+            events.add(id + " trigger " + node.getMass());
+            return node.getMass() % 2 == 0;
+        }
+
+        @Override
+        public MultiVisitor<Integer> newCopy() {
+            RecordingMultiVisitor copy = new RecordingMultiVisitor(events, copies);
+            events.add(id + " copy " + copy.id);
+            return copy;
+        }
+
+        @Override
+        public void combine(MultiVisitor<Integer> other) {
+            events.add(id + " combine " + ((RecordingMultiVisitor) other).id);
+            visits += other.getResult();
+        }
+
+        @Override
+        public void acceptLeaf(INodeView leafNode, int depthOfNode) {
+            events.add(id + " leaf " + depthOfNode + " " + Arrays.toString(leafNode.getLeafPoint()));
+            ++visits;
+        }
+
+        @Override
+        public void accept(INodeView node, int depthOfNode) {
+            events.add(id + " accept " + depthOfNode + " " + node.getMass());
+            ++visits;
+        }
+
+        @Override
+        public Integer getResult() {
+            return visits;
+        }
+    }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.randomcutforest.tree;
+
+import static com.amazon.randomcutforest.tree.AbstractCompactRandomCutTree.NULL;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class FlatBoxCacheTest {
+
+    private FlatBoxCacheFloat cache;
+    private BoundingBoxFloat box;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new FlatBoxCacheFloat(0L, 1.0, 4, 2);
+        box = new BoundingBoxFloat(new float[] { 1.0f, -1.0f }, new float[] { 3.0f, 2.0f }, 5.0);
+    }
+
+    @Test
+    public void testSetAndGetBox() {
+        assertFalse(cache.hasBox(1));
+        assertNull(cache.getBox(1));
+        assertNull(cache.getBoxView(1));
+
+        cache.setBox(1, box);
+        assertTrue(cache.hasBox(1));
+        assertFalse(cache.hasBox(0));
+        BoundingBoxFloat cachedBox = cache.getBox(1);
+        assertArrayEquals(box.minValues, cachedBox.minValues);
+        assertArrayEquals(box.maxValues, cachedBox.maxValues);
+        assertEquals(box.getRangeSum(), cachedBox.getRangeSum());
+
+        // the box is a copy
+        cachedBox.addPoint(new float[] { 10.0f, 10.0f });
+        assertEquals(box.getRangeSum(), cache.getBox(1).getRangeSum());
+
+        IBoundingBoxView view = cache.getBoxView(1);
+        assertEquals(2, view.getDimensions());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(box.getMinValue(i), view.getMinValue(i));
+            assertEquals(box.getMaxValue(i), view.getMaxValue(i));
+            assertEquals(box.getRange(i), view.getRange(i));
+        }
+        assertEquals(box.getRangeSum(), view.getRangeSum());
+
+        cache.setBox(1, null);
+        assertFalse(cache.hasBox(1));
+    }
+
+    @Test
+    public void testViewMerges() {
+        cache.setBox(2, box);
+        IBoundingBoxView view = cache.getBoxView(2);
+        double[] point = new double[] { 0.5, 5.0 };
+        IBoundingBoxView expected = box.getMergedBox(point);
+        IBoundingBoxView merged = view.getMergedBox(point);
+        assertEquals(expected.getRangeSum(), merged.getRangeSum());
+        assertEquals(expected.getMinValue(0), merged.getMinValue(0));
+        assertEquals(expected.getMaxValue(1), merged.getMaxValue(1));
+
+        BoundingBoxFloat other = new BoundingBoxFloat(new float[] { -2.0f, 0.0f });
+        expected = box.getMergedBox(other);
+        merged = view.getMergedBox(other);
+        assertEquals(expected.getRangeSum(), merged.getRangeSum());
+        assertEquals(expected.getMinValue(0), merged.getMinValue(0));
+
+        // merging does not modify the cached box
+        assertEquals(box.getRangeSum(), view.getRangeSum());
+        assertEquals(box.getRangeSum(), view.copy().getRangeSum());
+    }
+
+    @Test
+    public void testReusedView() {
+        BoundingBoxFloat other = new BoundingBoxFloat(new float[] { -2.0f, 0.0f }, new float[] { 0.0f, 7.0f }, 9.0);
+        cache.setBox(1, box);
+        cache.setBox(3, other);
+        assertNull(cache.getBoxView(0, null));
+
+        IBoundingBoxView view = cache.getBoxView(1, null);
+        assertEquals(box.getRangeSum(), view.getRangeSum());
+        assertSame(view, cache.getBoxView(3, view));
+        assertEquals(other.getRangeSum(), view.getRangeSum());
+        assertEquals(other.getMinValue(0), view.getMinValue(0));
+        assertEquals(other.getMaxValue(1), view.getMaxValue(1));
+        assertEquals(other.getRangeSum(), view.copy().getRangeSum());
+
+        // an absent box leaves the view as it is
+        assertNull(cache.getBoxView(2, view));
+        assertEquals(other.getRangeSum(), view.getRangeSum());
+
+        // a view is reused by another cache of the same precision
+        FlatBoxCacheFloat otherCache = new FlatBoxCacheFloat(0L, 1.0, 4, 2);
+        otherCache.setBox(1, box);
+        assertSame(view, otherCache.getBoxView(1, view));
+        assertEquals(box.getRangeSum(), view.getRangeSum());
+        assertEquals(box.getMinValue(1), view.getMinValue(1));
+
+        // but not by a cache of another precision
+        FlatBoxCacheDouble doubleCache = new FlatBoxCacheDouble(0L, 1.0, 4, 2);
+        doubleCache.setBox(1, new BoundingBox(new double[] { 0.0, 0.0 }, new double[] { 1.0, 2.0 }));
+        IBoundingBoxView doubleView = doubleCache.getBoxView(1, view);
+        assertNotSame(view, doubleView);
+        assertEquals(3.0, doubleView.getRangeSum());
+        assertEquals(box.getRangeSum(), view.getRangeSum());
+    }
+
+    @Test
+    public void testAddToBoxAndAddBoxTo() {
+        cache.addToBox(0, new float[] { 0.0f, 0.0f });
+        assertFalse(cache.hasBox(0));
+
+        cache.setBox(0, box);
+        float[] point = new float[] { 4.0f, 0.5f };
+        cache.addToBox(0, point);
+        BoundingBoxFloat expected = ((BoundingBoxFloat) box.copy()).addPoint(point);
+        assertArrayEquals(expected.minValues, cache.getBox(0).minValues);
+        assertArrayEquals(expected.maxValues, cache.getBox(0).maxValues);
+        assertEquals(expected.getRangeSum(), cache.getBoxView(0).getRangeSum());
+
+        BoundingBoxFloat mutable = new BoundingBoxFloat(new float[] { -1.0f, 1.0f }, new float[] { -1.0f, 1.0f },
+                0.0);
+        assertFalse(cache.addBoxTo(3, mutable));
+        assertTrue(cache.addBoxTo(0, mutable));
+        BoundingBoxFloat merged = new BoundingBoxFloat(new float[] { -1.0f, 1.0f }, new float[] { -1.0f, 1.0f }, 0.0)
+                .addBox(expected);
+        assertArrayEquals(merged.minValues, mutable.minValues);
+        assertArrayEquals(merged.maxValues, mutable.maxValues);
+        assertEquals(merged.getRangeSum(), mutable.getRangeSum());
+    }
+
+    @Test
+    public void testSwapCaches() {
+        BoundingBoxFloat other = new BoundingBoxFloat(new float[] { 7.0f, 8.0f });
+        cache.setBox(0, box);
+        cache.setBox(2, other);
+        cache.swapCaches(new int[] { 3, NULL, 0, 1 });
+        assertFalse(cache.hasBox(1));
+        assertFalse(cache.hasBox(2));
+        assertArrayEquals(box.minValues, cache.getBox(3).minValues);
+        assertArrayEquals(other.maxValues, cache.getBox(0).maxValues);
+        assertEquals(box.getRangeSum(), cache.getBox(3).getRangeSum());
+    }
+
+    @Test
+    public void testManagedBoxesMatchBoxCache() {
+        int maxSize = 100;
+        FlatBoxCacheDouble flatCache = new FlatBoxCacheDouble(0L, 0.5, maxSize, 3);
+        BoxCacheDouble boxCache = new BoxCacheDouble(0L, 0.5, maxSize);
+        int managed = 0;
+        for (int i = 0; i < maxSize; i++) {
+            assertEquals(boxCache.containsKey(i), flatCache.containsKey(i));
+            managed += flatCache.containsKey(i) ? 1 : 0;
+        }
+        assertTrue(managed >= maxSize / 2);
+
+        double[] point = new double[] { 1.0, 2.0, 3.0 };
+        for (int i = 0; i < maxSize; i++) {
+            flatCache.setBox(i, new BoundingBox(point));
+            assertEquals(flatCache.containsKey(i), flatCache.hasBox(i));
+        }
+
+        int[] map = new int[maxSize];
+        Arrays.setAll(map, i -> maxSize - 1 - i);
+        boolean[] expected = new boolean[maxSize];
+        for (int i = 0; i < maxSize; i++) {
+            expected[map[i]] = flatCache.containsKey(i);
+        }
+        flatCache.swapCaches(map);
+        for (int i = 0; i < maxSize; i++) {
+            assertEquals(expected[i], flatCache.containsKey(i));
+            assertEquals(expected[i], flatCache.hasBox(i));
+        }
+    }
+
+    @Test
+    public void testIncorrectCacheFraction() {
+        assertThrows(IllegalArgumentException.class, () -> new FlatBoxCacheFloat(0L, 0.1, 4, 2));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.randomcutforest.tree;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SequenceIndexesTest {
+
+    private SequenceIndexes sequenceIndexes;
+
+    @BeforeEach
+    public void setUp() {
+        sequenceIndexes = new SequenceIndexes();
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        assertEquals(0, sequenceIndexes.size());
+        sequenceIndexes.add(456L);
+        sequenceIndexes.add(123L);
+        sequenceIndexes.add(789L);
+        sequenceIndexes.add(456L);
+        assertEquals(3, sequenceIndexes.size());
+        assertEquals(2, sequenceIndexes.getCount(456L));
+        assertEquals(1, sequenceIndexes.getCount(123L));
+        assertEquals(0, sequenceIndexes.getCount(100L));
+
+        sequenceIndexes.remove(456L);
+        assertTrue(sequenceIndexes.contains(456L));
+        sequenceIndexes.remove(456L);
+        assertFalse(sequenceIndexes.contains(456L));
+        assertEquals(2, sequenceIndexes.size());
+        assertTrue(sequenceIndexes.contains(123L));
+        assertTrue(sequenceIndexes.contains(789L));
+
+        assertThrows(IllegalStateException.class, () -> sequenceIndexes.remove(456L));
+    }
+
+    @Test
+    public void testAsSet() {
+        Set<Long> set = sequenceIndexes.asSet();
+        assertTrue(set.isEmpty());
+        for (long i = 10; i > 0; i--) {
+            sequenceIndexes.add(i);
+            sequenceIndexes.add(i);
+        }
+        sequenceIndexes.remove(5L);
+        sequenceIndexes.remove(5L);
+
+        // the set is a view and reflects the changes
+        assertEquals(9, set.size());
+        assertTrue(set.contains(1L));
+        assertFalse(set.contains(5L));
+        assertFalse(set.contains(1));
+        assertArrayEquals(new Long[] { 1L, 2L, 3L, 4L, 6L, 7L, 8L, 9L, 10L }, set.toArray(new Long[0]));
+        assertThrows(UnsupportedOperationException.class, () -> set.add(11L));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.randomcutforest.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ArrayDeltasTest {
+
+    @Test
+    public void testChangedRanges() {
+        int[] base = { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+        int[] array = { 1, 0, 3, 0, 5, 6, 7, 0, 9, 10 };
+        // changes at most two values apart are merged
+        int[] ranges = ArrayDeltas.changedRanges(base, array);
+        assertArrayEquals(new int[] { 1, 3, 7, 3 }, ranges);
+        assertArrayEquals(new int[] { 0, 3, 0, 0, 9, 10 }, ArrayDeltas.valuesInRanges(array, ranges));
+        int[] distant = { 0, 2, 3, 4, 0, 6, 7, 8, 9 };
+        assertArrayEquals(new int[] { 0, 1, 4, 1 }, ArrayDeltas.changedRanges(base, distant));
+        assertArrayEquals(array,
+                ArrayDeltas.applyRanges(base, array.length, ranges, ArrayDeltas.valuesInRanges(array, ranges)));
+
+        assertArrayEquals(new int[0], ArrayDeltas.changedRanges(base, base));
+        assertArrayEquals(Arrays.copyOf(base, 4), ArrayDeltas.applyRanges(base, 4, new int[0], new int[0]));
+    }
+
+    @Test
+    public void testRandomChangedRanges() {
+        Random random = new Random(0);
+        for (int trial = 0; trial < 100; trial++) {
+            int[] base = new int[random.nextInt(100)];
+            int[] array = new int[random.nextInt(100)];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = random.nextInt(3);
+            }
+            for (int i = 0; i < base.length; i++) {
+                base[i] = random.nextInt(3);
+            }
+            int[] ranges = ArrayDeltas.changedRanges(base, array);
+            int[] values = ArrayDeltas.valuesInRanges(array, ranges);
+            assertArrayEquals(array, ArrayDeltas.applyRanges(base, array.length, ranges, values));
+
+            float[] baseFloats = new float[base.length];
+            float[] floats = new float[array.length];
+            long[] baseLongs = new long[base.length];
+            long[] longs = new long[array.length];
+            for (int i = 0; i < array.length; i++) {
+                floats[i] = array[i];
+                longs[i] = array[i];
+            }
+            for (int i = 0; i < base.length; i++) {
+                baseFloats[i] = base[i];
+                baseLongs[i] = base[i];
+            }
+            assertArrayEquals(floats, ArrayDeltas.applyRanges(baseFloats, floats.length, ranges,
+                    ArrayDeltas.valuesInRanges(floats, ranges)));
+            assertArrayEquals(longs, ArrayDeltas.applyRanges(baseLongs, longs.length, ranges,
+                    ArrayDeltas.valuesInRanges(longs, ranges)));
+        }
+    }
+
+    @Test
+    public void testApplyIncorrectRanges() {
+        int[] base = { 1, 2, 3 };
+        assertThrows(IllegalArgumentException.class,
+                () -> ArrayDeltas.applyRanges(base, 3, new int[] { 2, 2 }, new int[] { 0, 0 }));
+        assertThrows(IllegalArgumentException.class,
+                () -> ArrayDeltas.applyRanges(base, 3, new int[] { 0, 2 }, new int[] { 0 }));
+        assertThrows(IllegalArgumentException.class, () -> ArrayDeltas.applyRanges(base, 3, new int[] { 0 },
+                new int[0]));
+    }
+}